@@ -1,5 +1,6 @@
 package app.tozzi.annotation;
 
+import app.tozzi.model.JPASearchInStrategy;
 import app.tozzi.model.JPASearchOperatorFilter;
 import app.tozzi.model.JPASearchType;
 
@@ -47,4 +48,11 @@ public @interface Searchable {
     boolean ordinalEnum() default false;
 
     boolean elementCollection() default false;
+
+    JPASearchInStrategy inStrategy() default JPASearchInStrategy.DEFAULT;
+
+    /**
+     * The filters and sorts of the field can use an index, whatever the JPA metadata of the entity (see {@link app.tozzi.core.JPASearchIndexes})
+     */
+    boolean indexed() default false;
 }
@@ -0,0 +1,24 @@
+package app.tozzi.cache;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Entity listener invalidating the {@link JPASearchResultCache} entries of the changed entity after the commit, e.g.:
+ * <pre>
+ * &#64;Entity
+ * &#64;EntityListeners(JPASearchCacheInvalidationListener.class)
+ * public class MyEntity { ... }
+ * </pre>
+ * Only the changed entity type is invalidated: results of other entities including it through an association are kept until they expire.
+ */
+public class JPASearchCacheInvalidationListener {
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void changed(Object entity) {
+        JPASearchResultCache.invalidateAfterCommit(entity.getClass());
+    }
+}
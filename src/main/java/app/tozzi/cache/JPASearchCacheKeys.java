@@ -0,0 +1,84 @@
+package app.tozzi.cache;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.core.JPASearchCanonicalizer;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.repository.JPASearchRepository;
+import app.tozzi.util.ReflectionUtils;
+import lombok.NonNull;
+import org.springframework.core.ResolvableType;
+import org.springframework.util.ClassUtils;
+
+import java.util.*;
+
+/**
+ * Keys of the caches and of the coalesced searches. Filters and options are mutable, so their canonical form is used instead of the objects themselves.
+ */
+public class JPASearchCacheKeys {
+
+    private static final ClassValue<Optional<Class<?>>> ENTITY_CLASSES = new ClassValue<>() {
+        @Override
+        protected Optional<Class<?>> computeValue(Class<?> type) {
+            return ClassUtils.getAllInterfacesForClassAsSet(type).stream()
+                    .filter(i -> i != JPASearchRepository.class && JPASearchRepository.class.isAssignableFrom(i))
+                    .<Class<?>>map(i -> ResolvableType.forClass(i).as(JPASearchRepository.class).resolveGeneric(0))
+                    .filter(Objects::nonNull)
+                    .findFirst();
+        }
+    };
+
+    /**
+     * @return entity type of a {@link JPASearchRepository} (i.e. of its Spring Data proxy), null if not resolvable
+     */
+    public static Class<?> entityClass(@NonNull Object repository) {
+        return ENTITY_CLASSES.get(repository.getClass()).orElse(null);
+    }
+
+    /**
+     * The filter is identified by its exact canonical form, the fingerprint being only its hash (see {@link JPASearchCanonicalizer}), both computed in one walk.
+     * Parameters (e.g. sort, page, fetches) must have value-based equality: maps are copied, being usually mutable,
+     * options are replaced by their canonical form. Computed once per search, the same key is passed to the caches and to the coalescing
+     */
+    public static Key key(Class<?> entityClass, Class<?> domainType, String operation, JPASearchInput.Filter filter, Map<String, String> entityFieldMap, List<?> parameters) {
+        var copies = new ArrayList<Object>();
+        if (parameters != null) {
+            parameters.forEach(p -> copies.add(p instanceof Map<?, ?> map ? new HashMap<>(map)
+                    : p instanceof JPASearchInput.JPASearchOptions options ? JPASearchCanonicalizer.canonical(options) : p));
+        }
+
+        var canonical = JPASearchCanonicalizer.canonicalWithFingerprint(filter, ReflectionUtils.getAllSearchableFields(domainType), entityFieldMap);
+        return new Key(entityClass, domainType, operation, canonical.form(), canonical.fingerprint(), entityFieldMap == null ? null : new HashMap<>(entityFieldMap), copies);
+    }
+
+    /**
+     * @return true if a key of the entity may be used: result cache, count cache or coalescing enabled
+     */
+    public static boolean isUsed(Class<?> entityClass) {
+        var config = JPASearchConfig.get();
+        return entityClass != null && (config.getResultCacheTtl() != null || config.getCountCacheStaleness() != null || config.getSingleFlightEntities().contains(entityClass));
+    }
+
+    /**
+     * Equal if the canonical filters are: the fingerprint is only used as hash
+     */
+    public record Key(Class<?> entityClass, Class<?> domainType, String operation, String filter, long fingerprint, Map<String, String> entityFieldMap, List<?> parameters) {
+
+        /**
+         * @return key of the count of the same filter (see {@link JPASearchCountCache}), without walking it again
+         */
+        public Key count() {
+            return new Key(entityClass, domainType, "count", filter, fingerprint, entityFieldMap, List.of());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && entityClass == k.entityClass && domainType == k.domainType && operation.equals(k.operation)
+                    && filter.equals(k.filter) && Objects.equals(entityFieldMap, k.entityFieldMap) && parameters.equals(k.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(entityClass, domainType, operation, fingerprint, entityFieldMap, parameters);
+        }
+    }
+}
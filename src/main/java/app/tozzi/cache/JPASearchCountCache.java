@@ -0,0 +1,172 @@
+package app.tozzi.cache;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.AsyncUtils;
+import lombok.NonNull;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Totals of the pages, enabled by {@link JPASearchConfig#getCountCacheStaleness()}, kept apart from the {@link JPASearchResultCache}:
+ * a total is usually much more expensive than the content of a page and can be a few seconds stale.
+ * <ul>
+ *     <li>a total counted through this cache is never older than the staleness (counts skip the {@link JPASearchResultCache},
+ *     a page served by it carries the total it was cached with);</li>
+ *     <li>a total older than {@link JPASearchConfig#getCountCacheRefreshAhead()} (fraction of the staleness) is returned and counted again in the background;</li>
+ *     <li>concurrent counts with the same key are executed once, the other callers wait for the result.</li>
+ * </ul>
+ * Keys are made of entity, domain type, canonical filter and entity field map.
+ * As for the {@link JPASearchResultCache}, counts inside a read-write transaction are neither cached nor coalesced (see {@link JPASearchResultCache#isBypassed()}).
+ */
+public class JPASearchCountCache {
+
+    private static final Log LOG = LogFactory.getLog(JPASearchCountCache.class);
+
+    private static final Map<JPASearchCacheKeys.Key, Entry> CACHE = new LinkedHashMap<>(256, 0.75f, true);
+    private static final Map<JPASearchCacheKeys.Key, CompletableFuture<Long>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    /**
+     * @param count   executed on the calling thread
+     * @param refresh executed in the background, e.g. on its own entity manager: it must not use the one of the caller
+     */
+    public static long get(@NonNull Class<?> entityClass, @NonNull Class<?> domainType, JPASearchInput.Filter filter, Map<String, String> entityFieldMap,
+                           @NonNull Supplier<Long> count, @NonNull Supplier<Long> refresh) {
+
+        return get(isEnabled() ? JPASearchCacheKeys.key(entityClass, domainType, "count", filter, entityFieldMap, List.of()) : null, count, refresh);
+    }
+
+    /**
+     * @param key     key of a count (see {@link JPASearchCacheKeys.Key#count()}), null: not cached
+     * @param count   executed on the calling thread
+     * @param refresh executed in the background, e.g. on its own entity manager: it must not use the one of the caller
+     */
+    public static long get(JPASearchCacheKeys.Key key, @NonNull Supplier<Long> count, @NonNull Supplier<Long> refresh) {
+        if (key == null || !isEnabled()) {
+            return count.get();
+        }
+
+        var config = JPASearchConfig.get();
+        var staleness = config.getCountCacheStaleness();
+
+        Entry entry;
+        synchronized (CACHE) {
+            entry = CACHE.get(key);
+        }
+
+        if (entry != null) {
+            var age = System.nanoTime() - entry.countedAt();
+            if (age <= staleness.toNanos()) {
+                JPASearchMetrics.addCountCacheHit();
+                if (age >= staleness.toNanos() * config.getCountCacheRefreshAhead()) {
+                    refreshAhead(key, refresh);
+                }
+
+                return entry.total();
+            }
+        }
+
+        JPASearchMetrics.addCountCacheMiss();
+        var future = new CompletableFuture<Long>();
+        var leader = IN_FLIGHT.putIfAbsent(key, future);
+        if (leader != null) {
+            JPASearchMetrics.addCoalescedCount();
+            return join(leader);
+        }
+
+        try {
+            var countedAt = System.nanoTime();
+            var total = count.get();
+            put(key, total, countedAt);
+            future.complete(total);
+            return total;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(key, future);
+        }
+    }
+
+    /**
+     * @return false if disabled or inside a read-write transaction: the totals are counted directly
+     */
+    public static boolean isEnabled() {
+        return JPASearchConfig.get().getCountCacheStaleness() != null && !JPASearchResultCache.isBypassed();
+    }
+
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static void refreshAhead(JPASearchCacheKeys.Key key, Supplier<Long> refresh) {
+        var future = new CompletableFuture<Long>();
+        if (IN_FLIGHT.putIfAbsent(key, future) != null) {
+            return;
+        }
+
+        var countedAt = System.nanoTime();
+        try {
+            AsyncUtils.supplyAsync(refresh).whenComplete((total, e) -> {
+                // on failure the current total is kept until it expires
+                if (e == null) {
+                    put(key, total, countedAt);
+                    future.complete(total);
+                    IN_FLIGHT.remove(key, future);
+                } else {
+                    refreshFailed(key, future, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // not submitted (e.g. rejected by the executor, failure of the task decorator): the hit is served anyway
+            refreshFailed(key, future, e);
+        }
+    }
+
+    private static void refreshFailed(JPASearchCacheKeys.Key key, CompletableFuture<Long> future, Throwable e) {
+        LOG.warn("Count refresh of " + key.entityClass().getSimpleName() + " failed, the cached total is kept until it expires", e);
+        future.completeExceptionally(e);
+        IN_FLIGHT.remove(key, future);
+    }
+
+    private static void put(JPASearchCacheKeys.Key key, long total, long countedAt) {
+        synchronized (CACHE) {
+            CACHE.put(key, new Entry(total, countedAt));
+            var iterator = CACHE.values().iterator();
+            while (CACHE.size() > JPASearchConfig.get().getCountCacheMaxSize() && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long join(CompletableFuture<Long> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+
+            throw e;
+        }
+    }
+
+    private record Entry(long total, long countedAt) {
+    }
+}
@@ -0,0 +1,168 @@
+package app.tozzi.cache;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.repository.JPASearchRepository;
+import lombok.NonNull;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Results of the {@link JPASearchRepository} searches, enabled by {@link JPASearchConfig#getResultCacheTtl()}.
+ * Entries are keyed by entity, domain type, operation, filter fingerprint, entity field map and parameters (sort, page, fetches),
+ * and evicted when the TTL expires or, least recently used first, when there are more than {@link JPASearchConfig#getResultCacheMaxSize()} entries.
+ * <p>
+ * Entries of an entity are invalidated after the commit of a transaction changing it, if the entity is annotated with
+ * {@code @EntityListeners(JPASearchCacheInvalidationListener.class)}, or explicitly with {@link #invalidate(Class)}.
+ * Inside a read-write transaction the cache is neither read nor written (see {@link #isBypassed()}), so that a transaction sees its own changes
+ * and uncommitted rows are never shared. Searches returning entities are also neither read nor written while an entity manager is bound to the thread
+ * (e.g. open-session-in-view or read-only transaction), as in {@link JPASearchSingleFlight}: the entities would be managed by the persistence context of another thread.
+ * Only detached entities are cached, they are shared and must be treated as read-only.
+ */
+public class JPASearchResultCache {
+
+    private static final Map<JPASearchCacheKeys.Key, Entry> CACHE = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * Invalidations by entity class: a search is not cached if its entity was invalidated while searching, other entities are not affected
+     */
+    private static final Map<Class<?>, AtomicLong> GENERATIONS = new ConcurrentHashMap<>();
+
+    /**
+     * @param key      see {@link JPASearchCacheKeys#key}, null: not cached
+     * @param entities true if the result contains entities
+     */
+    public static <T> T get(JPASearchCacheKeys.Key key, boolean entities, @NonNull Supplier<T> search) {
+        var ttl = JPASearchConfig.get().getResultCacheTtl();
+        if (ttl == null || key == null || isBypassed() || (entities && isEntityManagerBound())) {
+            return search.get();
+        }
+
+        var now = System.nanoTime();
+
+        Entry entry;
+        synchronized (CACHE) {
+            entry = CACHE.get(key);
+            if (entry != null && now - entry.createdAt() > ttl.toNanos()) {
+                CACHE.remove(key);
+            }
+        }
+
+        if (entry != null) {
+            if (now - entry.createdAt() <= ttl.toNanos()) {
+                JPASearchMetrics.addResultCacheHit();
+                @SuppressWarnings("unchecked")
+                var value = (T) entry.value();
+                return value;
+            }
+
+            JPASearchMetrics.addResultCacheEviction();
+        }
+
+        JPASearchMetrics.addResultCacheMiss();
+        var generation = GENERATIONS.computeIfAbsent(key.entityClass(), c -> new AtomicLong());
+        var current = generation.get();
+        var value = search.get();
+
+        synchronized (CACHE) {
+            // not cached if the entity was invalidated while searching
+            if (current == generation.get()) {
+                CACHE.put(key, new Entry(value, now));
+                var iterator = CACHE.values().iterator();
+                while (CACHE.size() > JPASearchConfig.get().getResultCacheMaxSize() && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                    JPASearchMetrics.addResultCacheEviction();
+                }
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Removes the entries of the entity (and of its subclasses and superclasses)
+     */
+    public static void invalidate(@NonNull Class<?> entityClass) {
+        synchronized (CACHE) {
+            GENERATIONS.forEach((c, generation) -> {
+                if (related(c, entityClass)) {
+                    generation.incrementAndGet();
+                }
+            });
+            CACHE.keySet().removeIf(k -> related(k.entityClass(), entityClass));
+        }
+    }
+
+    /**
+     * {@link #invalidate(Class)} after the commit of the current transaction, immediately if there is no transaction
+     */
+    public static void invalidateAfterCommit(@NonNull Class<?> entityClass) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(entityClass);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        var changed = (Set<Class<?>>) TransactionSynchronizationManager.getResource(JPASearchResultCache.class);
+        if (changed == null) {
+            var classes = new HashSet<Class<?>>();
+            TransactionSynchronizationManager.bindResource(JPASearchResultCache.class, classes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    classes.forEach(JPASearchResultCache::invalidate);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(JPASearchResultCache.class);
+                }
+            });
+            changed = classes;
+        }
+
+        changed.add(entityClass);
+    }
+
+    /**
+     * @return true inside a read-write transaction or after a change waiting for the commit: results may contain uncommitted rows
+     */
+    public static boolean isBypassed() {
+        return (TransactionSynchronizationManager.isActualTransactionActive() && !TransactionSynchronizationManager.isCurrentTransactionReadOnly())
+                || TransactionSynchronizationManager.hasResource(JPASearchResultCache.class);
+    }
+
+    /**
+     * @return true if an entity manager is bound to the thread: the entities it loads stay managed after the search
+     */
+    static boolean isEntityManagerBound() {
+        return TransactionSynchronizationManager.getResourceMap().values().stream().anyMatch(EntityManagerHolder.class::isInstance);
+    }
+
+    public static void clear() {
+        synchronized (CACHE) {
+            GENERATIONS.values().forEach(AtomicLong::incrementAndGet);
+            CACHE.clear();
+        }
+    }
+
+    public static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    private static boolean related(Class<?> a, Class<?> b) {
+        return a.isAssignableFrom(b) || b.isAssignableFrom(a);
+    }
+
+    private record Entry(Object value, long createdAt) {
+    }
+}
@@ -0,0 +1,97 @@
+package app.tozzi.cache;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.util.AsyncUtils;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Identical concurrent searches on the entities of {@link JPASearchConfig#getSingleFlightEntities()} are executed once:
+ * the first caller (leader) executes the search, the others (followers) wait for its result. Keys are the ones of {@link JPASearchResultCache} (see {@link JPASearchCacheKeys}).
+ * <p>
+ * Only searches outside a read-write transaction are coalesced, since a follower would not see its own uncommitted changes.
+ * Searches returning entities are also not coalesced when an entity manager is bound to the thread (e.g. open-session-in-view or read-only transaction):
+ * the entities would be managed by the persistence context of another thread. Shared entities are detached and must be treated as read-only.
+ */
+public class JPASearchSingleFlight {
+
+    private static final Map<JPASearchCacheKeys.Key, CompletableFuture<Object>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    /**
+     * @param key      see {@link JPASearchCacheKeys#key}, null: not coalesced
+     * @param entities true if the result contains entities
+     * @param share    applied to the result of the leader for each follower, e.g. to copy mutable results
+     */
+    public static <T> T execute(JPASearchCacheKeys.Key key, boolean entities, @NonNull Supplier<T> search, @NonNull UnaryOperator<T> share) {
+        if (key == null || !JPASearchConfig.get().getSingleFlightEntities().contains(key.entityClass()) || !isShareable(entities)) {
+            return search.get();
+        }
+
+        var future = new CompletableFuture<Object>();
+        var leader = IN_FLIGHT.putIfAbsent(key, future);
+        if (leader != null) {
+            JPASearchMetrics.addCoalescedSearch();
+            try {
+                @SuppressWarnings("unchecked")
+                var result = (T) leader.join();
+                return share.apply(result);
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) {
+                    throw re;
+                }
+
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+
+                throw e;
+            }
+        }
+
+        try {
+            var result = search.get();
+            future.complete(result);
+            return result;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(key, future);
+        }
+    }
+
+    /**
+     * Copy of a projection result (nested maps and lists included), the values are shared
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T copy(T result) {
+        if (result instanceof Map<?, ?> map) {
+            var copy = new LinkedHashMap<Object, Object>();
+            map.forEach((k, v) -> copy.put(k, copy(v)));
+            return (T) copy;
+        }
+
+        if (result instanceof List<?> list) {
+            var copy = new ArrayList<>(list.size());
+            list.forEach(v -> copy.add(copy(v)));
+            return (T) copy;
+        }
+
+        return result;
+    }
+
+    private static boolean isShareable(boolean entities) {
+        if (!AsyncUtils.isParallelAllowed()) {
+            return false;
+        }
+
+        return !entities || !JPASearchResultCache.isEntityManagerBound();
+    }
+}
@@ -0,0 +1,201 @@
+package app.tozzi.config;
+
+import app.tozzi.model.JPASearchInStrategy;
+import app.tozzi.model.JPASearchIndexPolicy;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import org.springframework.core.task.TaskDecorator;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Global library settings. Meant to be configured once at application startup, e.g.:
+ * <pre>
+ * var config = new JPASearchConfig();
+ * config.setInListThreshold(1000);
+ * JPASearchConfig.set(config);
+ * </pre>
+ */
+@Getter
+@Setter
+public class JPASearchConfig {
+
+    private static volatile JPASearchConfig instance = new JPASearchConfig();
+
+    public static JPASearchConfig get() {
+        return instance;
+    }
+
+    public static void set(@NonNull JPASearchConfig config) {
+        instance = config;
+    }
+
+    /**
+     * Rewrites the filter tree before building the predicates (see {@link app.tozzi.core.JPASearchFilterOptimizer})
+     */
+    private boolean filterOptimization = true;
+
+    /**
+     * Number of values above which an {@code in} filter on a field without an explicit {@link app.tozzi.annotation.Searchable#inStrategy()} uses {@link #inListStrategy}. -1: disabled
+     */
+    private int inListThreshold = -1;
+
+    /**
+     * Strategy applied to {@code in} filters exceeding {@link #inListThreshold}
+     */
+    private JPASearchInStrategy inListStrategy = JPASearchInStrategy.CHUNKED;
+
+    /**
+     * Maximum number of values of a single IN group for {@link JPASearchInStrategy#CHUNKED}
+     */
+    private int inListChunkSize = 1000;
+
+    /**
+     * Executor of the asynchronous searches (e.g. {@code findAllAsync}). null: virtual threads when available (Java 21+),
+     * otherwise a pool with a thread per available processor and an unbounded queue
+     */
+    private Executor asyncExecutor;
+
+    /**
+     * Applied to every asynchronous search on the calling thread, e.g. to propagate MDC or security context
+     */
+    private TaskDecorator asyncTaskDecorator;
+
+    /**
+     * Maximum number of searches of a batch (e.g. {@code findAllBatch}) executed concurrently, each on its own connection
+     */
+    private int batchParallelism = 4;
+
+    /**
+     * How long the distinct values of a field without filters are kept in memory (see {@link app.tozzi.core.JPASearchDistinctValues}). null: disabled
+     */
+    private Duration distinctValuesCacheTtl;
+
+    /**
+     * Maximum number of distinct values of a field kept in memory: fields with more values are always queried
+     */
+    private int distinctValuesCacheMaxValues = 1000;
+
+    /**
+     * Maximum number of fields whose distinct values are kept in memory, the least recently used are evicted first
+     */
+    private int distinctValuesCacheMaxFields = 1000;
+
+    /**
+     * How long the results of the repository searches are kept in memory (see {@link app.tozzi.cache.JPASearchResultCache}). null: disabled
+     */
+    private Duration resultCacheTtl;
+
+    /**
+     * Maximum number of cached search results, the least recently used are evicted first
+     */
+    private int resultCacheMaxSize = 10_000;
+
+    /**
+     * How stale the cached totals of the pages can be (see {@link app.tozzi.cache.JPASearchCountCache}). null: disabled
+     */
+    private Duration countCacheStaleness;
+
+    /**
+     * Fraction of {@link #countCacheStaleness} after which a cached total is counted again in the background
+     */
+    private double countCacheRefreshAhead = 0.5;
+
+    /**
+     * Maximum number of cached totals, the least recently used are evicted first
+     */
+    private int countCacheMaxSize = 10_000;
+
+    /**
+     * Entities whose identical concurrent searches are executed once (see {@link app.tozzi.cache.JPASearchSingleFlight})
+     */
+    @NonNull
+    private Set<Class<?>> singleFlightEntities = Set.of();
+
+    /**
+     * Observes each search and its phases (see {@link app.tozzi.metrics.JPASearchObservations}). Disabled: no overhead on the hot path
+     */
+    private boolean phaseObservations;
+
+    /**
+     * Maximum number of filter shapes whose executions are aggregated (see {@link app.tozzi.metrics.JPASearchSlowSearches}). 0: disabled
+     */
+    private int slowSearchShapes;
+
+    /**
+     * Values of the examples of the slow searches replaced by {@code ?} (the size for the lists), e.g. when they are personal data
+     */
+    private boolean slowSearchRedacted;
+
+    /**
+     * Counts how often each field is filtered and sorted (see {@link app.tozzi.metrics.JPASearchFieldUsage})
+     */
+    private boolean fieldUsageStatistics;
+
+    /**
+     * Admission limits of the searches of every domain type without its own {@link #domainLimits}
+     */
+    @NonNull
+    private JPASearchLimits limits = new JPASearchLimits();
+
+    /**
+     * Admission limits by domain type
+     */
+    @NonNull
+    private Map<Class<?>, JPASearchLimits> domainLimits = Map.of();
+
+    /**
+     * Maximum number of concurrent searches by domain type (see {@link app.tozzi.util.BulkheadUtils}), e.g. to keep heavy reports from using the whole connection pool
+     */
+    @NonNull
+    private Map<Class<?>, Integer> bulkheads = Map.of();
+
+    /**
+     * How long a search waits for its turn in a bulkhead. null: no timeout, the waiting searches block their threads
+     * (e.g. the ones of the default {@link #getAsyncExecutor() asynchronous executor}, a thread per available processor on Java 17) until a permit is released
+     */
+    private Duration bulkheadTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Maximum number of searches waiting in a bulkhead, the others are rejected immediately. -1: unlimited
+     */
+    private int bulkheadMaxWaiting = -1;
+
+    /**
+     * Timeout of the queries executed by the library, cancelled by the database when expired (see {@link app.tozzi.core.JPASearchQueries#withQueryTimeout}).
+     * The ones of {@link app.tozzi.repository.JPASearchRepository}, executed by Spring Data, need the {@link app.tozzi.repository.JPASearchBaseRepository} base class. null: none
+     */
+    private Duration queryTimeout;
+
+    /**
+     * Entities whose searches should use an index (see {@link app.tozzi.core.JPASearchIndexes})
+     */
+    @NonNull
+    private Set<Class<?>> largeEntities = Set.of();
+
+    /**
+     * What happens to the searches of the {@link #largeEntities} whose filters and sorts cannot use any index
+     */
+    @NonNull
+    private JPASearchIndexPolicy unindexedSearchPolicy = JPASearchIndexPolicy.WARN;
+
+    /**
+     * Registry of the current observation, propagated to the asynchronous searches
+     */
+    @NonNull
+    private ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
+
+    /**
+     * @param domainType null: the default limits
+     */
+    public JPASearchLimits getLimits(Class<?> domainType) {
+        var domain = domainType == null ? null : domainLimits.get(domainType);
+        return domain != null ? domain : limits;
+    }
+
+}
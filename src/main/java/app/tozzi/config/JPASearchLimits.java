@@ -0,0 +1,40 @@
+package app.tozzi.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Admission limits of the searches, checked before building any query (see {@link app.tozzi.core.JPASearchCore#checkLimits}).
+ * Violations throw {@link app.tozzi.exception.JPASearchLimitException}. -1: unlimited
+ */
+@Getter
+@Setter
+public class JPASearchLimits {
+
+    /**
+     * Maximum nesting of the root filters (the top-level root filter has depth 1)
+     */
+    private int maxDepth = -1;
+
+    /**
+     * Maximum number of field filters
+     */
+    private int maxFilters = -1;
+
+    /**
+     * Maximum number of values of all the {@code in} filters
+     */
+    private int maxInValues = -1;
+
+    /**
+     * Maximum number of joins of the filters: distinct association paths (e.g. {@code a.b.c} navigates {@code a} and {@code a.b}, embeddables excluded),
+     * plus one per filter joining an element collection (all the operators but equals and in)
+     */
+    private int maxJoins = -1;
+
+    /**
+     * Maximum page size
+     */
+    private int maxPageSize = -1;
+
+}
@@ -0,0 +1,206 @@
+package app.tozzi.core;
+
+import app.tozzi.annotation.Searchable;
+import app.tozzi.exception.InvalidFieldException;
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.model.FieldDescriptor;
+import app.tozzi.model.FilterDescriptor;
+import app.tozzi.model.JPASearchAggregateFunction;
+import app.tozzi.model.JPASearchAggregation;
+import app.tozzi.model.JPASearchType;
+import app.tozzi.model.input.JPASearchInput;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.*;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import lombok.NonNull;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.stream.Stream;
+
+public class JPAAggregationProcessor {
+
+    private static final Set<JPASearchType> NUMERIC_TYPES = EnumSet.of(JPASearchType.LONG, JPASearchType.INTEGER, JPASearchType.FLOAT, JPASearchType.DOUBLE, JPASearchType.BIGDECIMAL);
+
+    /**
+     * {@code SELECT <groupBy>, <aggregations> FROM <entity> WHERE <filter> GROUP BY <groupBy>}, with the sorting (group by keys or aggregation aliases) and pagination of the input options, if any.
+     * If the filter joins a collection, it is applied with a subquery on the id, so that the aggregations are computed once per entity.
+     * Group by keys and aggregated fields cannot be element collections or reached through a collection.
+     *
+     * @return one row for each group: group by keys and aggregation aliases to values
+     */
+    public static <E> List<Map<String, Object>> aggregate(@NonNull EntityManager entityManager, FilterDescriptor descriptor, JPASearchInput.JPASearchOptions options,
+                                                          @NonNull List<String> groupBy, @NonNull List<JPASearchAggregation> aggregations, @NonNull Class<E> entityClass,
+                                                          Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+
+        if (aggregations.isEmpty()) {
+            throw new JPASearchException("Invalid aggregation");
+        }
+
+        var groupByFields = groupBy.stream().map(k -> JPASearchCoreFieldProcessor.processField(k, entityFieldMap, searchableFields, true, true, false)).toList();
+        var aggregationFields = aggregations.stream().map(a -> field(a, searchableFields, entityFieldMap)).toList();
+
+        // group by keys and aliases name the columns of the rows
+        var names = new HashSet<String>();
+        for (var name : Stream.concat(groupBy.stream(), aggregations.stream().map(JPASearchAggregation::getAlias)).toList()) {
+            if (!names.add(name)) {
+                throw new JPASearchException("Invalid aggregation: duplicate name [" + name + "]");
+            }
+        }
+
+        // a joined collection repeats the entity once per element (and drops the entities without elements) in every aggregation
+        for (var field : Stream.concat(groupByFields.stream(), aggregationFields.stream()).filter(Objects::nonNull).toList()) {
+            if (isToMany(entityManager, entityClass, field)) {
+                throw new InvalidFieldException("Field [" + field.getPath() + "] cannot be aggregated: to-many path", field.getPath());
+            }
+        }
+
+        if (descriptor != null && descriptor.isEmpty()) {
+            return groupBy.isEmpty() ? List.of(emptyRow(aggregations)) : new ArrayList<>();
+        }
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createTupleQuery();
+        var root = criteriaQuery.from(entityClass);
+        criteriaQuery.where(filter(entityManager, criteriaQuery, root, descriptor, entityClass, searchableFields, entityFieldMap));
+
+        var registry = new JPASearchJoinRegistry(root);
+        var expressions = new LinkedHashMap<String, Expression<?>>();
+        for (int i = 0; i < groupBy.size(); i++) {
+            expressions.put(groupBy.get(i), JPASearchQueries.valuePath(criteriaBuilder, registry, groupByFields.get(i)));
+        }
+
+        var groups = List.copyOf(expressions.values());
+        for (int i = 0; i < aggregations.size(); i++) {
+            expressions.put(aggregations.get(i).getAlias(), aggregate(criteriaBuilder, root, registry, aggregations.get(i), aggregationFields.get(i)));
+        }
+
+        criteriaQuery.multiselect(new ArrayList<Selection<?>>(expressions.values())).groupBy(groups);
+
+        if (options != null && options.getSortOptions() != null && !options.getSortOptions().isEmpty()) {
+            criteriaQuery.orderBy(options.getSortOptions().stream().map(so -> {
+                var expression = expressions.get(so.getKey());
+                if (expression == null) {
+                    throw new InvalidFieldException("Field [" + so.getKey() + "] is not a group by key or an aggregation", so.getKey());
+                }
+                return Boolean.TRUE.equals(so.getDesc()) ? criteriaBuilder.desc(expression) : criteriaBuilder.asc(expression);
+            }).toList());
+        }
+
+        var query = JPASearchQueries.applyQueryTimeout(entityManager.createQuery(criteriaQuery));
+        if (options != null && options.getPageSize() != null && options.getPageSize() > 0) {
+            var page = options.getPageOffset() != null && options.getPageOffset() >= 0 ? options.getPageOffset() : 0;
+            query.setFirstResult(page * options.getPageSize());
+            query.setMaxResults(options.getPageSize());
+        }
+
+        var aliases = List.copyOf(expressions.keySet());
+        return query.getResultList().stream().map(t -> {
+            var row = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < aliases.size(); i++) {
+                row.put(aliases.get(i), t.get(i));
+            }
+            return (Map<String, Object>) row;
+        }).toList();
+    }
+
+    private static FieldDescriptor field(JPASearchAggregation aggregation, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        if (aggregation.getFunction() == null) {
+            throw new JPASearchException("Invalid aggregation");
+        }
+
+        if (aggregation.getKey() == null) {
+            if (aggregation.getFunction() != JPASearchAggregateFunction.COUNT) {
+                throw new JPASearchException("Invalid aggregation: " + aggregation.getFunction() + " requires a field");
+            }
+            return null;
+        }
+
+        var descriptor = JPASearchCoreFieldProcessor.processField(aggregation.getKey(), entityFieldMap, searchableFields, true, true, false);
+        if (aggregation.getFunction().isNumeric() && !NUMERIC_TYPES.contains(descriptor.getSearchType())) {
+            throw new InvalidFieldException("Field [" + aggregation.getKey() + "] is not numeric", aggregation.getKey());
+        }
+
+        return descriptor;
+    }
+
+    /**
+     * True for the element collections and the paths through a collection of the entity
+     */
+    private static boolean isToMany(EntityManager entityManager, Class<?> entityClass, FieldDescriptor descriptor) {
+        if (descriptor.getSearchable().elementCollection()) {
+            return true;
+        }
+
+        ManagedType<?> type = entityManager.getMetamodel().entity(entityClass);
+        for (var segment : descriptor.getEntityKey().split("\\.")) {
+            Attribute<?, ?> attribute;
+            try {
+                attribute = type.getAttribute(segment);
+            } catch (IllegalArgumentException e) {
+                // unknown attributes fail when the query is built
+                return false;
+            }
+
+            if (attribute.isCollection()) {
+                return true;
+            }
+
+            if (!(attribute instanceof SingularAttribute<?, ?> singular) || !(singular.getType() instanceof ManagedType<?> managedType)) {
+                return false;
+            }
+
+            type = managedType;
+        }
+
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Predicate filter(EntityManager entityManager, CriteriaQuery<?> criteriaQuery, Root<E> root, FilterDescriptor descriptor, Class<E> entityClass,
+                                        Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var entityType = entityManager.getMetamodel().entity(entityClass);
+        if (descriptor != null && descriptor.getFilter() != null && entityType.hasSingleIdAttribute()) {
+            var idName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+            var subquery = criteriaQuery.subquery((Class<Object>) entityType.getIdType().getJavaType());
+            var subRoot = subquery.from(entityClass);
+            var predicate = JPASearchCore.predicate(descriptor, criteriaBuilder, new JPASearchJoinRegistry(subRoot), searchableFields, entityFieldMap);
+
+            // joined collections would repeat the entity in every group
+            if (!subRoot.getJoins().isEmpty()) {
+                subquery.select(subRoot.get(idName)).where(predicate);
+                return root.get(idName).in(subquery);
+            }
+        }
+
+        return JPASearchCore.predicate(descriptor, criteriaBuilder, new JPASearchJoinRegistry(root), searchableFields, entityFieldMap);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Expression<?> aggregate(CriteriaBuilder criteriaBuilder, Root<?> root, JPASearchJoinRegistry registry, JPASearchAggregation aggregation, FieldDescriptor descriptor) {
+        if (descriptor == null) {
+            return criteriaBuilder.count(root);
+        }
+
+        var path = JPASearchQueries.valuePath(criteriaBuilder, registry, descriptor);
+        return switch (aggregation.getFunction()) {
+            case COUNT -> criteriaBuilder.count(path);
+            case COUNT_DISTINCT -> criteriaBuilder.countDistinct(path);
+            case SUM -> criteriaBuilder.sum((Expression<Number>) path);
+            case AVG -> criteriaBuilder.avg((Expression<Number>) path);
+            case MIN -> criteriaBuilder.least((Expression<Comparable<Object>>) path);
+            case MAX -> criteriaBuilder.greatest((Expression<Comparable<Object>>) path);
+        };
+    }
+
+    private static Map<String, Object> emptyRow(List<JPASearchAggregation> aggregations) {
+        var row = new LinkedHashMap<String, Object>();
+        aggregations.forEach(a -> row.put(a.getAlias(), a.getFunction() == JPASearchAggregateFunction.COUNT || a.getFunction() == JPASearchAggregateFunction.COUNT_DISTINCT ? 0L : null));
+        return row;
+    }
+}
@@ -0,0 +1,179 @@
+package app.tozzi.core;
+
+import app.tozzi.annotation.Searchable;
+import app.tozzi.exception.InvalidFieldException;
+import app.tozzi.exception.InvalidValueException;
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.model.FilterDescriptor;
+import app.tozzi.model.JPASearchOperatorFilter;
+import app.tozzi.model.JPASearchType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CommonAbstractCriteria;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import lombok.NonNull;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Set-based delete and update statements ({@code CriteriaDelete}, {@code CriteriaUpdate}) filtered by a compiled filter.
+ * Filters reaching fields through associations or collections are applied with a subquery on the id
+ * ({@code WHERE id IN (SELECT id FROM <entity> WHERE <filter>)}), since joins are not allowed in bulk statements.
+ * <p>
+ * Bulk statements bypass the persistence context: entities already loaded are not updated or removed.
+ */
+public class JPABulkProcessor {
+
+    private static final Set<Class<?>> CHUNKABLE_ID_TYPES = Set.of(Long.class, long.class, Integer.class, int.class);
+
+    public static <E> int delete(@NonNull EntityManager entityManager, FilterDescriptor descriptor, @NonNull Class<E> entityClass, Pair<Long, Long> idRange,
+                                 Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaDelete = criteriaBuilder.createCriteriaDelete(entityClass);
+        var root = criteriaDelete.from(entityClass);
+        criteriaDelete.where(where(entityManager, criteriaDelete, root, descriptor, entityClass, idRange, searchableFields, entityFieldMap));
+        return JPASearchQueries.applyQueryTimeout(entityManager.createQuery(criteriaDelete)).executeUpdate();
+    }
+
+    /**
+     * @param values entity field name to value, see {@link #updateValues(Map, Class, EntityManager, Map, Map)}
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> int update(@NonNull EntityManager entityManager, FilterDescriptor descriptor, @NonNull Class<E> entityClass, @NonNull Map<String, Object> values, Pair<Long, Long> idRange,
+                                 Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaUpdate = criteriaBuilder.createCriteriaUpdate(entityClass);
+        var root = criteriaUpdate.from(entityClass);
+        values.forEach((k, v) -> criteriaUpdate.set((Path<Object>) (Path<?>) root.get(k), v));
+        criteriaUpdate.where(where(entityManager, criteriaUpdate, root, descriptor, entityClass, idRange, searchableFields, entityFieldMap));
+        return JPASearchQueries.applyQueryTimeout(entityManager.createQuery(criteriaUpdate)).executeUpdate();
+    }
+
+    /**
+     * Validates and converts the new values, keyed by searchable field, as for an {@code eq} filter.
+     * Only basic attributes of the entity (not reached through associations or collections) can be updated. Null values are allowed for non-primitive fields.
+     *
+     * @return entity field name to value
+     */
+    public static <E> Map<String, Object> updateValues(@NonNull Map<String, Object> values, @NonNull Class<E> entityClass, @NonNull EntityManager entityManager,
+                                                       Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+
+        if (values.isEmpty()) {
+            throw new JPASearchException("Invalid update: no values");
+        }
+
+        var entityType = entityManager.getMetamodel().entity(entityClass);
+        var result = new LinkedHashMap<String, Object>();
+        values.forEach((key, value) -> {
+            var descriptor = JPASearchCoreFieldProcessor.processField(key, entityFieldMap, searchableFields, true, true, false);
+            if (descriptor.getSearchable().elementCollection() || JPASearchType.JSONB.equals(descriptor.getSearchType()) || descriptor.getEntityKey().contains(".")
+                    || !(entityType.getAttribute(descriptor.getEntityKey()) instanceof SingularAttribute<?, ?> attribute) || attribute.isAssociation() || attribute.isId()) {
+                throw new InvalidFieldException("Field [" + key + "] cannot be updated", key);
+            }
+
+            if (value == null) {
+                if (descriptor.getType().isPrimitive()) {
+                    throw new InvalidValueException("Invalid value [null]", key, null);
+                }
+                result.put(descriptor.getEntityKey(), null);
+                return;
+            }
+
+            var converted = JPASearchCoreValueProcessor.processValue(JPASearchOperatorFilter.EQ, descriptor.getSearchType(), descriptor.getSearchable(), key, value, descriptor.getType(), false);
+            result.put(descriptor.getEntityKey(), converted.orElse(null));
+        });
+
+        return result;
+    }
+
+    /**
+     * Upper id of the next chunk (keyset): the {@code chunkSize}-th id, in ascending order, of the entities matching the filter with id greater than {@code after}
+     *
+     * @param after last id of the previous chunk, null for the first one
+     * @return null if fewer entities are left: the last chunk has no upper bound
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> Long nextChunkEnd(@NonNull EntityManager entityManager, FilterDescriptor descriptor, @NonNull Class<E> entityClass, Long after, int chunkSize,
+                                        Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+
+        var entityType = entityManager.getMetamodel().entity(entityClass);
+        if (!entityType.hasSingleIdAttribute() || !CHUNKABLE_ID_TYPES.contains(entityType.getIdType().getJavaType())) {
+            throw new JPASearchException("Chunks require a numeric id");
+        }
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery((Class<Object>) entityType.getIdType().getJavaType());
+        var root = criteriaQuery.from(entityClass);
+        var id = root.get(idName(entityType));
+        criteriaQuery.select(id)
+                .where(where(entityManager, criteriaQuery, root, descriptor, entityClass, Pair.of(after, null), searchableFields, entityFieldMap))
+                .orderBy(criteriaBuilder.asc(id));
+
+        var ids = JPASearchQueries.applyQueryTimeout(entityManager.createQuery(criteriaQuery))
+                .setFirstResult(chunkSize - 1)
+                .setMaxResults(1)
+                .getResultList();
+
+        return ids.isEmpty() ? null : ((Number) ids.get(0)).longValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Predicate where(EntityManager entityManager, CommonAbstractCriteria query, Root<E> root, FilterDescriptor descriptor, Class<E> entityClass, Pair<Long, Long> idRange,
+                                       Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var entityType = entityManager.getMetamodel().entity(entityClass);
+        var predicates = new ArrayList<Predicate>();
+
+        if (descriptor != null && descriptor.getFilter() != null && !descriptor.isEmpty()
+                && !JPASearchQueries.singleRow(descriptor.getFilter(), entityType, searchableFields, entityFieldMap)) {
+            // joins are not allowed on the root of a bulk statement: the filter selects the ids
+            var subquery = query.subquery((Class<Object>) entityType.getIdType().getJavaType());
+            var subRoot = subquery.from(entityClass);
+            subquery.select(subRoot.get(idName(entityType)))
+                    .where(JPASearchCore.predicate(descriptor, criteriaBuilder, new JPASearchJoinRegistry(subRoot), searchableFields, entityFieldMap));
+            predicates.add(root.get(idName(entityType)).in(subquery));
+        } else {
+            predicates.add(JPASearchCore.predicate(descriptor, criteriaBuilder, new JPASearchJoinRegistry(root), searchableFields, entityFieldMap));
+        }
+
+        if (idRange != null) {
+            // (left, right], null: unbounded
+            var idType = entityType.getIdType().getJavaType();
+            if (idType == Integer.class || idType == int.class) {
+                var id = (Expression<Integer>) (Expression<?>) root.get(idName(entityType));
+                if (idRange.getLeft() != null) {
+                    predicates.add(criteriaBuilder.greaterThan(id, idRange.getLeft().intValue()));
+                }
+                if (idRange.getRight() != null) {
+                    predicates.add(criteriaBuilder.lessThanOrEqualTo(id, idRange.getRight().intValue()));
+                }
+            } else {
+                var id = (Expression<Long>) (Expression<?>) root.get(idName(entityType));
+                if (idRange.getLeft() != null) {
+                    predicates.add(criteriaBuilder.greaterThan(id, idRange.getLeft()));
+                }
+                if (idRange.getRight() != null) {
+                    predicates.add(criteriaBuilder.lessThanOrEqualTo(id, idRange.getRight()));
+                }
+            }
+        }
+
+        return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+    }
+
+    private static String idName(EntityType<?> entityType) {
+        return entityType.getId(entityType.getIdType().getJavaType()).getName();
+    }
+}
@@ -31,9 +31,9 @@ public class JPAProjectionProcessor {
             throw new JPASearchException("Invalid projection");
         }
 
-        Specification<E> specification = JPASearchCore.specification(
-                input.getFilter(),
-                ReflectionUtils.getAllSearchableFields(type), fetchMap, entityFieldMap);
+        var filterSearchableFields = ReflectionUtils.getAllSearchableFields(type);
+        var filterDescriptor = JPASearchCore.compile(type, input.getFilter(), filterSearchableFields, entityFieldMap);
+        Specification<E> specification = JPASearchCore.specification(filterDescriptor, filterSearchableFields, fetchMap, entityFieldMap);
 
         var query = criteriaBuilder.createTupleQuery();
         var root = query.from(entityClass);
@@ -49,7 +49,7 @@ public class JPAProjectionProcessor {
             criteriaQuery = criteriaQuery.orderBy(QueryUtils.toOrders(sort, root, criteriaBuilder));
         }
 
-        return new ProjectionDescriptor(criteriaQuery, selections, input, root);
+        return new ProjectionDescriptor(criteriaQuery, selections, input, root, filterDescriptor != null && filterDescriptor.isEmpty());
     }
 
     public static List<Selection<?>> loadSelection(List<String> fields, Root<?> root, Class<?> entityClass,
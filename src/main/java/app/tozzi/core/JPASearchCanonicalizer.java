@@ -0,0 +1,268 @@
+package app.tozzi.core;
+
+import app.tozzi.annotation.Searchable;
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.model.JPASearchOperatorFilter;
+import app.tozzi.model.input.JPASearchInput;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stable 64-bit fingerprint of a filter tree, computed in a single pass without building a canonical copy.
+ * Logically equal filters have the same fingerprint:
+ * <ul>
+ *     <li>children of {@code and}/{@code or} in any order (e.g. Mode 1 maps iterated in a different order);</li>
+ *     <li>values equal after the type conversion of the field (e.g. {@code "10"} and {@code 10}, {@code 1.0} and {@code 1.00}), case-insensitive with {@code ignoreCase};</li>
+ *     <li>values of {@code in} in any order.</li>
+ * </ul>
+ * Fingerprints do not depend on {@link Object#hashCode()}, so they are the same across JVMs and can be used as metric tags or logged.
+ * Where collisions are not acceptable (e.g. cache keys), {@link #canonical} gives the exact canonical form, with the same equivalences.
+ */
+public class JPASearchCanonicalizer {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private static final long ROOT = hash("root");
+    private static final long FIELD = hash("field");
+
+    public static long fingerprint(JPASearchInput.Filter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        return walk(filter, searchableFields, entityFieldMap, false).fingerprint();
+    }
+
+    /**
+     * Exact canonical form of a filter, with the same equivalences of {@link #fingerprint}: equal strings mean logically equal filters,
+     * without the (unlikely) collisions of the fingerprint. Empty string without filter.
+     */
+    public static String canonical(JPASearchInput.Filter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        return canonicalWithFingerprint(filter, searchableFields, entityFieldMap).form();
+    }
+
+    /**
+     * {@link #canonical} and {@link #fingerprint} in a single walk, each value converted once. Used by the cache keys, the fingerprint being the hash.
+     */
+    public static Canonical canonicalWithFingerprint(JPASearchInput.Filter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        return walk(filter, searchableFields, entityFieldMap, true);
+    }
+
+    /**
+     * Exact canonical form of the options: pagination, sort and selections (their order matters). Empty string without options.
+     */
+    public static String canonical(JPASearchInput.JPASearchOptions options) {
+        if (options == null) {
+            return "";
+        }
+
+        var sort = options.getSortOptions() == null ? "" : options.getSortOptions().stream()
+                .map(o -> quote(o.getKey()) + (Boolean.TRUE.equals(o.getDesc()) ? " desc" : " asc"))
+                .collect(Collectors.joining(","));
+
+        var selections = options.getSelections() == null ? "" : options.getSelections().stream()
+                .map(JPASearchCanonicalizer::quote)
+                .collect(Collectors.joining(","));
+
+        return canonicalValue(options.getPageSize()) + "|" + canonicalValue(options.getPageOffset()) + "|" + sort + "|" + selections;
+    }
+
+    /**
+     * Shape of a filter tree: keys, operators and options without the values, e.g. {@code and(primitiveLong in, not stringOne eq ignoreCase)}.
+     * Children of {@code and}/{@code or} are sorted, so that the shape is the same in any order. Empty string without filter.
+     */
+    public static String shape(JPASearchInput.Filter filter) {
+        if (filter == null) {
+            return "";
+        }
+
+        if (filter instanceof JPASearchInput.RootFilter rootFilter) {
+            var operator = rootFilter.getOperator() == null ? "" : rootFilter.getOperator().toLowerCase();
+            var children = rootFilter.getFilters() == null ? Stream.<String>empty() : rootFilter.getFilters().stream().map(JPASearchCanonicalizer::shape);
+            if (!"not".equals(operator)) {
+                children = children.sorted();
+            }
+
+            return operator + children.collect(Collectors.joining(", ", "(", ")"));
+        }
+
+        var fieldFilter = (JPASearchInput.FieldFilter) filter;
+        var options = fieldFilter.getOptions();
+        return (options != null && options.isNegate() ? "not " : "") + fieldFilter.getKey() + " " + fieldFilter.getOperator()
+                + (options != null && options.isIgnoreCase() ? " ignoreCase" : "");
+    }
+
+    public static String toHex(long fingerprint) {
+        var hex = Long.toHexString(fingerprint);
+        return "0".repeat(16 - hex.length()) + hex;
+    }
+
+    /**
+     * Single walk of the filter tree: the fingerprint, and the canonical form only if {@code withForm} (null otherwise)
+     */
+    private static Canonical walk(JPASearchInput.Filter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap, boolean withForm) {
+        if (filter == null) {
+            return new Canonical(withForm ? "" : null, 0);
+        }
+
+        if (filter instanceof JPASearchInput.RootFilter rootFilter) {
+            var operator = rootFilter.getOperator() == null ? "" : rootFilter.getOperator().toLowerCase();
+            var children = rootFilter.getFilters() == null ? List.<Canonical>of() : rootFilter.getFilters().stream()
+                    .map(f -> walk(f, searchableFields, entityFieldMap, withForm)).toList();
+
+            var forms = withForm ? children.stream().map(Canonical::form) : Stream.<String>empty();
+            var hashes = children.stream().mapToLong(Canonical::fingerprint).toArray();
+            if (!"not".equals(operator)) {
+                // commutative
+                forms = forms.sorted();
+                Arrays.sort(hashes);
+            }
+
+            var h = combine(ROOT, hash(operator));
+            for (var child : hashes) {
+                h = combine(h, child);
+            }
+
+            return new Canonical(withForm ? quote(operator) + forms.collect(Collectors.joining(",", "(", ")")) : null, h);
+        }
+
+        var fieldFilter = (JPASearchInput.FieldFilter) filter;
+        var options = fieldFilter.getOptions();
+        var ignoreCase = options != null && options.isIgnoreCase();
+        var trim = options != null && options.isTrim();
+        var flags = (ignoreCase ? 1 : 0) | (trim ? 2 : 0) | (options != null && options.isNegate() ? 4 : 0);
+
+        var h = combine(FIELD, hash(fieldFilter.getKey()));
+        h = combine(h, hash(fieldFilter.getOperator()));
+        h = combine(h, flags);
+
+        Object raw = fieldFilter instanceof JPASearchInput.FilterSingleValue fsv ? fsv.getValue()
+                : fieldFilter instanceof JPASearchInput.FilterMultipleValues fmv ? fmv.getValues() : null;
+
+        var value = convert(fieldFilter, raw, searchableFields, entityFieldMap, ignoreCase);
+        var canonical = withForm ? quote(fieldFilter.getKey()) + " " + quote(fieldFilter.getOperator()) + " " + flags + " " : null;
+        if (value instanceof Collection<?> values) {
+            var canonicalValues = withForm ? values.stream().map(JPASearchCanonicalizer::canonicalValue) : Stream.<String>empty();
+            var hashes = values.stream().mapToLong(JPASearchCanonicalizer::hashValue).toArray();
+            if (JPASearchOperatorFilter.IN.getValue().equals(fieldFilter.getOperator())) {
+                canonicalValues = canonicalValues.sorted();
+                Arrays.sort(hashes);
+            }
+
+            h = combine(h, hashes.length);
+            for (var valueHash : hashes) {
+                h = combine(h, valueHash);
+            }
+
+            return new Canonical(withForm ? canonical + canonicalValues.collect(Collectors.joining(",", "[", "]")) : null, h);
+        }
+
+        return new Canonical(withForm ? canonical + canonicalValue(value) : null, combine(h, hashValue(value)));
+    }
+
+    /**
+     * Typed value(s) of the filter, the raw value if not convertible (invalid filters fail when the search is executed).
+     * Values are not trimmed: {@code trim} applies to the column only, it is part of the flags
+     */
+    private static Object convert(JPASearchInput.FieldFilter filter, Object raw, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap,
+                                  boolean ignoreCase) {
+
+        if (raw == null || searchableFields == null || filter.getKey() == null) {
+            return raw;
+        }
+
+        try {
+            var operator = JPASearchOperatorFilter.load(filter.getOperator());
+            var descriptor = JPASearchCoreFieldProcessor.processField(filter.getKey(), entityFieldMap, searchableFields, true, false, false);
+            return JPASearchCoreValueProcessor.processValue(operator, descriptor.getSearchType(), descriptor.getSearchable(), descriptor.getPath(), raw, descriptor.getType(), ignoreCase)
+                    .orElse(null);
+        } catch (JPASearchException | IllegalArgumentException | ClassCastException e) {
+            return ignoreCase && raw instanceof String s ? s.toLowerCase() : raw;
+        }
+    }
+
+    /**
+     * Same equivalences of {@link #hashValue}, with the type name
+     */
+    private static String canonicalValue(Object value) {
+        if (value == null) {
+            return "null";
+        }
+
+        if (value instanceof BigDecimal bigDecimal) {
+            return BigDecimal.class.getName() + ":" + quote(bigDecimal.stripTrailingZeros().toPlainString());
+        }
+
+        if (value instanceof Date date) {
+            return Date.class.getName() + ":" + date.getTime() + (date instanceof Timestamp timestamp ? "." + timestamp.getNanos() : "");
+        }
+
+        return value.getClass().getName() + ":" + quote(value.toString());
+    }
+
+    private static String quote(String value) {
+        return value == null ? "null" : "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static long hashValue(Object value) {
+        if (value == null) {
+            return 0;
+        }
+
+        if (value instanceof BigDecimal bigDecimal) {
+            return hash(bigDecimal.stripTrailingZeros().toPlainString());
+        }
+
+        if (value instanceof Date date) {
+            // toString depends on the default time zone, getTime drops the nanos of the timestamps
+            var h = combine(hash(Date.class.getName()), date.getTime());
+            return date instanceof Timestamp timestamp ? combine(h, timestamp.getNanos()) : h;
+        }
+
+        // type name: 1 (number) and "1" (string) differ when not converted
+        return combine(hash(value.getClass().getName()), hash(value.toString()));
+    }
+
+    private static long hash(String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        var h = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * FNV_PRIME;
+        }
+
+        return mix(h);
+    }
+
+    private static long combine(long h, long value) {
+        return mix(h * GOLDEN + value);
+    }
+
+    /**
+     * MurmurHash3 finalizer
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb53a87e5d9ceL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Canonical form of a filter and its {@link #fingerprint}
+     */
+    public record Canonical(String form, long fingerprint) {
+    }
+}
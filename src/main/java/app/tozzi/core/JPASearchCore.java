@@ -1,28 +1,53 @@
 package app.tozzi.core;
 
 import app.tozzi.annotation.Searchable;
+import app.tozzi.config.JPASearchConfig;
 import app.tozzi.exception.JPASearchException;
+import app.tozzi.exception.JPASearchLimitException;
+import app.tozzi.metrics.JPASearchFieldUsage;
+import app.tozzi.metrics.JPASearchObservations;
+import app.tozzi.metrics.JPASearchPhase;
+import app.tozzi.model.FieldDescriptor;
+import app.tozzi.model.FilterDescriptor;
+import app.tozzi.model.JPASearchInStrategy;
 import app.tozzi.model.JPASearchOperatorFilter;
 import app.tozzi.model.JPASearchOperatorGroup;
 import app.tozzi.model.input.JPASearchInput;
 import app.tozzi.util.JPASearchUtils;
+import app.tozzi.util.ReflectionUtils;
 import app.tozzi.util.ValidationUtils;
+import jakarta.persistence.ElementCollection;
 import jakarta.persistence.criteria.*;
 import lombok.AllArgsConstructor;
+import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.lang.reflect.Field;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 @AllArgsConstructor
 public class JPASearchCore {
 
+    private static final Map<Class<?>, Map<String, List<String>>> JOIN_PATHS = new ConcurrentHashMap<>();
+
+    /**
+     * Checks the filter against the default limits ({@link JPASearchConfig#getLimits(Class)} without domain type), every segment of a nested path counting as a join
+     * since the entity is not known: use {@link #checkLimits(Class, Class, JPASearchInput.RootFilter, Map, Map)} and {@link #specification(FilterDescriptor, Map, Map, Map)}
+     * for the limits of a domain type.
+     *
+     * @throws JPASearchLimitException if a limit is exceeded
+     */
     public static <R> Specification<R> specification(JPASearchInput.RootFilter filter,
                                                      Map<String, Pair<Searchable, Field>> searchableFields,
                                                      Map<String, JoinType> fetchMap,
@@ -32,47 +57,311 @@ public class JPASearchCore {
             return (root, query, cb) -> cb.conjunction();
         }
 
+        checkLimits(null, null, filter, searchableFields, entityFieldMap);
+        return specification(compile(filter, searchableFields, entityFieldMap), searchableFields, fetchMap, entityFieldMap);
+    }
+
+    public static <R> Specification<R> specification(FilterDescriptor descriptor,
+                                                     Map<String, Pair<Searchable, Field>> searchableFields,
+                                                     Map<String, JoinType> fetchMap,
+                                                     Map<String, String> entityFieldMap) {
+
+        if (descriptor == null) {
+            return (root, query, cb) -> cb.conjunction();
+        }
+
         return (root, query, criteriaBuilder) -> {
             query.distinct(true);
 
-            var expr = processExpression(
-                    filter,
-                    criteriaBuilder,
-                    JPASearchUtils.fetchManagement(fetchMap, root),
-                    searchableFields,
-                    entityFieldMap
-            );
+            var registry = new JPASearchJoinRegistry(root);
+            JPASearchUtils.fetchManagement(fetchMap, registry);
+
+            return predicate(descriptor, criteriaBuilder, registry, searchableFields, entityFieldMap);
+        };
+    }
+
+    /**
+     * Predicate of a compiled filter, with the paths and joins created by the registry (e.g. on the root of a subquery)
+     */
+    public static Predicate predicate(FilterDescriptor descriptor,
+                                      CriteriaBuilder criteriaBuilder,
+                                      JPASearchJoinRegistry registry,
+                                      Map<String, Pair<Searchable, Field>> searchableFields,
+                                      Map<String, String> entityFieldMap) {
+
+        if (descriptor == null) {
+            return criteriaBuilder.conjunction();
+        }
+
+        if (descriptor.isEmpty()) {
+            return criteriaBuilder.disjunction();
+        }
+
+        if (descriptor.getFilter() == null) {
+            return criteriaBuilder.conjunction();
+        }
+
+        var expr = JPASearchObservations.phase(JPASearchPhase.BUILD, () -> processExpression(
+                descriptor.getFilter(),
+                criteriaBuilder,
+                registry,
+                searchableFields,
+                entityFieldMap
+        ));
+
+        if (expr == null) {
+            return criteriaBuilder.conjunction();
+        }
+
+        if (expr instanceof Predicate predicate) {
+            return predicate;
+        }
+
+        throw new JPASearchException("Not resulting a predicate: " + expr);
+    }
+
+    /**
+     * Compiles the filter with the default limits, see {@link #compile(Class, JPASearchInput.RootFilter, Map, Map)}
+     */
+    public static FilterDescriptor compile(JPASearchInput.RootFilter filter,
+                                           Map<String, Pair<Searchable, Field>> searchableFields,
+                                           Map<String, String> entityFieldMap) {
+
+        return compile(null, filter, searchableFields, entityFieldMap);
+    }
+
+    /**
+     * Optimizes the filter and reports whether it is provably empty or unrestricted. Null if there is no filter at all.
+     * Filters that are provably empty or unrestricted, or that were pruned by the optimizer, are validated anyway,
+     * so that invalid fields, operators and values are still rejected.
+     * The limits are not checked here: callers check them once, at admission (see {@link #checkLimits}).
+     */
+    public static FilterDescriptor compile(Class<?> domainType,
+                                           JPASearchInput.RootFilter filter,
+                                           Map<String, Pair<Searchable, Field>> searchableFields,
+                                           Map<String, String> entityFieldMap) {
+
+        if (filter == null) {
+            return null;
+        }
+
+        if (!JPASearchConfig.get().isFilterOptimization()) {
+            return new FilterDescriptor(filter, false, false);
+        }
+
+        return JPASearchObservations.phase(JPASearchPhase.BUILD, () -> {
+            var descriptor = JPASearchFilterOptimizer.optimize(filter, searchableFields, entityFieldMap);
+            if (descriptor.isEmpty() || descriptor.isUnrestricted() || descriptor.isPruned()) {
+                validate(filter, searchableFields, entityFieldMap);
+            }
+
+            return descriptor;
+        });
+    }
+
+    /**
+     * Rejects filters exceeding the limits of the domain type, before any resolution of fields and values (join paths apart).
+     * The tree is walked iteratively and the walk stops at the first violation, so that huge or deeply nested filters are rejected cheaply.
+     *
+     * @param domainType  null: the default limits
+     * @param entityClass entity whose associations and element collections are counted as joins (embeddables are not joined), null: every segment of a nested path
+     * @throws JPASearchLimitException if a limit is exceeded
+     */
+    public static void checkLimits(Class<?> domainType,
+                                   Class<?> entityClass,
+                                   JPASearchInput.RootFilter filter,
+                                   Map<String, Pair<Searchable, Field>> searchableFields,
+                                   Map<String, String> entityFieldMap) {
+
+        var limits = JPASearchConfig.get().getLimits(domainType);
+        if (filter == null || (limits.getMaxDepth() < 0 && limits.getMaxFilters() < 0 && limits.getMaxInValues() < 0 && limits.getMaxJoins() < 0)) {
+            return;
+        }
 
-            if (expr == null) {
-                return criteriaBuilder.conjunction();
+        var filters = 0;
+        var inValues = 0;
+        var joins = limits.getMaxJoins() < 0 ? null : new HashSet<String>();
+        var elementJoins = 0;
+        var stack = new ArrayDeque<Pair<JPASearchInput.RootFilter, Integer>>();
+        stack.push(Pair.of(filter, 1));
+
+        while (!stack.isEmpty()) {
+            var current = stack.pop();
+            var depth = current.getRight();
+            if (limits.getMaxDepth() >= 0 && depth > limits.getMaxDepth()) {
+                throw new JPASearchLimitException(domainType, JPASearchLimitException.Limit.DEPTH, depth, limits.getMaxDepth());
             }
 
-            if (expr instanceof Predicate predicate) {
-                return predicate;
+            if (current.getLeft().getFilters() == null) {
+                continue;
             }
 
-            throw new JPASearchException("Not resulting a predicate: " + expr);
-        };
+            for (var child : current.getLeft().getFilters()) {
+                if (child instanceof JPASearchInput.RootFilter rootFilter) {
+                    stack.push(Pair.of(rootFilter, depth + 1));
+                    continue;
+                }
+
+                if (!(child instanceof JPASearchInput.FieldFilter fieldFilter)) {
+                    continue;
+                }
+
+                if (limits.getMaxFilters() >= 0 && ++filters > limits.getMaxFilters()) {
+                    throw new JPASearchLimitException(domainType, JPASearchLimitException.Limit.FILTERS, filters, limits.getMaxFilters());
+                }
+
+                if (fieldFilter instanceof JPASearchInput.FilterMultipleValues multiple && multiple.getValues() != null
+                        && JPASearchOperatorFilter.IN.getValue().equals(multiple.getOperator())) {
+
+                    inValues += multiple.getValues().size();
+                    if (limits.getMaxInValues() >= 0 && inValues > limits.getMaxInValues()) {
+                        throw new JPASearchLimitException(domainType, JPASearchLimitException.Limit.IN_VALUES, inValues, limits.getMaxInValues());
+                    }
+                }
+
+                if (joins != null && fieldFilter.getKey() != null) {
+                    // unknown fields are rejected when the predicates are built
+                    var descriptor = JPASearchCoreFieldProcessor.processField(fieldFilter.getKey(), entityFieldMap, searchableFields, false, false, false);
+                    joins.addAll(joinPaths(entityClass, descriptor == null ? null : descriptor.getEntityKey()));
+                    if (descriptor != null && isElementJoin(descriptor, fieldFilter.getOperator())) {
+                        elementJoins++;
+                    }
+
+                    if (joins.size() + elementJoins > limits.getMaxJoins()) {
+                        throw new JPASearchLimitException(domainType, JPASearchLimitException.Limit.JOINS, joins.size() + elementJoins, limits.getMaxJoins());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Element collections are joined once per filter (see {@link JPASearchJoinRegistry#elementJoin}), but for the membership tests of equals and in
+     */
+    static boolean isElementJoin(FieldDescriptor descriptor, String operator) {
+        return descriptor.getSearchable().elementCollection()
+                && !JPASearchOperatorFilter.EQ.getValue().equals(operator) && !JPASearchOperatorFilter.IN.getValue().equals(operator);
+    }
+
+    /**
+     * Joined prefixes of an entity path: associations and element collections, not embeddables. Unknown segments (or entity) are counted as joins
+     */
+    private static List<String> joinPaths(Class<?> entityClass, String path) {
+        if (path == null || path.indexOf('.') < 0) {
+            return List.of();
+        }
+
+        var cache = JOIN_PATHS.computeIfAbsent(entityClass == null ? Object.class : entityClass, k -> new ConcurrentHashMap<>());
+        return cache.computeIfAbsent(path, p -> {
+            var segments = p.split("\\.");
+            var joins = new ArrayList<String>();
+            Class<?> type = entityClass;
+            for (int i = 0; i < segments.length - 1; i++) {
+                var field = type == null ? null : FieldUtils.getField(type, segments[i], true);
+                if (field == null || JPASearchIndexes.isRelation(field) || field.isAnnotationPresent(ElementCollection.class)) {
+                    joins.add(String.join(".", Arrays.copyOfRange(segments, 0, i + 1)));
+                }
+
+                type = field == null ? null : ReflectionUtils.getType(field);
+            }
+
+            return List.copyOf(joins);
+        });
+    }
+
+    /**
+     * Counts the field filters with a known field and operator (see {@link JPASearchFieldUsage}), walking the tree iteratively.
+     * Called once per search when it is admitted, before the result cache, so that cached and coalesced searches are counted too.
+     *
+     * @param domainType null: not counted
+     */
+    public static void recordUsage(Class<?> domainType,
+                                   JPASearchInput.RootFilter filter,
+                                   Map<String, Pair<Searchable, Field>> searchableFields,
+                                   Map<String, String> entityFieldMap) {
+
+        if (domainType == null || filter == null || !JPASearchFieldUsage.isEnabled()) {
+            return;
+        }
+
+        var operators = JPASearchOperatorFilter.getAllValues();
+        var stack = new ArrayDeque<JPASearchInput.RootFilter>();
+        stack.push(filter);
+
+        while (!stack.isEmpty()) {
+            var current = stack.pop();
+            if (current.getFilters() == null) {
+                continue;
+            }
+
+            for (var child : current.getFilters()) {
+                if (child instanceof JPASearchInput.RootFilter rootFilter) {
+                    stack.push(rootFilter);
+                    continue;
+                }
+
+                if (!(child instanceof JPASearchInput.FieldFilter fieldFilter) || fieldFilter.getKey() == null || !operators.contains(fieldFilter.getOperator())) {
+                    continue;
+                }
+
+                // unknown fields are rejected when the predicates are built
+                var descriptor = JPASearchCoreFieldProcessor.processField(fieldFilter.getKey(), entityFieldMap, searchableFields, false, false, false);
+                if (descriptor == null) {
+                    continue;
+                }
+
+                var options = fieldFilter.getOptions();
+                var inValues = fieldFilter instanceof JPASearchInput.FilterMultipleValues multiple && multiple.getValues() != null ? multiple.getValues().size() : 1;
+                JPASearchFieldUsage.recordFilter(domainType, fieldFilter.getKey(), descriptor.getEntityKey(), fieldFilter.getOperator(),
+                        options != null && options.isIgnoreCase(), options != null && options.isNegate(), inValues);
+            }
+        }
     }
 
     public static Sort loadSort(JPASearchInput.JPASearchOptions options,
                                 Map<String, Pair<Searchable, Field>> searchableFields,
                                 Map<String, String> entityFieldMap) {
-        return loadSort(options, searchableFields, entityFieldMap, false);
+        return loadSort(null, options, searchableFields, entityFieldMap);
+    }
+
+    /**
+     * @param domainType type whose sorts are counted (see {@link JPASearchFieldUsage}), null: not counted.
+     *                   Loaded with the domain type once per search when it is admitted, like the filters (see {@link #recordUsage})
+     */
+    public static Sort loadSort(Class<?> domainType,
+                                JPASearchInput.JPASearchOptions options,
+                                Map<String, Pair<Searchable, Field>> searchableFields,
+                                Map<String, String> entityFieldMap) {
+        return loadSort(domainType, options, searchableFields, entityFieldMap, false);
     }
 
     public static PageRequest loadSortAndPagination(JPASearchInput.JPASearchOptions options, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        return loadSortAndPagination(null, options, searchableFields, entityFieldMap);
+    }
+
+    /**
+     * @param domainType type whose {@link app.tozzi.config.JPASearchLimits#getMaxPageSize()} is checked and whose sorts are counted, null: the default limits, not counted
+     */
+    public static PageRequest loadSortAndPagination(Class<?> domainType, JPASearchInput.JPASearchOptions options, Map<String, Pair<Searchable, Field>> searchableFields,
+                                                    Map<String, String> entityFieldMap) {
+
         if (options == null || options.getPageSize() == null || options.getPageSize() <= 0) {
             throw new JPASearchException("Invalid or not present page size value");
         }
 
+        var maxPageSize = JPASearchConfig.get().getLimits(domainType).getMaxPageSize();
+        if (maxPageSize >= 0 && options.getPageSize() > maxPageSize) {
+            throw new JPASearchLimitException(domainType, JPASearchLimitException.Limit.PAGE_SIZE, options.getPageSize(), maxPageSize);
+        }
+
         var result = PageRequest.ofSize(options.getPageSize()).withPage(options.getPageOffset() != null && options.getPageOffset() >= 0 ? options.getPageOffset() : 0);
-        var sort = loadSort(options, searchableFields, entityFieldMap, true);
+        var sort = loadSort(domainType, options, searchableFields, entityFieldMap, true);
 
         return sort != null ? result.withSort(sort) : result;
     }
 
-    private static Sort loadSort(JPASearchInput.JPASearchOptions options,
+    private static Sort loadSort(Class<?> domainType,
+                                 JPASearchInput.JPASearchOptions options,
                                  Map<String, Pair<Searchable, Field>> searchableFields,
                                  Map<String, String> entityFieldMap, boolean nullable) {
 
@@ -92,6 +381,9 @@ public class JPASearchCore {
             }
 
             orders.add(Boolean.TRUE.equals(so.getDesc()) ? Sort.Order.desc(des.getEntityKey()) : Sort.Order.asc(des.getEntityKey()));
+            if (domainType != null && JPASearchFieldUsage.isEnabled()) {
+                JPASearchFieldUsage.recordSort(domainType, so.getKey(), des.getEntityKey(), Boolean.TRUE.equals(so.getDesc()));
+            }
         });
 
         return Sort.by(orders);
@@ -100,7 +392,7 @@ public class JPASearchCore {
     private static Expression<?> processExpression(
             JPASearchInput.Filter filter,
             CriteriaBuilder cb,
-            Root<?> root,
+            JPASearchJoinRegistry registry,
             Map<String, Pair<Searchable, Field>> searchableFields,
             Map<String, String> entityFieldMap
     ) {
@@ -112,7 +404,7 @@ public class JPASearchCore {
 
             var operator = JPASearchOperatorGroup.load(rootFilter.getOperator());
             var arguments = rootFilter.getFilters().stream()
-                    .map(f -> process(f, cb, root, entityFieldMap, searchableFields))
+                    .map(f -> process(f, cb, registry, entityFieldMap, searchableFields))
                     .filter(Objects::nonNull)
                     .toList();
 
@@ -130,41 +422,34 @@ public class JPASearchCore {
     private static Expression<?> process(
             JPASearchInput.Filter filter,
             CriteriaBuilder cb,
-            Root<?> root,
+            JPASearchJoinRegistry registry,
             Map<String, String> entityFieldMap,
             Map<String, Pair<Searchable, Field>> searchableFields
     ) {
 
         if (filter instanceof JPASearchInput.RootFilter) {
-            return processExpression(filter, cb, root, searchableFields, entityFieldMap);
+            return processExpression(filter, cb, registry, searchableFields, entityFieldMap);
         }
 
         if (filter instanceof JPASearchInput.FieldFilter fieldFilter) {
             var searchFilter = JPASearchOperatorFilter.load(fieldFilter.getOperator());
-            var descriptor = JPASearchCoreFieldProcessor.processField(fieldFilter.getKey(), entityFieldMap, searchableFields, true, true, false);
+            var descriptor = JPASearchObservations.phase(JPASearchPhase.RESOLVE,
+                    () -> JPASearchCoreFieldProcessor.processField(fieldFilter.getKey(), entityFieldMap, searchableFields, true, true, false));
 
             if (descriptor == null) {
                 return null;
             }
 
-            ValidationUtils.searchableValidations(descriptor.getSearchable(), descriptor.getPath(), searchFilter);
-
             var ignoreCase = fieldFilter.getOptions() != null && fieldFilter.getOptions().isIgnoreCase();
-            var obj = new ArrayList<>();
-
-            if (fieldFilter instanceof JPASearchInput.FilterSingleValue fsv) {
-                var valueOpt = JPASearchCoreValueProcessor.processValue(searchFilter, descriptor.getSearchType(), descriptor.getSearchable(), descriptor.getPath(), fsv.getValue(), descriptor.getType(), ignoreCase);
-                valueOpt.ifPresent(obj::add);
-
-            } else if (fieldFilter instanceof JPASearchInput.FilterMultipleValues fmv) {
-                var valueOpt = JPASearchCoreValueProcessor.processValue(searchFilter, descriptor.getSearchType(), descriptor.getSearchable(), descriptor.getPath(), fmv.getValues(), descriptor.getType(), ignoreCase);
-                valueOpt.ifPresent(val -> {
-                    if (val instanceof Collection<?> coll) {
-                        obj.addAll(coll);
-                    } else {
-                        obj.add(val);
-                    }
-                });
+            var obj = JPASearchObservations.phase(JPASearchPhase.VALIDATE, () -> {
+                ValidationUtils.searchableValidations(descriptor.getSearchable(), descriptor.getPath(), searchFilter);
+                return loadValues(fieldFilter, searchFilter, descriptor, ignoreCase);
+            });
+
+            if (searchFilter == JPASearchOperatorFilter.IN && fieldFilter instanceof JPASearchInput.FilterMultipleValues fmv
+                    && fmv.getValues() != null && fmv.getValues().isEmpty()) {
+                // matches nothing, or everything when negated, as when optimized (see JPASearchFilterOptimizer)
+                return fieldFilter.getOptions() != null && fieldFilter.getOptions().isNegate() ? cb.conjunction() : cb.disjunction();
             }
 
             if (obj.isEmpty() && searchFilter.getAllowedValues() != 0) {
@@ -173,7 +458,7 @@ public class JPASearchCore {
 
             if (descriptor.getSearchable().elementCollection() && (searchFilter == JPASearchOperatorFilter.EQ || searchFilter == JPASearchOperatorFilter.IN)) {
                 var predicates = new ArrayList<Predicate>();
-                var collectionPath = JPASearchUtils.getPath(root, descriptor.getEntityKey());
+                var collectionPath = registry.path(descriptor.getEntityKey());
                 var typedCollectionPath = (Expression<Collection<Object>>) (Expression<?>) collectionPath;
 
                 for (var value : obj) {
@@ -189,9 +474,9 @@ public class JPASearchCore {
 
             Expression<?> path;
             if (descriptor.getSearchable().elementCollection()) {
-                path = root.join(descriptor.getEntityKey(), JoinType.LEFT);
+                path = registry.elementJoin(descriptor.getEntityKey(), JoinType.LEFT);
             } else {
-                path = JPASearchUtils.getPath(cb, root, descriptor.getEntityKey(), descriptor.getJsonPath());
+                path = JPASearchUtils.getJsonPath(cb, registry.path(descriptor.getEntityKey()), descriptor.getJsonPath());
             }
 
             var exps = new ArrayList<Expression<?>>();
@@ -214,7 +499,11 @@ public class JPASearchCore {
 
             exps.add(exp != null ? exp : path);
 
-            var predicate = searchFilter.getFunction().apply(cb, exps.toArray(new Expression[0]), obj.toArray(new Object[0]));
+            var function = searchFilter == JPASearchOperatorFilter.IN
+                    ? JPASearchInStrategy.resolve(descriptor.getSearchable().inStrategy(), obj.size()).getFunction()
+                    : searchFilter.getFunction();
+
+            var predicate = function.apply(cb, exps.toArray(new Expression[0]), obj.toArray(new Object[0]));
 
             return fieldFilter.getOptions() != null && fieldFilter.getOptions().isNegate()
                     ? JPASearchOperatorGroup.NOT.getFunction().apply(cb, new Expression[]{predicate}, new Object[]{})
@@ -223,4 +512,49 @@ public class JPASearchCore {
 
         throw new JPASearchException("Invalid expression");
     }
-}
\ No newline at end of file
+
+    private static void validate(JPASearchInput.Filter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        if (filter instanceof JPASearchInput.RootFilter rootFilter) {
+            JPASearchOperatorGroup.load(rootFilter.getOperator());
+            if (rootFilter.getFilters() != null) {
+                rootFilter.getFilters().forEach(f -> validate(f, searchableFields, entityFieldMap));
+            }
+            return;
+        }
+
+        if (filter instanceof JPASearchInput.FieldFilter fieldFilter) {
+            var searchFilter = JPASearchOperatorFilter.load(fieldFilter.getOperator());
+            var descriptor = JPASearchCoreFieldProcessor.processField(fieldFilter.getKey(), entityFieldMap, searchableFields, true, true, false);
+            if (descriptor == null) {
+                return;
+            }
+
+            ValidationUtils.searchableValidations(descriptor.getSearchable(), descriptor.getPath(), searchFilter);
+            loadValues(fieldFilter, searchFilter, descriptor, fieldFilter.getOptions() != null && fieldFilter.getOptions().isIgnoreCase());
+            return;
+        }
+
+        throw new JPASearchException("Invalid expression");
+    }
+
+    private static List<Object> loadValues(JPASearchInput.FieldFilter fieldFilter, JPASearchOperatorFilter searchFilter, FieldDescriptor descriptor, boolean ignoreCase) {
+        var obj = new ArrayList<>();
+
+        if (fieldFilter instanceof JPASearchInput.FilterSingleValue fsv) {
+            var valueOpt = JPASearchCoreValueProcessor.processValue(searchFilter, descriptor.getSearchType(), descriptor.getSearchable(), descriptor.getPath(), fsv.getValue(), descriptor.getType(), ignoreCase);
+            valueOpt.ifPresent(obj::add);
+
+        } else if (fieldFilter instanceof JPASearchInput.FilterMultipleValues fmv) {
+            var valueOpt = JPASearchCoreValueProcessor.processValue(searchFilter, descriptor.getSearchType(), descriptor.getSearchable(), descriptor.getPath(), fmv.getValues(), descriptor.getType(), ignoreCase);
+            valueOpt.ifPresent(val -> {
+                if (val instanceof Collection<?> coll) {
+                    obj.addAll(coll);
+                } else {
+                    obj.add(val);
+                }
+            });
+        }
+
+        return obj;
+    }
+}
@@ -9,9 +9,7 @@ import app.tozzi.util.GenericUtils;
 
 import java.math.BigDecimal;
 import java.text.ParseException;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Optional;
 
 public class JPASearchCoreValueProcessor {
@@ -161,14 +159,14 @@ public class JPASearchCoreValueProcessor {
 
     private static int getMaxDigits(JPASearchType JPASearchType, Object value) {
         if (value instanceof Collection<?> coll) {
-            return Collections.max(new ArrayList<>(coll).stream().map(e -> getDigits(JPASearchType, e)).toList());
+            return coll.stream().mapToInt(e -> getDigits(JPASearchType, e)).max().orElse(-1);
         }
         return getDigits(JPASearchType, value);
     }
 
     private static int getMinDigits(JPASearchType JPASearchType, Object value) {
         if (value instanceof Collection<?> coll) {
-            return Collections.min(new ArrayList<>(coll).stream().map(e -> getDigits(JPASearchType, e)).toList());
+            return coll.stream().mapToInt(e -> getDigits(JPASearchType, e)).min().orElse(-1);
         }
         return getDigits(JPASearchType, value);
     }
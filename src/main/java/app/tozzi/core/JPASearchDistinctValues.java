@@ -0,0 +1,186 @@
+package app.tozzi.core;
+
+import app.tozzi.annotation.Searchable;
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.exception.InvalidFieldException;
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.model.FieldDescriptor;
+import app.tozzi.model.FilterDescriptor;
+import app.tozzi.model.JPASearchType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.Predicate;
+import lombok.NonNull;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Distinct values of a searchable field starting with a prefix (autocomplete):
+ * {@code SELECT DISTINCT <field> FROM <entity> WHERE <filter> AND <field> LIKE '<prefix>%' ORDER BY <field>}, limited.
+ * Ignoring case, the prefix is matched with {@code LOWER(<field>) LIKE '<lower prefix>%'}, that can only use a functional index on {@code LOWER(<field>)}.
+ * <p>
+ * If {@link JPASearchConfig#getDistinctValuesCacheTtl()} is set, searches without filters on fields with at most {@link JPASearchConfig#getDistinctValuesCacheMaxValues()}
+ * distinct values are answered from memory: all the values of the field are loaded once and kept until the TTL expires.
+ * Fields with more values are not loaded again until the TTL expires.
+ * At most {@link JPASearchConfig#getDistinctValuesCacheMaxFields()} fields are kept, the least recently used are evicted first,
+ * and concurrent loads of the same field are executed once, the other callers wait for the values.
+ */
+public class JPASearchDistinctValues {
+
+    private static final char ESCAPE = '\\';
+
+    private static final Map<Pair<Class<?>, String>, CachedValues> CACHE = new LinkedHashMap<>(64, 0.75f, true);
+    private static final Map<Pair<Class<?>, String>, CompletableFuture<CachedValues>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    public static <E> List<Object> find(@NonNull EntityManager entityManager, FilterDescriptor descriptor, @NonNull String key, String prefix, boolean ignoreCase, int limit, @NonNull Class<E> entityClass,
+                                        Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+
+        if (limit <= 0) {
+            throw new JPASearchException("Invalid limit");
+        }
+
+        var fieldDescriptor = JPASearchCoreFieldProcessor.processField(key, entityFieldMap, searchableFields, true, true, false);
+        var hasPrefix = prefix != null && !prefix.isEmpty();
+        if (hasPrefix && fieldDescriptor.getSearchType() != JPASearchType.STRING && fieldDescriptor.getSearchType() != JPASearchType.JSONB) {
+            throw new InvalidFieldException("Field [" + key + "] is not a string", key);
+        }
+
+        if (descriptor != null && descriptor.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        var ttl = JPASearchConfig.get().getDistinctValuesCacheTtl();
+        if (ttl != null && (descriptor == null || descriptor.isUnrestricted())) {
+            var cacheKey = Pair.<Class<?>, String>of(entityClass, fieldDescriptor.getEntityKey() + (fieldDescriptor.getJsonPath() != null ? "#" + fieldDescriptor.getJsonPath() : ""));
+            var maxValues = JPASearchConfig.get().getDistinctValuesCacheMaxValues();
+            var cached = cached(cacheKey, ttl, maxValues, () -> query(entityManager, null, fieldDescriptor, null, false, maxValues + 1, entityClass, searchableFields, entityFieldMap));
+            if (cached.values() != null) {
+                var matchedPrefix = hasPrefix && ignoreCase ? prefix.toLowerCase() : prefix;
+                return cached.values().stream()
+                        .filter(v -> !hasPrefix || (ignoreCase ? v.toString().toLowerCase() : v.toString()).startsWith(matchedPrefix))
+                        .limit(limit)
+                        .collect(Collectors.toCollection(ArrayList::new));
+            }
+        }
+
+        return query(entityManager, descriptor, fieldDescriptor, hasPrefix ? prefix : null, ignoreCase, limit, entityClass, searchableFields, entityFieldMap);
+    }
+
+    public static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    static CachedValues cached(Pair<Class<?>, String> key, Duration ttl, int maxValues, Supplier<List<Object>> query) {
+        CachedValues cached;
+        synchronized (CACHE) {
+            cached = CACHE.get(key);
+        }
+
+        if (cached != null && System.nanoTime() - cached.loadedAt() <= ttl.toNanos()) {
+            return cached;
+        }
+
+        var future = new CompletableFuture<CachedValues>();
+        var leader = IN_FLIGHT.putIfAbsent(key, future);
+        if (leader != null) {
+            return join(leader);
+        }
+
+        try {
+            var loadedAt = System.nanoTime();
+            var values = query.get();
+            cached = new CachedValues(values.size() > maxValues ? null : List.copyOf(values), loadedAt);
+            synchronized (CACHE) {
+                CACHE.put(key, cached);
+                var iterator = CACHE.values().iterator();
+                while (CACHE.size() > JPASearchConfig.get().getDistinctValuesCacheMaxFields() && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+
+            future.complete(cached);
+            return cached;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(key, future);
+        }
+    }
+
+    private static CachedValues join(CompletableFuture<CachedValues> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+
+            throw e;
+        }
+    }
+
+    private static <E> List<Object> query(EntityManager entityManager, FilterDescriptor descriptor, FieldDescriptor fieldDescriptor, String prefix, boolean ignoreCase, int limit, Class<E> entityClass,
+                                          Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Object.class);
+        var root = criteriaQuery.from(entityClass);
+
+        Specification<E> specification = JPASearchCore.specification(descriptor, searchableFields, null, entityFieldMap);
+        var filter = specification.toPredicate(root, criteriaQuery, criteriaBuilder);
+
+        var value = JPASearchQueries.valuePath(criteriaBuilder, new JPASearchJoinRegistry(root), fieldDescriptor);
+        var predicates = new ArrayList<Predicate>();
+        if (filter != null) {
+            predicates.add(filter);
+        }
+        predicates.add(criteriaBuilder.isNotNull(value));
+        if (prefix != null && ignoreCase) {
+            // only a functional index on the lower case field can be used
+            predicates.add(criteriaBuilder.like(criteriaBuilder.lower(value.as(String.class)), escape(prefix.toLowerCase()) + "%", ESCAPE));
+        } else if (prefix != null) {
+            // a prefix LIKE can use an index on the field
+            predicates.add(criteriaBuilder.like(value.as(String.class), escape(prefix) + "%", ESCAPE));
+        }
+
+        criteriaQuery.select(value)
+                .distinct(true)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(criteriaBuilder.asc(value));
+
+        return JPASearchQueries.applyQueryTimeout(entityManager.createQuery(criteriaQuery)).setMaxResults(limit).getResultList();
+    }
+
+    private static String escape(String prefix) {
+        var result = new StringBuilder(prefix.length() + 4);
+        for (var c : prefix.toCharArray()) {
+            if (c == '%' || c == '_' || c == ESCAPE) {
+                result.append(ESCAPE);
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    record CachedValues(List<Object> values, long loadedAt) {
+    }
+}
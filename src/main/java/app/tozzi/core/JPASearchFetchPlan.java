@@ -0,0 +1,166 @@
+package app.tozzi.core;
+
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Subgraph;
+import jakarta.persistence.criteria.Fetch;
+import jakarta.persistence.criteria.FetchParent;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.Metamodel;
+import jakarta.persistence.metamodel.SingularAttribute;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fetch map (dotted path -> join type) compiled once into an ordered list of fetch steps (parents before children),
+ * that can be applied to a query root or turned into a {@link EntityGraph}.
+ * Plans are cached by fetch map.
+ */
+public class JPASearchFetchPlan {
+
+    public static final String LOAD_GRAPH_HINT = "jakarta.persistence.loadgraph";
+
+    private static final int MAX_CACHED_PLANS = 512;
+    private static final Map<Map<String, JoinType>, JPASearchFetchPlan> CACHE = new ConcurrentHashMap<>();
+    private static final JPASearchFetchPlan EMPTY = new JPASearchFetchPlan(List.of(), new Node());
+
+    private final List<Step> steps;
+    private final Node graph;
+    private final Map<Class<?>, Boolean> collectionFetches = new ConcurrentHashMap<>();
+
+    private JPASearchFetchPlan(List<Step> steps, Node graph) {
+        this.steps = steps;
+        this.graph = graph;
+    }
+
+    public static JPASearchFetchPlan of(Map<String, JoinType> fetchMap) {
+        if (fetchMap == null || fetchMap.isEmpty()) {
+            return EMPTY;
+        }
+
+        var plan = CACHE.get(fetchMap);
+        if (plan == null) {
+            plan = compile(fetchMap);
+            if (CACHE.size() < MAX_CACHED_PLANS) {
+                CACHE.put(new HashMap<>(fetchMap), plan);
+            }
+        }
+
+        return plan;
+    }
+
+    public boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    /**
+     * @return true if at least one fetched attribute is a collection, i.e. a fetch join multiplies the rows of the root entity
+     */
+    public boolean hasCollectionFetches(Metamodel metamodel, Class<?> entityClass) {
+        if (steps.isEmpty()) {
+            return false;
+        }
+
+        return collectionFetches.computeIfAbsent(entityClass, c -> {
+            var types = new ManagedType<?>[steps.size()];
+            for (int i = 0; i < types.length; i++) {
+                var step = steps.get(i);
+                var parent = step.parent() < 0 ? metamodel.managedType(c) : types[step.parent()];
+                if (parent == null) {
+                    continue;
+                }
+
+                var attribute = parent.getAttribute(step.attribute());
+                if (attribute.isCollection()) {
+                    return true;
+                }
+
+                if (attribute instanceof SingularAttribute<?, ?> singular && singular.getType() instanceof ManagedType<?> managedType) {
+                    types[i] = managedType;
+                }
+            }
+
+            return false;
+        });
+    }
+
+    public void apply(JPASearchJoinRegistry registry) {
+        var fetches = new Fetch<?, ?>[steps.size()];
+        for (int i = 0; i < fetches.length; i++) {
+            var step = steps.get(i);
+            FetchParent<?, ?> parent = step.parent() < 0 ? registry.getRoot() : fetches[step.parent()];
+            fetches[i] = parent.fetch(step.attribute(), step.joinType());
+            registry.register(step.path(), fetches[i]);
+        }
+    }
+
+    /**
+     * Join types are ignored: the attributes of an entity graph are always loaded with an outer join or a secondary select
+     */
+    public <E> EntityGraph<E> toEntityGraph(EntityManager entityManager, Class<E> entityClass) {
+        var entityGraph = entityManager.createEntityGraph(entityClass);
+        graph.children.forEach((attribute, node) -> {
+            if (node.children.isEmpty()) {
+                entityGraph.addAttributeNodes(attribute);
+            } else {
+                addSubgraph(entityGraph.addSubgraph(attribute), node);
+            }
+        });
+
+        return entityGraph;
+    }
+
+    private static void addSubgraph(Subgraph<?> subgraph, Node parent) {
+        parent.children.forEach((attribute, node) -> {
+            if (node.children.isEmpty()) {
+                subgraph.addAttributeNodes(attribute);
+            } else {
+                addSubgraph(subgraph.addSubgraph(attribute), node);
+            }
+        });
+    }
+
+    private static JPASearchFetchPlan compile(Map<String, JoinType> fetchMap) {
+        var steps = new ArrayList<Step>();
+        var indexes = new HashMap<String, Integer>();
+        var graph = new Node();
+
+        // parents before children, so that each path is fetched with its own join type
+        new TreeMap<>(fetchMap).forEach((path, joinType) -> {
+            var parent = -1;
+            var node = graph;
+            var start = 0;
+
+            while (start <= path.length()) {
+                var end = path.indexOf('.', start);
+                if (end < 0) {
+                    end = path.length();
+                }
+
+                var attribute = path.substring(start, end);
+                var current = path.substring(0, end);
+                var index = indexes.get(current);
+                if (index == null) {
+                    index = steps.size();
+                    steps.add(new Step(current, parent, attribute, joinType));
+                    indexes.put(current, index);
+                }
+
+                parent = index;
+                node = node.children.computeIfAbsent(attribute, k -> new Node());
+                start = end + 1;
+            }
+        });
+
+        return new JPASearchFetchPlan(List.copyOf(steps), graph);
+    }
+
+    private record Step(String path, int parent, String attribute, JoinType joinType) {
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,466 @@
+package app.tozzi.core;
+
+import app.tozzi.annotation.Searchable;
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.model.FieldDescriptor;
+import app.tozzi.model.FilterDescriptor;
+import app.tozzi.model.JPASearchOperatorFilter;
+import app.tozzi.model.JPASearchOperatorGroup;
+import app.tozzi.model.JPASearchType;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.ValidationUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * Rewrites a filter tree before the Criteria predicates are built:
+ * <ul>
+ * <li> nested groups with the same operator are flattened and single-child groups are unwrapped </li>
+ * <li> duplicated filters are removed </li>
+ * <li> OR'ed {@code eq}/{@code in} filters on the same key and with the same case and trim options are merged into a single {@code in}:
+ * the predicate applies the same trim/lower expression to an {@code in}. Decimal fields (inexact equality), JSON paths and element collections
+ * (a membership or join per filter) are not merged </li>
+ * <li> AND'ed range filters on the same key are reduced to the tightest bounds, or a {@code between} </li>
+ * <li> AND'ed filters that cannot be satisfied together (e.g. {@code x eq 1 AND x eq 2}) or {@code in} filters without values mark the filter as empty </li>
+ * <li> filters that are always true (e.g. a negated empty {@code in}) mark the filter as unrestricted </li>
+ * </ul>
+ * Filters that cannot be resolved or converted are left untouched, so that errors are still raised while building the predicates.
+ * Filters dropped as always true or false within a live filter mark it as pruned, so that the caller validates the original filter.
+ */
+public class JPASearchFilterOptimizer {
+
+    private static final Set<JPASearchType> ORDERED_TYPES = EnumSet.of(
+            JPASearchType.INTEGER, JPASearchType.LONG, JPASearchType.FLOAT, JPASearchType.DOUBLE, JPASearchType.BIGDECIMAL,
+            JPASearchType.DATE, JPASearchType.LOCALDATE, JPASearchType.LOCALDATETIME, JPASearchType.LOCALTIME,
+            JPASearchType.OFFSETDATETIME, JPASearchType.OFFSETTIME, JPASearchType.ZONEDDATETIME, JPASearchType.INSTANT,
+            JPASearchType.DATE_SQL, JPASearchType.TIME_SQL, JPASearchType.TIMESTAMP);
+
+    private static final Set<JPASearchType> UNORDERED_TYPES = EnumSet.of(JPASearchType.BOOLEAN, JPASearchType.UUID, JPASearchType.ENUM);
+
+    private static final Set<JPASearchType> DECIMAL_TYPES = EnumSet.of(JPASearchType.FLOAT, JPASearchType.DOUBLE, JPASearchType.BIGDECIMAL);
+    private static final Set<JPASearchType> NOT_MERGED_TYPES = EnumSet.of(JPASearchType.JSONB);
+
+    private static final Set<JPASearchOperatorFilter> RANGE_OPERATORS = EnumSet.of(
+            JPASearchOperatorFilter.EQ, JPASearchOperatorFilter.GT, JPASearchOperatorFilter.GTE,
+            JPASearchOperatorFilter.LT, JPASearchOperatorFilter.LTE, JPASearchOperatorFilter.BETWEEN);
+
+    public static FilterDescriptor optimize(JPASearchInput.RootFilter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        if (filter == null) {
+            return new FilterDescriptor(null, false, true);
+        }
+
+        var result = optimizeFilter(filter, searchableFields, entityFieldMap);
+        if (result.contradiction()) {
+            return new FilterDescriptor(null, true, false);
+        }
+
+        if (result.tautology() || result.filter() == null) {
+            return new FilterDescriptor(null, false, true);
+        }
+
+        if (result.filter() instanceof JPASearchInput.RootFilter rootFilter) {
+            return new FilterDescriptor(rootFilter, false, false, result.pruned());
+        }
+
+        return new FilterDescriptor(group(JPASearchOperatorGroup.AND, List.of(result.filter())), false, false, result.pruned());
+    }
+
+    private static Optimized optimizeFilter(JPASearchInput.Filter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        if (!(filter instanceof JPASearchInput.RootFilter rootFilter)) {
+            return optimizeLeaf(filter, searchableFields, entityFieldMap);
+        }
+
+        if (rootFilter.getFilters() == null || rootFilter.getFilters().isEmpty()) {
+            return new Optimized(null, false, false, false);
+        }
+
+        var operator = JPASearchOperatorGroup.load(rootFilter.getOperator());
+        if (operator == JPASearchOperatorGroup.NOT) {
+            return optimizeNot(rootFilter.getFilters(), searchableFields, entityFieldMap);
+        }
+
+        var children = new ArrayList<JPASearchInput.Filter>();
+        var contradictions = 0;
+        var tautologies = 0;
+        var pruned = false;
+
+        for (var child : rootFilter.getFilters()) {
+            var optimized = optimizeFilter(child, searchableFields, entityFieldMap);
+
+            if (optimized.contradiction()) {
+                if (operator == JPASearchOperatorGroup.AND) {
+                    return Optimized.CONTRADICTION;
+                }
+
+                contradictions++;
+                continue;
+            }
+
+            if (optimized.tautology()) {
+                if (operator == JPASearchOperatorGroup.OR) {
+                    return Optimized.TAUTOLOGY;
+                }
+
+                tautologies++;
+                continue;
+            }
+
+            if (optimized.filter() == null) {
+                continue;
+            }
+
+            pruned |= optimized.pruned();
+            if (optimized.filter() instanceof JPASearchInput.RootFilter nested && operator.getValue().equals(nested.getOperator())) {
+                children.addAll(nested.getFilters());
+            } else {
+                children.add(optimized.filter());
+            }
+        }
+
+        var distinct = new ArrayList<>(new LinkedHashSet<>(children));
+        var merged = operator == JPASearchOperatorGroup.OR
+                ? mergeEquals(distinct, searchableFields, entityFieldMap)
+                : collapseRanges(distinct, searchableFields, entityFieldMap);
+
+        if (merged == null) {
+            return Optimized.CONTRADICTION;
+        }
+
+        if (merged.isEmpty()) {
+            return new Optimized(null, contradictions > 0, contradictions == 0 && tautologies > 0, false);
+        }
+
+        // a collapsed range keeps filters that were converted, but not validated
+        pruned |= contradictions > 0 || tautologies > 0 || (operator == JPASearchOperatorGroup.AND && merged.size() < distinct.size());
+        if (merged.size() == 1 && merged.get(0) != null) {
+            return new Optimized(merged.get(0), false, false, pruned);
+        }
+
+        return new Optimized(group(operator, merged), false, false, pruned);
+    }
+
+    /**
+     * The NOT function only negates the first expression of the group, so only the first filter that is not skipped matters
+     */
+    private static Optimized optimizeNot(List<JPASearchInput.Filter> filters, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        for (int i = 0; i < filters.size(); i++) {
+            var optimized = optimizeFilter(filters.get(i), searchableFields, entityFieldMap);
+
+            if (optimized.contradiction()) {
+                return Optimized.TAUTOLOGY;
+            }
+
+            if (optimized.tautology()) {
+                return Optimized.CONTRADICTION;
+            }
+
+            if (optimized.filter() != null) {
+                var children = new ArrayList<JPASearchInput.Filter>();
+                children.add(optimized.filter());
+                children.addAll(filters.subList(i + 1, filters.size()));
+                return new Optimized(group(JPASearchOperatorGroup.NOT, children), false, false, optimized.pruned());
+            }
+        }
+
+        return new Optimized(null, false, false, false);
+    }
+
+    /**
+     * An {@code in} filter without values matches nothing, or everything when negated
+     */
+    private static Optimized optimizeLeaf(JPASearchInput.Filter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        if (filter instanceof JPASearchInput.FilterMultipleValues fmv && fmv.getKey() != null
+                && JPASearchOperatorFilter.IN.getValue().equals(fmv.getOperator())
+                && fmv.getValues() != null && fmv.getValues().isEmpty()) {
+
+            var descriptor = descriptor(fmv.getKey(), searchableFields, entityFieldMap);
+            if (descriptor != null && ValidationUtils.isAllowed(descriptor.getSearchable(), JPASearchOperatorFilter.IN)) {
+                return fmv.getOptions() != null && fmv.getOptions().isNegate() ? Optimized.TAUTOLOGY : Optimized.CONTRADICTION;
+            }
+        }
+
+        return new Optimized(filter, false, false, false);
+    }
+
+    private static List<JPASearchInput.Filter> mergeEquals(List<JPASearchInput.Filter> filters, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        var mergeKeys = new ArrayList<MergeKey>(filters.size());
+        var counts = new HashMap<MergeKey, Integer>();
+
+        for (var filter : filters) {
+            var key = mergeKey(filter, searchableFields, entityFieldMap);
+            mergeKeys.add(key);
+            if (key != null) {
+                counts.merge(key, 1, Integer::sum);
+            }
+        }
+
+        var result = new ArrayList<JPASearchInput.Filter>();
+        var merged = new HashMap<MergeKey, JPASearchInput.FilterMultipleValues>();
+        var mergedValues = new HashMap<MergeKey, LinkedHashSet<Object>>();
+
+        for (int i = 0; i < filters.size(); i++) {
+            var key = mergeKeys.get(i);
+            if (key == null || counts.get(key) < 2) {
+                result.add(filters.get(i));
+                continue;
+            }
+
+            if (!merged.containsKey(key)) {
+                var in = new JPASearchInput.FilterMultipleValues();
+                in.setKey(key.key());
+                in.setOperator(JPASearchOperatorFilter.IN.getValue());
+                in.setOptions(options(key.ignoreCase(), key.trim()));
+                merged.put(key, in);
+                mergedValues.put(key, new LinkedHashSet<>());
+                result.add(in);
+            }
+
+            mergedValues.get(key).addAll(rawValues((JPASearchInput.FieldFilter) filters.get(i)));
+        }
+
+        merged.forEach((key, in) -> in.setValues(new ArrayList<>(mergedValues.get(key))));
+        return result;
+    }
+
+    private static MergeKey mergeKey(JPASearchInput.Filter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        if (!(filter instanceof JPASearchInput.FieldFilter fieldFilter) || fieldFilter.getKey() == null) {
+            return null;
+        }
+
+        if (fieldFilter.getOptions() != null && fieldFilter.getOptions().isNegate()) {
+            return null;
+        }
+
+        var operator = JPASearchOperatorFilter.EQ.getValue().equals(fieldFilter.getOperator()) ? JPASearchOperatorFilter.EQ
+                : JPASearchOperatorFilter.IN.getValue().equals(fieldFilter.getOperator()) ? JPASearchOperatorFilter.IN : null;
+
+        if (operator == null || rawValues(fieldFilter) == null) {
+            return null;
+        }
+
+        var descriptor = descriptor(fieldFilter.getKey(), searchableFields, entityFieldMap);
+        if (descriptor == null || DECIMAL_TYPES.contains(descriptor.getSearchType()) || NOT_MERGED_TYPES.contains(descriptor.getSearchType())
+                || descriptor.getSearchable().elementCollection()
+                || !ValidationUtils.isAllowed(descriptor.getSearchable(), operator)
+                || !ValidationUtils.isAllowed(descriptor.getSearchable(), JPASearchOperatorFilter.IN)) {
+            return null;
+        }
+
+        var options = fieldFilter.getOptions();
+        return new MergeKey(fieldFilter.getKey(), options != null && options.isIgnoreCase(), options != null && options.isTrim());
+    }
+
+    private static List<Object> rawValues(JPASearchInput.FieldFilter filter) {
+        if (filter instanceof JPASearchInput.FilterSingleValue fsv) {
+            return fsv.getValue() == null || fsv.getValue() instanceof Collection<?> ? null : List.of(fsv.getValue());
+        }
+
+        if (filter instanceof JPASearchInput.FilterMultipleValues fmv && JPASearchOperatorFilter.IN.getValue().equals(fmv.getOperator())) {
+            return fmv.getValues() == null || fmv.getValues().isEmpty() || fmv.getValues().stream().anyMatch(Objects::isNull) ? null : fmv.getValues();
+        }
+
+        return null;
+    }
+
+    private static List<JPASearchInput.Filter> collapseRanges(List<JPASearchInput.Filter> filters, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        var constraints = new LinkedHashMap<String, List<Constraint>>();
+
+        for (var filter : filters) {
+            var constraint = constraint(filter, searchableFields, entityFieldMap);
+            if (constraint != null) {
+                constraints.computeIfAbsent(constraint.filter().getKey(), k -> new ArrayList<>()).add(constraint);
+            }
+        }
+
+        var replacements = new IdentityHashMap<JPASearchInput.Filter, List<JPASearchInput.Filter>>();
+
+        for (var group : constraints.values()) {
+            if (group.size() < 2) {
+                continue;
+            }
+
+            Constraint lower = null;
+            Constraint upper = null;
+            Constraint eq = null;
+
+            try {
+                for (var c : group) {
+                    if (c.lower() != null && (lower == null || tighterLower(c, lower))) {
+                        lower = c;
+                    }
+                    if (c.upper() != null && (upper == null || tighterUpper(c, upper))) {
+                        upper = c;
+                    }
+                    if (c.operator() == JPASearchOperatorFilter.EQ && eq == null) {
+                        eq = c;
+                    }
+                }
+
+                if (lower != null && upper != null) {
+                    var cmp = compare(lower.lower(), upper.upper());
+                    if (cmp > 0 || (cmp == 0 && (!lower.lowerInclusive() || !upper.upperInclusive()))) {
+                        return null;
+                    }
+                }
+
+            } catch (ClassCastException e) {
+                continue;
+            }
+
+            var kept = new ArrayList<JPASearchInput.Filter>();
+            if (eq != null) {
+                kept.add(eq.filter());
+            } else if (lower != null && upper != null && lower != upper && lower.lowerInclusive() && upper.upperInclusive()
+                    && ValidationUtils.isAllowed(lower.searchable(), JPASearchOperatorFilter.BETWEEN)) {
+                var between = new JPASearchInput.FilterMultipleValues();
+                between.setKey(lower.filter().getKey());
+                between.setOperator(JPASearchOperatorFilter.BETWEEN.getValue());
+                between.setValues(new ArrayList<>(Arrays.asList(lower.lowerRaw(), upper.upperRaw())));
+                kept.add(between);
+            } else {
+                if (lower != null) {
+                    kept.add(lower.filter());
+                }
+                if (upper != null && upper != lower) {
+                    kept.add(upper.filter());
+                }
+            }
+
+            replacements.put(group.get(0).filter(), kept);
+            group.stream().skip(1).forEach(c -> replacements.put(c.filter(), List.of()));
+        }
+
+        var result = new ArrayList<JPASearchInput.Filter>();
+        for (var filter : filters) {
+            var replacement = replacements.get(filter);
+            if (replacement == null) {
+                result.add(filter);
+            } else {
+                result.addAll(replacement);
+            }
+        }
+
+        return result;
+    }
+
+    private static Constraint constraint(JPASearchInput.Filter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        if (!(filter instanceof JPASearchInput.FieldFilter fieldFilter) || fieldFilter.getKey() == null) {
+            return null;
+        }
+
+        var options = fieldFilter.getOptions();
+        if (options != null && (options.isNegate() || options.isIgnoreCase() || options.isTrim())) {
+            return null;
+        }
+
+        var operator = RANGE_OPERATORS.stream().filter(o -> o.getValue().equals(fieldFilter.getOperator())).findAny().orElse(null);
+        if (operator == null) {
+            return null;
+        }
+
+        var descriptor = descriptor(fieldFilter.getKey(), searchableFields, entityFieldMap);
+        if (descriptor == null || descriptor.getSearchable().elementCollection() || descriptor.getSearchable().trim()
+                || !ValidationUtils.isAllowed(descriptor.getSearchable(), operator)) {
+            return null;
+        }
+
+        var searchType = descriptor.getSearchType();
+        if (!ORDERED_TYPES.contains(searchType) && !(operator == JPASearchOperatorFilter.EQ && UNORDERED_TYPES.contains(searchType))) {
+            return null;
+        }
+
+        Object raw = fieldFilter instanceof JPASearchInput.FilterSingleValue fsv ? fsv.getValue()
+                : fieldFilter instanceof JPASearchInput.FilterMultipleValues fmv ? fmv.getValues() : null;
+
+        if (raw == null) {
+            return null;
+        }
+
+        Object value;
+        try {
+            value = JPASearchCoreValueProcessor.processValue(operator, searchType, descriptor.getSearchable(), descriptor.getPath(), raw, descriptor.getType(), false).orElse(null);
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        var searchable = descriptor.getSearchable();
+
+        if (operator == JPASearchOperatorFilter.BETWEEN) {
+            if (!(value instanceof List<?> list) || list.size() != 2 || !(list.get(0) instanceof Comparable<?> l) || !(list.get(1) instanceof Comparable<?> u)) {
+                return null;
+            }
+            var rawList = (List<?>) raw;
+            return new Constraint(fieldFilter, operator, searchable, l, rawList.get(0), true, u, rawList.get(1), true);
+        }
+
+        if (!(value instanceof Comparable<?> c)) {
+            return null;
+        }
+
+        return switch (operator) {
+            case EQ -> new Constraint(fieldFilter, operator, searchable, c, raw, true, c, raw, true);
+            case GT -> new Constraint(fieldFilter, operator, searchable, c, raw, false, null, null, false);
+            case GTE -> new Constraint(fieldFilter, operator, searchable, c, raw, true, null, null, false);
+            case LT -> new Constraint(fieldFilter, operator, searchable, null, null, false, c, raw, false);
+            case LTE -> new Constraint(fieldFilter, operator, searchable, null, null, false, c, raw, true);
+            default -> null;
+        };
+    }
+
+    private static boolean tighterLower(Constraint candidate, Constraint current) {
+        var cmp = compare(candidate.lower(), current.lower());
+        return cmp > 0 || (cmp == 0 && !candidate.lowerInclusive() && current.lowerInclusive());
+    }
+
+    private static boolean tighterUpper(Constraint candidate, Constraint current) {
+        var cmp = compare(candidate.upper(), current.upper());
+        return cmp < 0 || (cmp == 0 && !candidate.upperInclusive() && current.upperInclusive());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Comparable a, Comparable b) {
+        return a.compareTo(b);
+    }
+
+    private static FieldDescriptor descriptor(String key, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        try {
+            return JPASearchCoreFieldProcessor.processField(key, entityFieldMap, searchableFields, false, false, false);
+        } catch (JPASearchException e) {
+            return null;
+        }
+    }
+
+    private static JPASearchInput.RootFilter group(JPASearchOperatorGroup operator, List<JPASearchInput.Filter> filters) {
+        var group = new JPASearchInput.RootFilter();
+        group.setOperator(operator.getValue());
+        group.setFilters(new ArrayList<>(filters));
+        return group;
+    }
+
+    private static JPASearchInput.JPASearchFilterOptions options(boolean ignoreCase, boolean trim) {
+        if (!ignoreCase && !trim) {
+            return null;
+        }
+
+        var options = new JPASearchInput.JPASearchFilterOptions();
+        options.setIgnoreCase(ignoreCase);
+        options.setTrim(trim);
+        return options;
+    }
+
+    private record Optimized(JPASearchInput.Filter filter, boolean contradiction, boolean tautology, boolean pruned) {
+
+        static final Optimized CONTRADICTION = new Optimized(null, true, false, false);
+        static final Optimized TAUTOLOGY = new Optimized(null, false, true, false);
+    }
+
+    private record MergeKey(String key, boolean ignoreCase, boolean trim) {
+    }
+
+    private record Constraint(JPASearchInput.FieldFilter filter, JPASearchOperatorFilter operator, Searchable searchable,
+                              Comparable<?> lower, Object lowerRaw, boolean lowerInclusive,
+                              Comparable<?> upper, Object upperRaw, boolean upperInclusive) {
+    }
+}
@@ -0,0 +1,294 @@
+package app.tozzi.core;
+
+import app.tozzi.annotation.Searchable;
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.exception.JPASearchUnindexedException;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.FieldDescriptor;
+import app.tozzi.model.JPASearchIndexPolicy;
+import app.tozzi.model.JPASearchOperatorFilter;
+import app.tozzi.model.JPASearchOperatorGroup;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.ReflectionUtils;
+import jakarta.persistence.*;
+import lombok.NonNull;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.data.domain.Sort;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Index coverage of the searchable fields, from the JPA metadata of the entities ({@link Id}, {@link EmbeddedId}, {@code @Column(unique = true)},
+ * the indexes and unique constraints of {@link Table}) or from {@link Searchable#indexed()}.
+ * JPA does not define the order of the columns of a composite key: a column of an {@link EmbeddedId} is only known to lead if it is the only one.
+ * <p>
+ * A column is indexed if it is the leading column of an index of the table owning it: column names are compared ignoring case,
+ * quotes and underscores, so that the default naming strategies match. Element collections and JSON paths are never indexed without the hint.
+ * <p>
+ * The searches of the {@link JPASearchConfig#getLargeEntities()} are checked before their execution (see {@link #check}).
+ */
+public class JPASearchIndexes {
+
+    private static final Log LOG = LogFactory.getLog(JPASearchIndexes.class);
+
+    private static final int MAX_WARNED_SHAPES = 1000;
+
+    private static final Map<Class<?>, Map<String, Boolean>> CACHE = new ConcurrentHashMap<>();
+    private static final Set<List<Object>> WARNED = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param entityPath dotted path of the entity attribute, e.g. {@code test1.colTest1}
+     * @return true if the column of the attribute is the leading column of an index of its table, according to the JPA metadata
+     */
+    public static boolean isIndexed(@NonNull Class<?> entityClass, @NonNull String entityPath) {
+        return CACHE.computeIfAbsent(entityClass, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(entityPath, path -> computeIndexed(entityClass, path));
+    }
+
+    /**
+     * Index coverage of every searchable field of the domain type (tags included), e.g. to be logged at startup
+     */
+    public static List<Coverage> report(@NonNull Class<?> domainType, @NonNull Class<?> entityClass) {
+        return report(domainType, entityClass, null);
+    }
+
+    public static List<Coverage> report(@NonNull Class<?> domainType, @NonNull Class<?> entityClass, Map<String, String> entityFieldMap) {
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainType);
+        return keys(searchableFields).sorted()
+                .map(key -> JPASearchCoreFieldProcessor.processField(key, entityFieldMap, searchableFields, false, false, false))
+                .filter(Objects::nonNull)
+                .map(descriptor -> new Coverage(descriptor.getPath(), descriptor.getEntityKey(), descriptor.getSearchable().indexed(), indexed(entityClass, descriptor)))
+                .toList();
+    }
+
+    /**
+     * Applies {@link JPASearchConfig#getUnindexedSearchPolicy()} to a search of a large entity whose filter and first sort key cannot use any index.
+     * A filter can use an index if at least one term of an {@code and}, or every term of an {@code or}, can:
+     * negations, {@code contains}, {@code endsWith} and case-insensitive filters cannot.
+     * Searches without filters and sorts are not checked. {@link JPASearchIndexPolicy#WARN} logs once per entity, filter shape and paths.
+     *
+     * @param entityClass null: not checked
+     * @param sort        entity paths (see {@link JPASearchCore#loadSort}), loaded for the large entities only
+     * @throws JPASearchUnindexedException if rejected
+     */
+    public static void check(Class<?> entityClass,
+                             Class<?> domainType,
+                             JPASearchInput.RootFilter filter,
+                             Supplier<Sort> sort,
+                             Map<String, Pair<Searchable, Field>> searchableFields,
+                             Map<String, String> entityFieldMap) {
+
+        var config = JPASearchConfig.get();
+        if (entityClass == null || !config.getLargeEntities().contains(entityClass)) {
+            return;
+        }
+
+        var paths = new TreeSet<String>();
+        if (filter != null && filter.getFilters() != null && !filter.getFilters().isEmpty()
+                && usesIndex(entityClass, filter, searchableFields, entityFieldMap, paths)) {
+            return;
+        }
+
+        var orders = sort == null ? null : sort.get();
+        var order = orders == null ? null : orders.stream().findFirst().orElse(null);
+        if (order != null) {
+            paths.add(order.getProperty());
+            if (isIndexed(entityClass, order.getProperty()) || hinted(order.getProperty(), searchableFields, entityFieldMap)) {
+                return;
+            }
+        }
+
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        JPASearchMetrics.addUnindexedSearch();
+        switch (config.getUnindexedSearchPolicy()) {
+            case WARN -> {
+                var shape = JPASearchCanonicalizer.shape(filter);
+                if (firstWarning(entityClass, shape, paths)) {
+                    LOG.warn("Search of " + entityClass.getSimpleName() + " without index on " + paths + ": " + shape + " (logged once per shape)");
+                }
+            }
+            case REJECT -> throw new JPASearchUnindexedException(entityClass, domainType, Collections.unmodifiableSet(paths));
+            case COUNT -> {
+            }
+        }
+    }
+
+    public static void clear() {
+        CACHE.clear();
+        WARNED.clear();
+    }
+
+    /**
+     * True the first time only, for the first {@value #MAX_WARNED_SHAPES} shapes: the flagged searches are counted anyway
+     */
+    static boolean firstWarning(Class<?> entityClass, String shape, Set<String> paths) {
+        return WARNED.size() < MAX_WARNED_SHAPES && WARNED.add(List.of(entityClass, shape, Set.copyOf(paths)));
+    }
+
+    private static boolean usesIndex(Class<?> entityClass,
+                                     JPASearchInput.Filter filter,
+                                     Map<String, Pair<Searchable, Field>> searchableFields,
+                                     Map<String, String> entityFieldMap,
+                                     Set<String> paths) {
+
+        if (filter instanceof JPASearchInput.RootFilter rootFilter) {
+            if (rootFilter.getFilters() == null || rootFilter.getFilters().isEmpty()) {
+                return false;
+            }
+
+            var or = JPASearchOperatorGroup.OR.getValue().equals(rootFilter.getOperator());
+            var result = or;
+            for (var child : rootFilter.getFilters()) {
+                // every child is visited, to collect all the paths
+                var childResult = usesIndex(entityClass, child, searchableFields, entityFieldMap, paths);
+                result = or ? result && childResult : result || childResult;
+            }
+
+            return result && !JPASearchOperatorGroup.NOT.getValue().equals(rootFilter.getOperator());
+        }
+
+        if (!(filter instanceof JPASearchInput.FieldFilter fieldFilter) || fieldFilter.getKey() == null) {
+            return false;
+        }
+
+        // unknown fields are rejected when the predicates are built
+        var descriptor = JPASearchCoreFieldProcessor.processField(fieldFilter.getKey(), entityFieldMap, searchableFields, false, false, false);
+        if (descriptor == null) {
+            return false;
+        }
+
+        paths.add(descriptor.getEntityKey());
+        if (descriptor.getSearchable().indexed()) {
+            return true;
+        }
+
+        var options = fieldFilter.getOptions();
+        if (options != null && (options.isNegate() || options.isIgnoreCase())) {
+            return false;
+        }
+
+        return !JPASearchOperatorFilter.CONTAINS.getValue().equals(fieldFilter.getOperator())
+                && !JPASearchOperatorFilter.ENDS_WITH.getValue().equals(fieldFilter.getOperator())
+                && indexed(entityClass, descriptor);
+    }
+
+    private static boolean indexed(Class<?> entityClass, FieldDescriptor descriptor) {
+        return descriptor.getSearchable().indexed() || (descriptor.getJsonPath() == null && isIndexed(entityClass, descriptor.getEntityKey()));
+    }
+
+    private static boolean hinted(String entityPath, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        return keys(searchableFields)
+                .map(key -> JPASearchCoreFieldProcessor.processField(key, entityFieldMap, searchableFields, false, false, false))
+                .anyMatch(descriptor -> descriptor != null && descriptor.getSearchable().indexed() && entityPath.equals(descriptor.getEntityKey()));
+    }
+
+    /**
+     * Keys of the searchable fields: the tags replace the field
+     */
+    private static Stream<String> keys(Map<String, Pair<Searchable, Field>> searchableFields) {
+        return searchableFields.entrySet().stream()
+                .flatMap(e -> e.getValue().getKey().tags().length == 0 ? Stream.of(e.getKey())
+                        : Stream.of(e.getValue().getKey().tags()).map(t -> t.fieldKey()));
+    }
+
+    private static boolean computeIndexed(Class<?> entityClass, String entityPath) {
+        var segments = entityPath.split("\\.");
+        var owner = entityClass;
+        var current = entityClass;
+        Field embeddedId = null;
+
+        for (int i = 0; i < segments.length; i++) {
+            var field = FieldUtils.getField(current, segments[i], true);
+            if (field == null || field.isAnnotationPresent(ElementCollection.class)) {
+                return false;
+            }
+
+            if (i == segments.length - 1) {
+                return isIndexed(owner, field, embeddedId);
+            }
+
+            var type = ReflectionUtils.getType(field);
+            if (isRelation(field)) {
+                owner = type;
+                embeddedId = null;
+            } else if (field.isAnnotationPresent(EmbeddedId.class)) {
+                embeddedId = field;
+            } else if (!field.isAnnotationPresent(Embedded.class) && !type.isAnnotationPresent(Embeddable.class)) {
+                return false;
+            }
+
+            current = type;
+        }
+
+        return false;
+    }
+
+    private static boolean isIndexed(Class<?> owner, Field field, Field embeddedId) {
+        if (field.isAnnotationPresent(Id.class) || field.isAnnotationPresent(EmbeddedId.class)) {
+            return true;
+        }
+
+        if (embeddedId != null) {
+            // leading column of the primary key, if it is the only one: otherwise the order of the columns is up to the provider
+            var idFields = FieldUtils.getAllFieldsList(ReflectionUtils.getType(embeddedId)).stream()
+                    .filter(f -> !Modifier.isStatic(f.getModifiers()) && !Modifier.isTransient(f.getModifiers()) && !f.isAnnotationPresent(Transient.class))
+                    .toList();
+
+            if (idFields.size() == 1 && idFields.get(0).equals(field)) {
+                return true;
+            }
+        }
+
+        var column = field.getAnnotation(Column.class);
+        if (column != null && column.unique()) {
+            return true;
+        }
+
+        var name = normalize(column != null && !column.name().isBlank() ? column.name() : field.getName());
+        for (Class<?> type = owner; type != null && type != Object.class; type = type.getSuperclass()) {
+            var table = type.getAnnotation(Table.class);
+            if (table == null) {
+                continue;
+            }
+
+            var indexed = Stream.of(table.indexes()).anyMatch(index -> name.equals(normalize(index.columnList().split(",")[0].trim().split("\\s+")[0])))
+                    || Stream.of(table.uniqueConstraints()).anyMatch(constraint -> constraint.columnNames().length > 0 && name.equals(normalize(constraint.columnNames()[0])));
+
+            if (indexed) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    static boolean isRelation(Field f) {
+        return f.isAnnotationPresent(OneToMany.class) ||
+                f.isAnnotationPresent(OneToOne.class) ||
+                f.isAnnotationPresent(ManyToMany.class) ||
+                f.isAnnotationPresent(ManyToOne.class);
+    }
+
+    private static String normalize(String column) {
+        return column.replace("\"", "").replace("`", "").replace("_", "").trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param hinted  {@link Searchable#indexed()}
+     * @param indexed hinted or indexed according to the JPA metadata
+     */
+    public record Coverage(String field, String entityPath, boolean hinted, boolean indexed) {
+    }
+
+}
@@ -0,0 +1,83 @@
+package app.tozzi.core;
+
+import jakarta.persistence.criteria.*;
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-query registry of the paths, joins and fetches created from a root, keyed by dotted path (and join type for joins).
+ * Every association is navigated, joined or fetched at most once per query.
+ * <p>
+ * Element collections filtered by value are not shared: each filter joins its own element (see {@link #elementJoin}).
+ */
+public class JPASearchJoinRegistry {
+
+    @Getter
+    private final Root<?> root;
+
+    private final Map<String, Path<?>> paths = new HashMap<>();
+    private final Map<Pair<String, JoinType>, Join<?, ?>> joins = new HashMap<>();
+    private final Map<String, Fetch<?, ?>> fetches = new HashMap<>();
+
+    public JPASearchJoinRegistry(@NonNull Root<?> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Path<T> path(String key) {
+        var path = paths.get(key);
+        if (path == null) {
+            var index = key.lastIndexOf('.');
+            path = index < 0 ? root.get(key) : path(key.substring(0, index)).get(key.substring(index + 1));
+            paths.put(key, path);
+        }
+
+        return (Path<T>) path;
+    }
+
+    public Join<?, ?> join(String key, JoinType joinType) {
+        var joinKey = Pair.of(key, joinType);
+        var join = joins.get(joinKey);
+        if (join == null) {
+            var index = key.lastIndexOf('.');
+            From<?, ?> parent = index < 0 ? root : join(key.substring(0, index), joinType);
+            join = parent.join(key.substring(index + 1), joinType);
+            joins.put(joinKey, join);
+        }
+
+        return join;
+    }
+
+    /**
+     * New join of the collection on every call, its parents are reused.
+     * ANDed filters on the same collection may be satisfied by different elements, as with a join per filter.
+     */
+    public Join<?, ?> elementJoin(String key, JoinType joinType) {
+        var index = key.lastIndexOf('.');
+        From<?, ?> parent = index < 0 ? root : join(key.substring(0, index), joinType);
+        return parent.join(key.substring(index + 1), joinType);
+    }
+
+    /**
+     * The join type is only applied when the path has not been fetched yet
+     */
+    public Fetch<?, ?> fetch(String key, JoinType joinType) {
+        var fetch = fetches.get(key);
+        if (fetch == null) {
+            var index = key.lastIndexOf('.');
+            FetchParent<?, ?> parent = index < 0 ? root : fetch(key.substring(0, index), joinType);
+            fetch = parent.fetch(key.substring(index + 1), joinType);
+            fetches.put(key, fetch);
+        }
+
+        return fetch;
+    }
+
+    void register(String key, Fetch<?, ?> fetch) {
+        fetches.put(key, fetch);
+    }
+}
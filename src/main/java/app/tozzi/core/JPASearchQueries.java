@@ -0,0 +1,351 @@
+package app.tozzi.core;
+
+import app.tozzi.annotation.Searchable;
+import app.tozzi.cache.JPASearchCountCache;
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.model.FieldDescriptor;
+import app.tozzi.model.FilterDescriptor;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.AsyncUtils;
+import app.tozzi.util.JPASearchUtils;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Selection;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import lombok.NonNull;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Criteria queries built from a compiled filter, for the repositories executing their own queries
+ */
+public class JPASearchQueries {
+
+    public static final String QUERY_TIMEOUT_HINT = "jakarta.persistence.query.timeout";
+
+    private static final ThreadLocal<Duration> QUERY_TIMEOUT = new ThreadLocal<>();
+
+    /**
+     * Executes the searches of the current thread (and their asynchronous parts) with the given query timeout instead of {@link JPASearchConfig#getQueryTimeout()}.
+     * <p>
+     * The queries built by the library are affected (projections, fetches, parallel pages, batches, aggregations, facets, distinct values, bulk statements),
+     * the ones of {@link app.tozzi.repository.JPASearchRepository}, executed by Spring Data, only with the {@link app.tozzi.repository.JPASearchBaseRepository} base class.
+     *
+     * @param timeout zero: no timeout, null: the default one
+     */
+    public static <T> T withQueryTimeout(Duration timeout, @NonNull Supplier<T> searches) {
+        var previous = QUERY_TIMEOUT.get();
+        QUERY_TIMEOUT.set(timeout);
+        try {
+            return searches.get();
+        } finally {
+            if (previous == null) {
+                QUERY_TIMEOUT.remove();
+            } else {
+                QUERY_TIMEOUT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @return timeout of the queries of the current thread, null if none
+     */
+    public static Duration getQueryTimeout() {
+        var timeout = QUERY_TIMEOUT.get();
+        return timeout != null ? timeout : JPASearchConfig.get().getQueryTimeout();
+    }
+
+    /**
+     * Sets the {@value #QUERY_TIMEOUT_HINT} hint (milliseconds) of the query, if there is a timeout
+     */
+    public static <Q extends Query> Q applyQueryTimeout(@NonNull Q query) {
+        var timeout = getQueryTimeout();
+        if (timeout != null && !timeout.isZero() && !timeout.isNegative()) {
+            query.setHint(QUERY_TIMEOUT_HINT, (int) Math.min(Integer.MAX_VALUE, Math.max(1, timeout.toMillis())));
+        }
+
+        return query;
+    }
+
+    /**
+     * Content query. The fetches are applied as fetch joins or, if entityGraph, as a load graph
+     */
+    public static <E> TypedQuery<E> select(EntityManager entityManager, FilterDescriptor descriptor, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap,
+                                           Class<E> entityClass, JPASearchFetchPlan plan, boolean entityGraph, Sort sort) {
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(entityClass);
+        var root = criteriaQuery.from(entityClass);
+
+        if (!entityGraph) {
+            plan.apply(new JPASearchJoinRegistry(root));
+        }
+
+        Specification<E> specification = JPASearchCore.specification(descriptor, searchableFields, null, entityFieldMap);
+        var predicate = specification.toPredicate(root, criteriaQuery, criteriaBuilder);
+        if (predicate != null) {
+            criteriaQuery.where(predicate);
+        }
+
+        if (sort.isSorted()) {
+            criteriaQuery.orderBy(QueryUtils.toOrders(sort, root, criteriaBuilder));
+        }
+
+        var query = applyQueryTimeout(entityManager.createQuery(criteriaQuery));
+        if (entityGraph && !plan.isEmpty()) {
+            query.setHint(JPASearchFetchPlan.LOAD_GRAPH_HINT, plan.toEntityGraph(entityManager, entityClass));
+        }
+
+        return query;
+    }
+
+    public static <E> long count(EntityManager entityManager, FilterDescriptor descriptor, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap, Class<E> entityClass) {
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Long.class);
+        var root = criteriaQuery.from(entityClass);
+
+        Specification<E> specification = JPASearchCore.specification(descriptor, searchableFields, null, entityFieldMap);
+        var predicate = specification.toPredicate(root, criteriaQuery, criteriaBuilder);
+        criteriaQuery.select(criteriaQuery.isDistinct() ? criteriaBuilder.countDistinct(root) : criteriaBuilder.count(root));
+        if (predicate != null) {
+            criteriaQuery.where(predicate);
+        }
+
+        return applyQueryTimeout(entityManager.createQuery(criteriaQuery)).getSingleResult();
+    }
+
+    /**
+     * {@link #count} through the {@link JPASearchCountCache}, counted again in the background on a new entity manager.
+     * The factory is resolved now: the entity manager may be closed when the refresh runs
+     *
+     * @param filter filter of the input, before the optimization: the key of the count, as for the counts of {@link app.tozzi.repository.JPASearchRepository}
+     */
+    public static <E> long cachedCount(EntityManager entityManager, JPASearchInput.RootFilter filter, FilterDescriptor descriptor, Class<?> domainModelOrEntityType,
+                                       Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap, Class<E> entityClass) {
+
+        var entityManagerFactory = entityManager.getEntityManagerFactory();
+        return JPASearchCountCache.get(entityClass, domainModelOrEntityType, filter, entityFieldMap,
+                () -> count(entityManager, descriptor, searchableFields, entityFieldMap, entityClass),
+                () -> {
+                    var refreshEntityManager = entityManagerFactory.createEntityManager();
+                    try {
+                        return count(refreshEntityManager, descriptor, searchableFields, entityFieldMap, entityClass);
+                    } finally {
+                        refreshEntityManager.close();
+                    }
+                });
+    }
+
+    /**
+     * Counts of several filters with a single statement: {@code SELECT SUM(CASE WHEN <filter_i> THEN 1 ELSE 0 END), ... FROM <entity>}.
+     * Only possible if no filter joins an association or a collection, i.e. every filter is evaluated on a single row of the entity:
+     * null otherwise. Provably empty filters are not sent to the database.
+     */
+    public static <E> long[] countAll(EntityManager entityManager, List<FilterDescriptor> descriptors, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap, Class<E> entityClass) {
+        var entityType = entityManager.getMetamodel().entity(entityClass);
+        for (var descriptor : descriptors) {
+            if (descriptor != null && descriptor.getFilter() != null && !descriptor.isEmpty()
+                    && !singleRow(descriptor.getFilter(), entityType, searchableFields, entityFieldMap)) {
+                return null;
+            }
+        }
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createTupleQuery();
+        var root = criteriaQuery.from(entityClass);
+
+        var selections = new ArrayList<Selection<?>>();
+        var indexes = new int[descriptors.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            var descriptor = descriptors.get(i);
+            if (descriptor != null && descriptor.isEmpty()) {
+                indexes[i] = -1;
+                continue;
+            }
+
+            Specification<E> specification = JPASearchCore.specification(descriptor, searchableFields, null, entityFieldMap);
+            var predicate = specification.toPredicate(root, criteriaQuery, criteriaBuilder);
+            indexes[i] = selections.size();
+            selections.add(criteriaBuilder.sumAsLong(criteriaBuilder.<Integer>selectCase()
+                    .when(predicate != null ? predicate : criteriaBuilder.conjunction(), 1)
+                    .otherwise(0)));
+        }
+
+        if (!root.getJoins().isEmpty()) {
+            return null;
+        }
+
+        var result = new long[indexes.length];
+        if (selections.isEmpty()) {
+            return result;
+        }
+
+        // no joins: one row per entity
+        criteriaQuery.multiselect(selections).distinct(false);
+        Tuple tuple = applyQueryTimeout(entityManager.createQuery(criteriaQuery)).getSingleResult();
+        for (int i = 0; i < indexes.length; i++) {
+            var sum = indexes[i] < 0 ? null : tuple.get(indexes[i], Long.class);
+            result[i] = sum != null ? sum : 0;
+        }
+
+        return result;
+    }
+
+    /**
+     * @return true if no field of the filter is reached through an association or a collection join: the filter is then built without joins
+     */
+    static boolean singleRow(JPASearchInput.Filter filter, ManagedType<?> entityType, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        if (filter instanceof JPASearchInput.RootFilter rootFilter) {
+            return rootFilter.getFilters() == null || rootFilter.getFilters().stream().allMatch(f -> singleRow(f, entityType, searchableFields, entityFieldMap));
+        }
+
+        if (filter instanceof JPASearchInput.FieldFilter fieldFilter) {
+            var descriptor = JPASearchCoreFieldProcessor.processField(fieldFilter.getKey(), entityFieldMap, searchableFields, true, true, false);
+            if (descriptor == null) {
+                return true;
+            }
+
+            ManagedType<?> type = entityType;
+            var segments = descriptor.getEntityKey().split("\\.");
+            for (int i = 0; i < segments.length; i++) {
+                Attribute<?, ?> attribute = type.getAttribute(segments[i]);
+                if (attribute.isAssociation()) {
+                    return false;
+                }
+
+                if (attribute.isCollection()) {
+                    // element collections are checked with MEMBER OF, without a join, when filtered by equality
+                    return i == segments.length - 1 && !JPASearchCore.isElementJoin(descriptor, fieldFilter.getOperator());
+                }
+
+                if (i < segments.length - 1) {
+                    if (!(attribute instanceof SingularAttribute<?, ?> singular) || !(singular.getType() instanceof ManagedType<?> managedType)) {
+                        return false;
+                    }
+                    type = managedType;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Number of entities by value of a searchable field: {@code SELECT <field>, COUNT(*) FROM <entity> WHERE <filter> GROUP BY <field>}.
+     * Element collections are counted by element. Null values are not counted. No query if the filter is provably empty.
+     *
+     * @return counts by value, ordered by count (descending)
+     */
+    public static <E> Map<Object, Long> facet(EntityManager entityManager, FilterDescriptor descriptor, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap,
+                                              Class<E> entityClass, String key) {
+
+        var fieldDescriptor = JPASearchCoreFieldProcessor.processField(key, entityFieldMap, searchableFields, true, true, false);
+        if (descriptor != null && descriptor.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createTupleQuery();
+        var root = criteriaQuery.from(entityClass);
+
+        Specification<E> specification = JPASearchCore.specification(descriptor, searchableFields, null, entityFieldMap);
+        var predicate = specification.toPredicate(root, criteriaQuery, criteriaBuilder);
+
+        var registry = new JPASearchJoinRegistry(root);
+        var value = valuePath(criteriaBuilder, registry, fieldDescriptor);
+
+        // joins of the filter (or of the element collection) can repeat the same entity
+        var count = root.getJoins().isEmpty() ? criteriaBuilder.count(root) : criteriaBuilder.countDistinct(root);
+        var where = criteriaBuilder.isNotNull(value);
+        criteriaQuery.multiselect(value, count)
+                .where(predicate != null ? criteriaBuilder.and(predicate, where) : where)
+                .groupBy(value)
+                .orderBy(criteriaBuilder.desc(count))
+                .distinct(false);
+
+        var result = new LinkedHashMap<Object, Long>();
+        applyQueryTimeout(entityManager.createQuery(criteriaQuery)).getResultList().forEach(t -> result.put(t.get(0), t.get(1, Long.class)));
+        return result;
+    }
+
+    /**
+     * Value of a searchable field: the elements (inner join) for element collections
+     */
+    static Expression<?> valuePath(CriteriaBuilder criteriaBuilder, JPASearchJoinRegistry registry, FieldDescriptor descriptor) {
+        return descriptor.getSearchable().elementCollection()
+                ? registry.join(descriptor.getEntityKey(), JoinType.INNER)
+                : JPASearchUtils.getJsonPath(criteriaBuilder, registry.path(descriptor.getEntityKey()), descriptor.getJsonPath());
+    }
+
+    /**
+     * Executes the tasks concurrently, each worker with its own EntityManager (at most {@link JPASearchConfig#getBatchParallelism()} workers),
+     * if allowed by the current transaction (see {@link AsyncUtils#isParallelAllowed()}). Sequentially with the given EntityManager otherwise.
+     * Entities returned by concurrent tasks are detached: the EntityManagers of the workers are closed before returning.
+     *
+     * @return results in the same order as the tasks
+     */
+    public static <T> List<T> executeAll(EntityManager entityManager, List<Function<EntityManager, T>> tasks) {
+        var parallelism = Math.min(JPASearchConfig.get().getBatchParallelism(), tasks.size());
+        if (parallelism <= 1 || !AsyncUtils.isParallelAllowed()) {
+            var results = new ArrayList<T>(tasks.size());
+            tasks.forEach(t -> results.add(t.apply(entityManager)));
+            return results;
+        }
+
+        // each worker takes the next task until there are none left
+        var results = new AtomicReferenceArray<T>(tasks.size());
+        var next = new AtomicInteger();
+        var workers = new CompletableFuture<?>[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            workers[i] = AsyncUtils.supplyAsync(() -> {
+                var workerEntityManager = entityManager.getEntityManagerFactory().createEntityManager();
+                try {
+                    for (int j = next.getAndIncrement(); j < tasks.size(); j = next.getAndIncrement()) {
+                        results.set(j, tasks.get(j).apply(workerEntityManager));
+                    }
+                    return null;
+                } finally {
+                    workerEntityManager.close();
+                }
+            });
+        }
+
+        try {
+            CompletableFuture.allOf(workers).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+
+            throw e;
+        }
+
+        var list = new ArrayList<T>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            list.add(results.get(i));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,18 @@
+package app.tozzi.exception;
+
+import lombok.Getter;
+
+
+@Getter
+public class JPASearchBulkheadException extends JPASearchException {
+
+    private final Class<?> domainType;
+    private final int maxConcurrent;
+
+    public JPASearchBulkheadException(String message, Class<?> domainType, int maxConcurrent) {
+        super(message);
+        this.domainType = domainType;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+}
@@ -0,0 +1,36 @@
+package app.tozzi.exception;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+@Getter
+public class JPASearchLimitException extends JPASearchException {
+
+    private final Class<?> domainType;
+    private final Limit limit;
+    private final long value;
+    private final long max;
+
+    public JPASearchLimitException(Class<?> domainType, Limit limit, long value, long max) {
+        super("Search rejected: " + limit.getDescription() + " " + value + " exceeds the limit of " + max + (domainType == null ? "" : " for " + domainType.getSimpleName()));
+        this.domainType = domainType;
+        this.limit = limit;
+        this.value = value;
+        this.max = max;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public enum Limit {
+
+        DEPTH("filter depth"),
+        FILTERS("number of filters"),
+        IN_VALUES("number of in values"),
+        JOINS("number of joins"),
+        PAGE_SIZE("page size");
+
+        private final String description;
+    }
+
+}
@@ -0,0 +1,21 @@
+package app.tozzi.exception;
+
+import lombok.Getter;
+
+import java.util.Set;
+
+@Getter
+public class JPASearchUnindexedException extends JPASearchException {
+
+    private final Class<?> entityClass;
+    private final Class<?> domainType;
+    private final Set<String> paths;
+
+    public JPASearchUnindexedException(Class<?> entityClass, Class<?> domainType, Set<String> paths) {
+        super("Search rejected: no index on the filters and sorts " + paths + " of " + entityClass.getSimpleName());
+        this.entityClass = entityClass;
+        this.domainType = domainType;
+        this.paths = paths;
+    }
+
+}
@@ -1,9 +1,17 @@
 package app.tozzi.function;
 
+import app.tozzi.config.JPASearchConfig;
 import app.tozzi.model.JPASearchFunction;
+import app.tozzi.util.GenericUtils;
 import app.tozzi.util.JPASearchUtils;
 import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import org.apache.commons.lang3.ClassUtils;
+import org.springframework.util.NumberUtils;
 
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 
 public class JPASearchFunctions {
@@ -33,4 +41,39 @@ public class JPASearchFunctions {
         return in;
     };
 
+    public static final JPASearchFunction<Collection, Boolean> IN_PADDED = (cb, expressions, values) -> IN.apply(cb, expressions, GenericUtils.padToPowerOfTwo(values, -1));
+
+    public static final JPASearchFunction<Collection, Boolean> IN_CHUNKED = (cb, expressions, values) -> {
+        var chunkSize = Math.max(1, JPASearchConfig.get().getInListChunkSize());
+        if (values.length <= chunkSize) {
+            return IN.apply(cb, expressions, GenericUtils.padToPowerOfTwo(values, chunkSize));
+        }
+
+        var predicates = new ArrayList<Predicate>();
+        for (var from = 0; from < values.length; from += chunkSize) {
+            var chunk = Arrays.copyOfRange(values, from, Math.min(values.length, from + chunkSize));
+            predicates.add((Predicate) IN.apply(cb, expressions, GenericUtils.padToPowerOfTwo(chunk, chunkSize)));
+        }
+        return cb.or(predicates.toArray(new Predicate[0]));
+    };
+
+    /**
+     * array_contains of Hibernate (6.4+) with a single array parameter: "any" cannot be called, it is the boolean aggregate of HQL
+     */
+    @SuppressWarnings("unchecked")
+    public static final JPASearchFunction<?, Boolean> IN_ARRAY = (cb, expressions, values) -> {
+        var javaType = expressions[0].getJavaType();
+        var componentType = javaType != null && !Object.class.equals(javaType)
+                ? ClassUtils.primitiveToWrapper(javaType)
+                : (values.length > 0 && values[0] != null ? values[0].getClass() : Object.class);
+
+        var array = (Object[]) Array.newInstance(componentType, values.length);
+        for (var i = 0; i < values.length; i++) {
+            array[i] = values[i] != null && !componentType.isInstance(values[i]) && Number.class.isAssignableFrom(componentType)
+                    ? NumberUtils.parseNumber(String.valueOf(values[i]), (Class<Number>) componentType)
+                    : values[i];
+        }
+        return cb.isTrue(cb.function("array_contains", Boolean.class, cb.literal(array), expressions[0]));
+    };
+
 }
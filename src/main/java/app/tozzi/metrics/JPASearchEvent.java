@@ -0,0 +1,71 @@
+package app.tozzi.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder event of a search or projection of the repositories, emitted by {@link JPASearchObservations#search}.
+ * Disabled by default, enabled through the JFR settings, e.g.:
+ * <pre>
+ * java -XX:StartFlightRecording:app.tozzi.JPASearch#enabled=true,app.tozzi.JPASearch#threshold=20ms ...
+ * </pre>
+ * Phase durations are cumulative over the search and nest like the phases (see {@link JPASearchPhase}).
+ * Mode 1 filters are parsed before the search starts, so parsing is not part of the event.
+ */
+@Name(JPASearchEvent.NAME)
+@Label("JPA Search")
+@Category("JPA Search")
+@Description("Search or projection of a repository")
+@Enabled(false)
+public class JPASearchEvent extends Event {
+
+    public static final String NAME = "app.tozzi.JPASearch";
+
+    @Label("Domain")
+    Class<?> domain;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Filter Fingerprint")
+    String fingerprint;
+
+    @Label("Filter Count")
+    @Description("Number of field filters")
+    int filterCount;
+
+    @Label("Filter Max Depth")
+    @Description("Nesting of the root filters, 0 without filter or with an empty root")
+    int filterMaxDepth;
+
+    @Label("IN-List Sizes")
+    @Description("Number of values of each in filter")
+    String inListSizes;
+
+    @Label("Rows")
+    @Description("Rows returned, -1 for count and exists or on failure")
+    long rows = -1;
+
+    @Label("Resolve Duration")
+    @Timespan
+    long resolveDuration;
+
+    @Label("Validate Duration")
+    @Timespan
+    long validateDuration;
+
+    @Label("Build Duration")
+    @Timespan
+    long buildDuration;
+
+    @Label("Execute Duration")
+    @Timespan
+    long executeDuration;
+
+    @Label("Map Duration")
+    @Timespan
+    long mapDuration;
+
+}
@@ -0,0 +1,192 @@
+package app.tozzi.metrics;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.model.JPASearchOperatorFilter;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How often each field is filtered and sorted, by domain type and operator, enabled by {@link JPASearchConfig#isFieldUsageStatistics()}.
+ * Filters and sorts are counted once per search when it is admitted (see {@link app.tozzi.core.JPASearchCore#recordUsage} and {@link app.tozzi.core.JPASearchCore#loadSort}),
+ * before the result cache, so that cached and coalesced searches are counted too. Unknown fields and operators are ignored.
+ * <p>
+ * The statistics can be dumped as CSV or JSON, e.g. to plan the indexes from the actual traffic (see also {@link app.tozzi.core.JPASearchIndexes#report}).
+ */
+public class JPASearchFieldUsage {
+
+    public static final String SORT = "sort";
+
+    private static final Map<Key, Counters> COUNTERS = new ConcurrentHashMap<>();
+
+    public static boolean isEnabled() {
+        return JPASearchConfig.get().isFieldUsageStatistics();
+    }
+
+    /**
+     * @param inValues number of values of an {@code in} filter, ignored for the other operators
+     */
+    public static void recordFilter(@NonNull Class<?> domainType, @NonNull String field, @NonNull String entityPath, @NonNull String operator,
+                                    boolean ignoreCase, boolean negate, int inValues) {
+
+        var counters = counters(domainType, field, entityPath, operator);
+        counters.count.increment();
+        if (ignoreCase) {
+            counters.ignoreCase.increment();
+        }
+
+        if (negate) {
+            counters.negated.increment();
+        }
+
+        if (JPASearchOperatorFilter.IN.getValue().equals(operator)) {
+            counters.inValues.add(inValues);
+        }
+    }
+
+    public static void recordSort(@NonNull Class<?> domainType, @NonNull String field, @NonNull String entityPath, boolean descending) {
+        var counters = counters(domainType, field, entityPath, SORT);
+        counters.count.increment();
+        if (descending) {
+            counters.descending.increment();
+        }
+    }
+
+    /**
+     * @return usage of every field and operator, most used first
+     */
+    public static List<Statistics> snapshot() {
+        var snapshot = new ArrayList<Statistics>(COUNTERS.size());
+        COUNTERS.forEach((key, counters) -> snapshot.add(new Statistics(key.domainType(), key.field(), key.entityPath(), key.operator(),
+                counters.count.sum(), counters.ignoreCase.sum(), counters.negated.sum(), counters.descending.sum(), counters.inValues.sum())));
+
+        snapshot.sort(Comparator.comparingLong(Statistics::count).reversed()
+                .thenComparing(s -> s.domainType().getName())
+                .thenComparing(Statistics::field)
+                .thenComparing(Statistics::operator));
+
+        return snapshot;
+    }
+
+    /**
+     * One line per field and operator, with header
+     */
+    public static String toCsv() {
+        var csv = new StringBuilder("domainType,field,entityPath,operator,count,ignoreCaseRatio,negatedRatio,descendingRatio,averageInSize\n");
+        for (var s : snapshot()) {
+            csv.append(csv(s.domainType().getName())).append(',')
+                    .append(csv(s.field())).append(',')
+                    .append(csv(s.entityPath())).append(',')
+                    .append(csv(s.operator())).append(',')
+                    .append(s.count()).append(',')
+                    .append(s.ignoreCaseRatio()).append(',')
+                    .append(s.negatedRatio()).append(',')
+                    .append(s.descendingRatio()).append(',')
+                    .append(s.averageInSize()).append('\n');
+        }
+
+        return csv.toString();
+    }
+
+    /**
+     * Array of objects, one per field and operator
+     */
+    public static String toJson() {
+        var json = new StringBuilder("[");
+        for (var s : snapshot()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+
+            json.append("{\"domainType\":").append(json(s.domainType().getName()))
+                    .append(",\"field\":").append(json(s.field()))
+                    .append(",\"entityPath\":").append(json(s.entityPath()))
+                    .append(",\"operator\":").append(json(s.operator()))
+                    .append(",\"count\":").append(s.count())
+                    .append(",\"ignoreCaseRatio\":").append(s.ignoreCaseRatio())
+                    .append(",\"negatedRatio\":").append(s.negatedRatio())
+                    .append(",\"descendingRatio\":").append(s.descendingRatio())
+                    .append(",\"averageInSize\":").append(s.averageInSize())
+                    .append('}');
+        }
+
+        return json.append(']').toString();
+    }
+
+    public static void clear() {
+        COUNTERS.clear();
+    }
+
+    private static Counters counters(Class<?> domainType, String field, String entityPath, String operator) {
+        // the keys are bounded by the searchable fields and the operators
+        return COUNTERS.computeIfAbsent(new Key(domainType, field, entityPath, operator), k -> new Counters());
+    }
+
+    private static String csv(String value) {
+        return value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r") ? "\"" + value.replace("\"", "\"\"") + "\"" : value;
+    }
+
+    private static String json(String value) {
+        var json = new StringBuilder("\"");
+        for (var c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+
+        return json.append('"').toString();
+    }
+
+    /**
+     * Usage of a field with an operator ({@link #SORT} for the sorts)
+     *
+     * @param inValues total values of the {@code in} filters
+     */
+    public record Statistics(Class<?> domainType, String field, String entityPath, String operator, long count,
+                             long ignoreCase, long negated, long descending, long inValues) {
+
+        public double ignoreCaseRatio() {
+            return count == 0 ? 0 : (double) ignoreCase / count;
+        }
+
+        public double negatedRatio() {
+            return count == 0 ? 0 : (double) negated / count;
+        }
+
+        public double descendingRatio() {
+            return count == 0 ? 0 : (double) descending / count;
+        }
+
+        public double averageInSize() {
+            return count == 0 ? 0 : (double) inValues / count;
+        }
+    }
+
+    private record Key(Class<?> domainType, String field, String entityPath, String operator) {
+    }
+
+    private static class Counters {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder ignoreCase = new LongAdder();
+        private final LongAdder negated = new LongAdder();
+        private final LongAdder descending = new LongAdder();
+        private final LongAdder inValues = new LongAdder();
+    }
+
+}
@@ -0,0 +1,51 @@
+package app.tozzi.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Registers the counters of {@link JPASearchMetrics} as Micrometer function counters: declared as a bean, it is bound by Spring Boot Actuator,
+ * otherwise call {@link #bindTo(MeterRegistry)}. Requires {@code io.micrometer:micrometer-core}.
+ * <ul>
+ *     <li>{@value #RESULT_CACHE}, {@value #COUNT_CACHE}: tagged with {@code result} ({@code hit}, {@code miss}, {@code eviction} for the result cache);</li>
+ *     <li>{@value #COALESCED}: tagged with {@code operation} ({@code count}, {@code search});</li>
+ *     <li>{@value #SAVED_ROUND_TRIPS}, {@value #BULKHEAD_REJECTIONS}, {@value #UNINDEXED}.</li>
+ * </ul>
+ * The counters are global: bind them once per registry. {@link JPASearchMetrics#reset()} makes them decrease.
+ */
+public class JPASearchMeterBinder implements MeterBinder {
+
+    public static final String RESULT_CACHE = "jpa.search.result.cache";
+    public static final String COUNT_CACHE = "jpa.search.count.cache";
+    public static final String COALESCED = "jpa.search.coalesced";
+    public static final String SAVED_ROUND_TRIPS = "jpa.search.saved.round.trips";
+    public static final String BULKHEAD_REJECTIONS = "jpa.search.bulkhead.rejections";
+    public static final String UNINDEXED = "jpa.search.unindexed";
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        counter(registry, RESULT_CACHE, "Searches served by the result cache", JPASearchMetrics::getResultCacheHits, "result", "hit");
+        counter(registry, RESULT_CACHE, "Searches executed while the result cache is enabled", JPASearchMetrics::getResultCacheMisses, "result", "miss");
+        counter(registry, RESULT_CACHE, "Entries expired or exceeding the maximum size", JPASearchMetrics::getResultCacheEvictions, "result", "eviction");
+        counter(registry, COUNT_CACHE, "Totals served by the count cache", JPASearchMetrics::getCountCacheHits, "result", "hit");
+        counter(registry, COUNT_CACHE, "Totals not found or expired in the count cache", JPASearchMetrics::getCountCacheMisses, "result", "miss");
+        counter(registry, COALESCED, "Totals not counted because waiting for the same count", JPASearchMetrics::getCoalescedCounts, "operation", "count");
+        counter(registry, COALESCED, "Searches not executed because waiting for the same search", JPASearchMetrics::getCoalescedSearches, "operation", "search");
+        counter(registry, SAVED_ROUND_TRIPS, "Queries not executed because the filter was provably empty", JPASearchMetrics::getSavedRoundTrips);
+        counter(registry, BULKHEAD_REJECTIONS, "Searches rejected by a bulkhead", JPASearchMetrics::getBulkheadRejections);
+        counter(registry, UNINDEXED, "Searches of large entities that cannot use any index", JPASearchMetrics::getUnindexedSearches);
+    }
+
+    private static void counter(MeterRegistry registry, String name, String description, LongSupplier counter, String... tags) {
+        // the registry references the state weakly: the class, not the supplier
+        FunctionCounter.builder(name, JPASearchMetrics.class, c -> counter.getAsLong())
+                .description(description)
+                .tags(tags)
+                .register(registry);
+    }
+
+}
@@ -0,0 +1,144 @@
+package app.tozzi.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Library-wide counters
+ */
+public class JPASearchMetrics {
+
+    private static final LongAdder SAVED_ROUND_TRIPS = new LongAdder();
+    private static final LongAdder RESULT_CACHE_HITS = new LongAdder();
+    private static final LongAdder RESULT_CACHE_MISSES = new LongAdder();
+    private static final LongAdder RESULT_CACHE_EVICTIONS = new LongAdder();
+    private static final LongAdder COUNT_CACHE_HITS = new LongAdder();
+    private static final LongAdder COUNT_CACHE_MISSES = new LongAdder();
+    private static final LongAdder COALESCED_COUNTS = new LongAdder();
+    private static final LongAdder COALESCED_SEARCHES = new LongAdder();
+    private static final LongAdder BULKHEAD_REJECTIONS = new LongAdder();
+    private static final LongAdder UNINDEXED_SEARCHES = new LongAdder();
+
+    /**
+     * @return number of queries not executed because the filter was provably empty (a page counts content and count queries)
+     */
+    public static long getSavedRoundTrips() {
+        return SAVED_ROUND_TRIPS.sum();
+    }
+
+    public static void addSavedRoundTrips(int queries) {
+        SAVED_ROUND_TRIPS.add(queries);
+    }
+
+    /**
+     * @return number of searches served by {@link app.tozzi.cache.JPASearchResultCache}
+     */
+    public static long getResultCacheHits() {
+        return RESULT_CACHE_HITS.sum();
+    }
+
+    public static void addResultCacheHit() {
+        RESULT_CACHE_HITS.increment();
+    }
+
+    /**
+     * @return number of searches executed while {@link app.tozzi.cache.JPASearchResultCache} is enabled
+     */
+    public static long getResultCacheMisses() {
+        return RESULT_CACHE_MISSES.sum();
+    }
+
+    public static void addResultCacheMiss() {
+        RESULT_CACHE_MISSES.increment();
+    }
+
+    /**
+     * @return number of entries removed from {@link app.tozzi.cache.JPASearchResultCache} because expired or exceeding the maximum size (invalidations excluded)
+     */
+    public static long getResultCacheEvictions() {
+        return RESULT_CACHE_EVICTIONS.sum();
+    }
+
+    public static void addResultCacheEviction() {
+        RESULT_CACHE_EVICTIONS.increment();
+    }
+
+    /**
+     * @return number of totals served by {@link app.tozzi.cache.JPASearchCountCache}
+     */
+    public static long getCountCacheHits() {
+        return COUNT_CACHE_HITS.sum();
+    }
+
+    public static void addCountCacheHit() {
+        COUNT_CACHE_HITS.increment();
+    }
+
+    /**
+     * @return number of totals not found (or expired) in {@link app.tozzi.cache.JPASearchCountCache}
+     */
+    public static long getCountCacheMisses() {
+        return COUNT_CACHE_MISSES.sum();
+    }
+
+    public static void addCountCacheMiss() {
+        COUNT_CACHE_MISSES.increment();
+    }
+
+    /**
+     * @return number of totals not counted because waiting for the same count in progress
+     */
+    public static long getCoalescedCounts() {
+        return COALESCED_COUNTS.sum();
+    }
+
+    public static void addCoalescedCount() {
+        COALESCED_COUNTS.increment();
+    }
+
+    /**
+     * @return number of searches not executed because waiting for the same search in progress (see {@link app.tozzi.cache.JPASearchSingleFlight})
+     */
+    public static long getCoalescedSearches() {
+        return COALESCED_SEARCHES.sum();
+    }
+
+    public static void addCoalescedSearch() {
+        COALESCED_SEARCHES.increment();
+    }
+
+    /**
+     * @return number of searches rejected by a bulkhead (see {@link app.tozzi.util.BulkheadUtils})
+     */
+    public static long getBulkheadRejections() {
+        return BULKHEAD_REJECTIONS.sum();
+    }
+
+    public static void addBulkheadRejection() {
+        BULKHEAD_REJECTIONS.increment();
+    }
+
+    /**
+     * @return number of searches of the large entities that cannot use any index (see {@link app.tozzi.core.JPASearchIndexes})
+     */
+    public static long getUnindexedSearches() {
+        return UNINDEXED_SEARCHES.sum();
+    }
+
+    public static void addUnindexedSearch() {
+        UNINDEXED_SEARCHES.increment();
+    }
+
+    public static void reset() {
+        SAVED_ROUND_TRIPS.reset();
+        RESULT_CACHE_HITS.reset();
+        RESULT_CACHE_MISSES.reset();
+        RESULT_CACHE_EVICTIONS.reset();
+        COUNT_CACHE_HITS.reset();
+        COUNT_CACHE_MISSES.reset();
+        COALESCED_COUNTS.reset();
+        COALESCED_SEARCHES.reset();
+        BULKHEAD_REJECTIONS.reset();
+        UNINDEXED_SEARCHES.reset();
+    }
+
+}
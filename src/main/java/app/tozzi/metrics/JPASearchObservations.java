@@ -0,0 +1,269 @@
+package app.tozzi.metrics;
+
+import app.tozzi.annotation.Searchable;
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.core.JPASearchCanonicalizer;
+import app.tozzi.model.JPASearchOperatorFilter;
+import app.tozzi.model.input.JPASearchInput;
+import io.micrometer.observation.Observation;
+import jdk.jfr.EventType;
+import lombok.NonNull;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.data.domain.Slice;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Supplier;
+
+/**
+ * Fine-grained observations of the searches, enabled by {@link JPASearchConfig#isPhaseObservations()} and recorded on {@link JPASearchConfig#getObservationRegistry()}
+ * (timers and histograms with a meter observation handler):
+ * <ul>
+ *     <li>{@value #SEARCH}: a whole search, tagged with domain, mode (map/input), operation (find/page/count/exists/projection) and result size (bucketed);</li>
+ *     <li>{@value #PHASE}: a phase of the search (see {@link JPASearchPhase}), tagged with the phase and the tags of the search (see {@link #parse} for the parsing).</li>
+ * </ul>
+ * Phases nest: e.g. build includes resolve and validate. When disabled, nothing is created.
+ * <p>
+ * Independently, each search records a {@link JPASearchEvent} when the event is enabled in a running Java Flight Recorder recording
+ * (and the {@code jdk.jfr} module is present),
+ * and is aggregated by filter shape when {@link JPASearchSlowSearches} is enabled.
+ */
+public class JPASearchObservations {
+
+    public static final String SEARCH = "jpa.search";
+    public static final String PHASE = "jpa.search.phase";
+
+    public static final String MODE_MAP = "map";
+    public static final String MODE_INPUT = "input";
+
+    private static final String NONE = "none";
+    private static final int PHASES = JPASearchPhase.values().length;
+    private static final ThreadLocal<Current> CURRENT = new ThreadLocal<>();
+
+    // jdk.jfr is an optional module, e.g. left out of a jlink image
+    private static final boolean JFR = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+    public static boolean isEnabled() {
+        return JPASearchConfig.get().isPhaseObservations();
+    }
+
+    /**
+     * Observes the search, records its {@link JPASearchEvent} (filter statistics and fingerprint are only computed when the event is committed)
+     * and its execution time by filter shape
+     */
+    public static <T> T search(@NonNull Class<?> domainType, @NonNull String mode, @NonNull String operation, JPASearchInput.RootFilter filter,
+                               Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap, @NonNull Supplier<T> search) {
+
+        var observed = isEnabled();
+        var aggregated = JPASearchSlowSearches.isEnabled();
+        var recorded = JFR && Jfr.TYPE.isEnabled();
+        if (!observed && !aggregated && !recorded) {
+            return search.get();
+        }
+
+        var current = new Current(domainType, mode, operation, recorded ? new JPASearchEvent() : null);
+        var observation = !observed ? Observation.NOOP : Observation.createNotStarted(SEARCH, JPASearchConfig.get().getObservationRegistry())
+                .lowCardinalityKeyValue("domain", current.domain())
+                .lowCardinalityKeyValue("mode", mode)
+                .lowCardinalityKeyValue("operation", operation)
+                .lowCardinalityKeyValue("result.size", NONE)
+                .start();
+
+        var previous = CURRENT.get();
+        CURRENT.set(current);
+        if (current.event != null) {
+            current.event.begin();
+        }
+
+        var start = System.nanoTime();
+        Object result = null;
+        try (var ignored = observation.openScope()) {
+            var res = search.get();
+            result = res;
+            observation.lowCardinalityKeyValue("result.size", sizeBucket(res));
+            return res;
+        } catch (RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+
+            if (aggregated) {
+                JPASearchSlowSearches.record(domainType, operation, filter, System.nanoTime() - start, rows(result));
+            }
+
+            if (current.event != null) {
+                commit(current, filter, searchableFields, entityFieldMap, result);
+            }
+        }
+    }
+
+    /**
+     * Parsing of the filters of a {@link #MODE_MAP} search: it happens before the search is observed, so the phase is tagged with the given domain and operation
+     */
+    public static <T> T parse(@NonNull Class<?> domainType, @NonNull String operation, @NonNull Supplier<T> action) {
+        if (CURRENT.get() != null) {
+            return phase(JPASearchPhase.PARSE, action);
+        }
+
+        return observe(JPASearchPhase.PARSE, new Current(domainType, MODE_MAP, operation, null), action);
+    }
+
+    /**
+     * Outermost executions of a phase are timed for the event of the search: nested ones (e.g. build of a subquery) are already included
+     */
+    public static <T> T phase(@NonNull JPASearchPhase phase, @NonNull Supplier<T> action) {
+        var current = CURRENT.get();
+        if (current == null || current.event == null) {
+            return observe(phase, current, action);
+        }
+
+        var index = phase.ordinal();
+        var outermost = current.depth[index]++ == 0;
+        var start = outermost ? System.nanoTime() : 0L;
+        try {
+            return observe(phase, current, action);
+        } finally {
+            current.depth[index]--;
+            if (outermost) {
+                current.durations[index] += System.nanoTime() - start;
+            }
+        }
+    }
+
+    private static <T> T observe(JPASearchPhase phase, Current current, Supplier<T> action) {
+        if (!isEnabled()) {
+            return action.get();
+        }
+
+        return Observation.createNotStarted(PHASE, JPASearchConfig.get().getObservationRegistry())
+                .lowCardinalityKeyValue("phase", phase.getValue())
+                .lowCardinalityKeyValue("domain", current == null ? NONE : current.domain())
+                .lowCardinalityKeyValue("mode", current == null ? NONE : current.mode)
+                .lowCardinalityKeyValue("operation", current == null ? NONE : current.operation)
+                .observe(action);
+    }
+
+    private static void commit(Current current, JPASearchInput.RootFilter filter, Map<String, Pair<Searchable, Field>> searchableFields,
+                               Map<String, String> entityFieldMap, Object result) {
+
+        var event = current.event;
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+
+        event.domain = current.domainType;
+        event.mode = current.mode;
+        event.operation = current.operation;
+        if (filter != null && filter.getFilters() != null && !filter.getFilters().isEmpty()) {
+            var inListSizes = new StringJoiner(",");
+            event.fingerprint = JPASearchCanonicalizer.toHex(JPASearchCanonicalizer.fingerprint(filter, searchableFields, entityFieldMap));
+            event.filterMaxDepth = walk(filter, 1, event, inListSizes);
+            event.inListSizes = inListSizes.toString();
+        }
+
+        event.rows = rows(result);
+
+        event.resolveDuration = current.durations[JPASearchPhase.RESOLVE.ordinal()];
+        event.validateDuration = current.durations[JPASearchPhase.VALIDATE.ordinal()];
+        event.buildDuration = current.durations[JPASearchPhase.BUILD.ordinal()];
+        event.executeDuration = current.durations[JPASearchPhase.EXECUTE.ordinal()];
+        event.mapDuration = current.durations[JPASearchPhase.MAP.ordinal()];
+        event.commit();
+    }
+
+    /**
+     * @return -1 if the result has no rows (e.g. count) or the search failed
+     */
+    private static long rows(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+
+        return result instanceof Slice<?> slice ? slice.getNumberOfElements() : -1;
+    }
+
+    /**
+     * Counts the field filters and the sizes of the in lists
+     *
+     * @return max depth of the root filters
+     */
+    private static int walk(JPASearchInput.RootFilter root, int depth, JPASearchEvent event, StringJoiner inListSizes) {
+        var maxDepth = depth;
+        if (root.getFilters() == null) {
+            return maxDepth;
+        }
+
+        for (var filter : root.getFilters()) {
+            if (filter instanceof JPASearchInput.RootFilter child) {
+                maxDepth = Math.max(maxDepth, walk(child, depth + 1, event, inListSizes));
+            } else if (filter instanceof JPASearchInput.FieldFilter) {
+                event.filterCount++;
+                if (filter instanceof JPASearchInput.FilterMultipleValues multiple && JPASearchOperatorFilter.IN.getValue().equals(multiple.getOperator())) {
+                    inListSizes.add(String.valueOf(multiple.getValues() == null ? 0 : multiple.getValues().size()));
+                }
+            }
+        }
+
+        return maxDepth;
+    }
+
+    /**
+     * Bucketed, to keep the tag low-cardinality
+     */
+    static String sizeBucket(Object result) {
+        long size;
+        if (result instanceof Collection<?> collection) {
+            size = collection.size();
+        } else if (result instanceof Slice<?> slice) {
+            size = slice.getNumberOfElements();
+        } else {
+            return NONE;
+        }
+
+        if (size <= 1) {
+            return String.valueOf(size);
+        }
+
+        return size <= 10 ? "2-10" : size <= 100 ? "11-100" : size <= 1000 ? "101-1000" : "1001+";
+    }
+
+    /**
+     * Loaded only if the jdk.jfr module is present
+     */
+    private static final class Jfr {
+        private static final EventType TYPE = EventType.getEventType(JPASearchEvent.class);
+    }
+
+    /**
+     * Search running on the current thread
+     */
+    private static final class Current {
+
+        private final Class<?> domainType;
+        private final String mode;
+        private final String operation;
+        private final JPASearchEvent event;
+        private final long[] durations = new long[PHASES];
+        private final int[] depth = new int[PHASES];
+
+        private Current(Class<?> domainType, String mode, String operation, JPASearchEvent event) {
+            this.domainType = domainType;
+            this.mode = mode;
+            this.operation = operation;
+            this.event = event;
+        }
+
+        private String domain() {
+            return domainType.getSimpleName();
+        }
+    }
+}
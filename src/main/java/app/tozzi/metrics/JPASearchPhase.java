@@ -0,0 +1,45 @@
+package app.tozzi.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Phases of a search, see {@link JPASearchObservations}
+ */
+@Getter
+@AllArgsConstructor
+public enum JPASearchPhase {
+
+    /**
+     * Mode 1: filters map to {@link app.tozzi.model.input.JPASearchInput}
+     */
+    PARSE("parse"),
+
+    /**
+     * Resolution of a filter key to the entity path
+     */
+    RESOLVE("resolve"),
+
+    /**
+     * Conversion and validation of the values of a filter
+     */
+    VALIDATE("validate"),
+
+    /**
+     * Filter optimization and Criteria predicates (includes resolve and validate)
+     */
+    BUILD("build"),
+
+    /**
+     * SQL execution (includes build when the query is created by Spring Data)
+     */
+    EXECUTE("execute"),
+
+    /**
+     * Projection rows to maps
+     */
+    MAP("map");
+
+    private final String value;
+
+}
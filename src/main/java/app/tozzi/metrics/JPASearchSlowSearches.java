@@ -0,0 +1,239 @@
+package app.tozzi.metrics;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.core.JPASearchCanonicalizer;
+import app.tozzi.model.input.JPASearchInput;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Executions of the searches aggregated by domain type, operation and filter shape (see {@link JPASearchCanonicalizer#shape}),
+ * enabled by {@link JPASearchConfig#getSlowSearchShapes()} and recorded by {@link JPASearchObservations#search}.
+ * <p>
+ * Shapes are split into lock-striped buckets: when a bucket is full, the shape with the lowest total time is evicted,
+ * so that the most expensive shapes are kept. Latency percentiles come from a log-linear histogram (relative error below 25%).
+ */
+public class JPASearchSlowSearches {
+
+    private static final int STRIPES = 16;
+    private static final int SUB_BUCKETS = 4;
+    private static final int MAX_EXAMPLE_LENGTH = 1000;
+
+    private static final Stripe[] BUCKETS = new Stripe[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            BUCKETS[i] = new Stripe();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return JPASearchConfig.get().getSlowSearchShapes() > 0;
+    }
+
+    /**
+     * @param rows rows returned, negative if none (e.g. count)
+     */
+    public static void record(@NonNull Class<?> domainType, @NonNull String operation, JPASearchInput.RootFilter filter, long nanos, long rows) {
+        var maxShapes = JPASearchConfig.get().getSlowSearchShapes();
+        if (maxShapes <= 0) {
+            return;
+        }
+
+        var key = new Key(domainType, operation, JPASearchCanonicalizer.shape(filter));
+        // rendered now: the filter belongs to the caller and may change after the search
+        var example = describe(filter, JPASearchConfig.get().isSlowSearchRedacted());
+        var stripe = BUCKETS[(key.hashCode() & Integer.MAX_VALUE) % STRIPES];
+        var capacity = Math.max(1, (maxShapes + STRIPES - 1) / STRIPES);
+
+        synchronized (stripe) {
+            var entry = stripe.entries.get(key);
+            if (entry == null) {
+                while (stripe.entries.size() >= capacity) {
+                    stripe.entries.values().stream().min(Comparator.comparingLong(e -> e.totalNanos))
+                            .ifPresent(e -> stripe.entries.remove(e.key));
+                }
+
+                entry = new Entry(key);
+                stripe.entries.put(key, entry);
+            }
+
+            entry.count++;
+            entry.totalNanos += nanos;
+            entry.maxNanos = Math.max(entry.maxNanos, nanos);
+            entry.histogram[bucket(nanos)]++;
+            if (rows > 0) {
+                entry.rows += rows;
+            }
+
+            entry.example = example;
+        }
+    }
+
+    /**
+     * @return the n shapes with the highest total time, descending
+     */
+    public static List<Statistics> top(int n) {
+        var snapshot = new ArrayList<Statistics>();
+        for (var stripe : BUCKETS) {
+            synchronized (stripe) {
+                stripe.entries.values().forEach(e -> snapshot.add(e.toStatistics()));
+            }
+        }
+
+        snapshot.sort(Comparator.comparing(Statistics::total).reversed());
+        return snapshot.subList(0, Math.min(n, snapshot.size()));
+    }
+
+    public static void clear() {
+        for (var stripe : BUCKETS) {
+            synchronized (stripe) {
+                stripe.entries.clear();
+            }
+        }
+    }
+
+    /**
+     * Log-linear: {@value #SUB_BUCKETS} buckets per power of two
+     */
+    static int bucket(long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+
+        var exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        var sub = exponent < 2 ? 0 : (int) ((nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+        return exponent * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the highest value of the bucket
+     */
+    static long upperBound(int bucket) {
+        var exponent = bucket / SUB_BUCKETS;
+        if (exponent < 2) {
+            return (1L << (exponent + 1)) - 1;
+        }
+
+        var sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+    }
+
+    /**
+     * Aggregated executions of a filter shape
+     *
+     * @param rows    total rows returned
+     * @param example filter of the last execution, with its values unless redacted (see {@link JPASearchConfig#isSlowSearchRedacted()}),
+     *                truncated to {@value #MAX_EXAMPLE_LENGTH} characters
+     */
+    public record Statistics(Class<?> domainType, String operation, String shape, long count, Duration total, Duration p50, Duration p99, Duration max,
+                             long rows, String example) {
+    }
+
+    private record Key(Class<?> domainType, String operation, String shape) {
+    }
+
+    private static class Stripe {
+        private final Map<Key, Entry> entries = new HashMap<>();
+    }
+
+    private static class Entry {
+
+        private final Key key;
+        private final long[] histogram = new long[64 * SUB_BUCKETS];
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long rows;
+        private String example;
+
+        private Entry(Key key) {
+            this.key = key;
+        }
+
+        private Statistics toStatistics() {
+            return new Statistics(key.domainType(), key.operation(), key.shape(), count, Duration.ofNanos(totalNanos),
+                    Duration.ofNanos(percentile(0.5)), Duration.ofNanos(percentile(0.99)), Duration.ofNanos(maxNanos), rows, example);
+        }
+
+        private long percentile(double quantile) {
+            var rank = (long) Math.ceil(quantile * count);
+            var seen = 0L;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), maxNanos);
+                }
+            }
+
+            return maxNanos;
+        }
+    }
+
+    static String describe(JPASearchInput.RootFilter filter, boolean redacted) {
+        var example = new StringBuilder();
+        render(filter, redacted, example);
+        if (example.length() <= MAX_EXAMPLE_LENGTH) {
+            return example.toString();
+        }
+
+        example.setLength(MAX_EXAMPLE_LENGTH);
+        return example.append("...").toString();
+    }
+
+    /**
+     * Stops once the example is longer than {@value #MAX_EXAMPLE_LENGTH} characters
+     */
+    private static void render(JPASearchInput.Filter filter, boolean redacted, StringBuilder example) {
+        if (filter == null || example.length() > MAX_EXAMPLE_LENGTH) {
+            return;
+        }
+
+        if (filter instanceof JPASearchInput.RootFilter rootFilter) {
+            example.append(rootFilter.getOperator()).append('(');
+            if (rootFilter.getFilters() != null) {
+                for (int i = 0; i < rootFilter.getFilters().size() && example.length() <= MAX_EXAMPLE_LENGTH; i++) {
+                    if (i > 0) {
+                        example.append(", ");
+                    }
+
+                    render(rootFilter.getFilters().get(i), redacted, example);
+                }
+            }
+
+            example.append(')');
+            return;
+        }
+
+        var fieldFilter = (JPASearchInput.FieldFilter) filter;
+        var negate = fieldFilter.getOptions() != null && fieldFilter.getOptions().isNegate();
+        Object value = fieldFilter instanceof JPASearchInput.FilterSingleValue fsv ? fsv.getValue()
+                : fieldFilter instanceof JPASearchInput.FilterMultipleValues fmv ? fmv.getValues() : null;
+
+        example.append(negate ? "not " : "").append(fieldFilter.getKey()).append(' ').append(fieldFilter.getOperator());
+        if (value == null) {
+            return;
+        }
+
+        if (redacted) {
+            example.append(value instanceof Collection<?> values ? " [" + values.size() + " values]" : " ?");
+        } else if (value instanceof Collection<?> values) {
+            example.append(" [");
+            var first = true;
+            for (var v : values) {
+                if (example.length() > MAX_EXAMPLE_LENGTH) {
+                    break;
+                }
+
+                example.append(first ? "" : ", ").append(v);
+                first = false;
+            }
+
+            example.append(']');
+        } else {
+            example.append(' ').append(value);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package app.tozzi.model;
+
+import app.tozzi.model.input.JPASearchInput;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class FilterDescriptor {
+
+    private JPASearchInput.RootFilter filter;
+    private boolean empty;
+    private boolean unrestricted;
+
+    /**
+     * Filters were dropped as always true or false: they are not resolved nor validated when the predicates are built
+     */
+    private boolean pruned;
+
+    public FilterDescriptor(JPASearchInput.RootFilter filter, boolean empty, boolean unrestricted) {
+        this(filter, empty, unrestricted, false);
+    }
+
+}
@@ -0,0 +1,22 @@
+package app.tozzi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public enum JPASearchAggregateFunction {
+
+    COUNT(false),
+    COUNT_DISTINCT(false),
+    SUM(true),
+    AVG(true),
+    MIN(false),
+    MAX(false);
+
+    /**
+     * Only applicable to numeric fields
+     */
+    private final boolean numeric;
+
+}
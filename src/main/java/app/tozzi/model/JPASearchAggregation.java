@@ -0,0 +1,26 @@
+package app.tozzi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Aggregate function applied to a searchable field. The key can be null only for {@link JPASearchAggregateFunction#COUNT} (number of entities)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JPASearchAggregation {
+
+    private JPASearchAggregateFunction function;
+    private String key;
+
+    /**
+     * Name of the aggregated value in the results, e.g. {@code sum_price} or {@code count}.
+     * It can also be used as sort key.
+     */
+    public String getAlias() {
+        return key == null ? function.name().toLowerCase() : function.name().toLowerCase() + "_" + key;
+    }
+
+}
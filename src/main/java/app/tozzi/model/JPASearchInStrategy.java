@@ -0,0 +1,44 @@
+package app.tozzi.model;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.function.JPASearchFunctions;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public enum JPASearchInStrategy {
+
+    /**
+     * One bound parameter per value: sql_col IN (?, ?, ..., ?)
+     */
+    DEFAULT(JPASearchFunctions.IN),
+
+    /**
+     * OR'ed IN groups of {@link JPASearchConfig#getInListChunkSize()} values; the last group is padded to a power of two
+     */
+    CHUNKED(JPASearchFunctions.IN_CHUNKED),
+
+    /**
+     * Values padded to the next power of two by repeating the last one, to limit the number of distinct statements
+     */
+    PADDED(JPASearchFunctions.IN_PADDED),
+
+    /**
+     * A single array parameter: array_contains(?, sql_col), rendered by Hibernate (6.4+) for the databases with arrays (e.g. PostgreSQL, H2)
+     */
+    ARRAY(JPASearchFunctions.IN_ARRAY);
+
+    private final JPASearchFunction<?, ?> function;
+
+    public static JPASearchInStrategy resolve(JPASearchInStrategy fieldStrategy, int size) {
+        if (fieldStrategy != null && fieldStrategy != DEFAULT) {
+            return fieldStrategy;
+        }
+
+        var config = JPASearchConfig.get();
+        return config.getInListThreshold() >= 0 && size > config.getInListThreshold() && config.getInListStrategy() != null
+                ? config.getInListStrategy()
+                : DEFAULT;
+    }
+}
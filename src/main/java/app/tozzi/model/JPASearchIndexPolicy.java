@@ -0,0 +1,25 @@
+package app.tozzi.model;
+
+import app.tozzi.config.JPASearchConfig;
+
+/**
+ * What happens to the searches of the {@link JPASearchConfig#getLargeEntities()} whose filters and sorts cannot use any index
+ */
+public enum JPASearchIndexPolicy {
+
+    /**
+     * Counted and logged with the filter shape (once per shape), then executed
+     */
+    WARN,
+
+    /**
+     * Counted, then executed
+     */
+    COUNT,
+
+    /**
+     * Counted, then rejected with a {@link app.tozzi.exception.JPASearchUnindexedException}
+     */
+    REJECT
+
+}
@@ -0,0 +1,35 @@
+package app.tozzi.model;
+
+import lombok.Getter;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Page reporting the execution time of the content and count queries
+ */
+@Getter
+public class JPASearchPage<E> extends PageImpl<E> {
+
+    private final Duration contentTime;
+
+    /**
+     * {@link Duration#ZERO} when the count query was not needed
+     */
+    private final Duration countTime;
+
+    /**
+     * true if the count query was executed in parallel with the content query
+     */
+    private final boolean parallel;
+
+    public JPASearchPage(List<E> content, Pageable pageable, long total, Duration contentTime, Duration countTime, boolean parallel) {
+        super(content, pageable, total);
+        this.contentTime = contentTime;
+        this.countTime = countTime;
+        this.parallel = parallel;
+    }
+
+}
@@ -18,5 +18,6 @@ public class ProjectionDescriptor {
     private List<Selection<?>> selections;
     private JPASearchInput input;
     private Root<?> root;
+    private boolean empty;
 
 }
@@ -0,0 +1,45 @@
+package app.tozzi.repository;
+
+import app.tozzi.model.JPASearchAggregation;
+import app.tozzi.model.input.JPASearchInput;
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregations (count, sum, avg, min, max) of {@link app.tozzi.annotation.Searchable} fields computed by the database, optionally grouped by other searchable fields.
+ * Sort options of the input can refer to group by keys or aggregation aliases (see {@link JPASearchAggregation#getAlias()}); pagination options limit the groups.
+ */
+public interface JPAAggregationRepository<E> {
+
+    /**
+     * Mode 2: Aggregation by filters
+     *
+     * @param input                   search filters, sort and pagination options
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param groupBy                 group by fields (can be empty)
+     * @param aggregations            aggregations
+     * @return one row for each group: group by keys and aggregation aliases to values
+     */
+    List<Map<String, Object>> aggregate(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> groupBy, @NonNull List<JPASearchAggregation> aggregations);
+
+    /**
+     * Mode 2: Aggregation by filters with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param input                   search filters, sort and pagination options
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param groupBy                 group by fields (can be empty)
+     * @param aggregations            aggregations
+     * @param entityFieldMap
+     * @return one row for each group: group by keys and aggregation aliases to values
+     */
+    List<Map<String, Object>> aggregate(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> groupBy, @NonNull List<JPASearchAggregation> aggregations, Map<String, String> entityFieldMap);
+
+}
@@ -0,0 +1,40 @@
+package app.tozzi.repository;
+
+import app.tozzi.core.JPAAggregationProcessor;
+import app.tozzi.core.JPASearchCore;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.JPASearchAggregation;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.ReflectionUtils;
+import jakarta.persistence.EntityManager;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class JPAAggregationRepositoryImpl<E> implements JPAAggregationRepository<E> {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> aggregate(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> groupBy, @NonNull List<JPASearchAggregation> aggregations) {
+        return aggregate(input, domainModelOrEntityType, entityClass, groupBy, aggregations, null);
+    }
+
+    @Override
+    public List<Map<String, Object>> aggregate(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> groupBy, @NonNull List<JPASearchAggregation> aggregations, Map<String, String> entityFieldMap) {
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
+        JPASearchCore.checkLimits(domainModelOrEntityType, entityClass, input.getFilter(), searchableFields, entityFieldMap);
+        var descriptor = JPASearchCore.compile(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        JPASearchCore.recordUsage(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        if (descriptor != null && descriptor.isEmpty()) {
+            JPASearchMetrics.addSavedRoundTrips(1);
+        }
+
+        return JPAAggregationProcessor.aggregate(entityManager, descriptor, input.getOptions(), groupBy, aggregations, entityClass, searchableFields, entityFieldMap);
+    }
+}
@@ -0,0 +1,71 @@
+package app.tozzi.repository;
+
+import app.tozzi.model.input.JPASearchInput;
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batches of independent searches on the same entity. Results are in the same order as the inputs.
+ * Searches are executed concurrently, each worker on its own connection (at most {@link app.tozzi.config.JPASearchConfig#getBatchParallelism()}),
+ * only outside a transaction or within a read-only transaction, sequentially otherwise.
+ * <p>
+ * Entities found concurrently are detached (the entity managers of the workers are closed at the end of the batch), so lazy associations must be fetched;
+ * entities found sequentially are managed by the caller's entity manager. Within a read-only transaction, the state of the entities depends on
+ * {@link app.tozzi.config.JPASearchConfig#getBatchParallelism()} and on the number of inputs.
+ */
+public interface JPABatchRepository<E> {
+
+    /**
+     * Mode 2: Search by each input, with sorting and pagination if present in its options
+     *
+     * @param inputs                  search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @return list of entities for each input
+     */
+    List<List<E>> findAllBatch(@NonNull List<JPASearchInput> inputs, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass);
+
+    /**
+     * Mode 2: Search by each input, with sorting and pagination if present in its options and with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param inputs                  search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param entityFieldMap
+     * @return list of entities for each input
+     */
+    List<List<E>> findAllBatch(@NonNull List<JPASearchInput> inputs, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 2: Count by each input. If no filter joins an association or a collection, all the counts are computed by a single query
+     *
+     * @param inputs                  search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @return count for each input
+     */
+    List<Long> countBatch(@NonNull List<JPASearchInput> inputs, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass);
+
+    /**
+     * Mode 2: Count by each input with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     * If no filter joins an association or a collection, all the counts are computed by a single query
+     *
+     * @param inputs                  search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param entityFieldMap
+     * @return count for each input
+     */
+    List<Long> countBatch(@NonNull List<JPASearchInput> inputs, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap);
+
+}
@@ -0,0 +1,112 @@
+package app.tozzi.repository;
+
+import app.tozzi.core.JPASearchCore;
+import app.tozzi.core.JPASearchFetchPlan;
+import app.tozzi.core.JPASearchQueries;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.FilterDescriptor;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.ReflectionUtils;
+import jakarta.persistence.EntityManager;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+@Component
+public class JPABatchRepositoryImpl<E> implements JPABatchRepository<E> {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Override
+    public List<List<E>> findAllBatch(@NonNull List<JPASearchInput> inputs, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return performSearch(inputs, domainModelOrEntityType, entityClass, null);
+    }
+
+    @Override
+    public List<List<E>> findAllBatch(@NonNull List<JPASearchInput> inputs, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap) {
+        return performSearch(inputs, domainModelOrEntityType, entityClass, entityFieldMap);
+    }
+
+    @Override
+    public List<Long> countBatch(@NonNull List<JPASearchInput> inputs, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return performCount(inputs, domainModelOrEntityType, entityClass, null);
+    }
+
+    @Override
+    public List<Long> countBatch(@NonNull List<JPASearchInput> inputs, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap) {
+        return performCount(inputs, domainModelOrEntityType, entityClass, entityFieldMap);
+    }
+
+    private List<List<E>> performSearch(List<JPASearchInput> inputs, Class<?> domainModelOrEntityType, Class<E> entityClass, Map<String, String> entityFieldMap) {
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
+        var tasks = new ArrayList<Function<EntityManager, List<E>>>(inputs.size());
+
+        // every input is validated before executing any query
+        for (var input : inputs) {
+            JPASearchCore.checkLimits(domainModelOrEntityType, entityClass, input.getFilter(), searchableFields, entityFieldMap);
+            var options = input.getOptions();
+            var pageRequest = options != null && options.getPageSize() != null ? JPASearchCore.loadSortAndPagination(domainModelOrEntityType, options, searchableFields, entityFieldMap) : null;
+            var sort = pageRequest != null ? pageRequest.getSort()
+                    : options != null && options.getSortOptions() != null && !options.getSortOptions().isEmpty() ? JPASearchCore.loadSort(domainModelOrEntityType, options, searchableFields, entityFieldMap)
+                    : Sort.unsorted();
+            var descriptor = JPASearchCore.compile(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+            JPASearchCore.recordUsage(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+
+            if (descriptor != null && descriptor.isEmpty()) {
+                JPASearchMetrics.addSavedRoundTrips(1);
+                tasks.add(em -> new ArrayList<>());
+                continue;
+            }
+
+            tasks.add(em -> {
+                var query = JPASearchQueries.select(em, descriptor, searchableFields, entityFieldMap, entityClass, JPASearchFetchPlan.of(null), false, sort);
+                if (pageRequest != null) {
+                    query.setFirstResult((int) pageRequest.getOffset());
+                    query.setMaxResults(pageRequest.getPageSize());
+                }
+                return query.getResultList();
+            });
+        }
+
+        return JPASearchQueries.executeAll(entityManager, tasks);
+    }
+
+    private List<Long> performCount(List<JPASearchInput> inputs, Class<?> domainModelOrEntityType, Class<E> entityClass, Map<String, String> entityFieldMap) {
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
+        var descriptors = new ArrayList<FilterDescriptor>(inputs.size());
+        for (var input : inputs) {
+            JPASearchCore.checkLimits(domainModelOrEntityType, entityClass, input.getFilter(), searchableFields, entityFieldMap);
+            var descriptor = JPASearchCore.compile(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+            JPASearchCore.recordUsage(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+            if (descriptor != null && descriptor.isEmpty()) {
+                JPASearchMetrics.addSavedRoundTrips(1);
+            }
+            descriptors.add(descriptor);
+        }
+
+        var counts = JPASearchQueries.countAll(entityManager, descriptors, searchableFields, entityFieldMap, entityClass);
+        if (counts != null) {
+            var result = new ArrayList<Long>(counts.length);
+            for (var count : counts) {
+                result.add(count);
+            }
+            return result;
+        }
+
+        var tasks = new ArrayList<Function<EntityManager, Long>>(descriptors.size());
+        for (var descriptor : descriptors) {
+            tasks.add(descriptor != null && descriptor.isEmpty()
+                    ? em -> 0L
+                    : em -> JPASearchQueries.count(em, descriptor, searchableFields, entityFieldMap, entityClass));
+        }
+
+        return JPASearchQueries.executeAll(entityManager, tasks);
+    }
+}
@@ -0,0 +1,125 @@
+package app.tozzi.repository;
+
+import app.tozzi.model.input.JPASearchInput;
+import lombok.NonNull;
+
+import java.util.Map;
+
+/**
+ * Set-based delete and update by filters, without loading the entities (see {@link app.tozzi.core.JPABulkProcessor}).
+ * A filter is required. Statements are executed in the current transaction or in a new one.
+ * <p>
+ * With a chunk size, the statement is executed for consecutive id ranges of that size (between the minimum and maximum id matching the filter),
+ * each in its own transaction when there is no current transaction, so that locks are held briefly. Chunks require a numeric id.
+ */
+public interface JPABulkRepository<E> {
+
+    /**
+     * Mode 1: Delete by filters
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @return number of deleted entities
+     */
+    long deleteAll(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass);
+
+    /**
+     * Mode 2: Delete by filters
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @return number of deleted entities
+     */
+    long deleteAll(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass);
+
+    /**
+     * Mode 1: Delete by filters in chunks, with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param entityFieldMap
+     * @param chunkSize               size of the id ranges, 0 for a single statement
+     * @return number of deleted entities
+     */
+    long deleteAll(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap, int chunkSize);
+
+    /**
+     * Mode 2: Delete by filters in chunks, with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param entityFieldMap
+     * @param chunkSize               size of the id ranges, 0 for a single statement
+     * @return number of deleted entities
+     */
+    long deleteAll(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap, int chunkSize);
+
+    /**
+     * Mode 1: Update by filters
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param values                  new values by searchable field, validated as for an {@code eq} filter
+     * @return number of updated entities
+     */
+    long updateAll(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull Map<String, Object> values);
+
+    /**
+     * Mode 2: Update by filters
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param values                  new values by searchable field, validated as for an {@code eq} filter
+     * @return number of updated entities
+     */
+    long updateAll(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull Map<String, Object> values);
+
+    /**
+     * Mode 1: Update by filters in chunks, with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param values                  new values by searchable field, validated as for an {@code eq} filter
+     * @param entityFieldMap
+     * @param chunkSize               size of the id ranges, 0 for a single statement
+     * @return number of updated entities
+     */
+    long updateAll(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull Map<String, Object> values, Map<String, String> entityFieldMap, int chunkSize);
+
+    /**
+     * Mode 2: Update by filters in chunks, with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param values                  new values by searchable field, validated as for an {@code eq} filter
+     * @param entityFieldMap
+     * @param chunkSize               size of the id ranges, 0 for a single statement
+     * @return number of updated entities
+     */
+    long updateAll(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull Map<String, Object> values, Map<String, String> entityFieldMap, int chunkSize);
+
+}
@@ -0,0 +1,156 @@
+package app.tozzi.repository;
+
+import app.tozzi.annotation.Searchable;
+import app.tozzi.cache.JPASearchResultCache;
+import app.tozzi.core.JPABulkProcessor;
+import app.tozzi.core.JPASearchCore;
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.FilterDescriptor;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.JPASearchUtils;
+import app.tozzi.util.ReflectionUtils;
+import jakarta.persistence.EntityManager;
+import lombok.NonNull;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+@Component
+public class JPABulkRepositoryImpl<E> implements JPABulkRepository<E> {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    /**
+     * Resolved on first use outside a transaction: the fragment does not require a transaction manager
+     */
+    @Autowired
+    private ObjectProvider<PlatformTransactionManager> transactionManager;
+
+    private volatile TransactionTemplate transactionTemplate;
+
+    @Override
+    public long deleteAll(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return deleteAll(JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "delete"), domainModelOrEntityType, entityClass, null, 0);
+    }
+
+    @Override
+    public long deleteAll(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return deleteAll(input, domainModelOrEntityType, entityClass, null, 0);
+    }
+
+    @Override
+    public long deleteAll(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap, int chunkSize) {
+        return deleteAll(JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "delete"), domainModelOrEntityType, entityClass, entityFieldMap, chunkSize);
+    }
+
+    @Override
+    public long deleteAll(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap, int chunkSize) {
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
+        var descriptor = compile(domainModelOrEntityType, entityClass, input, searchableFields, entityFieldMap);
+        return execute(descriptor, entityClass, chunkSize, searchableFields, entityFieldMap,
+                range -> JPABulkProcessor.delete(entityManager, descriptor, entityClass, range, searchableFields, entityFieldMap));
+    }
+
+    @Override
+    public long updateAll(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull Map<String, Object> values) {
+        return updateAll(JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "update"), domainModelOrEntityType, entityClass, values, null, 0);
+    }
+
+    @Override
+    public long updateAll(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull Map<String, Object> values) {
+        return updateAll(input, domainModelOrEntityType, entityClass, values, null, 0);
+    }
+
+    @Override
+    public long updateAll(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull Map<String, Object> values, Map<String, String> entityFieldMap, int chunkSize) {
+        return updateAll(JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "update"), domainModelOrEntityType, entityClass, values, entityFieldMap, chunkSize);
+    }
+
+    @Override
+    public long updateAll(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull Map<String, Object> values, Map<String, String> entityFieldMap, int chunkSize) {
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
+        var descriptor = compile(domainModelOrEntityType, entityClass, input, searchableFields, entityFieldMap);
+        var entityValues = JPABulkProcessor.updateValues(values, entityClass, entityManager, searchableFields, entityFieldMap);
+        return execute(descriptor, entityClass, chunkSize, searchableFields, entityFieldMap,
+                range -> JPABulkProcessor.update(entityManager, descriptor, entityClass, entityValues, range, searchableFields, entityFieldMap));
+    }
+
+    private static FilterDescriptor compile(Class<?> domainModelOrEntityType, Class<?> entityClass, JPASearchInput input, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        JPASearchCore.checkLimits(domainModelOrEntityType, entityClass, input.getFilter(), searchableFields, entityFieldMap);
+        var descriptor = JPASearchCore.compile(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        JPASearchCore.recordUsage(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        if (descriptor == null || descriptor.isUnrestricted()) {
+            throw new JPASearchException("Invalid bulk statement: a filter is required");
+        }
+
+        return descriptor;
+    }
+
+    private long execute(FilterDescriptor descriptor, Class<E> entityClass, int chunkSize, Map<String, Pair<Searchable, Field>> searchableFields,
+                         Map<String, String> entityFieldMap, Function<Pair<Long, Long>, Integer> statement) {
+
+        if (descriptor.isEmpty()) {
+            JPASearchMetrics.addSavedRoundTrips(1);
+            return 0;
+        }
+
+        Function<Pair<Long, Long>, Integer> invalidating = chunk -> {
+            var result = statement.apply(chunk);
+            JPASearchResultCache.invalidateAfterCommit(entityClass);
+            return result;
+        };
+
+        if (chunkSize <= 0) {
+            return inTransaction(() -> invalidating.apply(null));
+        }
+
+        // keyset: each chunk ends at the chunkSize-th matching id after the previous one, whatever the gaps between the ids
+        long total = 0;
+        Long last = null;
+        while (true) {
+            var after = last;
+            var upper = inTransaction(() -> JPABulkProcessor.nextChunkEnd(entityManager, descriptor, entityClass, after, chunkSize, searchableFields, entityFieldMap));
+            var chunk = Pair.of(after, upper);
+            total += inTransaction(() -> invalidating.apply(chunk));
+
+            if (upper == null) {
+                break;
+            }
+
+            last = upper;
+        }
+
+        return total;
+    }
+
+    /**
+     * In the transaction of the caller, if any, otherwise in a new one
+     */
+    private <T> T inTransaction(Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+
+        if (transactionTemplate == null) {
+            var manager = transactionManager.getIfUnique();
+            if (manager == null) {
+                throw new JPASearchException("Bulk statements outside a transaction require a unique PlatformTransactionManager");
+            }
+
+            transactionTemplate = new TransactionTemplate(manager);
+        }
+
+        return transactionTemplate.execute(s -> work.get());
+    }
+}
@@ -0,0 +1,115 @@
+package app.tozzi.repository;
+
+import app.tozzi.model.input.JPASearchInput;
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distinct values of a {@link app.tozzi.annotation.Searchable} field, e.g. for autocomplete: ordered, starting with a prefix and limited.
+ * Null values are excluded. See {@link app.tozzi.core.JPASearchDistinctValues} for the optional in-memory cache.
+ */
+public interface JPADistinctValuesRepository<E> {
+
+    /**
+     * Mode 1: Distinct values by filters
+     *
+     * @param key                     searchable field
+     * @param prefix                  prefix of the values (string fields only), null for all the values
+     * @param limit                   maximum number of values
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @return ordered distinct values
+     */
+    List<Object> distinctValues(@NonNull String key, String prefix, int limit, @NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass);
+
+    /**
+     * Mode 2: Distinct values by filters
+     *
+     * @param key                     searchable field
+     * @param prefix                  prefix of the values (string fields only), null for all the values
+     * @param limit                   maximum number of values
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @return ordered distinct values
+     */
+    List<Object> distinctValues(@NonNull String key, String prefix, int limit, @NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass);
+
+    /**
+     * Mode 1: Distinct values by filters with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param key                     searchable field
+     * @param prefix                  prefix of the values (string fields only), null for all the values
+     * @param limit                   maximum number of values
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param entityFieldMap
+     * @return ordered distinct values
+     */
+    List<Object> distinctValues(@NonNull String key, String prefix, int limit, @NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 2: Distinct values by filters with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param key                     searchable field
+     * @param prefix                  prefix of the values (string fields only), null for all the values
+     * @param limit                   maximum number of values
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param entityFieldMap
+     * @return ordered distinct values
+     */
+    List<Object> distinctValues(@NonNull String key, String prefix, int limit, @NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 1: Distinct values by filters with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param key                     searchable field
+     * @param prefix                  prefix of the values (string fields only), null for all the values
+     * @param ignoreCase              prefix matched ignoring case: {@code LOWER(<field>) LIKE}, that needs an index on the lower case column
+     * @param limit                   maximum number of values
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param entityFieldMap
+     * @return ordered distinct values
+     */
+    List<Object> distinctValues(@NonNull String key, String prefix, boolean ignoreCase, int limit, @NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 2: Distinct values by filters with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param key                     searchable field
+     * @param prefix                  prefix of the values (string fields only), null for all the values
+     * @param ignoreCase              prefix matched ignoring case: {@code LOWER(<field>) LIKE}, that needs an index on the lower case column
+     * @param limit                   maximum number of values
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param entityFieldMap
+     * @return ordered distinct values
+     */
+    List<Object> distinctValues(@NonNull String key, String prefix, boolean ignoreCase, int limit, @NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap);
+
+}
@@ -0,0 +1,60 @@
+package app.tozzi.repository;
+
+import app.tozzi.core.JPASearchCore;
+import app.tozzi.core.JPASearchDistinctValues;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.JPASearchUtils;
+import app.tozzi.util.ReflectionUtils;
+import jakarta.persistence.EntityManager;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class JPADistinctValuesRepositoryImpl<E> implements JPADistinctValuesRepository<E> {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Override
+    public List<Object> distinctValues(@NonNull String key, String prefix, int limit, @NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return distinctValues(key, prefix, limit, JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "distinct"), domainModelOrEntityType, entityClass, null);
+    }
+
+    @Override
+    public List<Object> distinctValues(@NonNull String key, String prefix, int limit, @NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return distinctValues(key, prefix, limit, input, domainModelOrEntityType, entityClass, null);
+    }
+
+    @Override
+    public List<Object> distinctValues(@NonNull String key, String prefix, int limit, @NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap) {
+        return distinctValues(key, prefix, limit, JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "distinct"), domainModelOrEntityType, entityClass, entityFieldMap);
+    }
+
+    @Override
+    public List<Object> distinctValues(@NonNull String key, String prefix, int limit, @NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap) {
+        return distinctValues(key, prefix, false, limit, input, domainModelOrEntityType, entityClass, entityFieldMap);
+    }
+
+    @Override
+    public List<Object> distinctValues(@NonNull String key, String prefix, boolean ignoreCase, int limit, @NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap) {
+        return distinctValues(key, prefix, ignoreCase, limit, JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "distinct"), domainModelOrEntityType, entityClass, entityFieldMap);
+    }
+
+    @Override
+    public List<Object> distinctValues(@NonNull String key, String prefix, boolean ignoreCase, int limit, @NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap) {
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
+        JPASearchCore.checkLimits(domainModelOrEntityType, entityClass, input.getFilter(), searchableFields, entityFieldMap);
+        var descriptor = JPASearchCore.compile(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        JPASearchCore.recordUsage(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        if (descriptor != null && descriptor.isEmpty()) {
+            JPASearchMetrics.addSavedRoundTrips(1);
+        }
+
+        return JPASearchDistinctValues.find(entityManager, descriptor, key, prefix, ignoreCase, limit, entityClass, searchableFields, entityFieldMap);
+    }
+}
@@ -0,0 +1,76 @@
+package app.tozzi.repository;
+
+import app.tozzi.model.input.JPASearchInput;
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Faceted counts: number of entities matching the filters by value of one or more {@link app.tozzi.annotation.Searchable} fields.
+ * Each facet is computed by a GROUP BY query; facets are queried concurrently like batches (see {@link JPABatchRepository}).
+ * <p>
+ * With excludeOwnFilter, the filters on the facet field itself that are combined in AND with the rest of the filters are ignored when counting that facet,
+ * so that the counts show the other values that can be selected.
+ */
+public interface JPAFacetRepository<E> {
+
+    /**
+     * Mode 1: Faceted counts by filters
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param keys                    facet fields
+     * @param excludeOwnFilter        ignore the filters on the facet field
+     * @return for each facet field, counts by value ordered by count (descending)
+     */
+    Map<String, Map<Object, Long>> facets(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> keys, boolean excludeOwnFilter);
+
+    /**
+     * Mode 2: Faceted counts by filters
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param keys                    facet fields
+     * @param excludeOwnFilter        ignore the filters on the facet field
+     * @return for each facet field, counts by value ordered by count (descending)
+     */
+    Map<String, Map<Object, Long>> facets(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> keys, boolean excludeOwnFilter);
+
+    /**
+     * Mode 1: Faceted counts by filters with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param keys                    facet fields
+     * @param excludeOwnFilter        ignore the filters on the facet field
+     * @param entityFieldMap
+     * @return for each facet field, counts by value ordered by count (descending)
+     */
+    Map<String, Map<Object, Long>> facets(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> keys, boolean excludeOwnFilter, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 2: Faceted counts by filters with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param keys                    facet fields
+     * @param excludeOwnFilter        ignore the filters on the facet field
+     * @param entityFieldMap
+     * @return for each facet field, counts by value ordered by count (descending)
+     */
+    Map<String, Map<Object, Long>> facets(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> keys, boolean excludeOwnFilter, Map<String, String> entityFieldMap);
+
+}
@@ -0,0 +1,94 @@
+package app.tozzi.repository;
+
+import app.tozzi.core.JPASearchCore;
+import app.tozzi.core.JPASearchQueries;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.JPASearchOperatorGroup;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.JPASearchUtils;
+import app.tozzi.util.ReflectionUtils;
+import jakarta.persistence.EntityManager;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+@Component
+public class JPAFacetRepositoryImpl<E> implements JPAFacetRepository<E> {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Override
+    public Map<String, Map<Object, Long>> facets(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> keys, boolean excludeOwnFilter) {
+        return performFacets(JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "facets"), domainModelOrEntityType, entityClass, keys, excludeOwnFilter, null);
+    }
+
+    @Override
+    public Map<String, Map<Object, Long>> facets(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> keys, boolean excludeOwnFilter) {
+        return performFacets(input, domainModelOrEntityType, entityClass, keys, excludeOwnFilter, null);
+    }
+
+    @Override
+    public Map<String, Map<Object, Long>> facets(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> keys, boolean excludeOwnFilter, Map<String, String> entityFieldMap) {
+        return performFacets(JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "facets"), domainModelOrEntityType, entityClass, keys, excludeOwnFilter, entityFieldMap);
+    }
+
+    @Override
+    public Map<String, Map<Object, Long>> facets(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, @NonNull List<String> keys, boolean excludeOwnFilter, Map<String, String> entityFieldMap) {
+        return performFacets(input, domainModelOrEntityType, entityClass, keys, excludeOwnFilter, entityFieldMap);
+    }
+
+    private Map<String, Map<Object, Long>> performFacets(JPASearchInput input, Class<?> domainModelOrEntityType, Class<E> entityClass, List<String> keys, boolean excludeOwnFilter, Map<String, String> entityFieldMap) {
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
+        JPASearchCore.checkLimits(domainModelOrEntityType, entityClass, input.getFilter(), searchableFields, entityFieldMap);
+        var descriptor = JPASearchCore.compile(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        // once per search, not per facet
+        JPASearchCore.recordUsage(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        var tasks = new ArrayList<Function<EntityManager, Map<Object, Long>>>(keys.size());
+
+        for (var key : keys) {
+            var facetDescriptor = excludeOwnFilter ? JPASearchCore.compile(domainModelOrEntityType, withoutFilter(input.getFilter(), key), searchableFields, entityFieldMap) : descriptor;
+            if (facetDescriptor != null && facetDescriptor.isEmpty()) {
+                JPASearchMetrics.addSavedRoundTrips(1);
+            }
+
+            tasks.add(em -> JPASearchQueries.facet(em, facetDescriptor, searchableFields, entityFieldMap, entityClass, key));
+        }
+
+        var results = JPASearchQueries.executeAll(entityManager, tasks);
+        var facets = new LinkedHashMap<String, Map<Object, Long>>();
+        for (int i = 0; i < keys.size(); i++) {
+            facets.put(keys.get(i), results.get(i));
+        }
+
+        return facets;
+    }
+
+    /**
+     * Removes the filters on the key combined in AND with the rest of the filter
+     */
+    private static JPASearchInput.RootFilter withoutFilter(JPASearchInput.RootFilter filter, String key) {
+        if (filter == null || filter.getFilters() == null || JPASearchOperatorGroup.load(filter.getOperator()) != JPASearchOperatorGroup.AND) {
+            return filter;
+        }
+
+        var result = new JPASearchInput.RootFilter();
+        result.setOperator(filter.getOperator());
+        result.setFilters(new ArrayList<>());
+        for (var f : filter.getFilters()) {
+            if (f instanceof JPASearchInput.FieldFilter fieldFilter && key.equals(fieldFilter.getKey())) {
+                continue;
+            }
+
+            result.getFilters().add(f instanceof JPASearchInput.RootFilter rootFilter ? withoutFilter(rootFilter, key) : f);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,245 @@
+package app.tozzi.repository;
+
+import app.tozzi.model.input.JPASearchInput;
+import jakarta.persistence.criteria.JoinType;
+import lombok.NonNull;
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Searches with fetches that can be combined with pagination: the count query of a page is not affected by the fetches.
+ * Fetches are applied as fetch joins or as a {@link jakarta.persistence.EntityGraph} (load graph).
+ */
+public interface JPAFetchRepository<E> {
+
+    /**
+     * Mode 1: Search by filters without sorting and pagination, loading the fetches with an entity graph
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @return list of entities
+     */
+    List<E> findAllWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches);
+
+    /**
+     * Mode 2: Search by filters without sorting and pagination, loading the fetches with an entity graph
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @return list of entities
+     */
+    List<E> findAllWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches);
+
+    /**
+     * Mode 1: Search by filters without sorting and pagination, loading the fetches with an entity graph and with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @param entityFieldMap
+     * @return list of entities
+     */
+    List<E> findAllWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 2: Search by filters without sorting and pagination, loading the fetches with an entity graph and with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @param entityFieldMap
+     * @return list of entities
+     */
+    List<E> findAllWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 1: Search by filters with sorting and without pagination, loading the fetches with an entity graph
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @return list of entities
+     */
+    List<E> findAllSortedWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches);
+
+    /**
+     * Mode 2: Search by filters with sorting and without pagination, loading the fetches with an entity graph
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @return list of entities
+     */
+    List<E> findAllSortedWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches);
+
+    /**
+     * Mode 1: Search by filters with sorting and without pagination, loading the fetches with an entity graph and with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @param entityFieldMap
+     * @return list of entities
+     */
+    List<E> findAllSortedWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 2: Search by filters with sorting and without pagination, loading the fetches with an entity graph and with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @param entityFieldMap
+     * @return list of entities
+     */
+    List<E> findAllSortedWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 1: Search by filters with sorting and pagination, loading the fetches with an entity graph.
+     * If a fetch is a collection, the ids of the page are loaded first and then the entities with their fetches
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @return list of entities of the searched page
+     */
+    Page<E> findAllWithPaginationAndSortingWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches);
+
+    /**
+     * Mode 2: Search by filters with sorting and pagination, loading the fetches with an entity graph.
+     * If a fetch is a collection, the ids of the page are loaded first and then the entities with their fetches
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @return list of entities of the searched page
+     */
+    Page<E> findAllWithPaginationAndSortingWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches);
+
+    /**
+     * Mode 1: Search by filters with sorting and pagination, loading the fetches with an entity graph.
+     * If a fetch is a collection, the ids of the page are loaded first and then the entities with their fetches and with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @param entityFieldMap
+     * @return list of entities of the searched page
+     */
+    Page<E> findAllWithPaginationAndSortingWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 2: Search by filters with sorting and pagination, loading the fetches with an entity graph.
+     * If a fetch is a collection, the ids of the page are loaded first and then the entities with their fetches and with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 attributes to load (join types are ignored)
+     * @param entityFieldMap
+     * @return list of entities of the searched page
+     */
+    Page<E> findAllWithPaginationAndSortingWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 1: Search by filters with sorting, pagination and with forced fetched Join
+     * <p>
+     * If a fetch is a collection, the ids of the page are loaded first and then the entities with their fetches, so that the page is not computed in memory
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 fetches joins
+     * @return list of entities of the searched page
+     */
+    Page<E> findAllWithPaginationAndSorting(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches);
+
+    /**
+     * Mode 2: Search by filters with sorting, pagination and with forced fetched Join
+     * <p>
+     * If a fetch is a collection, the ids of the page are loaded first and then the entities with their fetches, so that the page is not computed in memory
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 fetches joins
+     * @return list of entities of the searched page
+     */
+    Page<E> findAllWithPaginationAndSorting(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches);
+
+    /**
+     * Mode 1: Search by filters with sorting, pagination and with forced fetched Join and with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     * <p>
+     * If a fetch is a collection, the ids of the page are loaded first and then the entities with their fetches, so that the page is not computed in memory
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 fetches joins
+     * @param entityFieldMap
+     * @return list of entities of the searched page
+     */
+    Page<E> findAllWithPaginationAndSorting(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 2: Search by filters with sorting, pagination and with forced fetched Join and with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     * <p>
+     * If a fetch is a collection, the ids of the page are loaded first and then the entities with their fetches, so that the page is not computed in memory
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 fetches joins
+     * @param entityFieldMap
+     * @return list of entities of the searched page
+     */
+    Page<E> findAllWithPaginationAndSorting(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap);
+
+}
@@ -0,0 +1,279 @@
+package app.tozzi.repository;
+
+import app.tozzi.annotation.Searchable;
+import app.tozzi.core.JPASearchCore;
+import app.tozzi.core.JPASearchFetchPlan;
+import app.tozzi.core.JPASearchJoinRegistry;
+import app.tozzi.core.JPASearchQueries;
+import app.tozzi.exception.InvalidFieldException;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.FilterDescriptor;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.JPASearchUtils;
+import app.tozzi.util.ReflectionUtils;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Selection;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import lombok.NonNull;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Component
+public class JPAFetchRepositoryImpl<E> implements JPAFetchRepository<E> {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Override
+    public List<E> findAllWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches) {
+        return performSearch(filters, domainModelOrEntityType, entityClass, fetches, null, false);
+    }
+
+    @Override
+    public List<E> findAllWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches) {
+        return performSearch(input, domainModelOrEntityType, entityClass, fetches, null, false);
+    }
+
+    @Override
+    public List<E> findAllWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return performSearch(filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false);
+    }
+
+    @Override
+    public List<E> findAllWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return performSearch(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false);
+    }
+
+    @Override
+    public List<E> findAllSortedWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches) {
+        return performSearch(filters, domainModelOrEntityType, entityClass, fetches, null, true);
+    }
+
+    @Override
+    public List<E> findAllSortedWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches) {
+        return performSearch(input, domainModelOrEntityType, entityClass, fetches, null, true);
+    }
+
+    @Override
+    public List<E> findAllSortedWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return performSearch(filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true);
+    }
+
+    @Override
+    public List<E> findAllSortedWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return performSearch(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true);
+    }
+
+    @Override
+    public Page<E> findAllWithPaginationAndSortingWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches) {
+        return performPagedSearch(filters, domainModelOrEntityType, entityClass, fetches, null, true);
+    }
+
+    @Override
+    public Page<E> findAllWithPaginationAndSortingWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches) {
+        return performPagedSearch(input, domainModelOrEntityType, entityClass, fetches, null, true);
+    }
+
+    @Override
+    public Page<E> findAllWithPaginationAndSortingWithEntityGraph(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return performPagedSearch(filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true);
+    }
+
+    @Override
+    public Page<E> findAllWithPaginationAndSortingWithEntityGraph(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return performPagedSearch(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true);
+    }
+
+    @Override
+    public Page<E> findAllWithPaginationAndSorting(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches) {
+        return performPagedSearch(filters, domainModelOrEntityType, entityClass, fetches, null, false);
+    }
+
+    @Override
+    public Page<E> findAllWithPaginationAndSorting(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches) {
+        return performPagedSearch(input, domainModelOrEntityType, entityClass, fetches, null, false);
+    }
+
+    @Override
+    public Page<E> findAllWithPaginationAndSorting(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return performPagedSearch(filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false);
+    }
+
+    @Override
+    public Page<E> findAllWithPaginationAndSorting(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return performPagedSearch(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false);
+    }
+
+    private List<E> performSearch(
+            Map<String, String> inputMap,
+            @NonNull Class<?> domainModelOrEntityType,
+            @NonNull Class<E> entityClass,
+            Map<String, JoinType> fetches,
+            Map<String, String> entityFieldMap,
+            boolean withSorting) {
+
+        var input = JPASearchUtils.toObject(inputMap, false, withSorting, false, domainModelOrEntityType, "find");
+        return performSearch(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, withSorting);
+    }
+
+    private List<E> performSearch(
+            JPASearchInput input,
+            @NonNull Class<?> domainModelOrEntityType,
+            @NonNull Class<E> entityClass,
+            Map<String, JoinType> fetches,
+            Map<String, String> entityFieldMap,
+            boolean withSorting) {
+
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
+        JPASearchCore.checkLimits(domainModelOrEntityType, entityClass, input.getFilter(), searchableFields, entityFieldMap);
+        var sort = withSorting ? JPASearchCore.loadSort(domainModelOrEntityType, input.getOptions(), searchableFields, entityFieldMap) : Sort.unsorted();
+        var descriptor = JPASearchCore.compile(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        JPASearchCore.recordUsage(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+
+        if (descriptor != null && descriptor.isEmpty()) {
+            JPASearchMetrics.addSavedRoundTrips(1);
+            return new ArrayList<>();
+        }
+
+        return JPASearchQueries.select(entityManager, descriptor, searchableFields, entityFieldMap, entityClass, JPASearchFetchPlan.of(fetches), true, sort).getResultList();
+    }
+
+    private Page<E> performPagedSearch(
+            Map<String, String> inputMap,
+            @NonNull Class<?> domainModelOrEntityType,
+            @NonNull Class<E> entityClass,
+            Map<String, JoinType> fetches,
+            Map<String, String> entityFieldMap,
+            boolean entityGraph) {
+
+        var input = JPASearchUtils.toObject(inputMap, true, true, false, domainModelOrEntityType, "page");
+        return performPagedSearch(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, entityGraph);
+    }
+
+    private Page<E> performPagedSearch(
+            JPASearchInput input,
+            @NonNull Class<?> domainModelOrEntityType,
+            @NonNull Class<E> entityClass,
+            Map<String, JoinType> fetches,
+            Map<String, String> entityFieldMap,
+            boolean entityGraph) {
+
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
+        JPASearchCore.checkLimits(domainModelOrEntityType, entityClass, input.getFilter(), searchableFields, entityFieldMap);
+        var pageRequest = JPASearchCore.loadSortAndPagination(domainModelOrEntityType, input.getOptions(), searchableFields, entityFieldMap);
+        var descriptor = JPASearchCore.compile(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        JPASearchCore.recordUsage(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+
+        if (descriptor != null && descriptor.isEmpty()) {
+            JPASearchMetrics.addSavedRoundTrips(2);
+            return new PageImpl<>(new ArrayList<>(), pageRequest, 0);
+        }
+
+        var plan = JPASearchFetchPlan.of(fetches);
+        var entityType = entityManager.getMetamodel().entity(entityClass);
+        List<E> content;
+
+        if (entityType.hasSingleIdAttribute() && plan.hasCollectionFetches(entityManager.getMetamodel(), entityClass)) {
+            // fetched collections multiply the rows: the page is computed on the ids, then the entities are loaded
+            var idName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+            checkSort(entityClass, pageRequest.getSort());
+            var ids = findIds(descriptor, searchableFields, entityFieldMap, entityClass, idName, pageRequest);
+            content = ids.isEmpty() ? new ArrayList<>() : findByIds(entityClass, idName, ids, plan, entityGraph);
+
+        } else {
+            var query = JPASearchQueries.select(entityManager, descriptor, searchableFields, entityFieldMap, entityClass, plan, entityGraph, pageRequest.getSort());
+            query.setFirstResult((int) pageRequest.getOffset());
+            query.setMaxResults(pageRequest.getPageSize());
+            content = query.getResultList();
+        }
+
+        return PageableExecutionUtils.getPage(content, pageRequest, () -> JPASearchQueries.cachedCount(entityManager, input.getFilter(), descriptor, domainModelOrEntityType, searchableFields, entityFieldMap, entityClass));
+    }
+
+    /**
+     * The ids are selected with the sort expressions: a to-many sort path gives a row per element, the page would come out short
+     */
+    private void checkSort(Class<E> entityClass, Sort sort) {
+        for (var order : sort) {
+            ManagedType<?> type = entityManager.getMetamodel().managedType(entityClass);
+            for (var segment : order.getProperty().split("\\.")) {
+                var attribute = type.getAttribute(segment);
+                if (attribute.isCollection()) {
+                    throw new InvalidFieldException("Field [" + order.getProperty() + "] is not sortable with collection fetches: to-many path", order.getProperty());
+                }
+
+                if (!(attribute instanceof SingularAttribute<?, ?> singular && singular.getType() instanceof ManagedType<?> managedType)) {
+                    break;
+                }
+
+                type = managedType;
+            }
+        }
+    }
+
+    private List<Object> findIds(FilterDescriptor descriptor, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap,
+                                 Class<E> entityClass, String idName, PageRequest pageRequest) {
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createTupleQuery();
+        var root = criteriaQuery.from(entityClass);
+
+        Specification<E> specification = JPASearchCore.specification(descriptor, searchableFields, null, entityFieldMap);
+        var predicate = specification.toPredicate(root, criteriaQuery, criteriaBuilder);
+        if (predicate != null) {
+            criteriaQuery.where(predicate);
+        }
+
+        // with DISTINCT, the ORDER BY expressions must be selected too
+        var orders = QueryUtils.toOrders(pageRequest.getSort(), root, criteriaBuilder);
+        var selections = new ArrayList<Selection<?>>();
+        selections.add(root.get(idName));
+        orders.forEach(o -> selections.add(o.getExpression()));
+        criteriaQuery.multiselect(selections).distinct(true).orderBy(orders);
+
+        return JPASearchQueries.applyQueryTimeout(entityManager.createQuery(criteriaQuery))
+                .setFirstResult((int) pageRequest.getOffset())
+                .setMaxResults(pageRequest.getPageSize())
+                .getResultList().stream()
+                .map(t -> t.get(0))
+                .distinct()
+                .toList();
+    }
+
+    private List<E> findByIds(Class<E> entityClass, String idName, List<Object> ids, JPASearchFetchPlan plan, boolean entityGraph) {
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(entityClass);
+        var root = criteriaQuery.from(entityClass);
+
+        if (!entityGraph) {
+            plan.apply(new JPASearchJoinRegistry(root));
+        }
+
+        criteriaQuery.select(root).distinct(true).where(root.get(idName).in(ids));
+        var query = JPASearchQueries.applyQueryTimeout(entityManager.createQuery(criteriaQuery));
+        if (entityGraph) {
+            query.setHint(JPASearchFetchPlan.LOAD_GRAPH_HINT, plan.toEntityGraph(entityManager, entityClass));
+        }
+
+        var persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        var entities = new HashMap<Object, E>();
+        query.getResultList().forEach(e -> entities.put(persistenceUnitUtil.getIdentifier(e), e));
+
+        // same order as the ids page
+        return ids.stream().map(entities::get).filter(Objects::nonNull).collect(Collectors.toCollection(ArrayList::new));
+    }
+}
@@ -0,0 +1,67 @@
+package app.tozzi.repository;
+
+import app.tozzi.model.JPASearchPage;
+import app.tozzi.model.input.JPASearchInput;
+import lombok.NonNull;
+
+import java.util.Map;
+
+/**
+ * Paginated searches executing the count query in parallel with the content query, on a second connection
+ * (see {@link app.tozzi.config.JPASearchConfig#getAsyncExecutor()}).
+ * The queries are executed in parallel only outside a transaction or within a read-only transaction, sequentially otherwise:
+ * a second connection would not see the uncommitted changes of the current transaction.
+ */
+public interface JPAParallelPageRepository<E> {
+
+    /**
+     * Mode 1: Search by filters with sorting and pagination, counting in parallel
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @return page of entities, with the execution time of both queries
+     */
+    JPASearchPage<E> findAllWithPaginationAndSortingParallel(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass);
+
+    /**
+     * Mode 2: Search by filters with sorting and pagination, counting in parallel
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @return page of entities, with the execution time of both queries
+     */
+    JPASearchPage<E> findAllWithPaginationAndSortingParallel(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass);
+
+    /**
+     * Mode 1: Search by filters with sorting and pagination, counting in parallel and with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param entityFieldMap
+     * @return page of entities, with the execution time of both queries
+     */
+    JPASearchPage<E> findAllWithPaginationAndSortingParallel(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap);
+
+    /**
+     * Mode 2: Search by filters with sorting and pagination, counting in parallel and with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityClass             entity type
+     * @param entityFieldMap
+     * @return page of entities, with the execution time of both queries
+     */
+    JPASearchPage<E> findAllWithPaginationAndSortingParallel(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap);
+
+}
@@ -0,0 +1,116 @@
+package app.tozzi.repository;
+
+import app.tozzi.core.JPASearchCore;
+import app.tozzi.core.JPASearchFetchPlan;
+import app.tozzi.core.JPASearchQueries;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.JPASearchPage;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.AsyncUtils;
+import app.tozzi.util.JPASearchUtils;
+import app.tozzi.util.ReflectionUtils;
+import jakarta.persistence.EntityManager;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+@Component
+public class JPAParallelPageRepositoryImpl<E> implements JPAParallelPageRepository<E> {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Override
+    public JPASearchPage<E> findAllWithPaginationAndSortingParallel(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return performSearch(JPASearchUtils.toObject(filters, true, true, false, domainModelOrEntityType, "page"), domainModelOrEntityType, entityClass, null);
+    }
+
+    @Override
+    public JPASearchPage<E> findAllWithPaginationAndSortingParallel(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return performSearch(input, domainModelOrEntityType, entityClass, null);
+    }
+
+    @Override
+    public JPASearchPage<E> findAllWithPaginationAndSortingParallel(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap) {
+        return performSearch(JPASearchUtils.toObject(filters, true, true, false, domainModelOrEntityType, "page"), domainModelOrEntityType, entityClass, entityFieldMap);
+    }
+
+    @Override
+    public JPASearchPage<E> findAllWithPaginationAndSortingParallel(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap) {
+        return performSearch(input, domainModelOrEntityType, entityClass, entityFieldMap);
+    }
+
+    private JPASearchPage<E> performSearch(JPASearchInput input, Class<?> domainModelOrEntityType, Class<E> entityClass, Map<String, String> entityFieldMap) {
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
+        JPASearchCore.checkLimits(domainModelOrEntityType, entityClass, input.getFilter(), searchableFields, entityFieldMap);
+        var pageRequest = JPASearchCore.loadSortAndPagination(domainModelOrEntityType, input.getOptions(), searchableFields, entityFieldMap);
+        var descriptor = JPASearchCore.compile(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        JPASearchCore.recordUsage(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+
+        if (descriptor != null && descriptor.isEmpty()) {
+            JPASearchMetrics.addSavedRoundTrips(2);
+            return new JPASearchPage<>(new ArrayList<>(), pageRequest, 0, Duration.ZERO, Duration.ZERO, false);
+        }
+
+        var query = JPASearchQueries.select(entityManager, descriptor, searchableFields, entityFieldMap, entityClass, JPASearchFetchPlan.of(null), false, pageRequest.getSort());
+        query.setFirstResult((int) pageRequest.getOffset());
+        query.setMaxResults(pageRequest.getPageSize());
+
+        if (!AsyncUtils.isParallelAllowed()) {
+            var start = System.nanoTime();
+            var content = query.getResultList();
+            var contentTime = Duration.ofNanos(System.nanoTime() - start);
+
+            // same shortcut as Spring Data: no count if the total can be deduced from the content
+            if (isTotalDeducible(pageRequest, content.size())) {
+                return new JPASearchPage<>(content, pageRequest, content.size(), contentTime, Duration.ZERO, false);
+            }
+
+            start = System.nanoTime();
+            var total = JPASearchQueries.cachedCount(entityManager, input.getFilter(), descriptor, domainModelOrEntityType, searchableFields, entityFieldMap, entityClass);
+            return new JPASearchPage<>(content, pageRequest, total, contentTime, Duration.ofNanos(System.nanoTime() - start), false);
+        }
+
+        var count = AsyncUtils.supplyAsync(() -> {
+            var start = System.nanoTime();
+            var countEntityManager = entityManager.getEntityManagerFactory().createEntityManager();
+            try {
+                var total = JPASearchQueries.cachedCount(countEntityManager, input.getFilter(), descriptor, domainModelOrEntityType, searchableFields, entityFieldMap, entityClass);
+                return new long[]{total, System.nanoTime() - start};
+            } finally {
+                countEntityManager.close();
+            }
+        });
+
+        var start = System.nanoTime();
+        var content = query.getResultList();
+        var contentTime = Duration.ofNanos(System.nanoTime() - start);
+
+        if (isTotalDeducible(pageRequest, content.size())) {
+            // not awaited: the count completes in the background (and fills the count cache), its failures are ignored
+            count.cancel(false);
+            return new JPASearchPage<>(content, pageRequest, content.size(), contentTime, Duration.ZERO, true);
+        }
+
+        try {
+            var total = count.join();
+            return new JPASearchPage<>(content, pageRequest, total[0], contentTime, Duration.ofNanos(total[1]), true);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+
+            throw e;
+        }
+    }
+
+    private static boolean isTotalDeducible(PageRequest pageRequest, int contentSize) {
+        return pageRequest.getOffset() == 0 && contentSize < pageRequest.getPageSize();
+    }
+}
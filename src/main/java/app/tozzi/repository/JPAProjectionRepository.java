@@ -1,11 +1,13 @@
 package app.tozzi.repository;
 
 import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.AsyncUtils;
 import jakarta.persistence.criteria.JoinType;
 import lombok.NonNull;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface JPAProjectionRepository<E> {
 
@@ -328,4 +330,108 @@ public interface JPAProjectionRepository<E> {
      */
     List<Map<String, Object>> projectionWithSortingClassic(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap, Map<String, JoinType> overrideJoinTypes);
 
+    /**
+     * Mode 1: Asynchronous projected search by filters without sorting and pagination
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Projectable} and {@link app.tozzi.annotation.NestedProjectable} annotations
+     * @param entityClass             entity type
+     * @return list of results in map format whose keys correspond to the values of the entity fields
+     */
+    default CompletableFuture<List<Map<String, Object>>> projectionAsync(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return AsyncUtils.supplyAsync(() -> projection(filters, domainModelOrEntityType, entityClass));
+    }
+
+    /**
+     * Mode 2: Asynchronous projected search by filters without sorting and pagination
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Projectable} and {@link app.tozzi.annotation.NestedProjectable} annotations
+     * @param entityClass             entity type
+     * @return list of results in map format whose keys correspond to the values of the entity fields
+     */
+    default CompletableFuture<List<Map<String, Object>>> projectionAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return AsyncUtils.supplyAsync(() -> projection(input, domainModelOrEntityType, entityClass));
+    }
+
+    /**
+     * Mode 1: Asynchronous projected search by filters without sorting and pagination
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Projectable} and {@link app.tozzi.annotation.NestedProjectable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 fetches joins
+     * @param entityFieldMap
+     * @return list of results in map format whose keys correspond to the values of the entity fields
+     */
+    default CompletableFuture<List<Map<String, Object>>> projectionAsync(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> projection(filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap));
+    }
+
+    /**
+     * Mode 2: Asynchronous projected search by filters without sorting and pagination
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Projectable} and {@link app.tozzi.annotation.NestedProjectable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 fetches joins
+     * @param entityFieldMap
+     * @return list of results in map format whose keys correspond to the values of the entity fields
+     */
+    default CompletableFuture<List<Map<String, Object>>> projectionAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> projection(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap));
+    }
+
+    /**
+     * Mode 1: Asynchronous projected search by filters with sorting and without pagination
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Projectable} and {@link app.tozzi.annotation.NestedProjectable} annotations
+     * @param entityClass             entity type
+     * @return list of results in map format whose keys correspond to the values of the entity fields
+     */
+    default CompletableFuture<List<Map<String, Object>>> projectionWithSortingAsync(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return AsyncUtils.supplyAsync(() -> projectionWithSorting(filters, domainModelOrEntityType, entityClass));
+    }
+
+    /**
+     * Mode 2: Asynchronous projected search by filters with sorting and without pagination
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Projectable} and {@link app.tozzi.annotation.NestedProjectable} annotations
+     * @param entityClass             entity type
+     * @return list of results in map format whose keys correspond to the values of the entity fields
+     */
+    default CompletableFuture<List<Map<String, Object>>> projectionWithSortingAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return AsyncUtils.supplyAsync(() -> projectionWithSorting(input, domainModelOrEntityType, entityClass));
+    }
+
+    /**
+     * Mode 1: Asynchronous projected search by filters with sorting and without pagination
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Projectable} and {@link app.tozzi.annotation.NestedProjectable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 fetches joins
+     * @param entityFieldMap
+     * @return list of results in map format whose keys correspond to the values of the entity fields
+     */
+    default CompletableFuture<List<Map<String, Object>>> projectionWithSortingAsync(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> projectionWithSorting(filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap));
+    }
+
+    /**
+     * Mode 2: Asynchronous projected search by filters with sorting and without pagination
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Projectable} and {@link app.tozzi.annotation.NestedProjectable} annotations
+     * @param entityClass             entity type
+     * @param fetches                 fetches joins
+     * @param entityFieldMap
+     * @return list of results in map format whose keys correspond to the values of the entity fields
+     */
+    default CompletableFuture<List<Map<String, Object>>> projectionWithSortingAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> projectionWithSorting(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap));
+    }
+
 }
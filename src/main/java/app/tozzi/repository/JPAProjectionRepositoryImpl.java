@@ -1,17 +1,33 @@
 package app.tozzi.repository;
 
+import app.tozzi.cache.JPASearchCacheKeys;
+import app.tozzi.cache.JPASearchSingleFlight;
+import app.tozzi.config.JPASearchConfig;
 import app.tozzi.core.JPAProjectionProcessor;
+import app.tozzi.core.JPASearchCore;
+import app.tozzi.core.JPASearchIndexes;
+import app.tozzi.core.JPASearchQueries;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.metrics.JPASearchObservations;
+import app.tozzi.metrics.JPASearchPhase;
 import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.AsyncUtils;
+import app.tozzi.util.BulkheadUtils;
 import app.tozzi.util.JPASearchUtils;
 import app.tozzi.util.ReflectionUtils;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.criteria.JoinType;
 import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 @Component
 public class JPAProjectionRepositoryImpl<E> implements JPAProjectionRepository<E> {
@@ -21,127 +37,183 @@ public class JPAProjectionRepositoryImpl<E> implements JPAProjectionRepository<E
 
     @Override
     public List<Map<String, Object>> projection(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, null, null, false, false, null);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, null, null, false, false, null);
     }
 
     @Override
     public List<Map<String, Object>> projection(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
-        return performProjection(input, domainModelOrEntityType, entityClass, null, null, false, false, null);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, null, null, false, false, null);
     }
 
     @Override
     public List<Map<String, Object>> projection(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, fetches, null, false, false, null);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, fetches, null, false, false, null);
     }
 
     @Override
     public List<Map<String, Object>> projection(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches) {
-        return performProjection(input, domainModelOrEntityType, entityClass, fetches, null, false, false, null);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, fetches, null, false, false, null);
     }
 
     @Override
     public List<Map<String, Object>> projection(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false, false, null);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false, false, null);
     }
 
     @Override
     public List<Map<String, Object>> projection(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
-        return performProjection(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false, false, null);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false, false, null);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSorting(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, null, null, true, false, null);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, null, null, true, false, null);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSorting(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
-        return performProjection(input, domainModelOrEntityType, entityClass, null, null, true, false, null);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, null, null, true, false, null);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSorting(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, null, entityFieldMap, true, false, null);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, null, entityFieldMap, true, false, null);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSorting(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, String> entityFieldMap) {
-        return performProjection(input, domainModelOrEntityType, entityClass, null, entityFieldMap, true, false, null);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, null, entityFieldMap, true, false, null);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSorting(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true, false, null);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true, false, null);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSorting(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
-        return performProjection(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true, false, null);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true, false, null);
     }
 
     // ---
 
     @Override
     public List<Map<String, Object>> projectionClassic(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, null, null, false, true, overrideJoinTypes);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, null, null, false, true, overrideJoinTypes);
     }
 
     @Override
     public List<Map<String, Object>> projectionClassic(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(input, domainModelOrEntityType, entityClass, null, null, false, true, overrideJoinTypes);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, null, null, false, true, overrideJoinTypes);
     }
 
     @Override
     public List<Map<String, Object>> projectionClassic(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, fetches, null, false, true, overrideJoinTypes);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, fetches, null, false, true, overrideJoinTypes);
     }
 
     @Override
     public List<Map<String, Object>> projectionClassic(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(input, domainModelOrEntityType, entityClass, fetches, null, false, true, overrideJoinTypes);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, fetches, null, false, true, overrideJoinTypes);
     }
 
     @Override
     public List<Map<String, Object>> projectionClassic(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false, true, overrideJoinTypes);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false, true, overrideJoinTypes);
     }
 
     @Override
     public List<Map<String, Object>> projectionClassic(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false, true, overrideJoinTypes);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false, true, overrideJoinTypes);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSortingClassic(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, null, null, true, true, overrideJoinTypes);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, null, null, true, true, overrideJoinTypes);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSortingClassic(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(input, domainModelOrEntityType, entityClass, null, null, true, true, overrideJoinTypes);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, null, null, true, true, overrideJoinTypes);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSortingClassic(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, fetches, null, true, true, overrideJoinTypes);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, fetches, null, true, true, overrideJoinTypes);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSortingClassic(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(input, domainModelOrEntityType, entityClass, fetches, null, true, true, overrideJoinTypes);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, fetches, null, true, true, overrideJoinTypes);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSortingClassic(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true, true, overrideJoinTypes);
+        return performProjection(entityManager, filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true, true, overrideJoinTypes);
     }
 
     @Override
     public List<Map<String, Object>> projectionWithSortingClassic(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap, Map<String, JoinType> overrideJoinTypes) {
-        return performProjection(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true, true, overrideJoinTypes);
+        return performProjection(entityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true, true, overrideJoinTypes);
+    }
+
+    // ---
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> projectionAsync(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return AsyncUtils.supplyAsync(() -> withOwnEntityManager(ownEntityManager -> performProjection(ownEntityManager, filters, domainModelOrEntityType, entityClass, null, null, false, false, null)));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> projectionAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return AsyncUtils.supplyAsync(() -> withOwnEntityManager(ownEntityManager -> performProjection(ownEntityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, null, null, false, false, null)));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> projectionAsync(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> withOwnEntityManager(ownEntityManager -> performProjection(ownEntityManager, filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false, false, null)));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> projectionAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> withOwnEntityManager(ownEntityManager -> performProjection(ownEntityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, false, false, null)));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> projectionWithSortingAsync(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return AsyncUtils.supplyAsync(() -> withOwnEntityManager(ownEntityManager -> performProjection(ownEntityManager, filters, domainModelOrEntityType, entityClass, null, null, true, false, null)));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> projectionWithSortingAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass) {
+        return AsyncUtils.supplyAsync(() -> withOwnEntityManager(ownEntityManager -> performProjection(ownEntityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, null, null, true, false, null)));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> projectionWithSortingAsync(@NonNull Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> withOwnEntityManager(ownEntityManager -> performProjection(ownEntityManager, filters, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true, false, null)));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> projectionWithSortingAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, @NonNull Class<E> entityClass, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> withOwnEntityManager(ownEntityManager -> performProjection(ownEntityManager, JPASearchObservations.MODE_INPUT, input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, true, false, null)));
+    }
+
+    /**
+     * Asynchronous projections run outside the caller's transaction, on an entity manager of their own closed at the end.
+     * No transaction is opened: a projection is a single select of tuples (consistent by itself, in auto-commit), no entity is loaded nor flushed
+     */
+    private <T> T withOwnEntityManager(Function<EntityManager, T> projection) {
+        var ownEntityManager = entityManager.getEntityManagerFactory().createEntityManager();
+        try {
+            return projection.apply(ownEntityManager);
+        } finally {
+            ownEntityManager.close();
+        }
     }
 
     private List<Map<String, Object>> performProjection(
+            EntityManager entityManager,
             Map<String, String> inputMap,
             @NonNull Class<?> domainModelOrEntityType,
             @NonNull Class<E> entityClass,
@@ -151,11 +223,13 @@ public class JPAProjectionRepositoryImpl<E> implements JPAProjectionRepository<E
             boolean overrideJoinTypes,
             Map<String, JoinType> overrideJoinTypesMap) {
 
-        var input = JPASearchUtils.toObject(inputMap, false, withSorting, true);
-        return performProjection(input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, withSorting, overrideJoinTypes, overrideJoinTypesMap);
+        var input = JPASearchUtils.toObject(inputMap, false, withSorting, true, domainModelOrEntityType, "projection");
+        return performProjection(entityManager, JPASearchObservations.MODE_MAP, input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, withSorting, overrideJoinTypes, overrideJoinTypesMap);
     }
 
     private List<Map<String, Object>> performProjection(
+            EntityManager entityManager,
+            String mode,
             JPASearchInput input,
             @NonNull Class<?> domainModelOrEntityType,
             @NonNull Class<E> entityClass,
@@ -165,6 +239,35 @@ public class JPAProjectionRepositoryImpl<E> implements JPAProjectionRepository<E
             boolean overrideJoinTypes,
             Map<String, JoinType> overrideJoinTypesMap) {
 
+        var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
+        // before computing any key of a filter that may be huge
+        JPASearchCore.checkLimits(domainModelOrEntityType, entityClass, input.getFilter(), searchableFields, entityFieldMap);
+        JPASearchCore.recordUsage(domainModelOrEntityType, input.getFilter(), searchableFields, entityFieldMap);
+        // missing sort options are rejected when the query is built
+        var sort = withSorting && input.getOptions() != null && input.getOptions().getSortOptions() != null && !input.getOptions().getSortOptions().isEmpty()
+                ? JPASearchCore.loadSort(domainModelOrEntityType, input.getOptions(), searchableFields, entityFieldMap) : Sort.unsorted();
+        var parameters = Arrays.asList(input.getOptions(), fetches, withSorting, overrideJoinTypes, overrideJoinTypesMap);
+        var key = JPASearchConfig.get().getSingleFlightEntities().contains(entityClass)
+                ? JPASearchCacheKeys.key(entityClass, domainModelOrEntityType, "projection", input.getFilter(), entityFieldMap, parameters) : null;
+        return JPASearchObservations.search(domainModelOrEntityType, mode, "projection", input.getFilter(), searchableFields, entityFieldMap, () -> JPASearchSingleFlight.execute(key, false,
+                () -> {
+                    JPASearchIndexes.check(entityClass, domainModelOrEntityType, input.getFilter(), () -> sort, searchableFields, entityFieldMap);
+                    return BulkheadUtils.execute(domainModelOrEntityType, () -> executeProjection(entityManager, input, domainModelOrEntityType, entityClass, fetches, entityFieldMap, withSorting, overrideJoinTypes, overrideJoinTypesMap));
+                },
+                JPASearchSingleFlight::copy));
+    }
+
+    private List<Map<String, Object>> executeProjection(
+            EntityManager entityManager,
+            JPASearchInput input,
+            Class<?> domainModelOrEntityType,
+            Class<E> entityClass,
+            Map<String, JoinType> fetches,
+            Map<String, String> entityFieldMap,
+            boolean withSorting,
+            boolean overrideJoinTypes,
+            Map<String, JoinType> overrideJoinTypesMap) {
+
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
         var idFields = ReflectionUtils.getIdFields(entityClass);
 
@@ -174,8 +277,14 @@ public class JPAProjectionRepositoryImpl<E> implements JPAProjectionRepository<E
                 withSorting, fetches, entityFieldMap, searchableFields,
                 overrideJoinTypes, overrideJoinTypesMap);
 
-        var typedQuery = entityManager.createQuery(query.getCriteriaQuery());
-        return JPAProjectionProcessor.toMap(typedQuery.getResultList(), entityClass, query.getSelections(), idFields);
+        if (query.isEmpty()) {
+            JPASearchMetrics.addSavedRoundTrips(1);
+            return new ArrayList<>();
+        }
+
+        var typedQuery = JPASearchQueries.applyQueryTimeout(entityManager.createQuery(query.getCriteriaQuery()));
+        var rows = JPASearchObservations.phase(JPASearchPhase.EXECUTE, typedQuery::getResultList);
+        return JPASearchObservations.phase(JPASearchPhase.MAP, () -> JPAProjectionProcessor.toMap(rows, entityClass, query.getSelections(), idFields));
     }
 
 }
@@ -0,0 +1,58 @@
+package app.tozzi.repository;
+
+import app.tozzi.core.JPASearchQueries;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.support.JpaEntityInformation;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+
+/**
+ * Repository base class applying the query timeout of the library ({@link JPASearchQueries#getQueryTimeout()}) to the queries executed by Spring Data,
+ * i.e. to the searches of {@link JPASearchRepository} (content, count and exists queries of the specifications):
+ * <pre>{@code
+ * @EnableJpaRepositories(repositoryBaseClass = JPASearchBaseRepository.class)
+ * }</pre>
+ * Without a timeout, the queries are the ones of {@link SimpleJpaRepository}.
+ */
+public class JPASearchBaseRepository<T, ID> extends SimpleJpaRepository<T, ID> {
+
+    private final EntityManager entityManager;
+
+    public JPASearchBaseRepository(JpaEntityInformation<T, ?> entityInformation, EntityManager entityManager) {
+        super(entityInformation, entityManager);
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    protected <S extends T> TypedQuery<S> getQuery(Specification<S> spec, Class<S> domainClass, Sort sort) {
+        return JPASearchQueries.applyQueryTimeout(super.getQuery(spec, domainClass, sort));
+    }
+
+    @Override
+    protected <S extends T> TypedQuery<Long> getCountQuery(Specification<S> spec, Class<S> domainClass) {
+        return JPASearchQueries.applyQueryTimeout(super.getCountQuery(spec, domainClass));
+    }
+
+    /**
+     * Same query as {@link SimpleJpaRepository#exists(Specification)} ({@code select 1 ... limit 1}), with the timeout
+     */
+    @Override
+    public boolean exists(Specification<T> spec) {
+        if (JPASearchQueries.getQueryTimeout() == null) {
+            return super.exists(spec);
+        }
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Integer.class);
+        var root = criteriaQuery.from(getDomainClass());
+        criteriaQuery.select(criteriaBuilder.literal(1));
+        var predicate = spec == null ? null : spec.toPredicate(root, criteriaQuery, criteriaBuilder);
+        if (predicate != null) {
+            criteriaQuery.where(predicate);
+        }
+
+        return JPASearchQueries.applyQueryTimeout(entityManager.createQuery(criteriaQuery)).setMaxResults(1).getResultList().size() == 1;
+    }
+}
@@ -1,19 +1,43 @@
 package app.tozzi.repository;
 
+import app.tozzi.annotation.Searchable;
+import app.tozzi.cache.JPASearchCacheKeys;
+import app.tozzi.cache.JPASearchCountCache;
+import app.tozzi.cache.JPASearchResultCache;
+import app.tozzi.cache.JPASearchSingleFlight;
 import app.tozzi.core.JPASearchCore;
+import app.tozzi.core.JPASearchIndexes;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.metrics.JPASearchObservations;
+import app.tozzi.metrics.JPASearchPhase;
 import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.AsyncUtils;
+import app.tozzi.util.BulkheadUtils;
 import app.tozzi.util.JPASearchUtils;
 import app.tozzi.util.ReflectionUtils;
 import io.micrometer.observation.annotation.Observed;
 import jakarta.persistence.criteria.JoinType;
 import lombok.NonNull;
+import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
 import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.support.PageableExecutionUtils;
 
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 @Observed(contextualName = "jpa-search-repository")
 public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
@@ -26,10 +50,7 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      * @return list of entities
      */
     default List<E> findAll(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType) {
-        Specification<E> specification = JPASearchCore.specification(
-                JPASearchUtils.toObject(filters, false, false, false).getFilter(),
-                ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null, null);
-        return findAll(specification);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_MAP, JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "find").getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null, null, Sort.unsorted());
     }
 
     /**
@@ -40,8 +61,7 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      * @return list of entities
      */
     default List<E> findAll(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType) {
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null, null);
-        return findAll(specification);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null, null, Sort.unsorted());
     }
 
     /**
@@ -53,10 +73,7 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      * @return list of entities
      */
     default List<E> findAll(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches) {
-        Specification<E> specification = JPASearchCore.specification(
-                JPASearchUtils.toObject(filters, false, false, false).getFilter(),
-                ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), fetches, null);
-        return findAll(specification);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_MAP, JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "find").getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), fetches, null, Sort.unsorted());
     }
 
     /**
@@ -68,8 +85,7 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      * @return list of entities
      */
     default List<E> findAll(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches) {
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), fetches, null);
-        return findAll(specification);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), fetches, null, Sort.unsorted());
     }
 
     /**
@@ -86,10 +102,7 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      * @return list of entities
      */
     default List<E> findAll(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
-        Specification<E> specification = JPASearchCore.specification(
-                JPASearchUtils.toObject(filters, false, false, false).getFilter(),
-                ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), fetches, entityFieldMap);
-        return findAll(specification);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_MAP, JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "find").getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), fetches, entityFieldMap, Sort.unsorted());
     }
 
     /**
@@ -106,8 +119,7 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      * @return list of entities
      */
     default List<E> findAll(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), fetches, entityFieldMap);
-        return findAll(specification);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), fetches, entityFieldMap, Sort.unsorted());
     }
 
     /**
@@ -119,10 +131,9 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default List<E> findAllSorted(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        var input = JPASearchUtils.toObject(filters, false, true, false);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, null, null);
-        var sort = JPASearchCore.loadSort(input.getOptions(), searchableFields, null);
-        return findAll(specification, sort);
+        var input = JPASearchUtils.toObject(filters, false, true, false, domainModelOrEntityType, "find");
+        var sort = JPASearchCore.loadSort(domainModelOrEntityType, input.getOptions(), searchableFields, null);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_MAP, input.getFilter(), searchableFields, null, null, sort);
     }
 
     /**
@@ -134,9 +145,8 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default List<E> findAllSorted(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, null, null);
-        var sort = JPASearchCore.loadSort(input.getOptions(), searchableFields, null);
-        return findAll(specification, sort);
+        var sort = JPASearchCore.loadSort(domainModelOrEntityType, input.getOptions(), searchableFields, null);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), searchableFields, null, null, sort);
     }
 
     /**
@@ -149,10 +159,9 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default List<E> findAllSorted(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        var input = JPASearchUtils.toObject(filters, false, true, false);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, fetches, null);
-        var sort = JPASearchCore.loadSort(input.getOptions(), searchableFields, null);
-        return findAll(specification, sort);
+        var input = JPASearchUtils.toObject(filters, false, true, false, domainModelOrEntityType, "find");
+        var sort = JPASearchCore.loadSort(domainModelOrEntityType, input.getOptions(), searchableFields, null);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_MAP, input.getFilter(), searchableFields, fetches, null, sort);
     }
 
     /**
@@ -165,9 +174,8 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default List<E> findAllSorted(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, fetches, null);
-        var sort = JPASearchCore.loadSort(input.getOptions(), searchableFields, null);
-        return findAll(specification, sort);
+        var sort = JPASearchCore.loadSort(domainModelOrEntityType, input.getOptions(), searchableFields, null);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), searchableFields, fetches, null, sort);
     }
 
     /**
@@ -185,10 +193,9 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default List<E> findAllSorted(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        var input = JPASearchUtils.toObject(filters, false, true, false);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, fetches, entityFieldMap);
-        var sort = JPASearchCore.loadSort(input.getOptions(), searchableFields, entityFieldMap);
-        return findAll(specification, sort);
+        var input = JPASearchUtils.toObject(filters, false, true, false, domainModelOrEntityType, "find");
+        var sort = JPASearchCore.loadSort(domainModelOrEntityType, input.getOptions(), searchableFields, entityFieldMap);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_MAP, input.getFilter(), searchableFields, fetches, entityFieldMap, sort);
     }
 
     /**
@@ -206,9 +213,8 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default List<E> findAllSorted(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, fetches, entityFieldMap);
-        var sort = JPASearchCore.loadSort(input.getOptions(), searchableFields, entityFieldMap);
-        return findAll(specification, sort);
+        var sort = JPASearchCore.loadSort(domainModelOrEntityType, input.getOptions(), searchableFields, entityFieldMap);
+        return search(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), searchableFields, fetches, entityFieldMap, sort);
     }
 
     /**
@@ -220,10 +226,9 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default Page<E> findAllWithPaginationAndSorting(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        var input = JPASearchUtils.toObject(filters, true, true, false);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, null, null);
-        var pageRequest = JPASearchCore.loadSortAndPagination(input.getOptions(), searchableFields, null);
-        return findAll(specification, pageRequest);
+        var input = JPASearchUtils.toObject(filters, true, true, false, domainModelOrEntityType, "page");
+        var pageRequest = JPASearchCore.loadSortAndPagination(domainModelOrEntityType, input.getOptions(), searchableFields, null);
+        return searchPage(domainModelOrEntityType, JPASearchObservations.MODE_MAP, input.getFilter(), searchableFields, null, pageRequest);
     }
 
     /**
@@ -235,10 +240,9 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default Slice<E> findAllWithPaginationAndSortingLazy(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        var input = JPASearchUtils.toObject(filters, true, true, false);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, null, null);
-        var pageRequest = JPASearchCore.loadSortAndPagination(input.getOptions(), searchableFields, null);
-        return findAll(specification, pageRequest);
+        var input = JPASearchUtils.toObject(filters, true, true, false, domainModelOrEntityType, "page");
+        var pageRequest = JPASearchCore.loadSortAndPagination(domainModelOrEntityType, input.getOptions(), searchableFields, null);
+        return searchPage(domainModelOrEntityType, JPASearchObservations.MODE_MAP, input.getFilter(), searchableFields, null, pageRequest);
     }
 
     /**
@@ -250,9 +254,8 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default Page<E> findAllWithPaginationAndSorting(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, null, null);
-        var pageRequest = JPASearchCore.loadSortAndPagination(input.getOptions(), searchableFields, null);
-        return findAll(specification, pageRequest);
+        var pageRequest = JPASearchCore.loadSortAndPagination(domainModelOrEntityType, input.getOptions(), searchableFields, null);
+        return searchPage(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), searchableFields, null, pageRequest);
     }
 
     /**
@@ -264,9 +267,8 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default Slice<E> findAllWithPaginationAndSortingLazy(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, null, null);
-        var pageRequest = JPASearchCore.loadSortAndPagination(input.getOptions(), searchableFields, null);
-        return findAll(specification, pageRequest);
+        var pageRequest = JPASearchCore.loadSortAndPagination(domainModelOrEntityType, input.getOptions(), searchableFields, null);
+        return searchPage(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), searchableFields, null, pageRequest);
     }
 
     /**
@@ -283,10 +285,9 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default Page<E> findAllWithPaginationAndSorting(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        var input = JPASearchUtils.toObject(filters, true, true, false);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, null, entityFieldMap);
-        var pageRequest = JPASearchCore.loadSortAndPagination(input.getOptions(), searchableFields, entityFieldMap);
-        return findAll(specification, pageRequest);
+        var input = JPASearchUtils.toObject(filters, true, true, false, domainModelOrEntityType, "page");
+        var pageRequest = JPASearchCore.loadSortAndPagination(domainModelOrEntityType, input.getOptions(), searchableFields, entityFieldMap);
+        return searchPage(domainModelOrEntityType, JPASearchObservations.MODE_MAP, input.getFilter(), searchableFields, entityFieldMap, pageRequest);
     }
 
     /**
@@ -305,10 +306,9 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default Slice<E> findAllWithPaginationAndSortingLazy(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        var input = JPASearchUtils.toObject(filters, true, true, false);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, null, entityFieldMap);
-        var pageRequest = JPASearchCore.loadSortAndPagination(input.getOptions(), searchableFields, entityFieldMap);
-        return findAll(specification, pageRequest);
+        var input = JPASearchUtils.toObject(filters, true, true, false, domainModelOrEntityType, "page");
+        var pageRequest = JPASearchCore.loadSortAndPagination(domainModelOrEntityType, input.getOptions(), searchableFields, entityFieldMap);
+        return searchPage(domainModelOrEntityType, JPASearchObservations.MODE_MAP, input.getFilter(), searchableFields, entityFieldMap, pageRequest);
     }
 
     /**
@@ -325,9 +325,8 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default Page<E> findAllWithPaginationAndSorting(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, null, entityFieldMap);
-        var pageRequest = JPASearchCore.loadSortAndPagination(input.getOptions(), searchableFields, entityFieldMap);
-        return findAll(specification, pageRequest);
+        var pageRequest = JPASearchCore.loadSortAndPagination(domainModelOrEntityType, input.getOptions(), searchableFields, entityFieldMap);
+        return searchPage(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), searchableFields, entityFieldMap, pageRequest);
     }
 
     /**
@@ -346,9 +345,8 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      */
     default Slice<E> findAllWithPaginationAndSortingLazy(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
         var searchableFields = ReflectionUtils.getAllSearchableFields(domainModelOrEntityType);
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(), searchableFields, null, entityFieldMap);
-        var pageRequest = JPASearchCore.loadSortAndPagination(input.getOptions(), searchableFields, entityFieldMap);
-        return findAll(specification, pageRequest);
+        var pageRequest = JPASearchCore.loadSortAndPagination(domainModelOrEntityType, input.getOptions(), searchableFields, entityFieldMap);
+        return searchPage(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), searchableFields, entityFieldMap, pageRequest);
     }
 
     /**
@@ -359,9 +357,7 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      * @return number of results
      */
     default long count(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType) {
-        Specification<E> specification = JPASearchCore.specification(JPASearchUtils.toObject(filters, false, false, false).getFilter(),
-                ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null, null);
-        return count(specification);
+        return searchCount(domainModelOrEntityType, JPASearchObservations.MODE_MAP, JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "count").getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null);
     }
 
     /**
@@ -372,9 +368,7 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      * @return number of results
      */
     default long count(JPASearchInput input, @NonNull Class<?> domainModelOrEntityType) {
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(),
-                ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null, null);
-        return count(specification);
+        return searchCount(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null);
     }
 
     /**
@@ -390,9 +384,7 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      * @return number of results
      */
     default long count(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
-        Specification<E> specification = JPASearchCore.specification(JPASearchUtils.toObject(filters, false, false, false).getFilter(),
-                ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null, entityFieldMap);
-        return count(specification);
+        return searchCount(domainModelOrEntityType, JPASearchObservations.MODE_MAP, JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "count").getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), entityFieldMap);
     }
 
     /**
@@ -408,10 +400,355 @@ public interface JPASearchRepository<E> extends JpaSpecificationExecutor<E> {
      * @return number of results
      */
     default long count(JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
-        Specification<E> specification = JPASearchCore.specification(input.getFilter(),
-                ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null, entityFieldMap);
-        return count(specification);
+        return searchCount(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), entityFieldMap);
     }
 
-}
+    /**
+     * Mode 1: Exists. Stops at the first result
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @return true if there is at least one result
+     */
+    default boolean exists(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType) {
+        return searchExists(domainModelOrEntityType, JPASearchObservations.MODE_MAP, JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "exists").getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null);
+    }
+
+    /**
+     * Mode 2: Exists. Stops at the first result
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @return true if there is at least one result
+     */
+    default boolean exists(JPASearchInput input, @NonNull Class<?> domainModelOrEntityType) {
+        return searchExists(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), null);
+    }
+
+    /**
+     * Mode 1: Exists with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     * Stops at the first result
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityFieldMap
+     * @return true if there is at least one result
+     */
+    default boolean exists(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
+        return searchExists(domainModelOrEntityType, JPASearchObservations.MODE_MAP, JPASearchUtils.toObject(filters, false, false, false, domainModelOrEntityType, "exists").getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), entityFieldMap);
+    }
+
+    /**
+     * Mode 2: Exists with a map of:
+     * <ul>
+     * <li> key: domain object field name </li>
+     * <li> value: entity field name </li>
+     * </ul>
+     * Stops at the first result
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityFieldMap
+     * @return true if there is at least one result
+     */
+    default boolean exists(JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
+        return searchExists(domainModelOrEntityType, JPASearchObservations.MODE_INPUT, input.getFilter(), ReflectionUtils.getAllSearchableFields(domainModelOrEntityType), entityFieldMap);
+    }
+
+    /**
+     * Mode 1: Asynchronous search by filters without sorting and pagination
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @return list of entities
+     */
+    default CompletableFuture<List<E>> findAllAsync(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType) {
+        return AsyncUtils.supplyAsync(() -> findAll(filters, domainModelOrEntityType));
+    }
+
+    /**
+     * Mode 2: Asynchronous search by filters without sorting and pagination
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @return list of entities
+     */
+    default CompletableFuture<List<E>> findAllAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType) {
+        return AsyncUtils.supplyAsync(() -> findAll(input, domainModelOrEntityType));
+    }
+
+    /**
+     * Mode 1: Asynchronous search by filters without sorting and pagination
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param fetches                 fetches joins
+     * @param entityFieldMap
+     * @return list of entities
+     */
+    default CompletableFuture<List<E>> findAllAsync(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> findAll(filters, domainModelOrEntityType, fetches, entityFieldMap));
+    }
+
+    /**
+     * Mode 2: Asynchronous search by filters without sorting and pagination
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param fetches                 fetches joins
+     * @param entityFieldMap
+     * @return list of entities
+     */
+    default CompletableFuture<List<E>> findAllAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> findAll(input, domainModelOrEntityType, fetches, entityFieldMap));
+    }
+
+    /**
+     * Mode 1: Asynchronous search by filters with sorting and without pagination
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @return list of entities
+     */
+    default CompletableFuture<List<E>> findAllSortedAsync(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType) {
+        return AsyncUtils.supplyAsync(() -> findAllSorted(filters, domainModelOrEntityType));
+    }
+
+    /**
+     * Mode 2: Asynchronous search by filters with sorting and without pagination
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @return list of entities
+     */
+    default CompletableFuture<List<E>> findAllSortedAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType) {
+        return AsyncUtils.supplyAsync(() -> findAllSorted(input, domainModelOrEntityType));
+    }
+
+    /**
+     * Mode 1: Asynchronous search by filters with sorting and without pagination
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param fetches                 fetches joins
+     * @param entityFieldMap
+     * @return list of entities
+     */
+    default CompletableFuture<List<E>> findAllSortedAsync(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> findAllSorted(filters, domainModelOrEntityType, fetches, entityFieldMap));
+    }
+
+    /**
+     * Mode 2: Asynchronous search by filters with sorting and without pagination
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param fetches                 fetches joins
+     * @param entityFieldMap
+     * @return list of entities
+     */
+    default CompletableFuture<List<E>> findAllSortedAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, JoinType> fetches, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> findAllSorted(input, domainModelOrEntityType, fetches, entityFieldMap));
+    }
+
+    /**
+     * Mode 1: Asynchronous search by filters with sorting and pagination
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @return list of entities of the searched page
+     */
+    default CompletableFuture<Page<E>> findAllWithPaginationAndSortingAsync(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType) {
+        return AsyncUtils.supplyAsync(() -> findAllWithPaginationAndSorting(filters, domainModelOrEntityType));
+    }
+
+    /**
+     * Mode 2: Asynchronous search by filters with sorting and pagination
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @return list of entities of the searched page
+     */
+    default CompletableFuture<Page<E>> findAllWithPaginationAndSortingAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType) {
+        return AsyncUtils.supplyAsync(() -> findAllWithPaginationAndSorting(input, domainModelOrEntityType));
+    }
+
+    /**
+     * Mode 1: Asynchronous search by filters with sorting and pagination
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityFieldMap
+     * @return list of entities of the searched page
+     */
+    default CompletableFuture<Page<E>> findAllWithPaginationAndSortingAsync(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> findAllWithPaginationAndSorting(filters, domainModelOrEntityType, entityFieldMap));
+    }
+
+    /**
+     * Mode 2: Asynchronous search by filters with sorting and pagination
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityFieldMap
+     * @return list of entities of the searched page
+     */
+    default CompletableFuture<Page<E>> findAllWithPaginationAndSortingAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> findAllWithPaginationAndSorting(input, domainModelOrEntityType, entityFieldMap));
+    }
+
+    /**
+     * Mode 1: Asynchronous count
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @return number of results
+     */
+    default CompletableFuture<Long> countAsync(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType) {
+        return AsyncUtils.supplyAsync(() -> count(filters, domainModelOrEntityType));
+    }
+
+    /**
+     * Mode 2: Asynchronous count
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @return number of results
+     */
+    default CompletableFuture<Long> countAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType) {
+        return AsyncUtils.supplyAsync(() -> count(input, domainModelOrEntityType));
+    }
+
+    /**
+     * Mode 1: Asynchronous count
+     *
+     * @param filters                 search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityFieldMap
+     * @return number of results
+     */
+    default CompletableFuture<Long> countAsync(Map<String, String> filters, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> count(filters, domainModelOrEntityType, entityFieldMap));
+    }
+
+    /**
+     * Mode 2: Asynchronous count
+     *
+     * @param input                   search filters
+     * @param domainModelOrEntityType the type of the domain object or entity: i.e. the root object where you applied the {@link app.tozzi.annotation.Searchable} and {@link app.tozzi.annotation.NestedSearchable} annotations
+     * @param entityFieldMap
+     * @return number of results
+     */
+    default CompletableFuture<Long> countAsync(@NonNull JPASearchInput input, @NonNull Class<?> domainModelOrEntityType, Map<String, String> entityFieldMap) {
+        return AsyncUtils.supplyAsync(() -> count(input, domainModelOrEntityType, entityFieldMap));
+    }
+
+    private List<E> search(Class<?> domainModelOrEntityType, String mode, JPASearchInput.RootFilter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, JoinType> fetches, Map<String, String> entityFieldMap, Sort sort) {
+        // cached lists are shared
+        return new ArrayList<>(execute(domainModelOrEntityType, mode, "find", filter, searchableFields, entityFieldMap, sort, Arrays.asList(fetches, sort), true, key -> {
+            var descriptor = JPASearchCore.compile(domainModelOrEntityType, filter, searchableFields, entityFieldMap);
+            if (descriptor != null && descriptor.isEmpty()) {
+                JPASearchMetrics.addSavedRoundTrips(1);
+                return List.<E>of();
+            }
 
+            Specification<E> specification = JPASearchCore.specification(descriptor, searchableFields, fetches, entityFieldMap);
+            return JPASearchObservations.phase(JPASearchPhase.EXECUTE, () -> findAll(specification, sort));
+        }));
+    }
+
+    private Page<E> searchPage(Class<?> domainModelOrEntityType, String mode, JPASearchInput.RootFilter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap, PageRequest pageRequest) {
+        return execute(domainModelOrEntityType, mode, "page", filter, searchableFields, entityFieldMap, pageRequest.getSort(), List.of(pageRequest), true, key -> {
+            var descriptor = JPASearchCore.compile(domainModelOrEntityType, filter, searchableFields, entityFieldMap);
+            if (descriptor != null && descriptor.isEmpty()) {
+                // content and count queries
+                JPASearchMetrics.addSavedRoundTrips(2);
+                return new PageImpl<E>(new ArrayList<>(), pageRequest, 0);
+            }
+
+            Specification<E> specification = JPASearchCore.specification(descriptor, searchableFields, null, entityFieldMap);
+            if (key == null || !JPASearchCountCache.isEnabled()) {
+                return JPASearchObservations.phase(JPASearchPhase.EXECUTE, () -> findAll(specification, pageRequest));
+            }
+
+            // content only, the total comes from the count cache: an offset position is the one of the last element before the window
+            var offset = pageRequest.getOffset();
+            var position = offset == 0 ? ScrollPosition.offset() : ScrollPosition.offset(offset - 1);
+            List<E> content = JPASearchObservations.phase(JPASearchPhase.EXECUTE, () -> findBy(specification,
+                    query -> query.sortBy(pageRequest.getSort()).limit(pageRequest.getPageSize()).scroll(position).getContent()));
+
+            return PageableExecutionUtils.getPage(content, pageRequest, () -> cachedCount(key.count(), specification));
+        });
+    }
+
+    private long searchCount(Class<?> domainModelOrEntityType, String mode, JPASearchInput.RootFilter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        return execute(domainModelOrEntityType, mode, "count", filter, searchableFields, entityFieldMap, Sort.unsorted(), List.of(), false, key -> {
+            var descriptor = JPASearchCore.compile(domainModelOrEntityType, filter, searchableFields, entityFieldMap);
+            if (descriptor != null && descriptor.isEmpty()) {
+                JPASearchMetrics.addSavedRoundTrips(1);
+                return 0L;
+            }
+
+            Specification<E> specification = JPASearchCore.specification(descriptor, searchableFields, null, entityFieldMap);
+            return cachedCount(key, specification);
+        });
+    }
+
+    /**
+     * @param key key of the count, null: not cached
+     */
+    private long cachedCount(JPASearchCacheKeys.Key key, Specification<E> specification) {
+        // the repository opens its own entity manager on the refreshing thread
+        return JPASearchCountCache.get(key, () -> JPASearchObservations.phase(JPASearchPhase.EXECUTE, () -> count(specification)), () -> count(specification));
+    }
+
+    private boolean searchExists(Class<?> domainModelOrEntityType, String mode, JPASearchInput.RootFilter filter, Map<String, Pair<Searchable, Field>> searchableFields, Map<String, String> entityFieldMap) {
+        return execute(domainModelOrEntityType, mode, "exists", filter, searchableFields, entityFieldMap, Sort.unsorted(), List.of(), false, key -> {
+            var descriptor = JPASearchCore.compile(domainModelOrEntityType, filter, searchableFields, entityFieldMap);
+            if (descriptor != null && descriptor.isEmpty()) {
+                JPASearchMetrics.addSavedRoundTrips(1);
+                return false;
+            }
+
+            // SELECT 1 ... LIMIT 1: DISTINCT is not needed
+            Specification<E> specification = JPASearchCore.specification(descriptor, searchableFields, null, entityFieldMap);
+            Specification<E> withoutDistinct = (root, query, criteriaBuilder) -> {
+                var predicate = specification.toPredicate(root, query, criteriaBuilder);
+                query.distinct(false);
+                return predicate;
+            };
+
+            return JPASearchObservations.phase(JPASearchPhase.EXECUTE, () -> exists(withoutDistinct));
+        });
+    }
+
+    /**
+     * Checked against the limits and counted (see {@link app.tozzi.metrics.JPASearchFieldUsage}) first, then observed, through the result cache, then the coalescing of identical concurrent searches,
+     * then the index check of the entity and the bulkhead of the domain type.
+     * Counts skip the result cache: they are cached by the {@link JPASearchCountCache}, whose staleness bound would not hold otherwise.
+     * The key of the search is computed once, only if a cache or the coalescing is enabled, and passed to the search (null otherwise) for the count cache
+     */
+    private <T> T execute(Class<?> domainModelOrEntityType, String mode, String operation, JPASearchInput.RootFilter filter, Map<String, Pair<Searchable, Field>> searchableFields,
+                          Map<String, String> entityFieldMap, Sort sort, List<?> parameters, boolean entities, Function<JPASearchCacheKeys.Key, T> search) {
+
+        // before computing any key of a filter that may be huge
+        var entityClass = JPASearchCacheKeys.entityClass(this);
+        JPASearchCore.checkLimits(domainModelOrEntityType, entityClass, filter, searchableFields, entityFieldMap);
+        // sorts are counted when loaded, before the execution
+        JPASearchCore.recordUsage(domainModelOrEntityType, filter, searchableFields, entityFieldMap);
+        var key = JPASearchCacheKeys.isUsed(entityClass) ? JPASearchCacheKeys.key(entityClass, domainModelOrEntityType, operation, filter, entityFieldMap, parameters) : null;
+        Supplier<T> coalesced = () -> JPASearchSingleFlight.execute(key, entities,
+                () -> {
+                    JPASearchIndexes.check(entityClass, domainModelOrEntityType, filter, () -> sort, searchableFields, entityFieldMap);
+                    return BulkheadUtils.execute(domainModelOrEntityType, () -> search.apply(key));
+                }, UnaryOperator.identity());
+
+        return JPASearchObservations.search(domainModelOrEntityType, mode, operation, filter, searchableFields, entityFieldMap, "count".equals(operation) ? coalesced
+                : () -> JPASearchResultCache.get(key, entities, coalesced));
+    }
+
+}
@@ -0,0 +1,67 @@
+package app.tozzi.util;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.core.JPASearchQueries;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+public class AsyncUtils {
+
+    /**
+     * Runs the search on {@link JPASearchConfig#getAsyncExecutor()} (by default virtual threads when available, a bounded pool otherwise).
+     * The current observation and query timeout are restored on the executing thread and {@link JPASearchConfig#getAsyncTaskDecorator()}, if any, is applied on the calling thread.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> search) {
+        var config = JPASearchConfig.get();
+        var parent = config.getObservationRegistry().getCurrentObservation();
+        var queryTimeout = JPASearchQueries.getQueryTimeout();
+
+        Supplier<T> task = parent == null ? () -> JPASearchQueries.withQueryTimeout(queryTimeout, search) : () -> {
+            try (var ignored = parent.openScope()) {
+                return JPASearchQueries.withQueryTimeout(queryTimeout, search);
+            }
+        };
+
+        var executor = config.getAsyncExecutor() != null ? config.getAsyncExecutor() : DefaultExecutorHolder.EXECUTOR;
+        var decorator = config.getAsyncTaskDecorator();
+
+        return CompletableFuture.supplyAsync(task, decorator == null ? executor : r -> executor.execute(decorator.decorate(r)));
+    }
+
+    /**
+     * Queries can be executed on other connections only outside a transaction or within a read-only transaction:
+     * another connection does not see the uncommitted changes of a read-write transaction
+     */
+    public static boolean isParallelAllowed() {
+        return !TransactionSynchronizationManager.isActualTransactionActive() || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private static class DefaultExecutorHolder {
+
+        private static final Executor EXECUTOR = create();
+
+        private static Executor create() {
+            try {
+                // Java 21+
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // every search holds a connection: more threads than processors would just wait for the pool
+                var threads = Runtime.getRuntime().availableProcessors();
+                var executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    var thread = new Thread(r, "jpa-search-async");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                executor.allowCoreThreadTimeOut(true);
+                return executor;
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package app.tozzi.util;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.exception.JPASearchBulkheadException;
+import app.tozzi.metrics.JPASearchMetrics;
+import lombok.NonNull;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class BulkheadUtils {
+
+    private static final Map<Class<?>, Bulkhead> BULKHEADS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Set<Class<?>>> HELD = ThreadLocal.withInitial(HashSet::new);
+
+    /**
+     * Executes the search holding a permit of the bulkhead of the domain type, if any (see {@link JPASearchConfig#getBulkheads()}).
+     * Searches wait in FIFO order at most {@link JPASearchConfig#getBulkheadTimeout()}; a search nested in another one of the same domain type on the same thread does not take another permit.
+     * When the limit of a domain type changes, its bulkhead is resized: searches holding a permit are not affected.
+     *
+     * @throws JPASearchBulkheadException if there are too many waiting searches, the timeout expires or the thread is interrupted
+     */
+    public static <T> T execute(@NonNull Class<?> domainType, @NonNull Supplier<T> search) {
+        var config = JPASearchConfig.get();
+        var maxConcurrent = config.getBulkheads().get(domainType);
+        if (maxConcurrent == null || maxConcurrent <= 0 || HELD.get().contains(domainType)) {
+            return search.get();
+        }
+
+        var bulkhead = BULKHEADS.computeIfAbsent(domainType, k -> new Bulkhead(maxConcurrent));
+        bulkhead.resize(maxConcurrent);
+        acquire(domainType, bulkhead, config);
+        HELD.get().add(domainType);
+        try {
+            return search.get();
+        } finally {
+            HELD.get().remove(domainType);
+            bulkhead.semaphore.release();
+        }
+    }
+
+    /**
+     * @return searches of the domain type waiting for a permit (an estimate, for monitoring)
+     */
+    public static int getWaiting(@NonNull Class<?> domainType) {
+        var bulkhead = BULKHEADS.get(domainType);
+        return bulkhead == null ? 0 : bulkhead.semaphore.getQueueLength();
+    }
+
+    private static void acquire(Class<?> domainType, Bulkhead bulkhead, JPASearchConfig config) {
+        var semaphore = bulkhead.semaphore;
+        try {
+            // timed: unlike tryAcquire(), it does not barge in front of the waiting searches
+            if (semaphore.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                return;
+            }
+
+            var maxWaiting = config.getBulkheadMaxWaiting();
+            if (bulkhead.waiting.incrementAndGet() > maxWaiting && maxWaiting >= 0) {
+                bulkhead.waiting.decrementAndGet();
+                JPASearchMetrics.addBulkheadRejection();
+                throw new JPASearchBulkheadException("Too many concurrent searches of " + domainType.getSimpleName(), domainType, bulkhead.maxConcurrent);
+            }
+
+            try {
+                var timeout = config.getBulkheadTimeout();
+                if (timeout == null) {
+                    semaphore.acquire();
+                    return;
+                }
+
+                if (!semaphore.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                    JPASearchMetrics.addBulkheadRejection();
+                    throw new JPASearchBulkheadException("Timeout waiting for a concurrent search of " + domainType.getSimpleName(), domainType, bulkhead.maxConcurrent);
+                }
+
+            } finally {
+                bulkhead.waiting.decrementAndGet();
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JPASearchBulkheadException("Interrupted waiting for a concurrent search of " + domainType.getSimpleName(), domainType, bulkhead.maxConcurrent);
+        }
+    }
+
+    private static class Bulkhead {
+
+        private final ResizableSemaphore semaphore;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private volatile int maxConcurrent;
+
+        private Bulkhead(int maxConcurrent) {
+            this.semaphore = new ResizableSemaphore(maxConcurrent);
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        /**
+         * Adds or removes the difference of permits: removed permits are taken back as the running searches release them
+         */
+        private void resize(int maxConcurrent) {
+            if (this.maxConcurrent == maxConcurrent) {
+                return;
+            }
+
+            synchronized (this) {
+                var delta = maxConcurrent - this.maxConcurrent;
+                if (delta > 0) {
+                    semaphore.release(delta);
+                } else if (delta < 0) {
+                    semaphore.reducePermits(-delta);
+                }
+
+                this.maxConcurrent = maxConcurrent;
+            }
+        }
+    }
+
+    private static class ResizableSemaphore extends Semaphore {
+
+        private ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
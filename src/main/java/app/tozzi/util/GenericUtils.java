@@ -58,6 +58,27 @@ public class GenericUtils {
         return result;
     }
 
+    public static Object[] padToPowerOfTwo(Object[] values, int maxSize) {
+        if (values == null || values.length < 2) {
+            return values;
+        }
+
+        var target = Integer.highestOneBit(values.length);
+        if (target < values.length) {
+            target <<= 1;
+        }
+        if (maxSize > 0) {
+            target = Math.min(target, Math.max(maxSize, values.length));
+        }
+        if (target <= values.length) {
+            return values;
+        }
+
+        var padded = Arrays.copyOf(values, target);
+        Arrays.fill(padded, values.length, target, values[values.length - 1]);
+        return padded;
+    }
+
     public static Number formatNumber(Number decimalNumber, String pattern, boolean bigDecimal) throws ParseException {
         var df = new DecimalFormat(pattern);
         df.setParseBigDecimal(bigDecimal);
@@ -1,6 +1,10 @@
 package app.tozzi.util;
 
+import app.tozzi.core.JPASearchFetchPlan;
+import app.tozzi.core.JPASearchJoinRegistry;
 import app.tozzi.exception.JPASearchException;
+import app.tozzi.metrics.JPASearchObservations;
+import app.tozzi.metrics.JPASearchPhase;
 import app.tozzi.model.JPASearchOperatorFilter;
 import app.tozzi.model.JPASearchOperatorGroup;
 import app.tozzi.model.JPASearchPaginationFilter;
@@ -27,6 +31,18 @@ public class JPASearchUtils {
             .toList();
 
     public static JPASearchInput toObject(Map<String, String> filters, boolean processPagination, boolean processSort, boolean processProjection) {
+        return JPASearchObservations.phase(JPASearchPhase.PARSE, () -> parse(filters, processPagination, processSort, processProjection));
+    }
+
+    /**
+     * Parses the filters of a search of the domain type, observed with its tags (see {@link JPASearchObservations#parse})
+     */
+    public static JPASearchInput toObject(Map<String, String> filters, boolean processPagination, boolean processSort, boolean processProjection,
+                                          Class<?> domainType, String operation) {
+        return JPASearchObservations.parse(domainType, operation, () -> parse(filters, processPagination, processSort, processProjection));
+    }
+
+    private static JPASearchInput parse(Map<String, String> filters, boolean processPagination, boolean processSort, boolean processProjection) {
         if (filters == null || filters.isEmpty()) {
             validateEmptyFilters(processPagination, processSort, processProjection);
             return EMPTY_INPUT;
@@ -171,56 +187,14 @@ public class JPASearchUtils {
     }
 
     public static <E> Root<E> fetchManagement(Map<String, JoinType> fetchMap, Root<E> root) {
-        if (fetchMap == null || fetchMap.isEmpty()) {
-            return root;
-        }
-
-        var sortedMap = new TreeMap<>(fetchMap);
-        var doneFetches = new HashSet<String>();
-
-        sortedMap.forEach((path, type) -> {
-            if (!path.contains(".")) {
-                if (doneFetches.add(path)) {
-                    root.fetch(path, type);
-                }
-            } else {
-                Fetch<?, ?> currentFetch = null;
-                var parts = path.split("\\.");
-                var currentPath = new StringBuilder();
-
-                for (int i = 0; i < parts.length; i++) {
-                    var part = parts[i];
-                    if (i > 0) {
-                        currentPath.append(".");
-                    }
-                    currentPath.append(part);
-                    var pathKey = currentPath.toString();
-
-                    if (doneFetches.add(pathKey)) {
-                        if (i == 0) {
-                            currentFetch = root.fetch(part, type);
-                        } else {
-                            currentFetch = currentFetch.fetch(part, type);
-                        }
-                    } else {
-                        if (i == 0) {
-                            currentFetch = root.getFetches().stream()
-                                    .filter(f -> f.getAttribute().getName().equals(part))
-                                    .findAny().orElseThrow(() -> new JPASearchException("Fetch logic error for " + part));
-                        } else {
-                            var nextPart = part;
-                            currentFetch = currentFetch.getFetches().stream()
-                                    .filter(f -> f.getAttribute().getName().equals(nextPart))
-                                    .findAny().orElseThrow(() -> new JPASearchException("Fetch logic error for " + nextPart));
-                        }
-                    }
-                }
-            }
-        });
-
+        fetchManagement(fetchMap, new JPASearchJoinRegistry(root));
         return root;
     }
 
+    public static void fetchManagement(Map<String, JoinType> fetchMap, JPASearchJoinRegistry registry) {
+        JPASearchFetchPlan.of(fetchMap).apply(registry);
+    }
+
     public static <T> Expression<T> getPath(Root<?> root, String k) {
         if (!k.contains(".")) {
             return root.get(k);
@@ -233,10 +207,12 @@ public class JPASearchUtils {
         return path;
     }
 
-    @SuppressWarnings("unchecked")
     public static <T> Expression<T> getPath(CriteriaBuilder cb, Root<?> root, String fieldName, String jsonPath) {
-        Expression<?> expr = getPath(root, fieldName);
+        return getJsonPath(cb, getPath(root, fieldName), jsonPath);
+    }
 
+    @SuppressWarnings("unchecked")
+    public static <T> Expression<T> getJsonPath(CriteriaBuilder cb, Expression<?> expr, String jsonPath) {
         if (jsonPath == null || jsonPath.isBlank()) {
             return (Expression<T>) expr;
         }
@@ -252,4 +228,4 @@ public class JPASearchUtils {
 
         return (Expression<T>) expr;
     }
-}
\ No newline at end of file
+}
@@ -10,18 +10,23 @@ public class ValidationUtils {
 
     public static void searchableValidations(Searchable searchable, String field, JPASearchOperatorFilter searchFilter) {
 
-        if (searchable.allowedFilters() != null && searchable.allowedFilters().length > 0 && Stream.of(searchable.allowedFilters()).noneMatch(sf -> sf.equals(searchFilter))) {
+        if (!isAllowed(searchable, searchFilter)) {
             throw new InvalidFieldException("Not allowed filters [" + searchFilter.getValue() + "] for field [" + field + "]", field);
         }
 
-        if (searchable.notAllowedFilters() != null && searchable.notAllowedFilters().length > 0 && Stream.of(searchable.notAllowedFilters()).anyMatch(sf -> sf.equals(searchFilter))) {
-            throw new InvalidFieldException("Not allowed filters [" + searchFilter.getValue() + "] for field [" + field + "]", field);
+    }
+
+    public static boolean isAllowed(Searchable searchable, JPASearchOperatorFilter searchFilter) {
+
+        if (searchable.allowedFilters() != null && searchable.allowedFilters().length > 0 && Stream.of(searchable.allowedFilters()).noneMatch(sf -> sf.equals(searchFilter))) {
+            return false;
         }
 
-        if (!searchable.allowLikeFilters() && searchFilter.isLike()) {
-            throw new InvalidFieldException("Not allowed filters [" + searchFilter.getValue() + "] for field [" + field + "]", field);
+        if (searchable.notAllowedFilters() != null && searchable.notAllowedFilters().length > 0 && Stream.of(searchable.notAllowedFilters()).anyMatch(sf -> sf.equals(searchFilter))) {
+            return false;
         }
 
+        return searchable.allowLikeFilters() || !searchFilter.isLike();
     }
 
 }
@@ -0,0 +1,129 @@
+package app.tozzi.cache;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.entity.MyEntity;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.MyModel;
+import app.tozzi.repository.MyRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Not transactional: every search runs in its own transaction, like in an application, and the writes are committed
+ */
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPASearchCountCacheRepositoryTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories("app.tozzi.repository")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class JPASearchCountCacheRepositoryTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    private JPASearchConfig config;
+
+    @BeforeEach
+    void setUp() {
+        config = new JPASearchConfig();
+        config.setCountCacheStaleness(Duration.ofMinutes(1));
+        JPASearchConfig.set(config);
+        JPASearchCountCache.clear();
+        JPASearchMetrics.reset();
+
+        var entities = new ArrayList<MyEntity>();
+        for (int i = 1; i <= 8; i++) {
+            entities.add(MyEntity.builder().id((long) i).stringOne("StringOne_" + i).primitiveLong(i * 100L).build());
+        }
+
+        myRepository.saveAll(entities);
+    }
+
+    @AfterEach
+    void reset() {
+        myRepository.deleteAll();
+        JPASearchConfig.set(new JPASearchConfig());
+        JPASearchCountCache.clear();
+        JPASearchResultCache.clear();
+    }
+
+    @Test
+    public void staleTotals() {
+        var filters = Map.of("primitiveLong_gte", "300", "_limit", "2", "_offset", "1");
+        assertEquals(6, myRepository.findAllWithPaginationAndSortingParallel(filters, MyModel.class, MyEntity.class).getTotalElements());
+        assertEquals(6, myRepository.findAllWithPaginationAndSorting(filters, MyModel.class).getTotalElements());
+        assertEquals(6, myRepository.count(Map.of("primitiveLong_gte", "300"), MyModel.class));
+        assertEquals(1, JPASearchMetrics.getCountCacheMisses());
+        assertEquals(2, JPASearchMetrics.getCountCacheHits());
+
+        myRepository.deleteAllById(List.of(7L, 8L));
+
+        // stale totals, current content
+        var page = myRepository.findAllWithPaginationAndSortingParallel(filters, MyModel.class, MyEntity.class);
+        assertEquals(2, page.getContent().size());
+        assertEquals(6, page.getTotalElements());
+
+        var repositoryPage = myRepository.findAllWithPaginationAndSorting(filters, MyModel.class);
+        assertEquals(2, repositoryPage.getContent().size());
+        assertEquals(6, repositoryPage.getTotalElements());
+
+        assertEquals(6, myRepository.count(Map.of("primitiveLong_gte", "300"), MyModel.class));
+        // different entity field map: different key
+        assertEquals(4, myRepository.count(Map.of("primitiveLong_gte", "300"), MyModel.class, Map.of()));
+
+        JPASearchCountCache.clear();
+        assertEquals(4, myRepository.findAllWithPaginationAndSorting(filters, MyModel.class).getTotalElements());
+    }
+
+    @Test
+    public void pageContent() {
+        // content query only, without the count query of Spring Data
+        var page = myRepository.findAllWithPaginationAndSorting(Map.of("id_sort", "ASC", "primitiveLong_gte", "300", "_limit", "2", "_offset", "0"), MyModel.class);
+        assertEquals(List.of(3L, 4L), page.getContent().stream().map(MyEntity::getId).toList());
+        assertEquals(6, page.getTotalElements());
+
+        page = myRepository.findAllWithPaginationAndSorting(Map.of("id_sort", "ASC", "primitiveLong_gte", "300", "_limit", "2", "_offset", "1"), MyModel.class);
+        assertEquals(List.of(5L, 6L), page.getContent().stream().map(MyEntity::getId).toList());
+        assertEquals(6, page.getTotalElements());
+        assertEquals(1, JPASearchMetrics.getCountCacheMisses());
+        assertEquals(1, JPASearchMetrics.getCountCacheHits());
+    }
+
+    @Test
+    public void shortPage() {
+        // the total is deduced from the content
+        var page = myRepository.findAllWithPaginationAndSorting(Map.of("primitiveLong_gte", "700", "_limit", "5", "_offset", "0"), MyModel.class);
+        assertEquals(2, page.getTotalElements());
+        assertEquals(0, JPASearchMetrics.getCountCacheMisses());
+    }
+
+    @Test
+    public void notInResultCache() {
+        config.setResultCacheTtl(Duration.ofMinutes(10));
+        assertEquals(6, myRepository.count(Map.of("primitiveLong_gte", "300"), MyModel.class));
+
+        myRepository.deleteAllById(List.of(7L, 8L));
+        JPASearchCountCache.clear();
+
+        // the total of the result cache would be as old as its TTL
+        assertEquals(4, myRepository.count(Map.of("primitiveLong_gte", "300"), MyModel.class));
+        assertEquals(0, JPASearchResultCache.size());
+    }
+}
@@ -0,0 +1,221 @@
+package app.tozzi.cache;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.entity.MyEntity;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.MyModel;
+import app.tozzi.model.input.JPASearchInput;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JPASearchCountCacheTest {
+
+    private JPASearchConfig config;
+
+    @BeforeEach
+    void setUp() {
+        config = new JPASearchConfig();
+        config.setCountCacheStaleness(Duration.ofMinutes(1));
+        JPASearchConfig.set(config);
+        JPASearchCountCache.clear();
+        JPASearchMetrics.reset();
+    }
+
+    @AfterEach
+    void reset() {
+        JPASearchConfig.set(new JPASearchConfig());
+        JPASearchCountCache.clear();
+    }
+
+    @Test
+    public void disabled() {
+        JPASearchConfig.set(new JPASearchConfig());
+        var counter = new AtomicLong();
+        assertEquals(1, count(filter("a", "b"), null, counter));
+        assertEquals(2, count(filter("a", "b"), null, counter));
+        assertEquals(0, JPASearchMetrics.getCountCacheMisses());
+    }
+
+    @Test
+    public void cached() {
+        var counter = new AtomicLong();
+        assertEquals(1, count(filter("a", "b"), null, counter));
+        assertEquals(1, count(filter("b", "a"), null, counter));
+        assertEquals(2, count(filter("a", "b"), Map.of("stringOne", "stringTwo"), counter));
+        assertEquals(3, count(filter("a", "c"), null, counter));
+        assertEquals(1, JPASearchMetrics.getCountCacheHits());
+        assertEquals(3, JPASearchMetrics.getCountCacheMisses());
+    }
+
+    @Test
+    public void refreshAhead() {
+        config.setCountCacheRefreshAhead(0);
+        config.setAsyncExecutor(Runnable::run);
+        var counter = new AtomicLong();
+
+        assertEquals(1, count(filter("a"), null, counter));
+        // stale total returned, counted again in the background
+        assertEquals(1, count(filter("a"), null, counter));
+        assertEquals(2, counter.get());
+        assertEquals(2, count(filter("a"), null, counter));
+    }
+
+    @Test
+    public void coalescing() throws Exception {
+        var counter = new AtomicLong();
+        var latch = new CountDownLatch(1);
+        var filter = filter("a");
+
+        var leader = CompletableFuture.supplyAsync(() -> JPASearchCountCache.get(MyEntity.class, MyModel.class, filter, null, () -> {
+            counter.incrementAndGet();
+            await(latch);
+            return 10L;
+        }, () -> 0L));
+
+        while (counter.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        var follower = CompletableFuture.supplyAsync(() -> count(filter, null, counter));
+        while (JPASearchMetrics.getCoalescedCounts() == 0) {
+            Thread.sleep(5);
+        }
+
+        latch.countDown();
+        assertEquals(10, leader.get(5, TimeUnit.SECONDS));
+        assertEquals(10, follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void leaderError() throws Exception {
+        var counter = new AtomicLong();
+        var latch = new CountDownLatch(1);
+        var filter = filter("a");
+
+        var leader = CompletableFuture.supplyAsync(() -> JPASearchCountCache.get(MyEntity.class, MyModel.class, filter, null, () -> {
+            counter.incrementAndGet();
+            await(latch);
+            throw new StackOverflowError();
+        }, () -> 0L));
+
+        while (counter.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        var follower = CompletableFuture.supplyAsync(() -> count(filter, null, counter));
+        while (JPASearchMetrics.getCoalescedCounts() == 0) {
+            Thread.sleep(5);
+        }
+
+        latch.countDown();
+        assertInstanceOf(StackOverflowError.class, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertInstanceOf(StackOverflowError.class, assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals(2, count(filter, null, counter));
+    }
+
+    @Test
+    public void refreshFailure() {
+        config.setCountCacheRefreshAhead(0);
+        config.setAsyncExecutor(Runnable::run);
+        var counter = new AtomicLong();
+
+        assertEquals(1, count(filter("a"), null, counter));
+        assertEquals(1, JPASearchCountCache.get(MyEntity.class, MyModel.class, filter("a"), null, counter::incrementAndGet, () -> {
+            throw new IllegalStateException();
+        }));
+
+        // logged, the cached total is kept
+        assertEquals(1, JPASearchCountCache.get(MyEntity.class, MyModel.class, filter("a"), null, counter::incrementAndGet, () -> 5L));
+        assertEquals(5, JPASearchCountCache.get(MyEntity.class, MyModel.class, filter("a"), null, counter::incrementAndGet, () -> 5L));
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void refreshRejected() {
+        config.setCountCacheRefreshAhead(0);
+        var counter = new AtomicLong();
+        assertEquals(1, count(filter("a"), null, counter));
+
+        config.setAsyncExecutor(r -> {
+            throw new RejectedExecutionException();
+        });
+        assertEquals(1, count(filter("a"), null, counter));
+
+        // not left in flight: the next miss counts
+        config.setCountCacheStaleness(Duration.ZERO);
+        assertEquals(2, count(filter("a"), null, counter));
+    }
+
+    @Test
+    public void readWriteTransaction() {
+        var counter = new AtomicLong();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            assertEquals(1, count(filter("a"), null, counter));
+            assertEquals(2, count(filter("a"), null, counter));
+
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+            assertEquals(3, count(filter("a"), null, counter));
+            assertEquals(3, count(filter("a"), null, counter));
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+
+        assertEquals(1, JPASearchMetrics.getCountCacheMisses());
+        assertEquals(1, JPASearchMetrics.getCountCacheHits());
+    }
+
+    @Test
+    public void failure() {
+        assertThrows(IllegalStateException.class, () -> JPASearchCountCache.get(MyEntity.class, MyModel.class, filter("a"), null, () -> {
+            throw new IllegalStateException();
+        }, () -> 0L));
+
+        assertEquals(1, count(filter("a"), null, new AtomicLong()));
+    }
+
+    private static long count(JPASearchInput.Filter filter, Map<String, String> entityFieldMap, AtomicLong counter) {
+        return JPASearchCountCache.get(MyEntity.class, MyModel.class, filter, entityFieldMap, counter::incrementAndGet, counter::incrementAndGet);
+    }
+
+    private static JPASearchInput.RootFilter filter(String... values) {
+        var filters = new ArrayList<JPASearchInput.Filter>();
+        for (var value : values) {
+            var filter = new JPASearchInput.FilterSingleValue();
+            filter.setKey("stringOne");
+            filter.setOperator("eq");
+            filter.setValue(value);
+            filters.add(filter);
+        }
+
+        var root = new JPASearchInput.RootFilter();
+        root.setOperator("or");
+        root.setFilters(new ArrayList<>(List.copyOf(filters)));
+        return root;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package app.tozzi.cache;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.entity.MyEntity;
+import app.tozzi.entity.MyEntity2;
+import app.tozzi.metrics.JPASearchFieldUsage;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.MyModel;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.repository.MyRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Not transactional: every search runs in its own transaction, like in an application, and the writes are committed
+ */
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPASearchResultCacheTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories("app.tozzi.repository")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class JPASearchResultCacheTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private JPASearchConfig config;
+
+    @BeforeEach
+    void setUp() {
+        config = new JPASearchConfig();
+        config.setResultCacheTtl(Duration.ofMinutes(1));
+        JPASearchConfig.set(config);
+        JPASearchResultCache.clear();
+        JPASearchMetrics.reset();
+
+        var entities = new ArrayList<MyEntity>();
+        for (int i = 1; i <= 8; i++) {
+            entities.add(MyEntity.builder().id((long) i).stringOne("StringOne_" + i).primitiveLong(i * 100L).build());
+        }
+
+        myRepository.saveAll(entities);
+    }
+
+    @AfterEach
+    void reset() {
+        myRepository.deleteAll();
+        JPASearchConfig.set(new JPASearchConfig());
+        JPASearchResultCache.clear();
+    }
+
+    @Test
+    public void cached() {
+        assertEquals(2, myRepository.findAll(Map.of("primitiveLong_gte", "700", "stringOne_startsWith", "String"), MyModel.class).size());
+        assertTrue(myRepository.exists(Map.of("primitiveLong_gte", "700"), MyModel.class));
+        assertEquals(2, JPASearchMetrics.getResultCacheMisses());
+
+        // same filters in a different order
+        var root = new JPASearchInput.RootFilter();
+        root.setOperator("and");
+        root.setFilters(new ArrayList<>(List.of(filter("stringOne", "startsWith", "String"), filter("primitiveLong", "gte", "700"))));
+        var input = new JPASearchInput();
+        input.setFilter(root);
+        assertEquals(2, myRepository.findAll(input, MyModel.class).size());
+        assertTrue(myRepository.exists(Map.of("primitiveLong_gte", "700"), MyModel.class));
+        assertEquals(2, JPASearchMetrics.getResultCacheHits());
+
+        config.setResultCacheMaxSize(1);
+        assertTrue(myRepository.exists(emptyMap(), MyModel.class));
+        assertEquals(1, JPASearchResultCache.size());
+        assertEquals(2, JPASearchMetrics.getResultCacheEvictions());
+    }
+
+    @Test
+    public void counts() {
+        // cached by the count cache only
+        assertEquals(2, myRepository.count(Map.of("primitiveLong_gte", "700"), MyModel.class));
+        assertEquals(2, myRepository.count(Map.of("primitiveLong_gte", "700"), MyModel.class));
+        assertEquals(0, JPASearchResultCache.size());
+        assertEquals(0, JPASearchMetrics.getResultCacheMisses());
+    }
+
+    @Test
+    public void invalidatedAfterCommit() {
+        assertTrue(myRepository.exists(Map.of("primitiveLong_gte", "800"), MyModel.class));
+        assertEquals(1, JPASearchResultCache.size());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            myRepository.deleteById(8L);
+            new JPASearchCacheInvalidationListener().changed(new MyEntity());
+
+            // the transaction sees its own changes, the other ones the committed rows until the commit
+            assertFalse(myRepository.exists(Map.of("primitiveLong_gte", "800"), MyModel.class));
+            assertEquals(1, JPASearchResultCache.size());
+        });
+
+        assertEquals(0, JPASearchResultCache.size());
+        assertFalse(myRepository.exists(Map.of("primitiveLong_gte", "800"), MyModel.class));
+        assertEquals(0, JPASearchMetrics.getResultCacheHits());
+        assertEquals(2, JPASearchMetrics.getResultCacheMisses());
+    }
+
+    @Test
+    public void rolledBack() {
+        assertTrue(myRepository.exists(Map.of("primitiveLong_gte", "800"), MyModel.class));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            myRepository.deleteById(8L);
+            new JPASearchCacheInvalidationListener().changed(new MyEntity());
+            assertFalse(myRepository.exists(Map.of("primitiveLong_gte", "800"), MyModel.class));
+            status.setRollbackOnly();
+        });
+
+        // the uncommitted result was never cached
+        assertTrue(myRepository.exists(Map.of("primitiveLong_gte", "800"), MyModel.class));
+        assertEquals(1, JPASearchMetrics.getResultCacheHits());
+    }
+
+    @Test
+    public void transactions() {
+        var template = new TransactionTemplate(transactionManager);
+        template.executeWithoutResult(status -> {
+            assertTrue(JPASearchResultCache.isBypassed());
+            assertTrue(myRepository.exists(Map.of("primitiveLong_gte", "700"), MyModel.class));
+        });
+
+        assertEquals(0, JPASearchResultCache.size());
+        assertEquals(0, JPASearchMetrics.getResultCacheMisses());
+
+        template.setReadOnly(true);
+        template.executeWithoutResult(status -> {
+            assertFalse(JPASearchResultCache.isBypassed());
+            assertTrue(myRepository.exists(Map.of("primitiveLong_gte", "700"), MyModel.class));
+        });
+
+        assertEquals(1, JPASearchResultCache.size());
+        assertEquals(1, JPASearchMetrics.getResultCacheMisses());
+    }
+
+    @Test
+    public void boundEntityManager() {
+        var template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        template.executeWithoutResult(status -> {
+            assertEquals(2, myRepository.findAll(Map.of("primitiveLong_gte", "700"), MyModel.class).size());
+            assertTrue(myRepository.exists(Map.of("primitiveLong_gte", "700"), MyModel.class));
+        });
+
+        // managed entities are not shared
+        assertEquals(1, JPASearchResultCache.size());
+        assertEquals(1, JPASearchMetrics.getResultCacheMisses());
+    }
+
+    @Test
+    public void invalidatedWhileSearching() {
+        var key = JPASearchCacheKeys.key(MyEntity.class, MyModel.class, "exists", null, null, List.of());
+
+        // other entities do not prevent the caching
+        assertTrue(JPASearchResultCache.get(key, false, () -> {
+            JPASearchResultCache.invalidate(MyEntity2.class);
+            return true;
+        }));
+        assertEquals(1, JPASearchResultCache.size());
+
+        JPASearchResultCache.clear();
+        assertTrue(JPASearchResultCache.get(key, false, () -> {
+            JPASearchResultCache.invalidate(MyEntity.class);
+            return true;
+        }));
+        assertEquals(0, JPASearchResultCache.size());
+    }
+
+    @Test
+    public void fieldUsage() {
+        config.setFieldUsageStatistics(true);
+        JPASearchFieldUsage.clear();
+
+        try {
+            // counted before the cache
+            assertEquals(2, myRepository.findAllSorted(Map.of("primitiveLong_gte", "700", "stringOne_sort", "DESC"), MyModel.class).size());
+            assertEquals(2, myRepository.findAllSorted(Map.of("primitiveLong_gte", "700", "stringOne_sort", "DESC"), MyModel.class).size());
+            assertEquals(1, JPASearchMetrics.getResultCacheHits());
+            assertEquals(Set.of("primitiveLong gte 2", "stringOne sort 2"),
+                    JPASearchFieldUsage.snapshot().stream().map(u -> u.field() + " " + u.operator() + " " + u.count()).collect(Collectors.toSet()));
+        } finally {
+            JPASearchFieldUsage.clear();
+        }
+    }
+
+    private static JPASearchInput.Filter filter(String key, String operator, Object value) {
+        var filter = new JPASearchInput.FilterSingleValue();
+        filter.setKey(key);
+        filter.setOperator(operator);
+        filter.setValue(value);
+        return filter;
+    }
+
+}
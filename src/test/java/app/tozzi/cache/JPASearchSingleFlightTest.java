@@ -0,0 +1,142 @@
+package app.tozzi.cache;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.entity.MyEntity;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.MyModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JPASearchSingleFlightTest {
+
+    @BeforeEach
+    void setUp() {
+        var config = new JPASearchConfig();
+        config.setSingleFlightEntities(Set.of(MyEntity.class));
+        JPASearchConfig.set(config);
+        JPASearchMetrics.reset();
+    }
+
+    @AfterEach
+    void reset() {
+        JPASearchConfig.set(new JPASearchConfig());
+    }
+
+    @Test
+    public void coalescing() throws Exception {
+        var executions = new AtomicInteger();
+        var latch = new CountDownLatch(1);
+
+        var leader = CompletableFuture.supplyAsync(() -> search(MyEntity.class, executions, latch));
+        while (executions.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        var follower = CompletableFuture.supplyAsync(() -> search(MyEntity.class, executions, latch));
+        while (JPASearchMetrics.getCoalescedSearches() == 0) {
+            Thread.sleep(5);
+        }
+
+        latch.countDown();
+        var leaderResult = leader.get(5, TimeUnit.SECONDS);
+        var followerResult = follower.get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, executions.get());
+        assertEquals(leaderResult, followerResult);
+        assertNotSame(leaderResult, followerResult);
+        assertNotSame(leaderResult.get(0), followerResult.get(0));
+    }
+
+    @Test
+    public void notConfigured() throws Exception {
+        var executions = new AtomicInteger();
+        var latch = new CountDownLatch(1);
+
+        var first = CompletableFuture.supplyAsync(() -> search(MyModel.class, executions, latch));
+        var second = CompletableFuture.supplyAsync(() -> search(MyModel.class, executions, latch));
+        while (executions.get() < 2) {
+            Thread.sleep(5);
+        }
+
+        latch.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(0, JPASearchMetrics.getCoalescedSearches());
+    }
+
+    @Test
+    public void failure() {
+        assertThrows(IllegalStateException.class, () -> JPASearchSingleFlight.execute(JPASearchCacheKeys.key(MyEntity.class, MyModel.class, "search", null, null, null), false, () -> {
+            throw new IllegalStateException();
+        }, UnaryOperator.identity()));
+
+        assertEquals("ok", JPASearchSingleFlight.execute(JPASearchCacheKeys.key(MyEntity.class, MyModel.class, "search", null, null, null), false, () -> "ok", UnaryOperator.identity()));
+    }
+
+    @Test
+    public void leaderError() throws Exception {
+        var key = JPASearchCacheKeys.key(MyEntity.class, MyModel.class, "search", null, null, null);
+        var latch = new CountDownLatch(1);
+        var executions = new AtomicInteger();
+
+        var leader = CompletableFuture.supplyAsync(() -> JPASearchSingleFlight.execute(key, false, () -> {
+            executions.incrementAndGet();
+            await(latch);
+            throw new StackOverflowError();
+        }, UnaryOperator.identity()));
+
+        while (executions.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        var follower = CompletableFuture.supplyAsync(() -> JPASearchSingleFlight.execute(key, false, () -> "ok", UnaryOperator.identity()));
+        while (JPASearchMetrics.getCoalescedSearches() == 0) {
+            Thread.sleep(5);
+        }
+
+        latch.countDown();
+        assertInstanceOf(StackOverflowError.class, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertInstanceOf(StackOverflowError.class, assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals("ok", JPASearchSingleFlight.execute(key, false, () -> "ok", UnaryOperator.identity()));
+    }
+
+    @Test
+    public void copy() {
+        var nested = new LinkedHashMap<String, Object>(Map.of("a", 1));
+        var result = List.of(Map.of("nested", nested, "b", List.of("x")));
+
+        var copy = JPASearchSingleFlight.copy(result);
+        assertEquals(result, copy);
+        assertNotSame(nested, copy.get(0).get("nested"));
+    }
+
+    private static List<Map<String, Object>> search(Class<?> entityClass, AtomicInteger executions, CountDownLatch latch) {
+        return JPASearchSingleFlight.execute(JPASearchCacheKeys.key(entityClass, MyModel.class, "projection", null, null, List.of("options")), false, () -> {
+            executions.incrementAndGet();
+            await(latch);
+
+            var row = new LinkedHashMap<String, Object>();
+            row.put("id", 1L);
+            return List.<Map<String, Object>>of(row);
+        }, JPASearchSingleFlight::copy);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
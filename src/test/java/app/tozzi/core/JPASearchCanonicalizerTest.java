@@ -0,0 +1,181 @@
+package app.tozzi.core;
+
+import app.tozzi.model.MyModel;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.JPASearchUtils;
+import app.tozzi.util.ReflectionUtils;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static app.tozzi.core.JPASearchFilterOptimizerTest.multiple;
+import static app.tozzi.core.JPASearchFilterOptimizerTest.root;
+import static app.tozzi.core.JPASearchFilterOptimizerTest.single;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JPASearchCanonicalizerTest {
+
+    private static final long EMPTY = fingerprint(root("and"));
+
+    @Test
+    public void commutativeGroups() {
+        var a = root("and", single("stringOne", "eq", "a"), root("or", single("stringTwo", "eq", "b"), single("primitiveLong", "gt", "10")));
+        var b = root("and", root("or", single("primitiveLong", "gt", "10"), single("stringTwo", "eq", "b")), single("stringOne", "eq", "a"));
+        assertEquals(fingerprint(a), fingerprint(b));
+        assertNotEquals(fingerprint(a), fingerprint(root("or", a.getFilters().toArray(JPASearchInput.Filter[]::new))));
+        assertNotEquals(EMPTY, fingerprint(a));
+    }
+
+    @Test
+    public void convertedValues() {
+        assertEquals(fingerprint(root("and", single("primitiveLong", "eq", "100"))), fingerprint(root("and", single("primitiveLong", "eq", 100))));
+        assertNotEquals(fingerprint(root("and", single("primitiveLong", "eq", "100"))), fingerprint(root("and", single("primitiveLong", "eq", "101"))));
+        assertNotEquals(fingerprint(root("and", single("primitiveLong", "eq", "100"))), fingerprint(root("and", single("primitiveLong", "gt", "100"))));
+        assertNotEquals(fingerprint(root("and", single("stringOne", "eq", "100"))), fingerprint(root("and", single("stringTwo", "eq", "100"))));
+    }
+
+    @Test
+    public void ignoreCase() {
+        var upper = single("stringOne", "eq", "ABC");
+        upper.setOptions(new JPASearchInput.JPASearchFilterOptions());
+        upper.getOptions().setIgnoreCase(true);
+        var lower = single("stringOne", "eq", "abc");
+        lower.setOptions(new JPASearchInput.JPASearchFilterOptions());
+        lower.getOptions().setIgnoreCase(true);
+
+        assertEquals(fingerprint(root("and", upper)), fingerprint(root("and", lower)));
+        assertNotEquals(fingerprint(root("and", single("stringOne", "eq", "ABC"))), fingerprint(root("and", single("stringOne", "eq", "abc"))));
+        assertNotEquals(fingerprint(root("and", upper)), fingerprint(root("and", single("stringOne", "eq", "abc"))));
+    }
+
+    @Test
+    public void trim() {
+        var padded = single("stringOne", "eq", "a ");
+        padded.setOptions(new JPASearchInput.JPASearchFilterOptions());
+        padded.getOptions().setTrim(true);
+        var plain = single("stringOne", "eq", "a");
+        plain.setOptions(new JPASearchInput.JPASearchFilterOptions());
+        plain.getOptions().setTrim(true);
+
+        // the column is trimmed, not the value: different searches
+        assertNotEquals(fingerprint(root("and", padded)), fingerprint(root("and", plain)));
+        assertNotEquals(canonical(root("and", padded)), canonical(root("and", plain)));
+        assertNotEquals(canonical(root("and", plain)), canonical(root("and", single("stringOne", "eq", "a"))));
+    }
+
+    @Test
+    public void timestamps() {
+        var first = new Timestamp(1_000L);
+        first.setNanos(1);
+        var second = new Timestamp(1_000L);
+        second.setNanos(2);
+        var copy = new Timestamp(1_000L);
+        copy.setNanos(1);
+
+        // same milliseconds
+        assertEquals(first.getTime(), second.getTime());
+        assertNotEquals(fingerprint(root("and", single("dateOne", "eq", first))), fingerprint(root("and", single("dateOne", "eq", second))));
+        assertNotEquals(canonical(root("and", single("dateOne", "eq", first))), canonical(root("and", single("dateOne", "eq", second))));
+        assertEquals(canonical(root("and", single("dateOne", "eq", first))), canonical(root("and", single("dateOne", "eq", copy))));
+    }
+
+    @Test
+    public void multipleValues() {
+        assertEquals(fingerprint(root("and", multiple("primitiveLong", "in", "1", "2", "3"))), fingerprint(root("and", multiple("primitiveLong", "in", 3, "2", 1))));
+        assertNotEquals(fingerprint(root("and", multiple("primitiveLong", "between", "1", "3"))), fingerprint(root("and", multiple("primitiveLong", "between", "3", "1"))));
+        assertNotEquals(fingerprint(root("and", multiple("primitiveLong", "in", "1", "2"))), fingerprint(root("and", multiple("primitiveLong", "in", "1", "2", "3"))));
+    }
+
+    @Test
+    public void invalidValues() {
+        assertNotEquals(fingerprint(root("and", single("primitiveLong", "eq", "abc"))), fingerprint(root("and", single("primitiveLong", "eq", "abd"))));
+        assertNotEquals(fingerprint(root("and", single("notExists", "eq", "a"))), fingerprint(root("and", single("notExists", "eq", "b"))));
+    }
+
+    @Test
+    public void mode1() {
+        var first = new LinkedHashMap<String, String>();
+        first.put("stringOne_eq", "a");
+        first.put("primitiveLong_gte", "10");
+        first.put("_limit", "10");
+        var second = new LinkedHashMap<String, String>();
+        second.put("_limit", "10");
+        second.put("primitiveLong_gte", "10");
+        second.put("stringOne_eq", "a");
+
+        var searchableFields = ReflectionUtils.getAllSearchableFields(MyModel.class);
+        var a = JPASearchUtils.toObject(first, true, true, false);
+        var b = JPASearchUtils.toObject(second, true, true, false);
+        assertEquals(JPASearchCanonicalizer.fingerprint(a.getFilter(), searchableFields, null), JPASearchCanonicalizer.fingerprint(b.getFilter(), searchableFields, null));
+        assertEquals(JPASearchCanonicalizer.canonical(a.getOptions()), JPASearchCanonicalizer.canonical(b.getOptions()));
+
+        second.put("_limit", "20");
+        assertNotEquals(JPASearchCanonicalizer.canonical(a.getOptions()), JPASearchCanonicalizer.canonical(JPASearchUtils.toObject(second, true, true, false).getOptions()));
+    }
+
+    @Test
+    public void toHex() {
+        assertEquals("000000000000000a", JPASearchCanonicalizer.toHex(10));
+        assertEquals("ffffffffffffffff", JPASearchCanonicalizer.toHex(-1));
+        assertEquals(16, JPASearchCanonicalizer.toHex(fingerprint(root("and", single("stringOne", "eq", "a")))).length());
+    }
+
+    @Test
+    public void shape() {
+        var negated = single("stringOne", "eq", "ABC");
+        negated.setOptions(new JPASearchInput.JPASearchFilterOptions());
+        negated.getOptions().setNegate(true);
+        negated.getOptions().setIgnoreCase(true);
+
+        var a = root("and", negated, multiple("primitiveLong", "in", "1", "2"));
+        var b = root("and", multiple("primitiveLong", "in", "3"), negated);
+        assertEquals("and(not stringOne eq ignoreCase, primitiveLong in)", JPASearchCanonicalizer.shape(a));
+        assertEquals(JPASearchCanonicalizer.shape(a), JPASearchCanonicalizer.shape(b));
+        assertNotEquals(JPASearchCanonicalizer.shape(a), JPASearchCanonicalizer.shape(root("and", single("stringOne", "eq", "ABC"), multiple("primitiveLong", "in", "1"))));
+        assertEquals("", JPASearchCanonicalizer.shape(null));
+    }
+
+    @Test
+    public void canonical() {
+        var a = root("and", single("stringOne", "eq", "a"), root("or", multiple("primitiveLong", "in", "1", "2"), single("stringTwo", "eq", "b")));
+        var b = root("and", root("or", single("stringTwo", "eq", "b"), multiple("primitiveLong", "in", 2, 1)), single("stringOne", "eq", "a"));
+        assertEquals(canonical(a), canonical(b));
+        assertEquals("\"and\"(\"stringOne\" \"eq\" 0 java.lang.String:\"a\")", canonical(root("and", single("stringOne", "eq", "a"))));
+
+        // quoted values cannot be confused with the separators
+        assertNotEquals(canonical(root("and", multiple("stringOne", "in", "a\",java.lang.String:\"b"))), canonical(root("and", multiple("stringOne", "in", "a", "b"))));
+        assertNotEquals(canonical(root("and", single("stringOne", "eq", "a"))), canonical(root("and", single("stringOne", "eq", "b"))));
+        assertEquals("", JPASearchCanonicalizer.canonical(null, ReflectionUtils.getAllSearchableFields(MyModel.class), null));
+
+        var options = new JPASearchInput.JPASearchOptions();
+        assertEquals("null|null||", JPASearchCanonicalizer.canonical(options));
+        options.setPageSize(10);
+        options.setSelections(List.of("stringOne"));
+        var sortOption = new JPASearchInput.JPASortOptions();
+        sortOption.setKey("primitiveLong");
+        sortOption.setDesc(true);
+        options.setSortOptions(List.of(sortOption));
+        assertEquals("java.lang.Integer:\"10\"|null|\"primitiveLong\" desc|\"stringOne\"", JPASearchCanonicalizer.canonical(options));
+        assertEquals("", JPASearchCanonicalizer.canonical((JPASearchInput.JPASearchOptions) null));
+    }
+
+    @Test
+    public void canonicalWithFingerprint() {
+        var searchableFields = ReflectionUtils.getAllSearchableFields(MyModel.class);
+        var filter = root("and", single("stringOne", "eq", "a"), root("not", root("or", multiple("primitiveLong", "in", "2", "1"), single("stringTwo", "eq", "b"))));
+        var canonical = JPASearchCanonicalizer.canonicalWithFingerprint(filter, searchableFields, null);
+        assertEquals(canonical(filter), canonical.form());
+        assertEquals(fingerprint(filter), canonical.fingerprint());
+        assertEquals(new JPASearchCanonicalizer.Canonical("", 0), JPASearchCanonicalizer.canonicalWithFingerprint(null, searchableFields, null));
+    }
+
+    private static String canonical(JPASearchInput.RootFilter filter) {
+        return JPASearchCanonicalizer.canonical(filter, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+    }
+
+    private static long fingerprint(JPASearchInput.RootFilter filter) {
+        return JPASearchCanonicalizer.fingerprint(filter, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+    }
+}
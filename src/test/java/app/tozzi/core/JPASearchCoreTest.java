@@ -1,12 +1,37 @@
 package app.tozzi.core;
 
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.config.JPASearchLimits;
 import app.tozzi.entity.*;
 import app.tozzi.exception.JPASearchException;
+import app.tozzi.exception.JPASearchLimitException;
+import app.tozzi.exception.JPASearchUnindexedException;
+import app.tozzi.metrics.JPASearchEvent;
+import app.tozzi.metrics.JPASearchFieldUsage;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.metrics.JPASearchObservations;
+import app.tozzi.metrics.JPASearchPhase;
+import app.tozzi.metrics.JPASearchSlowSearches;
+import app.tozzi.model.JPASearchAggregateFunction;
+import app.tozzi.model.JPASearchAggregation;
+import app.tozzi.model.JPASearchInStrategy;
+import app.tozzi.model.JPASearchIndexPolicy;
+import app.tozzi.model.IndexedModel;
 import app.tozzi.model.MyModel;
 import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.repository.IndexedRepository;
 import app.tozzi.repository.MyRepository;
+import app.tozzi.util.AsyncUtils;
+import app.tozzi.util.ReflectionUtils;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.persistence.Query;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
@@ -18,8 +43,10 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
 
 import java.math.BigDecimal;
+import java.nio.file.Files;
 import java.time.*;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static java.util.Collections.emptyMap;
 import static org.junit.jupiter.api.Assertions.*;
@@ -39,6 +66,9 @@ public class JPASearchCoreTest {
     @Autowired
     private MyRepository myRepository;
 
+    @Autowired
+    private IndexedRepository indexedRepository;
+
     @BeforeEach
     void init() {
         setUp();
@@ -838,4 +868,614 @@ public class JPASearchCoreTest {
         assertTrue(res.stream().allMatch(r -> r.getKeywords().stream().anyMatch(k -> k.startsWith("key"))));
     }
 
+    @Test
+    public void mode2_elementCollection_keywords_and_differentElements() {
+        var input = new JPASearchInput();
+        var root = new JPASearchInput.RootFilter();
+        root.setFilters(new ArrayList<>());
+        root.setOperator("and");
+
+        var ff1 = new JPASearchInput.FilterSingleValue();
+        ff1.setKey("keywords");
+        ff1.setValue("j");
+        ff1.setOperator("startsWith");
+        root.getFilters().add(ff1);
+
+        var ff2 = new JPASearchInput.FilterSingleValue();
+        ff2.setKey("keywords");
+        ff2.setValue("g");
+        ff2.setOperator("endsWith");
+        root.getFilters().add(ff2);
+
+        input.setFilter(root);
+        List<MyEntity> res = myRepository.findAll(input, MyModel.class);
+
+        // "java" and "spring": no single keyword satisfies both filters
+        assertNotNull(res);
+        assertEquals(4, res.size());
+        assertTrue(res.stream().allMatch(r -> r.getId() % 2 == 0));
+    }
+
+    @Test
+    public void mode1_inChunked() {
+        var config = new JPASearchConfig();
+        config.setInListThreshold(0);
+        config.setInListStrategy(JPASearchInStrategy.CHUNKED);
+        config.setInListChunkSize(2);
+        JPASearchConfig.set(config);
+
+        try {
+            List<MyEntity> res = myRepository.findAll(Map.of("id_in", "1,2,3,4,5"), MyModel.class);
+            assertNotNull(res);
+            assertEquals(5, res.size());
+            assertTrue(res.stream().allMatch(r -> r.getId() <= 5L));
+        } finally {
+            JPASearchConfig.set(new JPASearchConfig());
+        }
+    }
+
+    @Test
+    public void mode1_inPadded() {
+        var config = new JPASearchConfig();
+        config.setInListThreshold(0);
+        config.setInListStrategy(JPASearchInStrategy.PADDED);
+        JPASearchConfig.set(config);
+
+        try {
+            List<MyEntity> res = myRepository.findAll(Map.of("stringOne_in", "StringOne_1,StringOne_3,StringOne_7"), MyModel.class);
+            assertNotNull(res);
+            assertEquals(3, res.size());
+            assertTrue(res.stream().anyMatch(r -> r.getId().equals(7L)));
+        } finally {
+            JPASearchConfig.set(new JPASearchConfig());
+        }
+    }
+
+    @Test
+    public void mode1_inArray() {
+        var config = new JPASearchConfig();
+        config.setInListThreshold(0);
+        config.setInListStrategy(JPASearchInStrategy.ARRAY);
+        JPASearchConfig.set(config);
+
+        try {
+            List<MyEntity> res = myRepository.findAll(Map.of("id_in", "2,4,9"), MyModel.class);
+            assertEquals(Set.of(2L, 4L), res.stream().map(MyEntity::getId).collect(Collectors.toSet()));
+
+            res = myRepository.findAll(Map.of("stringOne_in", "StringOne_1,StringOne_3,StringOne_7"), MyModel.class);
+            assertEquals(Set.of(1L, 3L, 7L), res.stream().map(MyEntity::getId).collect(Collectors.toSet()));
+        } finally {
+            JPASearchConfig.set(new JPASearchConfig());
+        }
+    }
+
+    @Test
+    public void mode2_optimizedContradiction() {
+        var input = new JPASearchInput();
+        var root = new JPASearchInput.RootFilter();
+        root.setFilters(new ArrayList<>());
+        root.setOperator("and");
+        var ff1 = new JPASearchInput.FilterSingleValue();
+        ff1.setKey("id");
+        ff1.setValue("1");
+        ff1.setOperator("eq");
+        root.getFilters().add(ff1);
+        var ff2 = new JPASearchInput.FilterSingleValue();
+        ff2.setKey("id");
+        ff2.setValue("2");
+        ff2.setOperator("eq");
+        root.getFilters().add(ff2);
+        input.setFilter(root);
+
+        List<MyEntity> res = myRepository.findAll(input, MyModel.class);
+        assertNotNull(res);
+        assertTrue(res.isEmpty());
+        assertEquals(0, myRepository.count(input, MyModel.class));
+    }
+
+    @Test
+    public void mode2_emptyInShortCircuit() {
+        var input = new JPASearchInput();
+        var root = new JPASearchInput.RootFilter();
+        root.setFilters(new ArrayList<>());
+        root.setOperator("and");
+        var ff1 = new JPASearchInput.FilterMultipleValues();
+        ff1.setKey("primitiveLong");
+        ff1.setValues(new ArrayList<>());
+        ff1.setOperator("in");
+        root.getFilters().add(ff1);
+        input.setFilter(root);
+        input.setOptions(new JPASearchInput.JPASearchOptions());
+        input.getOptions().setPageSize(5);
+
+        var saved = JPASearchMetrics.getSavedRoundTrips();
+        assertTrue(myRepository.findAll(input, MyModel.class).isEmpty());
+        assertEquals(0, myRepository.count(input, MyModel.class));
+
+        Page<MyEntity> page = myRepository.findAllWithPaginationAndSorting(input, MyModel.class);
+        assertTrue(page.isEmpty());
+        assertEquals(0, page.getTotalElements());
+        assertEquals(5, page.getSize());
+        assertEquals(saved + 4, JPASearchMetrics.getSavedRoundTrips());
+
+        ff1.setOptions(new JPASearchInput.JPASearchFilterOptions());
+        ff1.getOptions().setNegate(true);
+        assertEquals(8, myRepository.findAll(input, MyModel.class).size());
+        assertEquals(saved + 4, JPASearchMetrics.getSavedRoundTrips());
+    }
+
+    @Test
+    public void mode2_emptyIn_withAndWithoutOptimization() {
+        for (var optimization : List.of(true, false)) {
+            var config = new JPASearchConfig();
+            config.setFilterOptimization(optimization);
+            JPASearchConfig.set(config);
+
+            try {
+                var in = (JPASearchInput.FilterMultipleValues) single("primitiveLong", "in", List.of());
+                assertEquals(0, myRepository.findAll(input(in), MyModel.class).size());
+                assertEquals(0, myRepository.count(input(in), MyModel.class));
+                assertEquals(0, myRepository.findAll(input(single("keywords", "in", List.of())), MyModel.class).size());
+
+                var or = new JPASearchInput.RootFilter();
+                or.setOperator("or");
+                or.setFilters(new ArrayList<>(List.of(in, single("id", "eq", 1))));
+                assertEquals(1, myRepository.findAll(input(or), MyModel.class).size());
+
+                in.setOptions(new JPASearchInput.JPASearchFilterOptions());
+                in.getOptions().setNegate(true);
+                assertEquals(8, myRepository.findAll(input(in), MyModel.class).size());
+            } finally {
+                JPASearchConfig.set(new JPASearchConfig());
+            }
+        }
+    }
+
+    @Test
+    public void mode2_emptyInShortCircuit_invalidField() {
+        var input = new JPASearchInput();
+        var root = new JPASearchInput.RootFilter();
+        root.setFilters(new ArrayList<>());
+        root.setOperator("and");
+        var ff1 = new JPASearchInput.FilterMultipleValues();
+        ff1.setKey("primitiveLong");
+        ff1.setValues(new ArrayList<>());
+        ff1.setOperator("in");
+        root.getFilters().add(ff1);
+        var ff2 = new JPASearchInput.FilterSingleValue();
+        ff2.setKey("unknown");
+        ff2.setValue("1");
+        ff2.setOperator("eq");
+        root.getFilters().add(ff2);
+        input.setFilter(root);
+
+        assertThrows(JPASearchException.class, () -> myRepository.findAll(input, MyModel.class));
+    }
+
+    @Test
+    public void mode2_prunedFilter_invalidField() {
+        var and = new JPASearchInput.RootFilter();
+        and.setOperator("and");
+        and.setFilters(new ArrayList<>(List.of(single("unknown", "eq", "1"), single("primitiveLong", "in", List.of()))));
+
+        var or = new JPASearchInput.RootFilter();
+        or.setOperator("or");
+        or.setFilters(new ArrayList<>(List.of(single("id", "eq", 1), and)));
+
+        assertThrows(JPASearchException.class, () -> myRepository.findAll(input(or), MyModel.class));
+    }
+
+    @Test
+    public void phaseObservations() {
+        var stopped = new ArrayList<Observation.Context>();
+        var registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(new ObservationHandler<>() {
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+
+            @Override
+            public void onStop(Observation.Context context) {
+                stopped.add(context);
+            }
+        });
+
+        var config = new JPASearchConfig();
+        config.setObservationRegistry(registry);
+        JPASearchConfig.set(config);
+
+        try {
+            myRepository.findAll(Map.of("primitiveLong_gte", "700"), MyModel.class);
+            assertTrue(stopped.isEmpty());
+
+            config.setPhaseObservations(true);
+            assertEquals(2, myRepository.findAll(Map.of("primitiveLong_gte", "700"), MyModel.class).size());
+            var projection = input(single("stringOne", "eq", "StringOne_1"));
+            projection.setOptions(new JPASearchInput.JPASearchOptions());
+            projection.getOptions().setSelections(List.of("stringOne"));
+            assertEquals(1, myRepository.projection(projection, MyModel.class, MyEntity.class).size());
+
+            var search = stopped.stream().filter(c -> JPASearchObservations.SEARCH.equals(c.getName())).toList();
+            assertEquals(2, search.size());
+            assertEquals("map", search.get(0).getLowCardinalityKeyValue("mode").getValue());
+            assertEquals("find", search.get(0).getLowCardinalityKeyValue("operation").getValue());
+            assertEquals("MyModel", search.get(0).getLowCardinalityKeyValue("domain").getValue());
+            assertEquals("2-10", search.get(0).getLowCardinalityKeyValue("result.size").getValue());
+            assertEquals("input", search.get(1).getLowCardinalityKeyValue("mode").getValue());
+            assertEquals("projection", search.get(1).getLowCardinalityKeyValue("operation").getValue());
+            assertEquals("1", search.get(1).getLowCardinalityKeyValue("result.size").getValue());
+
+            var phases = stopped.stream().filter(c -> JPASearchObservations.PHASE.equals(c.getName()))
+                    .map(c -> c.getLowCardinalityKeyValue("phase").getValue())
+                    .collect(Collectors.toSet());
+            assertEquals(Arrays.stream(JPASearchPhase.values()).map(JPASearchPhase::getValue).collect(Collectors.toSet()), phases);
+
+            // every phase is tagged with its search, parsing included
+            var tags = stopped.stream().filter(c -> JPASearchObservations.PHASE.equals(c.getName()))
+                    .map(c -> c.getLowCardinalityKeyValue("phase").getValue() + " " + c.getLowCardinalityKeyValue("domain").getValue() + " "
+                            + c.getLowCardinalityKeyValue("mode").getValue() + " " + c.getLowCardinalityKeyValue("operation").getValue())
+                    .collect(Collectors.toSet());
+            assertTrue(tags.contains("parse MyModel map find"));
+            assertTrue(tags.contains("execute MyModel map find"));
+            assertTrue(tags.contains("execute MyModel input projection"));
+            assertTrue(tags.stream().noneMatch(t -> t.contains("none")), tags::toString);
+        } finally {
+            JPASearchConfig.set(new JPASearchConfig());
+        }
+    }
+
+    @Test
+    public void jfrEvents() throws Exception {
+        var or = new JPASearchInput.RootFilter();
+        or.setOperator("or");
+        or.setFilters(new ArrayList<>(List.of(single("stringOne", "eq", "StringOne_1"), single("stringOne", "eq", "StringOne_2"))));
+        var input = input(single("primitiveLong", "in", List.of("100", "200", "300")));
+        input.getFilter().getFilters().add(or);
+
+        var file = Files.createTempFile("jpa-search", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable(JPASearchEvent.NAME).withoutThreshold();
+            recording.start();
+            assertEquals(2, myRepository.findAll(input, MyModel.class).size());
+            assertEquals(2, myRepository.count(input, MyModel.class));
+            var empty = input(single("id", "eq", 1));
+            empty.getFilter().getFilters().clear();
+            assertEquals(8, myRepository.count(empty, MyModel.class));
+            recording.stop();
+            recording.dump(file);
+        }
+
+        try {
+            var events = RecordingFile.readAllEvents(file).stream().filter(e -> JPASearchEvent.NAME.equals(e.getEventType().getName())).toList();
+            assertEquals(3, events.size());
+
+            var find = events.get(0);
+            assertEquals(MyModel.class.getName(), find.getClass("domain").getName());
+            assertEquals("input", find.getString("mode"));
+            assertEquals("find", find.getString("operation"));
+            assertEquals(JPASearchCanonicalizer.toHex(JPASearchCanonicalizer.fingerprint(input.getFilter(), ReflectionUtils.getAllSearchableFields(MyModel.class), null)),
+                    find.getString("fingerprint"));
+            assertEquals(3, find.getInt("filterCount"));
+            assertEquals(2, find.getInt("filterMaxDepth"));
+            assertEquals("3", find.getString("inListSizes"));
+            assertEquals(2, find.getLong("rows"));
+            assertTrue(find.getDuration("executeDuration").toNanos() > 0);
+            assertTrue(find.getDuration("resolveDuration").toNanos() > 0);
+
+            var count = events.get(1);
+            assertEquals("count", count.getString("operation"));
+            assertEquals(-1, count.getLong("rows"));
+            assertEquals(find.getString("fingerprint"), count.getString("fingerprint"));
+
+            var unfiltered = events.get(2);
+            assertEquals(0, unfiltered.getInt("filterMaxDepth"));
+            assertEquals(0, unfiltered.getInt("filterCount"));
+            assertNull(unfiltered.getString("fingerprint"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void limits() {
+        var limits = new JPASearchLimits();
+        limits.setMaxDepth(2);
+        limits.setMaxFilters(3);
+        limits.setMaxInValues(4);
+        limits.setMaxJoins(2);
+        limits.setMaxPageSize(5);
+
+        var config = new JPASearchConfig();
+        config.setDomainLimits(Map.of(MyModel.class, limits));
+        JPASearchConfig.set(config);
+
+        try {
+            var nested = new JPASearchInput.RootFilter();
+            nested.setOperator("or");
+            nested.setFilters(new ArrayList<>(List.of(single("stringOne", "eq", "StringOne_1"))));
+            var deep = new JPASearchInput.RootFilter();
+            deep.setOperator("and");
+            deep.setFilters(new ArrayList<>(List.of(nested)));
+            var depth = input(deep);
+            var e = assertThrows(JPASearchLimitException.class, () -> myRepository.findAll(depth, MyModel.class));
+            assertEquals(JPASearchLimitException.Limit.DEPTH, e.getLimit());
+            assertEquals(3, e.getValue());
+            assertEquals(2, e.getMax());
+            assertEquals(MyModel.class, e.getDomainType());
+
+            config.setDomainLimits(Map.of());
+            assertEquals(1, myRepository.findAll(depth, MyModel.class).size());
+            config.setDomainLimits(Map.of(MyModel.class, limits));
+
+            var filters = input(single("stringOne", "eq", "StringOne_1"));
+            filters.getFilter().getFilters().addAll(List.of(single("stringTwo", "eq", "StringTwo_1"), single("stringThree", "eq", "StringThree_1")));
+            assertEquals(1, myRepository.count(filters, MyModel.class));
+            filters.getFilter().getFilters().add(single("primitiveLong", "eq", "100"));
+            assertEquals(JPASearchLimitException.Limit.FILTERS, assertThrows(JPASearchLimitException.class, () -> myRepository.count(filters, MyModel.class)).getLimit());
+
+            // rejected before being observed, cached or coalesced
+            config.setSlowSearchShapes(10);
+            config.setSingleFlightEntities(Set.of(MyEntity.class));
+            JPASearchSlowSearches.clear();
+            assertThrows(JPASearchLimitException.class, () -> myRepository.findAll(filters, MyModel.class));
+            assertThrows(JPASearchLimitException.class, () -> myRepository.projection(filters, MyModel.class, MyEntity.class));
+            assertTrue(JPASearchSlowSearches.top(10).isEmpty());
+            config.setSlowSearchShapes(0);
+            config.setSingleFlightEntities(Set.of());
+
+            // checked at admission by every repository, not when compiling the filter
+            assertThrows(JPASearchLimitException.class, () -> myRepository.countBatch(List.of(filters), MyModel.class, MyEntity.class));
+            assertThrows(JPASearchLimitException.class, () -> myRepository.facets(filters, MyModel.class, MyEntity.class, List.of("stringOne"), false));
+            assertThrows(JPASearchLimitException.class, () -> myRepository.aggregate(filters, MyModel.class, MyEntity.class, List.of("stringOne"),
+                    List.of(new JPASearchAggregation(JPASearchAggregateFunction.COUNT, null))));
+            assertThrows(JPASearchLimitException.class, () -> myRepository.distinctValues("stringOne", null, 10, filters, MyModel.class, MyEntity.class));
+            assertThrows(JPASearchLimitException.class, () -> myRepository.deleteAll(filters, MyModel.class, MyEntity.class));
+            assertEquals(8, myRepository.count());
+            assertNotNull(JPASearchCore.compile(MyModel.class, filters.getFilter(), ReflectionUtils.getAllSearchableFields(MyModel.class), null));
+
+            var in = input(single("primitiveLong", "in", List.of("100", "200", "300", "400")));
+            assertEquals(4, myRepository.findAll(in, MyModel.class).size());
+            in.getFilter().getFilters().add(single("primitiveLong", "in", List.of("500")));
+            assertEquals(JPASearchLimitException.Limit.IN_VALUES, assertThrows(JPASearchLimitException.class, () -> myRepository.findAll(in, MyModel.class)).getLimit());
+
+            var joins = input(single("mySubModel.searchMe", "eq", "Test2_1"));
+            joins.getFilter().getFilters().add(single("mySubModel.mySubSubModel.searchMeAgain", "eq", "Test1_1"));
+            assertEquals(1, myRepository.findAll(joins, MyModel.class).size());
+            joins.getFilter().getFilters().add(single("list.other", "eq", "Test6_1"));
+            e = assertThrows(JPASearchLimitException.class, () -> myRepository.findAll(joins, MyModel.class));
+            assertEquals(JPASearchLimitException.Limit.JOINS, e.getLimit());
+            assertEquals(3, e.getValue());
+
+            // embeddables are not joined
+            limits.setMaxJoins(0);
+            var embedded = input(single("stringOne", "eq", "Test_1"));
+            var embeddedFieldMap = Map.of("stringOne", "embeddedID.testId1");
+            var searchableFields = ReflectionUtils.getAllSearchableFields(MyModel.class);
+            JPASearchCore.checkLimits(MyModel.class, MyEntity2.class, embedded.getFilter(), searchableFields, embeddedFieldMap);
+            assertEquals(JPASearchLimitException.Limit.JOINS, assertThrows(JPASearchLimitException.class,
+                    () -> JPASearchCore.checkLimits(MyModel.class, null, embedded.getFilter(), searchableFields, embeddedFieldMap)).getLimit());
+            limits.setMaxJoins(2);
+
+            // element collections: one join per filter, but for equals and in (membership)
+            var elements = input(single("keywords", "startsWith", "j"));
+            elements.getFilter().getFilters().addAll(List.of(single("keywords", "contains", "a"), single("keywords", "eq", "java")));
+            JPASearchCore.checkLimits(MyModel.class, MyEntity.class, elements.getFilter(), searchableFields, null);
+            elements.getFilter().getFilters().add(single("keywords", "endsWith", "a"));
+            e = assertThrows(JPASearchLimitException.class, () -> JPASearchCore.checkLimits(MyModel.class, MyEntity.class, elements.getFilter(), searchableFields, null));
+            assertEquals(JPASearchLimitException.Limit.JOINS, e.getLimit());
+            assertEquals(3, e.getValue());
+
+            assertEquals(5, myRepository.findAllWithPaginationAndSorting(Map.of("_limit", "5", "_offset", "0"), MyModel.class).getContent().size());
+            assertEquals(JPASearchLimitException.Limit.PAGE_SIZE, assertThrows(JPASearchLimitException.class,
+                    () -> myRepository.findAllWithPaginationAndSorting(Map.of("_limit", "6", "_offset", "0"), MyModel.class)).getLimit());
+        } finally {
+            JPASearchConfig.set(new JPASearchConfig());
+        }
+    }
+
+    @Test
+    public void queryTimeout() throws Exception {
+        var config = new JPASearchConfig();
+        config.setQueryTimeout(Duration.ofSeconds(5));
+        JPASearchConfig.set(config);
+
+        try {
+            var query = Mockito.mock(Query.class);
+            JPASearchQueries.applyQueryTimeout(query);
+            Mockito.verify(query).setHint(JPASearchQueries.QUERY_TIMEOUT_HINT, 5000);
+
+            var overridden = Mockito.mock(Query.class);
+            JPASearchQueries.withQueryTimeout(Duration.ofMillis(300), () -> JPASearchQueries.applyQueryTimeout(overridden));
+            Mockito.verify(overridden).setHint(JPASearchQueries.QUERY_TIMEOUT_HINT, 300);
+
+            var disabled = Mockito.mock(Query.class);
+            JPASearchQueries.withQueryTimeout(Duration.ZERO, () -> JPASearchQueries.applyQueryTimeout(disabled));
+            Mockito.verifyNoInteractions(disabled);
+
+            assertEquals(Duration.ofMillis(300), JPASearchQueries.withQueryTimeout(Duration.ofMillis(300), () -> AsyncUtils.supplyAsync(JPASearchQueries::getQueryTimeout)).get());
+            assertEquals(Duration.ofSeconds(5), JPASearchQueries.getQueryTimeout());
+
+            var projection = input(single("stringOne", "eq", "StringOne_1"));
+            projection.setOptions(new JPASearchInput.JPASearchOptions());
+            projection.getOptions().setSelections(List.of("stringOne"));
+            assertEquals(1, myRepository.projection(projection, MyModel.class, MyEntity.class).size());
+        } finally {
+            JPASearchConfig.set(new JPASearchConfig());
+        }
+    }
+
+    @Test
+    public void bulkhead() {
+        var config = new JPASearchConfig();
+        config.setBulkheads(Map.of(MyModel.class, 1));
+        config.setBulkheadMaxWaiting(0);
+        JPASearchConfig.set(config);
+
+        try {
+            // sequential searches release their permit
+            assertEquals(8, myRepository.findAllWithPaginationAndSorting(Map.of("_limit", "2", "_offset", "0"), MyModel.class).getTotalElements());
+            assertEquals(8, myRepository.count(Map.of(), MyModel.class));
+        } finally {
+            JPASearchConfig.set(new JPASearchConfig());
+        }
+    }
+
+    @Test
+    public void unindexedSearches() {
+        var entities = new ArrayList<IndexedEntity>();
+        for (int i = 1; i <= 8; i++) {
+            entities.add(IndexedEntity.builder().id((long) i).code("Code_" + i).name("Name_" + i).amount(i * 100L).score((float) i).build());
+        }
+
+        indexedRepository.saveAll(entities);
+
+        var config = new JPASearchConfig();
+        config.setLargeEntities(Set.of(IndexedEntity.class));
+        config.setUnindexedSearchPolicy(JPASearchIndexPolicy.REJECT);
+        JPASearchConfig.set(config);
+        JPASearchMetrics.reset();
+
+        try {
+            // leading column of @Table(indexes), @Id, @Searchable(indexed = true)
+            assertEquals(1, indexedRepository.findAll(Map.of("code_eq", "Code_1"), IndexedModel.class).size());
+            assertEquals(1, indexedRepository.count(Map.of("id_eq", "1"), IndexedModel.class));
+            assertEquals(2, indexedRepository.findAll(Map.of("amount_gte", "700"), IndexedModel.class).size());
+            assertEquals(8, indexedRepository.findAllSorted(Map.of("code_sort", "DESC"), IndexedModel.class).size());
+            assertEquals(8, indexedRepository.findAll(Map.of(), IndexedModel.class).size());
+
+            // an and needs one indexed term, an or all of them
+            var and = input(single("name", "eq", "Name_1"));
+            and.getFilter().getFilters().add(single("code", "startsWith", "Code"));
+            assertEquals(1, indexedRepository.findAll(and, IndexedModel.class).size());
+
+            var or = input(single("name", "eq", "Name_1"));
+            or.getFilter().setOperator("or");
+            or.getFilter().getFilters().add(single("code", "eq", "Code_2"));
+            var e = assertThrows(JPASearchUnindexedException.class, () -> indexedRepository.findAll(or, IndexedModel.class));
+            assertEquals(IndexedEntity.class, e.getEntityClass());
+            assertEquals(IndexedModel.class, e.getDomainType());
+            assertEquals(Set.of("code", "name"), e.getPaths());
+
+            // second column of the index, leading wildcard, negation, unindexed sort
+            assertThrows(JPASearchUnindexedException.class, () -> indexedRepository.count(Map.of("name_eq", "Name_1"), IndexedModel.class));
+            assertThrows(JPASearchUnindexedException.class, () -> indexedRepository.exists(Map.of("code_contains", "de_1"), IndexedModel.class));
+            assertThrows(JPASearchUnindexedException.class, () -> indexedRepository.findAll(Map.of("code_eq#n", "Code_1"), IndexedModel.class));
+            assertThrows(JPASearchUnindexedException.class, () -> indexedRepository.findAllWithPaginationAndSorting(Map.of("score_sort", "DESC", "_limit", "2", "_offset", "0"), IndexedModel.class));
+
+            var projection = input(single("name", "eq", "Name_1"));
+            projection.setOptions(new JPASearchInput.JPASearchOptions());
+            projection.getOptions().setSelections(List.of("code"));
+            assertThrows(JPASearchUnindexedException.class, () -> indexedRepository.projection(projection, IndexedModel.class, IndexedEntity.class));
+            assertEquals(6, JPASearchMetrics.getUnindexedSearches());
+
+            config.setUnindexedSearchPolicy(JPASearchIndexPolicy.COUNT);
+            assertEquals(1, indexedRepository.count(Map.of("name_eq", "Name_1"), IndexedModel.class));
+            assertEquals(7, JPASearchMetrics.getUnindexedSearches());
+
+            // logged once, counted every time
+            config.setUnindexedSearchPolicy(JPASearchIndexPolicy.WARN);
+            assertEquals(1, indexedRepository.count(Map.of("name_eq", "Name_1"), IndexedModel.class));
+            assertEquals(1, indexedRepository.count(Map.of("name_eq", "Name_2"), IndexedModel.class));
+            assertEquals(9, JPASearchMetrics.getUnindexedSearches());
+
+            // other entities are not checked
+            config.setUnindexedSearchPolicy(JPASearchIndexPolicy.REJECT);
+            config.setLargeEntities(Set.of(MyEntity2.class));
+            assertEquals(1, indexedRepository.count(Map.of("name_eq", "Name_1"), IndexedModel.class));
+        } finally {
+            JPASearchConfig.set(new JPASearchConfig());
+            JPASearchMetrics.reset();
+            JPASearchIndexes.clear();
+        }
+    }
+
+    @Test
+    public void fieldUsage() {
+        var config = new JPASearchConfig();
+        config.setFieldUsageStatistics(true);
+        JPASearchConfig.set(config);
+        JPASearchFieldUsage.clear();
+
+        try {
+            myRepository.findAll(Map.of("stringOne_eq#i", "stringone_1"), MyModel.class);
+            myRepository.count(Map.of("stringOne_eq", "StringOne_1", "id_in", "1,2,3"), MyModel.class);
+            myRepository.findAllSorted(Map.of("mySubModel.searchMe_eq", "Test2_1", "stringOne_sort", "DESC"), MyModel.class);
+            myRepository.findAll(input(single("id", "in", List.of(1, 2, 3, 4, 5))), MyModel.class);
+            assertThrows(JPASearchException.class, () -> myRepository.findAll(Map.of("unknown_eq", "1"), MyModel.class));
+
+            var usage = JPASearchFieldUsage.snapshot().stream()
+                    .collect(Collectors.toMap(u -> u.field() + " " + u.operator(), u -> u));
+
+            assertEquals(Set.of("stringOne eq", "id in", "mySubModel.searchMe eq", "stringOne sort"), usage.keySet());
+            assertEquals(MyModel.class, usage.get("stringOne eq").domainType());
+            assertEquals(2, usage.get("stringOne eq").count());
+            assertEquals(0.5, usage.get("stringOne eq").ignoreCaseRatio());
+            assertEquals(2, usage.get("id in").count());
+            assertEquals(4, usage.get("id in").averageInSize());
+            assertEquals("test2.colTest2", usage.get("mySubModel.searchMe eq").entityPath());
+            assertEquals(1, usage.get("stringOne sort").descendingRatio());
+            assertTrue(JPASearchFieldUsage.toCsv().contains("app.tozzi.model.MyModel,id,id,in,2,0.0,0.0,0.0,4.0"));
+
+            // disabled
+            config.setFieldUsageStatistics(false);
+            myRepository.findAll(Map.of("stringOne_eq", "StringOne_1"), MyModel.class);
+            assertEquals(2, JPASearchFieldUsage.snapshot().stream().filter(u -> u.field().equals("stringOne") && u.operator().equals("eq")).findAny().orElseThrow().count());
+
+            // once per search, not per facet
+            config.setFieldUsageStatistics(true);
+            JPASearchFieldUsage.clear();
+            myRepository.facets(Map.of("primitiveBoolean_eq", "true", "primitiveLong_gte", "300"), MyModel.class, MyEntity.class, List.of("primitiveBoolean", "keywords"), true);
+            assertEquals(List.of(1L, 1L), JPASearchFieldUsage.snapshot().stream().map(JPASearchFieldUsage.Statistics::count).toList());
+
+            // sorted projection: the filter and the sort once
+            JPASearchFieldUsage.clear();
+            var input = input(single("primitiveLong", "gte", 300));
+            var options = new JPASearchInput.JPASearchOptions();
+            options.setSelections(List.of("id"));
+            var sortOptions = new JPASearchInput.JPASortOptions();
+            sortOptions.setKey("id");
+            options.setSortOptions(List.of(sortOptions));
+            input.setOptions(options);
+            myRepository.projectionWithSorting(input, MyModel.class, MyEntity.class);
+            assertEquals(Set.of("primitiveLong gte 1", "id sort 1"), JPASearchFieldUsage.snapshot().stream().map(u -> u.field() + " " + u.operator() + " " + u.count()).collect(Collectors.toSet()));
+        } finally {
+            JPASearchConfig.set(new JPASearchConfig());
+            JPASearchFieldUsage.clear();
+        }
+    }
+
+    private static JPASearchInput input(JPASearchInput.Filter filter) {
+        var input = new JPASearchInput();
+        var root = new JPASearchInput.RootFilter();
+        root.setOperator("and");
+        root.setFilters(new ArrayList<>(List.of(filter)));
+        input.setFilter(root);
+        return input;
+    }
+
+    private static JPASearchInput.Filter single(String key, String operator, Object value) {
+        if (value instanceof List<?> values) {
+            var filter = new JPASearchInput.FilterMultipleValues();
+            filter.setKey(key);
+            filter.setOperator(operator);
+            filter.setValues(new ArrayList<Object>(values));
+            return filter;
+        }
+
+        var filter = new JPASearchInput.FilterSingleValue();
+        filter.setKey(key);
+        filter.setOperator(operator);
+        filter.setValue(value);
+        return filter;
+    }
+
+    @Test
+    public void mode1_optimizedRange() {
+        List<MyEntity> res = myRepository.findAll(Map.of("primitiveLong_gte", "200", "primitiveLong_lte", "400"), MyModel.class);
+        assertNotNull(res);
+        assertEquals(3, res.size());
+        assertTrue(res.stream().allMatch(r -> r.getPrimitiveLong() >= 200 && r.getPrimitiveLong() <= 400));
+    }
+
 }
@@ -0,0 +1,137 @@
+package app.tozzi.core;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.entity.MyEntity;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JPASearchDistinctValuesTest {
+
+    private static final Duration TTL = Duration.ofMinutes(1);
+
+    private JPASearchConfig config;
+
+    @BeforeEach
+    void setUp() {
+        config = new JPASearchConfig();
+        JPASearchConfig.set(config);
+        JPASearchDistinctValues.clearCache();
+    }
+
+    @AfterEach
+    void reset() {
+        JPASearchConfig.set(new JPASearchConfig());
+        JPASearchDistinctValues.clearCache();
+    }
+
+    @Test
+    public void coalescing() throws Exception {
+        var loads = new AtomicInteger();
+        var latch = new CountDownLatch(1);
+
+        var leader = CompletableFuture.supplyAsync(() -> load("stringOne", loads, latch));
+        while (loads.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        var follower = CompletableFuture.supplyAsync(() -> load("stringOne", loads, latch));
+        Thread.sleep(100);
+        latch.countDown();
+
+        assertEquals(List.of("a", "b"), leader.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "b"), follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void failure() {
+        assertThrows(IllegalStateException.class, () -> JPASearchDistinctValues.cached(Pair.of(MyEntity.class, "stringOne"), TTL, 10, () -> {
+            throw new IllegalStateException();
+        }));
+
+        // not cached
+        var loads = new AtomicInteger();
+        var latch = new CountDownLatch(0);
+        assertEquals(List.of("a", "b"), load("stringOne", loads, latch));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void leaderError() throws Exception {
+        var loads = new AtomicInteger();
+        var latch = new CountDownLatch(1);
+
+        var leader = CompletableFuture.supplyAsync(() -> JPASearchDistinctValues.cached(Pair.of(MyEntity.class, "stringOne"), TTL, 10, () -> {
+            loads.incrementAndGet();
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            throw new StackOverflowError();
+        }));
+
+        while (loads.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        var follower = CompletableFuture.supplyAsync(() -> load("stringOne", loads, latch));
+        Thread.sleep(100);
+        latch.countDown();
+
+        assertInstanceOf(StackOverflowError.class, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertInstanceOf(StackOverflowError.class, assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals(List.of("a", "b"), load("stringOne", loads, latch));
+    }
+
+    @Test
+    public void bounded() {
+        config.setDistinctValuesCacheMaxFields(2);
+        var loads = new AtomicInteger();
+        var latch = new CountDownLatch(0);
+
+        load("stringOne", loads, latch);
+        load("stringTwo", loads, latch);
+        load("stringOne", loads, latch);
+        assertEquals(2, loads.get());
+
+        // the least recently used is evicted
+        load("stringThree", loads, latch);
+        load("stringOne", loads, latch);
+        assertEquals(3, loads.get());
+        load("stringTwo", loads, latch);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void tooManyValues() {
+        var values = JPASearchDistinctValues.cached(Pair.of(MyEntity.class, "stringOne"), TTL, 1, () -> List.of("a", "b"));
+        assertNull(values.values());
+    }
+
+    private static List<Object> load(String field, AtomicInteger loads, CountDownLatch latch) {
+        return JPASearchDistinctValues.cached(Pair.of(MyEntity.class, field), TTL, 10, () -> {
+            loads.incrementAndGet();
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return List.of("a", "b");
+        }).values();
+    }
+}
@@ -0,0 +1,68 @@
+package app.tozzi.core;
+
+import app.tozzi.entity.MyEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.JoinType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPASearchFetchPlanTest.class})
+@EntityScan("app.tozzi.entity")
+public class JPASearchFetchPlanTest {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    public void cached() {
+        var fetches = new HashMap<String, JoinType>();
+        fetches.put("test1", JoinType.LEFT);
+        var plan = JPASearchFetchPlan.of(fetches);
+        assertSame(plan, JPASearchFetchPlan.of(Map.of("test1", JoinType.LEFT)));
+
+        fetches.put("test2", JoinType.LEFT);
+        assertNotSame(plan, JPASearchFetchPlan.of(fetches));
+
+        assertTrue(JPASearchFetchPlan.of(null).isEmpty());
+        assertTrue(JPASearchFetchPlan.of(Map.of()).isEmpty());
+    }
+
+    @Test
+    public void apply() {
+        var root = entityManager.getCriteriaBuilder().createQuery(MyEntity.class).from(MyEntity.class);
+        var registry = new JPASearchJoinRegistry(root);
+
+        JPASearchFetchPlan.of(Map.of("test2.entities4.entity5", JoinType.LEFT, "test2", JoinType.INNER)).apply(registry);
+        assertEquals(1, root.getFetches().size());
+
+        var test2 = root.getFetches().iterator().next();
+        assertEquals(JoinType.INNER, test2.getJoinType());
+        assertSame(test2, registry.fetch("test2", JoinType.LEFT));
+        assertEquals(1, test2.getFetches().size());
+        assertEquals(JoinType.LEFT, test2.getFetches().iterator().next().getJoinType());
+    }
+
+    @Test
+    public void toEntityGraph() {
+        var graph = JPASearchFetchPlan.of(Map.of("test1", JoinType.LEFT, "test2.entities4.entity5", JoinType.LEFT, "test2.entities4", JoinType.INNER))
+                .toEntityGraph(entityManager, MyEntity.class);
+
+        assertEquals(2, graph.getAttributeNodes().size());
+        var test2 = graph.getAttributeNodes().stream().filter(n -> n.getAttributeName().equals("test2")).findAny().orElseThrow();
+        var entities4 = test2.getSubgraphs().values().iterator().next().getAttributeNodes();
+        assertEquals(1, entities4.size());
+        assertEquals("entities4", entities4.get(0).getAttributeName());
+        assertEquals("entity5", entities4.get(0).getSubgraphs().values().iterator().next().getAttributeNodes().get(0).getAttributeName());
+    }
+}
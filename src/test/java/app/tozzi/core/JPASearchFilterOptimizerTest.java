@@ -0,0 +1,226 @@
+package app.tozzi.core;
+
+import app.tozzi.model.MyModel;
+import app.tozzi.model.input.JPASearchInput;
+import app.tozzi.util.ReflectionUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JPASearchFilterOptimizerTest {
+
+    @Test
+    public void flatten() {
+        var root = root("and",
+                root("and", single("stringOne", "eq", "a")),
+                root("and", single("stringTwo", "eq", "b"), root("and", single("stringThree", "eq", "c"))));
+
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertFalse(res.isEmpty());
+        assertEquals("and", res.getFilter().getOperator());
+        assertEquals(3, res.getFilter().getFilters().size());
+        assertTrue(res.getFilter().getFilters().stream().allMatch(f -> f instanceof JPASearchInput.FilterSingleValue));
+    }
+
+    @Test
+    public void removeDuplicates() {
+        var root = root("and", single("stringOne", "eq", "a"), single("stringOne", "eq", "a"), single("stringTwo", "eq", "b"));
+
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertFalse(res.isEmpty());
+        assertEquals(2, res.getFilter().getFilters().size());
+    }
+
+    @Test
+    public void mergeEquals() {
+        var root = root("or", single("primitiveLong", "eq", "1"), single("stringTwo", "eq", "c"), single("primitiveLong", "eq", "2"), multiple("primitiveLong", "in", "2", "4"));
+
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertFalse(res.isEmpty());
+        assertEquals("or", res.getFilter().getOperator());
+        assertEquals(2, res.getFilter().getFilters().size());
+
+        var in = assertInstanceOf(JPASearchInput.FilterMultipleValues.class, res.getFilter().getFilters().get(0));
+        assertEquals("primitiveLong", in.getKey());
+        assertEquals("in", in.getOperator());
+        assertEquals(List.of("1", "2", "4"), in.getValues());
+    }
+
+    @Test
+    public void mergeEquals_strings() {
+        var ignoreCase = single("stringOne", "eq", "B");
+        ignoreCase.setOptions(new JPASearchInput.JPASearchFilterOptions());
+        ignoreCase.getOptions().setIgnoreCase(true);
+        var root = root("or", single("stringOne", "eq", "a"), ignoreCase, multiple("stringOne", "in", "c", "d"));
+
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertEquals(2, res.getFilter().getFilters().size());
+
+        var in = assertInstanceOf(JPASearchInput.FilterMultipleValues.class, res.getFilter().getFilters().get(0));
+        assertEquals("stringOne", in.getKey());
+        assertEquals("in", in.getOperator());
+        assertEquals(List.of("a", "c", "d"), in.getValues());
+
+        var eq = assertInstanceOf(JPASearchInput.FilterSingleValue.class, res.getFilter().getFilters().get(1));
+        assertEquals("eq", eq.getOperator());
+        assertTrue(eq.getOptions().isIgnoreCase());
+    }
+
+    @Test
+    public void mergeEquals_elementCollection() {
+        var root = root("or", single("keywords", "eq", "java"), single("keywords", "eq", "jpa"));
+
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertEquals(2, res.getFilter().getFilters().size());
+        assertTrue(res.getFilter().getFilters().stream().allMatch(f -> "eq".equals(f.getOperator())));
+    }
+
+    @Test
+    public void mergeEquals_negated() {
+        var negated = single("stringOne", "eq", "b");
+        negated.setOptions(new JPASearchInput.JPASearchFilterOptions());
+        negated.getOptions().setNegate(true);
+        var root = root("or", single("stringOne", "eq", "a"), negated);
+
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertEquals(2, res.getFilter().getFilters().size());
+        assertTrue(res.getFilter().getFilters().stream().allMatch(f -> "eq".equals(f.getOperator())));
+    }
+
+    @Test
+    public void collapseRanges() {
+        var root = root("and", single("primitiveLong", "gte", "10"), single("primitiveLong", "gt", "5"), single("primitiveLong", "lte", "20"), single("stringOne", "eq", "a"));
+
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertFalse(res.isEmpty());
+        assertEquals(2, res.getFilter().getFilters().size());
+
+        var between = assertInstanceOf(JPASearchInput.FilterMultipleValues.class, res.getFilter().getFilters().get(0));
+        assertEquals("between", between.getOperator());
+        assertEquals(List.of("10", "20"), between.getValues());
+    }
+
+    @Test
+    public void collapseRanges_exclusive() {
+        var root = root("and", single("primitiveLong", "gt", "10"), single("primitiveLong", "gte", "10"), single("primitiveLong", "lt", "20"));
+
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertFalse(res.isEmpty());
+        assertEquals(2, res.getFilter().getFilters().size());
+        assertEquals("gt", res.getFilter().getFilters().get(0).getOperator());
+        assertEquals("lt", res.getFilter().getFilters().get(1).getOperator());
+    }
+
+    @Test
+    public void contradiction() {
+        var root = root("and", single("id", "eq", "1"), single("id", "eq", "2"));
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertTrue(res.isEmpty());
+        assertNull(res.getFilter());
+
+        root = root("and", single("primitiveLong", "gt", "10"), single("primitiveLong", "lte", "10"));
+        res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertTrue(res.isEmpty());
+    }
+
+    @Test
+    public void contradiction_orBranch() {
+        var root = root("or", root("and", single("id", "eq", "1"), single("id", "eq", "2")), single("stringOne", "eq", "a"));
+
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertFalse(res.isEmpty());
+        assertEquals(1, res.getFilter().getFilters().size());
+        assertEquals("stringOne", ((JPASearchInput.FieldFilter) res.getFilter().getFilters().get(0)).getKey());
+    }
+
+    @Test
+    public void elementCollection_noContradiction() {
+        var root = root("and", single("keywords", "eq", "java"), single("keywords", "eq", "spring"));
+
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertFalse(res.isEmpty());
+        assertEquals(2, res.getFilter().getFilters().size());
+    }
+
+    @Test
+    public void invalidFilterUntouched() {
+        var root = root("and", single("primitiveLong", "eq", "abc"), single("primitiveLong", "eq", "1"));
+
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertFalse(res.isEmpty());
+        assertEquals(2, res.getFilter().getFilters().size());
+    }
+
+    @Test
+    public void emptyIn() {
+        var root = root("and", multiple("stringOne", "in"), single("stringTwo", "eq", "b"));
+        var res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertTrue(res.isEmpty());
+        assertFalse(res.isUnrestricted());
+
+        var negated = multiple("stringOne", "in");
+        negated.setOptions(new JPASearchInput.JPASearchFilterOptions());
+        negated.getOptions().setNegate(true);
+        root = root("and", negated);
+        res = JPASearchFilterOptimizer.optimize(root, ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertFalse(res.isEmpty());
+        assertTrue(res.isUnrestricted());
+        assertNull(res.getFilter());
+    }
+
+    @Test
+    public void unrestricted() {
+        var contradiction = root("and", single("id", "eq", "1"), single("id", "eq", "2"));
+        var res = JPASearchFilterOptimizer.optimize(root("not", contradiction), ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertTrue(res.isUnrestricted());
+
+        res = JPASearchFilterOptimizer.optimize(root("or", single("stringOne", "eq", "a"), root("not", contradiction)), ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertTrue(res.isUnrestricted());
+
+        res = JPASearchFilterOptimizer.optimize(root("and", single("stringOne", "eq", "a"), root("not", contradiction)), ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertFalse(res.isUnrestricted());
+        assertEquals(1, res.getFilter().getFilters().size());
+
+        res = JPASearchFilterOptimizer.optimize(root("not", root("not", contradiction)), ReflectionUtils.getAllSearchableFields(MyModel.class), null);
+        assertTrue(res.isEmpty());
+    }
+
+    @Test
+    public void pruned() {
+        var fields = ReflectionUtils.getAllSearchableFields(MyModel.class);
+
+        var res = JPASearchFilterOptimizer.optimize(root("or", single("stringOne", "eq", "a"), root("and", single("stringTwo", "eq", "b"), multiple("id", "in"))), fields, null);
+        assertTrue(res.isPruned());
+        assertEquals(1, res.getFilter().getFilters().size());
+
+        res = JPASearchFilterOptimizer.optimize(root("and", single("stringOne", "eq", "a"), root("or", single("stringTwo", "eq", "b"), single("stringThree", "eq", "c"))), fields, null);
+        assertFalse(res.isPruned());
+    }
+
+    static JPASearchInput.RootFilter root(String operator, JPASearchInput.Filter... filters) {
+        var root = new JPASearchInput.RootFilter();
+        root.setOperator(operator);
+        root.setFilters(new ArrayList<>(Arrays.asList(filters)));
+        return root;
+    }
+
+    static JPASearchInput.FilterSingleValue single(String key, String operator, Object value) {
+        var filter = new JPASearchInput.FilterSingleValue();
+        filter.setKey(key);
+        filter.setOperator(operator);
+        filter.setValue(value);
+        return filter;
+    }
+
+    static JPASearchInput.FilterMultipleValues multiple(String key, String operator, Object... values) {
+        var filter = new JPASearchInput.FilterMultipleValues();
+        filter.setKey(key);
+        filter.setOperator(operator);
+        filter.setValues(new ArrayList<>(Arrays.asList(values)));
+        return filter;
+    }
+}
@@ -0,0 +1,134 @@
+package app.tozzi.core;
+
+import app.tozzi.entity.IndexedEntity;
+import app.tozzi.entity.MyEntity;
+import app.tozzi.model.IndexedModel;
+import app.tozzi.model.MyModel;
+import jakarta.persistence.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JPASearchIndexesTest {
+
+    @Test
+    public void metadata() {
+        assertTrue(JPASearchIndexes.isIndexed(IndexedEntity.class, "id"));
+        assertTrue(JPASearchIndexes.isIndexed(IndexedEntity.class, "code"));
+        assertFalse(JPASearchIndexes.isIndexed(IndexedEntity.class, "name"));
+        assertFalse(JPASearchIndexes.isIndexed(IndexedEntity.class, "unknown"));
+        assertFalse(JPASearchIndexes.isIndexed(MyEntity.class, "keywords"));
+
+        // table of the association
+        assertTrue(JPASearchIndexes.isIndexed(MyEntity.class, "test1.id"));
+        assertFalse(JPASearchIndexes.isIndexed(MyEntity.class, "test1.colTest1"));
+
+        assertTrue(JPASearchIndexes.isIndexed(Indexed.class, "code"));
+        assertTrue(JPASearchIndexes.isIndexed(Indexed.class, "name"));
+        assertTrue(JPASearchIndexes.isIndexed(Indexed.class, "createdAt"));
+        assertFalse(JPASearchIndexes.isIndexed(Indexed.class, "updatedAt"));
+        assertFalse(JPASearchIndexes.isIndexed(Indexed.class, "description"));
+
+        // the order of the columns of a composite key is unknown, static and transient fields are not columns
+        assertTrue(JPASearchIndexes.isIndexed(Indexed.class, "pk.tenant"));
+        assertFalse(JPASearchIndexes.isIndexed(Indexed.class, "pk.number"));
+        assertFalse(JPASearchIndexes.isIndexed(Unindexed.class, "pk.tenant"));
+        assertTrue(JPASearchIndexes.isIndexed(SingleKey.class, "pk.code"));
+    }
+
+    @Test
+    public void report() {
+        var report = JPASearchIndexes.report(IndexedModel.class, IndexedEntity.class);
+        assertEquals(report.stream().map(JPASearchIndexes.Coverage::field).sorted().toList(), report.stream().map(JPASearchIndexes.Coverage::field).toList());
+        assertEquals(new JPASearchIndexes.Coverage("code", "code", false, true), coverage(report, "code"));
+        assertEquals(new JPASearchIndexes.Coverage("amount", "amount", true, true), coverage(report, "amount"));
+        assertEquals(new JPASearchIndexes.Coverage("mail", "contact", false, false), coverage(report, "mail"));
+        assertFalse(coverage(report, "name").indexed());
+
+        // tags replace the field
+        assertEquals("total", coverage(report, "total.net").entityPath());
+        assertTrue(report.stream().noneMatch(c -> c.field().equals("total")));
+
+        assertTrue(JPASearchIndexes.report(MyModel.class, MyEntity.class).stream().anyMatch(c -> c.field().equals("mySubModel.searchMe") && !c.indexed()));
+    }
+
+    @Test
+    public void warnings() {
+        JPASearchIndexes.clear();
+        assertTrue(JPASearchIndexes.firstWarning(IndexedEntity.class, "and(name eq)", Set.of("name")));
+        assertFalse(JPASearchIndexes.firstWarning(IndexedEntity.class, "and(name eq)", Set.of("name")));
+        assertTrue(JPASearchIndexes.firstWarning(IndexedEntity.class, "and(name eq)", Set.of("name", "score")));
+        assertTrue(JPASearchIndexes.firstWarning(MyEntity.class, "and(name eq)", Set.of("name")));
+
+        for (int i = 0; i < 2000; i++) {
+            JPASearchIndexes.firstWarning(IndexedEntity.class, "and(name eq)", Set.of("name" + i));
+        }
+
+        assertFalse(JPASearchIndexes.firstWarning(IndexedEntity.class, "and(code eq)", Set.of("code")));
+        JPASearchIndexes.clear();
+        assertTrue(JPASearchIndexes.firstWarning(IndexedEntity.class, "and(code eq)", Set.of("code")));
+        JPASearchIndexes.clear();
+    }
+
+    private static JPASearchIndexes.Coverage coverage(List<JPASearchIndexes.Coverage> report, String field) {
+        return report.stream().filter(c -> c.field().equals(field)).findAny().orElseThrow();
+    }
+
+    @Table(indexes = {@Index(columnList = "\"NAME\" DESC, code"), @Index(columnList = "updated_at DESC", name = "idx"), @Index(columnList = "tenant, number")},
+            uniqueConstraints = @UniqueConstraint(columnNames = {"CREATED_AT", "updated_at"}))
+    static class Indexed {
+
+        @EmbeddedId
+        private Pk pk;
+
+        @Column(unique = true)
+        private String code;
+
+        private String name;
+
+        private String createdAt;
+
+        @Column(name = "modified")
+        private String updatedAt;
+
+        private String description;
+    }
+
+    static class Unindexed {
+
+        @EmbeddedId
+        private Pk pk;
+    }
+
+    static class Pk implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private String tenant;
+
+        private Long number;
+
+        private transient String label;
+    }
+
+    static class SingleKey {
+
+        @EmbeddedId
+        private SinglePk pk;
+    }
+
+    static class SinglePk implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private String code;
+
+        @Transient
+        private String label;
+    }
+
+}
@@ -0,0 +1,72 @@
+package app.tozzi.core;
+
+import app.tozzi.entity.MyEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.JoinType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.test.context.ContextConfiguration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPASearchJoinRegistryTest.class})
+@EntityScan("app.tozzi.entity")
+public class JPASearchJoinRegistryTest {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    public void path() {
+        var root = entityManager.getCriteriaBuilder().createQuery(MyEntity.class).from(MyEntity.class);
+        var registry = new JPASearchJoinRegistry(root);
+
+        var path = registry.path("test2.entities4.colTest4");
+        assertSame(path, registry.path("test2.entities4.colTest4"));
+        assertSame(path.getParentPath(), registry.path("test2.entities4"));
+    }
+
+    @Test
+    public void join() {
+        var root = entityManager.getCriteriaBuilder().createQuery(MyEntity.class).from(MyEntity.class);
+        var registry = new JPASearchJoinRegistry(root);
+
+        var join = registry.join("keywords", JoinType.LEFT);
+        assertSame(join, registry.join("keywords", JoinType.LEFT));
+        assertNotSame(join, registry.join("keywords", JoinType.INNER));
+        assertEquals(2, root.getJoins().size());
+
+        var nested = registry.join("test2.entities4", JoinType.LEFT);
+        assertSame(nested.getParent(), registry.join("test2", JoinType.LEFT));
+        assertEquals(3, root.getJoins().size());
+    }
+
+    @Test
+    public void elementJoin() {
+        var root = entityManager.getCriteriaBuilder().createQuery(MyEntity.class).from(MyEntity.class);
+        var registry = new JPASearchJoinRegistry(root);
+
+        assertNotSame(registry.elementJoin("keywords", JoinType.LEFT), registry.elementJoin("keywords", JoinType.LEFT));
+        assertEquals(2, root.getJoins().size());
+    }
+
+    @Test
+    public void fetch() {
+        var root = entityManager.getCriteriaBuilder().createQuery(MyEntity.class).from(MyEntity.class);
+        var registry = new JPASearchJoinRegistry(root);
+
+        var fetch = registry.fetch("test2", JoinType.INNER);
+        assertSame(fetch, registry.fetch("test2", JoinType.LEFT));
+        assertEquals(JoinType.INNER, fetch.getJoinType());
+
+        var nested = registry.fetch("test2.entities4", JoinType.LEFT);
+        assertEquals(JoinType.LEFT, nested.getJoinType());
+        assertEquals(1, root.getFetches().size());
+        assertEquals(1, fetch.getFetches().size());
+    }
+}
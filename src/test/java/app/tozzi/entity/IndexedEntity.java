@@ -0,0 +1,26 @@
+package app.tozzi.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@Entity
+@Table(indexes = @Index(name = "idx_indexed_entity_code", columnList = "code, name"))
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexedEntity {
+
+    @Id
+    private Long id;
+
+    private String code;
+    private String name;
+    private String contact;
+    private long amount;
+    private Float score;
+    private Long total;
+}
@@ -0,0 +1,75 @@
+package app.tozzi.metrics;
+
+import app.tozzi.model.MyModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JPASearchFieldUsageTest {
+
+    @BeforeEach
+    void setUp() {
+        JPASearchFieldUsage.clear();
+    }
+
+    @AfterEach
+    void reset() {
+        JPASearchFieldUsage.clear();
+    }
+
+    @Test
+    public void counters() {
+        JPASearchFieldUsage.recordFilter(MyModel.class, "stringOne", "stringOne", "eq", true, false, 1);
+        JPASearchFieldUsage.recordFilter(MyModel.class, "stringOne", "stringOne", "eq", false, true, 1);
+        JPASearchFieldUsage.recordFilter(MyModel.class, "stringOne", "stringOne", "eq", false, false, 1);
+        JPASearchFieldUsage.recordFilter(MyModel.class, "stringOne", "stringOne", "eq", true, false, 1);
+        JPASearchFieldUsage.recordFilter(MyModel.class, "id", "id", "in", false, false, 10);
+        JPASearchFieldUsage.recordFilter(MyModel.class, "id", "id", "in", false, false, 20);
+        JPASearchFieldUsage.recordSort(MyModel.class, "stringOne", "stringOne", true);
+
+        var snapshot = JPASearchFieldUsage.snapshot();
+        assertEquals(3, snapshot.size());
+
+        var eq = snapshot.get(0);
+        assertEquals("stringOne", eq.field());
+        assertEquals("eq", eq.operator());
+        assertEquals(4, eq.count());
+        assertEquals(0.5, eq.ignoreCaseRatio());
+        assertEquals(0.25, eq.negatedRatio());
+        assertEquals(0, eq.averageInSize());
+
+        var in = snapshot.get(1);
+        assertEquals("in", in.operator());
+        assertEquals(15, in.averageInSize());
+
+        var sort = snapshot.get(2);
+        assertEquals(JPASearchFieldUsage.SORT, sort.operator());
+        assertEquals(1, sort.count());
+        assertEquals(1, sort.descendingRatio());
+    }
+
+    @Test
+    public void dump() {
+        JPASearchFieldUsage.recordFilter(MyModel.class, "stringOne", "stringOne", "eq", true, false, 1);
+        JPASearchFieldUsage.recordFilter(MyModel.class, "stringOne", "stringOne", "eq", false, false, 1);
+        JPASearchFieldUsage.recordSort(MyModel.class, "a,\"b\"", "c\\d", false);
+
+        assertEquals("""
+                domainType,field,entityPath,operator,count,ignoreCaseRatio,negatedRatio,descendingRatio,averageInSize
+                app.tozzi.model.MyModel,stringOne,stringOne,eq,2,0.5,0.0,0.0,0.0
+                app.tozzi.model.MyModel,"a,""b""\",c\\d,sort,1,0.0,0.0,0.0,0.0
+                """, JPASearchFieldUsage.toCsv());
+
+        assertEquals("[{\"domainType\":\"app.tozzi.model.MyModel\",\"field\":\"stringOne\",\"entityPath\":\"stringOne\",\"operator\":\"eq\",\"count\":2,"
+                        + "\"ignoreCaseRatio\":0.5,\"negatedRatio\":0.0,\"descendingRatio\":0.0,\"averageInSize\":0.0},"
+                        + "{\"domainType\":\"app.tozzi.model.MyModel\",\"field\":\"a,\\\"b\\\"\",\"entityPath\":\"c\\\\d\",\"operator\":\"sort\",\"count\":1,"
+                        + "\"ignoreCaseRatio\":0.0,\"negatedRatio\":0.0,\"descendingRatio\":0.0,\"averageInSize\":0.0}]",
+                JPASearchFieldUsage.toJson());
+
+        JPASearchFieldUsage.clear();
+        assertEquals("[]", JPASearchFieldUsage.toJson());
+    }
+
+}
@@ -0,0 +1,49 @@
+package app.tozzi.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JPASearchMeterBinderTest {
+
+    @BeforeEach
+    void setUp() {
+        JPASearchMetrics.reset();
+    }
+
+    @AfterEach
+    void reset() {
+        JPASearchMetrics.reset();
+    }
+
+    @Test
+    public void bindTo() {
+        var registry = new SimpleMeterRegistry();
+        new JPASearchMeterBinder().bindTo(registry);
+
+        JPASearchMetrics.addResultCacheHit();
+        JPASearchMetrics.addResultCacheHit();
+        JPASearchMetrics.addResultCacheMiss();
+        JPASearchMetrics.addCountCacheMiss();
+        JPASearchMetrics.addCoalescedSearch();
+        JPASearchMetrics.addSavedRoundTrips(2);
+        JPASearchMetrics.addBulkheadRejection();
+        JPASearchMetrics.addUnindexedSearch();
+
+        assertEquals(2, registry.get(JPASearchMeterBinder.RESULT_CACHE).tag("result", "hit").functionCounter().count());
+        assertEquals(1, registry.get(JPASearchMeterBinder.RESULT_CACHE).tag("result", "miss").functionCounter().count());
+        assertEquals(0, registry.get(JPASearchMeterBinder.RESULT_CACHE).tag("result", "eviction").functionCounter().count());
+        assertEquals(0, registry.get(JPASearchMeterBinder.COUNT_CACHE).tag("result", "hit").functionCounter().count());
+        assertEquals(1, registry.get(JPASearchMeterBinder.COUNT_CACHE).tag("result", "miss").functionCounter().count());
+        assertEquals(0, registry.get(JPASearchMeterBinder.COALESCED).tag("operation", "count").functionCounter().count());
+        assertEquals(1, registry.get(JPASearchMeterBinder.COALESCED).tag("operation", "search").functionCounter().count());
+        assertEquals(2, registry.get(JPASearchMeterBinder.SAVED_ROUND_TRIPS).functionCounter().count());
+        assertEquals(1, registry.get(JPASearchMeterBinder.BULKHEAD_REJECTIONS).functionCounter().count());
+        assertEquals(1, registry.get(JPASearchMeterBinder.UNINDEXED).functionCounter().count());
+        assertEquals(10, registry.getMeters().size());
+    }
+
+}
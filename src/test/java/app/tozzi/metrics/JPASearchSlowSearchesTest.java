@@ -0,0 +1,147 @@
+package app.tozzi.metrics;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.model.MyModel;
+import app.tozzi.model.input.JPASearchInput;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JPASearchSlowSearchesTest {
+
+    private JPASearchConfig config;
+
+    @BeforeEach
+    void setUp() {
+        config = new JPASearchConfig();
+        config.setSlowSearchShapes(100);
+        JPASearchConfig.set(config);
+        JPASearchSlowSearches.clear();
+    }
+
+    @AfterEach
+    void reset() {
+        JPASearchConfig.set(new JPASearchConfig());
+        JPASearchSlowSearches.clear();
+    }
+
+    @Test
+    public void aggregatedByShape() {
+        for (int i = 1; i <= 100; i++) {
+            JPASearchSlowSearches.record(MyModel.class, "find", root("stringOne", "eq", "StringOne_" + i), i * 1_000_000L, 2);
+        }
+
+        JPASearchSlowSearches.record(MyModel.class, "find", root("stringTwo", "eq", "StringTwo_1"), 1_000_000L, 1);
+        JPASearchSlowSearches.record(MyModel.class, "count", root("stringOne", "eq", "StringOne_1"), 1_000_000L, -1);
+
+        var top = JPASearchSlowSearches.top(2);
+        assertEquals(2, top.size());
+
+        var first = top.get(0);
+        assertEquals(MyModel.class, first.domainType());
+        assertEquals("find", first.operation());
+        assertEquals("and(stringOne eq)", first.shape());
+        assertEquals(100, first.count());
+        assertEquals(Duration.ofMillis(5050), first.total());
+        assertEquals(Duration.ofMillis(100), first.max());
+        assertEquals(200, first.rows());
+        assertEquals("and(stringOne eq StringOne_100)", first.example());
+        assertWithin(Duration.ofMillis(50), first.p50());
+        assertWithin(Duration.ofMillis(99), first.p99());
+
+        assertEquals(3, JPASearchSlowSearches.top(10).size());
+        assertEquals(0, JPASearchSlowSearches.top(10).stream().filter(s -> "count".equals(s.operation())).findAny().orElseThrow().rows());
+    }
+
+    @Test
+    public void mostExpensiveShapesKept() {
+        // 2 shapes per stripe
+        config.setSlowSearchShapes(32);
+        JPASearchSlowSearches.record(MyModel.class, "find", root("stringOne", "eq", "a"), 10_000_000L, 1);
+        JPASearchSlowSearches.record(MyModel.class, "find", root("stringTwo", "eq", "b"), 1_000_000L, 1);
+        for (int i = 0; i < 100; i++) {
+            JPASearchSlowSearches.record(MyModel.class, "find", root("stringThree" + i, "eq", "c"), 1_000L, 1);
+        }
+
+        assertTrue(JPASearchSlowSearches.top(100).size() <= 32);
+        assertTrue(JPASearchSlowSearches.top(100).stream().anyMatch(s -> s.shape().equals("and(stringOne eq)")));
+    }
+
+    @Test
+    public void example() {
+        var filter = root("stringOne", "eq", "StringOne_1");
+        JPASearchSlowSearches.record(MyModel.class, "find", filter, 1_000L, 1);
+
+        // rendered when recorded
+        ((JPASearchInput.FilterSingleValue) filter.getFilters().get(0)).setValue("changed");
+        filter.getFilters().clear();
+        assertEquals("and(stringOne eq StringOne_1)", JPASearchSlowSearches.top(1).get(0).example());
+
+        var in = new JPASearchInput.FilterMultipleValues();
+        in.setKey("id");
+        in.setOperator("in");
+        in.setValues(List.of(1, 2, 3));
+        var redacted = root("email", "eq", "john@example.com");
+        redacted.getFilters().add(in);
+        assertEquals("and(email eq john@example.com, id in [1, 2, 3])", JPASearchSlowSearches.describe(redacted, false));
+        assertEquals("and(email eq ?, id in [3 values])", JPASearchSlowSearches.describe(redacted, true));
+
+        config.setSlowSearchRedacted(true);
+        JPASearchSlowSearches.record(MyModel.class, "find", redacted, 1_000_000L, 1);
+        assertEquals("and(email eq ?, id in [3 values])", JPASearchSlowSearches.top(1).get(0).example());
+
+        // truncated
+        var huge = new JPASearchInput.FilterMultipleValues();
+        huge.setKey("id");
+        huge.setOperator("in");
+        huge.setValues(new ArrayList<>(Collections.nCopies(100_000, 123456789)));
+        var example = JPASearchSlowSearches.describe(root(huge), false);
+        assertEquals(1003, example.length());
+        assertTrue(example.startsWith("and(id in [123456789, 123456789"));
+        assertTrue(example.endsWith("..."));
+    }
+
+    @Test
+    public void disabled() {
+        config.setSlowSearchShapes(0);
+        assertFalse(JPASearchSlowSearches.isEnabled());
+        JPASearchSlowSearches.record(MyModel.class, "find", root("stringOne", "eq", "a"), 1_000L, 1);
+        assertTrue(JPASearchSlowSearches.top(10).isEmpty());
+    }
+
+    @Test
+    public void buckets() {
+        for (long nanos : new long[]{1, 2, 3, 4, 5, 7, 8, 1000, 123_456_789, Long.MAX_VALUE}) {
+            var bucket = JPASearchSlowSearches.bucket(nanos);
+            assertTrue(JPASearchSlowSearches.upperBound(bucket) >= nanos);
+            assertTrue(bucket == 0 || JPASearchSlowSearches.upperBound(bucket - 1) < nanos);
+        }
+    }
+
+    private static void assertWithin(Duration expected, Duration actual) {
+        assertTrue(actual.compareTo(expected) >= 0, actual.toString());
+        assertTrue(actual.toNanos() <= expected.toNanos() * 1.25, actual.toString());
+    }
+
+    private static JPASearchInput.RootFilter root(String key, String operator, Object value) {
+        var filter = new JPASearchInput.FilterSingleValue();
+        filter.setKey(key);
+        filter.setOperator(operator);
+        filter.setValue(value);
+        return root(filter);
+    }
+
+    private static JPASearchInput.RootFilter root(JPASearchInput.Filter filter) {
+        var root = new JPASearchInput.RootFilter();
+        root.setOperator("and");
+        root.setFilters(new ArrayList<>(List.of(filter)));
+        return root;
+    }
+}
@@ -0,0 +1,34 @@
+package app.tozzi.model;
+
+import app.tozzi.annotation.*;
+import lombok.Data;
+
+@Data
+public class IndexedModel {
+
+    @Projectable
+    @Searchable(targetType = JPASearchType.LONG)
+    private String id;
+
+    @Searchable
+    @Projectable
+    private String code;
+
+    @Searchable(sortable = false)
+    private String name;
+
+    @Searchable(entityFieldKey = "contact")
+    private String mail;
+
+    @Searchable(indexed = true)
+    private long amount;
+
+    @Searchable
+    private Float score;
+
+    @Searchable(tags = {
+            @Tag(fieldKey = "total.gross"),
+            @Tag(fieldKey = "total.net", entityFieldKey = "total")
+    })
+    private Long total;
+}
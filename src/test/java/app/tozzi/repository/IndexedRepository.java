@@ -0,0 +1,10 @@
+package app.tozzi.repository;
+
+import app.tozzi.entity.IndexedEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface IndexedRepository extends JpaRepository<IndexedEntity, Long>, JPASearchRepository<IndexedEntity>, JPAProjectionRepository<IndexedEntity> {
+
+}
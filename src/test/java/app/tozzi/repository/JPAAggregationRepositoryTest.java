@@ -0,0 +1,91 @@
+package app.tozzi.repository;
+
+import app.tozzi.entity.MyEntity;
+import app.tozzi.exception.InvalidFieldException;
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.model.JPASearchAggregateFunction;
+import app.tozzi.model.JPASearchAggregation;
+import app.tozzi.model.MyModel;
+import app.tozzi.model.input.JPASearchInput;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static app.tozzi.repository.MyEntities.input;
+import static app.tozzi.repository.MyEntities.single;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Aggregations grouped by the searchable fields
+ */
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPAAggregationRepositoryTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories("app.tozzi.repository")
+public class JPAAggregationRepositoryTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    @BeforeEach
+    void setUp() {
+        myRepository.saveAll(MyEntities.create());
+    }
+
+    @Test
+    public void aggregate() {
+        var input = input(single("primitiveLong", "gte", "300"));
+        var sortOption = new JPASearchInput.JPASortOptions();
+        sortOption.setKey("sum_primitiveLong");
+        sortOption.setDesc(true);
+        input.setOptions(new JPASearchInput.JPASearchOptions());
+        input.getOptions().setSortOptions(List.of(sortOption));
+
+        var res = myRepository.aggregate(input, MyModel.class, MyEntity.class, List.of("primitiveBoolean"), List.of(
+                new JPASearchAggregation(JPASearchAggregateFunction.COUNT, null),
+                new JPASearchAggregation(JPASearchAggregateFunction.SUM, "primitiveLong"),
+                new JPASearchAggregation(JPASearchAggregateFunction.MAX, "primitiveLong")));
+
+        assertEquals(2, res.size());
+        assertEquals(List.of("primitiveBoolean", "count", "sum_primitiveLong", "max_primitiveLong"), new ArrayList<>(res.get(0).keySet()));
+        assertEquals(true, res.get(0).get("primitiveBoolean"));
+        assertEquals(3L, ((Number) res.get(0).get("count")).longValue());
+        assertEquals(1800L, ((Number) res.get(0).get("sum_primitiveLong")).longValue());
+        assertEquals(800L, ((Number) res.get(0).get("max_primitiveLong")).longValue());
+        assertEquals(1500L, ((Number) res.get(1).get("sum_primitiveLong")).longValue());
+
+        res = myRepository.aggregate(input(single("primitiveLong", "gt", "500")), MyModel.class, MyEntity.class, List.of(), List.of(new JPASearchAggregation(JPASearchAggregateFunction.MIN, "primitiveLong")));
+        assertEquals(1, res.size());
+        assertEquals(600L, ((Number) res.get(0).get("min_primitiveLong")).longValue());
+
+        // provably empty: no query
+        res = myRepository.aggregate(input(single("id", "in", List.of())), MyModel.class, MyEntity.class, List.of(), List.of(new JPASearchAggregation(JPASearchAggregateFunction.COUNT, null)));
+        assertEquals(0L, res.get(0).get("count"));
+
+        assertThrows(JPASearchException.class, () -> myRepository.aggregate(input, MyModel.class, MyEntity.class, List.of(), List.of(new JPASearchAggregation(JPASearchAggregateFunction.SUM, "stringOne"))));
+        assertThrows(JPASearchException.class, () -> myRepository.aggregate(input, MyModel.class, MyEntity.class, List.of("primitiveBoolean"), List.of(new JPASearchAggregation(JPASearchAggregateFunction.SUM, null))));
+
+        // duplicate names
+        assertThrows(JPASearchException.class, () -> myRepository.aggregate(input, MyModel.class, MyEntity.class, List.of("primitiveBoolean"), List.of(
+                new JPASearchAggregation(JPASearchAggregateFunction.MAX, "primitiveLong"), new JPASearchAggregation(JPASearchAggregateFunction.MAX, "primitiveLong"))));
+        assertThrows(JPASearchException.class, () -> myRepository.aggregate(input, MyModel.class, MyEntity.class, List.of("primitiveBoolean", "primitiveBoolean"), List.of(
+                new JPASearchAggregation(JPASearchAggregateFunction.COUNT, null))));
+
+        // one row per element: the sums would be inflated, the entities without elements dropped
+        assertThrows(InvalidFieldException.class, () -> myRepository.aggregate(input, MyModel.class, MyEntity.class, List.of("keywords"), List.of(
+                new JPASearchAggregation(JPASearchAggregateFunction.SUM, "primitiveLong"))));
+        assertThrows(InvalidFieldException.class, () -> myRepository.aggregate(input, MyModel.class, MyEntity.class, List.of("primitiveBoolean"), List.of(
+                new JPASearchAggregation(JPASearchAggregateFunction.SUM, "primitiveLong"), new JPASearchAggregation(JPASearchAggregateFunction.COUNT_DISTINCT, "keywords"))));
+        assertThrows(InvalidFieldException.class, () -> myRepository.aggregate(input, MyModel.class, MyEntity.class, List.of("list.other"), List.of(
+                new JPASearchAggregation(JPASearchAggregateFunction.SUM, "primitiveLong"))));
+    }
+}
@@ -0,0 +1,66 @@
+package app.tozzi.repository;
+
+import app.tozzi.entity.MyEntity;
+import app.tozzi.model.MyModel;
+import app.tozzi.model.input.JPASearchInput;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.List;
+
+import static app.tozzi.repository.MyEntities.input;
+import static app.tozzi.repository.MyEntities.single;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Searches and counts of several inputs in one call
+ */
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPABatchRepositoryTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories("app.tozzi.repository")
+public class JPABatchRepositoryTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    @BeforeEach
+    void setUp() {
+        myRepository.saveAll(MyEntities.create());
+    }
+
+    @Test
+    public void batch() {
+        var inputs = List.of(
+                input(single("primitiveLong", "gte", "400")),
+                input(single("stringOne", "eq", "StringOne_2")),
+                input(single("id", "in", List.of())),
+                input(single("keywords", "eq", "java")));
+
+        assertEquals(List.of(5L, 1L, 0L, myRepository.count(inputs.get(3), MyModel.class)), myRepository.countBatch(inputs, MyModel.class, MyEntity.class));
+
+        // association: one count per input
+        var withJoin = List.of(input(single("mySubModel.searchMe", "eq", "Test2_3")), input(single("primitiveLong", "lt", "300")));
+        assertEquals(List.of(1L, 2L), myRepository.countBatch(withJoin, MyModel.class, MyEntity.class));
+
+        var sorted = input(single("primitiveLong", "gte", "600"));
+        var sortOption = new JPASearchInput.JPASortOptions();
+        sortOption.setKey("id");
+        sortOption.setDesc(true);
+        sorted.setOptions(new JPASearchInput.JPASearchOptions());
+        sorted.getOptions().setSortOptions(List.of(sortOption));
+
+        var res = myRepository.findAllBatch(List.of(sorted, inputs.get(1), inputs.get(2)), MyModel.class, MyEntity.class);
+        assertEquals(3, res.size());
+        assertEquals(List.of(8L, 7L, 6L), res.get(0).stream().map(MyEntity::getId).toList());
+        assertEquals(List.of(2L), res.get(1).stream().map(MyEntity::getId).toList());
+        assertTrue(res.get(2).isEmpty());
+    }
+}
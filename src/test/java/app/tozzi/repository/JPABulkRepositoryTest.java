@@ -0,0 +1,67 @@
+package app.tozzi.repository;
+
+import app.tozzi.entity.MyEntity;
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.model.MyModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Updates and deletes of the entities matching a filter
+ */
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPABulkRepositoryTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories("app.tozzi.repository")
+public class JPABulkRepositoryTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    @BeforeEach
+    void setUp() {
+        myRepository.saveAll(MyEntities.create());
+    }
+
+    @Test
+    public void bulk() {
+        assertEquals(2, myRepository.updateAll(Map.of("primitiveLong_gte", "700"), MyModel.class, MyEntity.class, Map.of("stringTwo", "Updated")));
+        assertEquals(2, myRepository.count(Map.of("stringTwo_eq", "Updated"), MyModel.class));
+
+        // filter through an association: id subquery
+        assertEquals(1, myRepository.updateAll(Map.of("mySubModel.searchMe_eq", "Test2_3"), MyModel.class, MyEntity.class, Map.of("wrapperInteger", "999")));
+        assertEquals(1, myRepository.count(Map.of("wrapperInteger_eq", "999"), MyModel.class));
+
+        assertEquals(3, myRepository.deleteAll(Map.of("primitiveLong_lte", "300"), MyModel.class, MyEntity.class, null, 2));
+        assertEquals(5, myRepository.count(emptyMap(), MyModel.class));
+        assertEquals(0, myRepository.deleteAll(Map.of("primitiveLong_lte", "300"), MyModel.class, MyEntity.class, null, 2));
+
+        assertThrows(JPASearchException.class, () -> myRepository.deleteAll(emptyMap(), MyModel.class, MyEntity.class));
+        assertThrows(JPASearchException.class, () -> myRepository.updateAll(Map.of("id_eq", "4"), MyModel.class, MyEntity.class, Map.of("mySubModel.searchMe", "x")));
+        assertThrows(JPASearchException.class, () -> myRepository.updateAll(Map.of("id_eq", "4"), MyModel.class, MyEntity.class, Map.of("id", "5")));
+        assertThrows(JPASearchException.class, () -> myRepository.updateAll(Map.of("id_eq", "4"), MyModel.class, MyEntity.class, Map.of("wrapperInteger", "12345")));
+    }
+
+    @Test
+    public void bulkSparseIds() {
+        myRepository.saveAll(List.of(MyEntity.builder().id(1_000_000_000L).primitiveLong(50).build(), MyEntity.builder().id(Long.MAX_VALUE).primitiveLong(50).build()));
+
+        // one chunk per 2 matching ids, not per 2 id values
+        assertEquals(5, myRepository.deleteAll(Map.of("primitiveLong_lte", "300"), MyModel.class, MyEntity.class, null, 2));
+        assertEquals(5, myRepository.count(emptyMap(), MyModel.class));
+        assertEquals(1, myRepository.updateAll(Map.of("primitiveLong_gte", "800"), MyModel.class, MyEntity.class, Map.of("stringTwo", "Updated"), null, 1000));
+    }
+}
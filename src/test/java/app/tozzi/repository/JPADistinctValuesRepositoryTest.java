@@ -0,0 +1,77 @@
+package app.tozzi.repository;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.core.JPASearchDistinctValues;
+import app.tozzi.entity.MyEntity;
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.model.MyModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Distinct values of a field, for autocompletion
+ */
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPADistinctValuesRepositoryTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories("app.tozzi.repository")
+public class JPADistinctValuesRepositoryTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    @BeforeEach
+    void setUp() {
+        myRepository.saveAll(MyEntities.create());
+    }
+
+    @Test
+    public void distinctValues() {
+        assertEquals(List.of("StringOne_1", "StringOne_2", "StringOne_3"), myRepository.distinctValues("stringOne", "StringOne_", 3, emptyMap(), MyModel.class, MyEntity.class));
+        assertEquals(List.of("StringOne_1"), myRepository.distinctValues("stringOne", "StringOne_1", 3, emptyMap(), MyModel.class, MyEntity.class));
+        assertTrue(myRepository.distinctValues("stringOne", "StringOne%", 3, emptyMap(), MyModel.class, MyEntity.class).isEmpty());
+        // case-sensitive unless asked
+        assertTrue(myRepository.distinctValues("stringOne", "stringone_", 2, emptyMap(), MyModel.class, MyEntity.class).isEmpty());
+        assertEquals(List.of("StringOne_1", "StringOne_2"), myRepository.distinctValues("stringOne", "stringone_", true, 2, emptyMap(), MyModel.class, MyEntity.class, null));
+        assertEquals(List.of("java", "jpa"), myRepository.distinctValues("keywords", "j", 10, emptyMap(), MyModel.class, MyEntity.class));
+        assertEquals(List.of("StringOne_6", "StringOne_7", "StringOne_8"), myRepository.distinctValues("stringOne", null, 10, Map.of("primitiveLong_gte", "600"), MyModel.class, MyEntity.class));
+        assertThrows(JPASearchException.class, () -> myRepository.distinctValues("primitiveLong", "1", 10, emptyMap(), MyModel.class, MyEntity.class));
+    }
+
+    @Test
+    public void distinctValuesCache() {
+        var config = new JPASearchConfig();
+        config.setDistinctValuesCacheTtl(Duration.ofMinutes(1));
+        JPASearchConfig.set(config);
+        JPASearchDistinctValues.clearCache();
+
+        try {
+            assertEquals(List.of("StringTwo_1", "StringTwo_2"), myRepository.distinctValues("stringTwo", "StringTwo_", 2, emptyMap(), MyModel.class, MyEntity.class));
+            myRepository.saveAndFlush(MyEntity.builder().id(9L).stringTwo("StringTwo_9").primitiveLong(900).build());
+
+            // without filters: from memory, matching the case as the query
+            assertEquals(List.of("StringTwo_7"), myRepository.distinctValues("stringTwo", "StringTwo_7", 2, emptyMap(), MyModel.class, MyEntity.class));
+            assertTrue(myRepository.distinctValues("stringTwo", "stringtwo_7", 2, emptyMap(), MyModel.class, MyEntity.class).isEmpty());
+            assertEquals(List.of("StringTwo_7"), myRepository.distinctValues("stringTwo", "stringtwo_7", true, 2, emptyMap(), MyModel.class, MyEntity.class, null));
+            assertTrue(myRepository.distinctValues("stringTwo", "StringTwo_9", 2, emptyMap(), MyModel.class, MyEntity.class).isEmpty());
+            assertEquals(List.of("StringTwo_9"), myRepository.distinctValues("stringTwo", "stringtwo_9", true, 2, Map.of("primitiveLong_gte", "100"), MyModel.class, MyEntity.class, null));
+        } finally {
+            JPASearchConfig.set(new JPASearchConfig());
+            JPASearchDistinctValues.clearCache();
+        }
+    }
+}
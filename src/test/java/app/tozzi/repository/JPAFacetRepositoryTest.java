@@ -0,0 +1,58 @@
+package app.tozzi.repository;
+
+import app.tozzi.entity.MyEntity;
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.model.MyModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Counts per value of the facet keys
+ */
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPAFacetRepositoryTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories("app.tozzi.repository")
+public class JPAFacetRepositoryTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    @BeforeEach
+    void setUp() {
+        myRepository.saveAll(MyEntities.create());
+    }
+
+    @Test
+    public void facets() {
+        var filters = Map.of("primitiveBoolean_eq", "true", "primitiveLong_gte", "300");
+
+        var res = myRepository.facets(filters, MyModel.class, MyEntity.class, List.of("primitiveBoolean", "keywords"), false);
+        assertEquals(List.of("primitiveBoolean", "keywords"), new ArrayList<>(res.keySet()));
+        assertEquals(Map.of(true, 3L), res.get("primitiveBoolean"));
+        assertEquals(3L, res.get("keywords").get("java"));
+        assertEquals(1L, res.get("keywords").get("hibernate"));
+        assertEquals(3L, res.get("keywords").values().iterator().next());
+
+        // the own filter is ignored
+        res = myRepository.facets(filters, MyModel.class, MyEntity.class, List.of("primitiveBoolean", "keywords"), true);
+        assertEquals(Map.of(true, 3L, false, 3L), res.get("primitiveBoolean"));
+        assertEquals(3L, res.get("keywords").get("java"));
+
+        assertTrue(myRepository.facets(Map.of("primitiveLong_gt", "500", "primitiveLong_lt", "100"), MyModel.class, MyEntity.class, List.of("keywords"), false).get("keywords").isEmpty());
+        assertThrows(JPASearchException.class, () -> myRepository.facets(filters, MyModel.class, MyEntity.class, List.of("notSearchableOne"), false));
+    }
+}
@@ -0,0 +1,97 @@
+package app.tozzi.repository;
+
+import app.tozzi.entity.MyEntity;
+import app.tozzi.exception.InvalidFieldException;
+import app.tozzi.model.MyModel;
+import app.tozzi.model.input.JPASearchInput;
+import jakarta.persistence.criteria.JoinType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.domain.Page;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Searches fetching associations with entity graphs, paged on the ids when a collection is fetched
+ */
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPAFetchRepositoryTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories("app.tozzi.repository")
+public class JPAFetchRepositoryTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    @BeforeEach
+    void setUp() {
+        myRepository.saveAll(MyEntities.create());
+    }
+
+    @Test
+    public void entityGraphWithPagination() {
+        Page<MyEntity> res = myRepository.findAllWithPaginationAndSortingWithEntityGraph(Map.of("id_sort", "ASC", "_limit", "3", "_offset", "1"), MyModel.class, MyEntity.class,
+                Map.of("test1", JoinType.LEFT, "test2.entities4", JoinType.LEFT));
+        assertEquals(8, res.getTotalElements());
+        assertEquals(3, res.getContent().size());
+        assertEquals(List.of(4L, 5L, 6L), res.getContent().stream().map(MyEntity::getId).toList());
+        assertTrue(res.getContent().stream().allMatch(e -> e.getTest2() != null && e.getTest2().getEntities4() != null));
+    }
+
+    @Test
+    public void fetchCollectionWithPagination() {
+        Page<MyEntity> res = myRepository.findAllWithPaginationAndSorting(Map.of("id_sort", "DESC", "primitiveLong_gt", "100", "_limit", "3", "_offset", "0"), MyModel.class, MyEntity.class,
+                Map.of("test2.entities4", JoinType.LEFT, "test1", JoinType.LEFT));
+        assertEquals(7, res.getTotalElements());
+        assertEquals(3, res.getTotalPages());
+        assertEquals(List.of(8L, 7L, 6L), res.getContent().stream().map(MyEntity::getId).toList());
+
+        res = myRepository.findAllWithPaginationAndSorting(Map.of("id_sort", "DESC", "primitiveLong_gt", "100", "_limit", "3", "_offset", "2"), MyModel.class, MyEntity.class,
+                Map.of("test2.entities4", JoinType.LEFT));
+        assertEquals(List.of(2L), res.getContent().stream().map(MyEntity::getId).toList());
+
+        res = myRepository.findAllWithPaginationAndSorting(Map.of("stringOne_sort", "ASC", "_limit", "2", "_offset", "1"), MyModel.class, MyEntity.class,
+                Map.of("test1", JoinType.LEFT));
+        assertEquals(8, res.getTotalElements());
+        assertEquals(List.of(3L, 4L), res.getContent().stream().map(MyEntity::getId).toList());
+    }
+
+    @Test
+    public void toManySort() {
+        // the page is computed on the ids, selected with the sort expressions
+        var fetches = Map.of("test2.entities4", JoinType.LEFT);
+        assertThrows(InvalidFieldException.class, () -> myRepository.findAllWithPaginationAndSorting(Map.of("keywords_sort", "ASC", "_limit", "2", "_offset", "0"), MyModel.class, MyEntity.class, fetches));
+        assertThrows(InvalidFieldException.class, () -> myRepository.findAllWithPaginationAndSorting(Map.of("list.other_sort", "DESC", "_limit", "2", "_offset", "0"), MyModel.class, MyEntity.class, fetches));
+
+        // to-one
+        assertEquals(2, myRepository.findAllWithPaginationAndSorting(Map.of("mySubModel.searchMe_sort", "ASC", "_limit", "2", "_offset", "0"), MyModel.class, MyEntity.class, fetches).getContent().size());
+    }
+
+    @Test
+    public void entityGraph() {
+        var input = new JPASearchInput();
+        var root = new JPASearchInput.RootFilter();
+        root.setFilters(new ArrayList<>());
+        root.setOperator("and");
+        var ff1 = new JPASearchInput.FilterSingleValue();
+        ff1.setKey("primitiveLong");
+        ff1.setValue("400");
+        ff1.setOperator("gte");
+        root.getFilters().add(ff1);
+        input.setFilter(root);
+
+        List<MyEntity> res = myRepository.findAllWithEntityGraph(input, MyModel.class, MyEntity.class, Map.of("test1", JoinType.LEFT));
+        assertEquals(5, res.size());
+    }
+}
@@ -0,0 +1,107 @@
+package app.tozzi.repository;
+
+import app.tozzi.entity.MyEntity;
+import app.tozzi.model.JPASearchPage;
+import app.tozzi.model.MyModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Not transactional: every search runs in its own transaction, like in an application, and the writes are committed
+ */
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPAParallelPageRepositoryTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories("app.tozzi.repository")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class JPAParallelPageRepositoryTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        var entities = new ArrayList<MyEntity>();
+        for (int i = 1; i <= 8; i++) {
+            entities.add(MyEntity.builder().id((long) i).email("email" + i + "@example.com").primitiveLong(i * 100L).build());
+        }
+
+        myRepository.saveAll(entities);
+    }
+
+    @AfterEach
+    void reset() {
+        myRepository.deleteAll();
+    }
+
+    @Test
+    public void parallel() {
+        JPASearchPage<MyEntity> res = myRepository.findAllWithPaginationAndSortingParallel(Map.of("id_sort", "ASC", "primitiveLong_gte", "300", "_limit", "2", "_offset", "1"), MyModel.class, MyEntity.class);
+        assertTrue(res.isParallel());
+        assertEquals(6, res.getTotalElements());
+        assertEquals(3, res.getTotalPages());
+        assertEquals(List.of(5L, 6L), res.getContent().stream().map(MyEntity::getId).toList());
+
+        // last page
+        res = myRepository.findAllWithPaginationAndSortingParallel(Map.of("id_sort", "ASC", "primitiveLong_gte", "300", "_limit", "4", "_offset", "1"), MyModel.class, MyEntity.class);
+        assertTrue(res.isParallel());
+        assertEquals(6, res.getTotalElements());
+        assertEquals(List.of(7L, 8L), res.getContent().stream().map(MyEntity::getId).toList());
+    }
+
+    @Test
+    public void deducibleTotal() {
+        var res = myRepository.findAllWithPaginationAndSortingParallel(Map.of("primitiveLong_gte", "700", "_limit", "10", "_offset", "0"), MyModel.class, MyEntity.class);
+        assertTrue(res.isParallel());
+        assertEquals(2, res.getTotalElements());
+        assertEquals(Duration.ZERO, res.getCountTime());
+    }
+
+    @Test
+    public void readOnlyTransaction() {
+        var template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        var res = template.execute(status -> myRepository.findAllWithPaginationAndSortingParallel(Map.of("id_sort", "DESC", "_limit", "3", "_offset", "0"), MyModel.class, MyEntity.class));
+        assertTrue(res.isParallel());
+        assertEquals(8, res.getTotalElements());
+        assertEquals(List.of(8L, 7L, 6L), res.getContent().stream().map(MyEntity::getId).toList());
+    }
+
+    @Test
+    public void readWriteTransaction() {
+        // sequential: the uncommitted writes of the transaction are not visible on another connection
+        var template = new TransactionTemplate(transactionManager);
+        var res = template.execute(status -> myRepository.findAllWithPaginationAndSortingParallel(Map.of("id_sort", "ASC", "primitiveLong_gte", "300", "_limit", "2", "_offset", "1"), MyModel.class, MyEntity.class));
+        assertFalse(res.isParallel());
+        assertEquals(6, res.getTotalElements());
+        assertEquals(List.of(5L, 6L), res.getContent().stream().map(MyEntity::getId).toList());
+        assertNotNull(res.getContentTime());
+        assertNotNull(res.getCountTime());
+
+        res = template.execute(status -> myRepository.findAllWithPaginationAndSortingParallel(Map.of("id_eq", "1", "_limit", "10", "_offset", "0"), MyModel.class, MyEntity.class));
+        assertEquals(1, res.getTotalElements());
+        assertEquals(Duration.ZERO, res.getCountTime());
+    }
+}
@@ -0,0 +1,105 @@
+package app.tozzi.repository;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.entity.MyEntity;
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.model.MyModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Not transactional: the searches run on other threads, so they only see committed rows
+ */
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPASearchAsyncTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories("app.tozzi.repository")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class JPASearchAsyncTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    private ExecutorService executor;
+
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setUp() {
+        var entities = new ArrayList<MyEntity>();
+        for (int i = 1; i <= 8; i++) {
+            entities.add(MyEntity.builder().id((long) i).email("email" + i + "@example.com").primitiveLong(i * 100L).build());
+        }
+
+        myRepository.saveAll(entities);
+
+        executor = Executors.newFixedThreadPool(4);
+        var config = new JPASearchConfig();
+        config.setAsyncExecutor(r -> executor.execute(() -> {
+            threads.add(Thread.currentThread());
+            r.run();
+        }));
+        JPASearchConfig.set(config);
+    }
+
+    @AfterEach
+    void reset() throws Exception {
+        JPASearchConfig.set(new JPASearchConfig());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        myRepository.deleteAll();
+    }
+
+    @Test
+    public void async() throws Exception {
+        var list = myRepository.findAllAsync(Map.of("primitiveLong_gte", "400"), MyModel.class);
+        var count = myRepository.countAsync(Map.of("primitiveLong_gte", "400"), MyModel.class);
+        var page = myRepository.findAllWithPaginationAndSortingAsync(Map.of("id_sort", "ASC", "_limit", "2", "_offset", "0"), MyModel.class);
+        var projection = myRepository.projectionAsync(Map.of("id_eq", "1", "selections", "stringMail"), MyModel.class, MyEntity.class);
+        var sortedProjection = myRepository.projectionWithSortingAsync(Map.of("primitiveLong_gte", "700", "id_sort", "DESC", "selections", "stringMail"), MyModel.class, MyEntity.class);
+
+        CompletableFuture.allOf(list, count, page, projection, sortedProjection).get(10, TimeUnit.SECONDS);
+        assertEquals(5, list.get().size());
+        assertEquals(5L, count.get());
+        assertEquals(List.of(1L, 2L), page.get().getContent().stream().map(MyEntity::getId).toList());
+        assertEquals(1, projection.get().size());
+        assertEquals("email1@example.com", projection.get().get(0).get("email"));
+        assertEquals(List.of("email8@example.com", "email7@example.com"), sortedProjection.get().stream().map(m -> m.get("email")).toList());
+
+        assertFalse(threads.isEmpty());
+        assertFalse(threads.contains(Thread.currentThread()));
+
+        // synchronous, outside a transaction: the shared entity manager, as before
+        assertEquals(1, myRepository.projection(Map.of("id_eq", "1", "selections", "stringMail"), MyModel.class, MyEntity.class).size());
+    }
+
+    @Test
+    public void failure() {
+        var future = myRepository.findAllAsync(Map.of("unknown_eq", "1"), MyModel.class);
+        var e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(JPASearchException.class, e.getCause());
+    }
+}
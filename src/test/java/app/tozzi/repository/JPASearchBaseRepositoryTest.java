@@ -0,0 +1,78 @@
+package app.tozzi.repository;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.core.JPASearchQueries;
+import app.tozzi.entity.MyEntity;
+import app.tozzi.model.MyModel;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPASearchBaseRepositoryTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories(basePackages = "app.tozzi.repository", repositoryBaseClass = JPASearchBaseRepository.class)
+public class JPASearchBaseRepositoryTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        var entities = new ArrayList<MyEntity>();
+        for (int i = 1; i <= 4; i++) {
+            entities.add(MyEntity.builder().id((long) i).email("email" + i + "@example.com").primitiveLong(i * 100L).build());
+        }
+
+        myRepository.saveAll(entities);
+        var config = new JPASearchConfig();
+        config.setQueryTimeout(Duration.ofSeconds(5));
+        JPASearchConfig.set(config);
+    }
+
+    @AfterEach
+    void reset() {
+        JPASearchConfig.set(new JPASearchConfig());
+    }
+
+    @Test
+    public void queryTimeout() {
+        var repository = new JPASearchBaseRepository<MyEntity, Long>(JpaEntityInformationSupport.getEntityInformation(MyEntity.class, entityManager), entityManager);
+        assertEquals(5000, repository.getQuery(null, MyEntity.class, Sort.unsorted()).getHints().get(JPASearchQueries.QUERY_TIMEOUT_HINT));
+        assertEquals(5000, repository.getCountQuery(null, MyEntity.class).getHints().get(JPASearchQueries.QUERY_TIMEOUT_HINT));
+
+        JPASearchConfig.set(new JPASearchConfig());
+        assertNull(repository.getQuery(null, MyEntity.class, Sort.unsorted()).getHints().get(JPASearchQueries.QUERY_TIMEOUT_HINT));
+    }
+
+    @Test
+    public void searches() {
+        assertEquals(2, myRepository.findAll(Map.of("primitiveLong_gte", "300"), MyModel.class).size());
+        assertEquals(2, myRepository.count(Map.of("primitiveLong_gte", "300"), MyModel.class));
+        assertTrue(myRepository.exists(Map.of("primitiveLong_gte", "300"), MyModel.class));
+        assertFalse(myRepository.exists(Map.of("primitiveLong_gte", "500"), MyModel.class));
+
+        var page = myRepository.findAllWithPaginationAndSorting(Map.of("primitiveLong_gte", "100", "id_sort", "ASC", "_limit", "3", "_offset", "0"), MyModel.class);
+        assertEquals(3, page.getContent().size());
+        assertEquals(4, page.getTotalElements());
+    }
+}
@@ -0,0 +1,49 @@
+package app.tozzi.repository;
+
+import app.tozzi.exception.JPASearchException;
+import app.tozzi.model.MyModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.List;
+import java.util.Map;
+
+import static app.tozzi.repository.MyEntities.input;
+import static app.tozzi.repository.MyEntities.single;
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Existence checks of {@link JPASearchRepository}
+ */
+@DataJpaTest
+@EnableAutoConfiguration
+@ContextConfiguration(classes = {JPASearchRepositoryExistsTest.class})
+@EntityScan("app.tozzi.entity")
+@EnableJpaRepositories("app.tozzi.repository")
+public class JPASearchRepositoryExistsTest {
+
+    @Autowired
+    private MyRepository myRepository;
+
+    @BeforeEach
+    void setUp() {
+        myRepository.saveAll(MyEntities.create());
+    }
+
+    @Test
+    public void exists() {
+        assertTrue(myRepository.exists(Map.of("primitiveLong_gte", "800"), MyModel.class));
+        assertFalse(myRepository.exists(Map.of("primitiveLong_gt", "800"), MyModel.class));
+        assertTrue(myRepository.exists(input(single("keywords", "eq", "hibernate")), MyModel.class));
+        assertTrue(myRepository.exists(emptyMap(), MyModel.class));
+        assertFalse(myRepository.exists(input(single("id", "in", List.of())), MyModel.class));
+        assertThrows(JPASearchException.class, () -> myRepository.exists(Map.of("notSearchableOne_eq", "a"), MyModel.class));
+    }
+}
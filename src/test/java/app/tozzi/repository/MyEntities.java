@@ -0,0 +1,135 @@
+package app.tozzi.repository;
+
+import app.tozzi.entity.*;
+import app.tozzi.model.input.JPASearchInput;
+
+import java.math.BigDecimal;
+import java.time.*;
+import java.util.*;
+
+/**
+ * Entities and inputs shared by the repository tests: 8 entities with associations and keywords, as in {@code JPASearchCoreTest}
+ */
+final class MyEntities {
+
+    private MyEntities() {
+    }
+
+    static List<MyEntity> create() {
+        List<MyEntity> entities = new ArrayList<>();
+
+        for (int i = 1; i <= 8; i++) {
+            TestEntity5 testEntity5 = TestEntity5.builder()
+                    .id((long) i)
+                    .colTest5("Test5_" + i)
+                    .build();
+
+            TestEntity4 testEntity4 = TestEntity4.builder()
+                    .id((long) i)
+                    .colTest4("Test4_" + i)
+                    .entity5(testEntity5)
+                    .build();
+
+            Set<TestEntity4> testEntity4Set = new HashSet<>();
+            testEntity4Set.add(testEntity4);
+
+            Set<TestEntity5> testEntity5Set = new HashSet<>();
+            testEntity5Set.add(testEntity5);
+
+            TestEntity1 testEntity1 = TestEntity1.builder()
+                    .id((long) i)
+                    .colTest1("Test1_" + i)
+                    .build();
+
+            TestEntity2 testEntity2 = TestEntity2.builder()
+                    .id((long) i)
+                    .colTest2("Test2_" + i)
+                    .entities4(testEntity4Set)
+                    .build();
+
+            TestEntity3 testEntity3 = TestEntity3.builder()
+                    .id((long) i)
+                    .colTest3("Test3_" + i)
+                    .entities5(testEntity5Set)
+                    .build();
+
+            List<String> keywords = new ArrayList<>();
+            if (i % 2 == 0) {
+                keywords.add("java");
+                keywords.add("spring");
+            }
+            if (i % 3 == 0) {
+                keywords.add("hibernate");
+                keywords.add("jpa");
+            }
+            if (i == 1 || i == 5) {
+                keywords.add("unique_" + i);
+            }
+            keywords.add("keyword_" + i);
+
+            MyEntity myEntity = MyEntity.builder()
+                    .id((long) i)
+                    .stringOne("StringOne_" + i)
+                    .stringTwo("StringTwo_" + i)
+                    .stringThree("StringThree_" + i)
+                    .stringFalse("StringFalse_" + i)
+                    .email("email" + i + "@example.com")
+                    .primitiveInteger(i * 10)
+                    .wrapperInteger(i * 20)
+                    .stringDate(new Date())
+                    .dateOne(new Date())
+                    .primitiveLong(i * 100L)
+                    .wrapperLongYes(i * 200L)
+                    .primitiveFloat(i * 1.1f)
+                    .wrapperFloat(i * 2.2f)
+                    .primitiveDoubleYes(i * 3.3)
+                    .wrapperDouble(i * 4.4)
+                    .bigDecimal(BigDecimal.valueOf(i * 1000.0))
+                    .localDateTime(LocalDateTime.now())
+                    .localDate(LocalDate.now())
+                    .localTime(LocalTime.now())
+                    .offsetDateTime(OffsetDateTime.now())
+                    .zonedDateTime(ZonedDateTime.now())
+                    .offsetTime(OffsetTime.now())
+                    .primitiveBoolean(i % 2 == 0)
+                    .wrapperBoolean(i % 2 != 0)
+                    .notSearchableOne("NotSearchableOne_" + i)
+                    .notSearchableTwo("NotSearchableTwo_" + i)
+                    .notSearchableThree(i * 300L)
+                    .keywords(keywords)
+                    .test1(testEntity1)
+                    .test2(testEntity2)
+                    .test3(testEntity3)
+                    .build();
+
+            entities.add(myEntity);
+        }
+
+        return entities;
+    }
+
+    static JPASearchInput input(JPASearchInput.Filter filter) {
+        var input = new JPASearchInput();
+        var root = new JPASearchInput.RootFilter();
+        root.setOperator("and");
+        root.setFilters(new ArrayList<>(List.of(filter)));
+        input.setFilter(root);
+        return input;
+    }
+
+    static JPASearchInput.Filter single(String key, String operator, Object value) {
+        if (value instanceof List<?> values) {
+            var filter = new JPASearchInput.FilterMultipleValues();
+            filter.setKey(key);
+            filter.setOperator(operator);
+            filter.setValues(new ArrayList<Object>(values));
+            return filter;
+        }
+
+        var filter = new JPASearchInput.FilterSingleValue();
+        filter.setKey(key);
+        filter.setOperator(operator);
+        filter.setValue(value);
+        return filter;
+    }
+}
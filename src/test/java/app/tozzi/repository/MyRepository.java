@@ -5,6 +5,6 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface MyRepository extends JpaRepository<MyEntity, Long>, JPASearchRepository<MyEntity>, JPAProjectionRepository<MyEntity> {
+public interface MyRepository extends JpaRepository<MyEntity, Long>, JPASearchRepository<MyEntity>, JPAProjectionRepository<MyEntity>, JPAFetchRepository<MyEntity>, JPAParallelPageRepository<MyEntity>, JPABatchRepository<MyEntity>, JPAFacetRepository<MyEntity>, JPAAggregationRepository<MyEntity>, JPADistinctValuesRepository<MyEntity>, JPABulkRepository<MyEntity> {
 
 }
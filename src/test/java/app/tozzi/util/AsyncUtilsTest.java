@@ -0,0 +1,64 @@
+package app.tozzi.util;
+
+import app.tozzi.config.JPASearchConfig;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncUtilsTest {
+
+    @AfterEach
+    void reset() {
+        JPASearchConfig.set(new JPASearchConfig());
+    }
+
+    @Test
+    public void defaultExecutor() throws Exception {
+        var caller = Thread.currentThread();
+        var thread = AsyncUtils.supplyAsync(Thread::currentThread).get();
+        assertNotSame(caller, thread);
+    }
+
+    @Test
+    public void observationPropagation() throws Exception {
+        var registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(context -> true);
+        var config = new JPASearchConfig();
+        config.setObservationRegistry(registry);
+        JPASearchConfig.set(config);
+
+        var observation = Observation.start("search", registry);
+        try (var ignored = observation.openScope()) {
+            assertSame(observation, AsyncUtils.supplyAsync(registry::getCurrentObservation).get());
+        } finally {
+            observation.stop();
+        }
+
+        assertNull(AsyncUtils.supplyAsync(registry::getCurrentObservation).get());
+    }
+
+    @Test
+    public void customExecutorAndDecorator() throws Exception {
+        var executed = new AtomicInteger();
+        var decorated = new AtomicInteger();
+        var config = new JPASearchConfig();
+        config.setAsyncExecutor(r -> {
+            executed.incrementAndGet();
+            r.run();
+        });
+        config.setAsyncTaskDecorator(r -> {
+            decorated.incrementAndGet();
+            return r;
+        });
+        JPASearchConfig.set(config);
+
+        assertEquals("ok", AsyncUtils.supplyAsync(() -> "ok").get());
+        assertEquals(1, executed.get());
+        assertEquals(1, decorated.get());
+    }
+}
@@ -0,0 +1,265 @@
+package app.tozzi.util;
+
+import app.tozzi.config.JPASearchConfig;
+import app.tozzi.exception.JPASearchBulkheadException;
+import app.tozzi.metrics.JPASearchMetrics;
+import app.tozzi.model.MyModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkheadUtilsTest {
+
+    private JPASearchConfig config;
+
+    @BeforeEach
+    void setUp() {
+        config = new JPASearchConfig();
+        config.setBulkheads(Map.of(MyModel.class, 1));
+        JPASearchConfig.set(config);
+        JPASearchMetrics.reset();
+    }
+
+    @AfterEach
+    void reset() {
+        JPASearchConfig.set(new JPASearchConfig());
+    }
+
+    @Test
+    public void rejectedWhenQueueFull() throws Exception {
+        config.setBulkheadMaxWaiting(0);
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var heavy = CompletableFuture.supplyAsync(() -> BulkheadUtils.execute(MyModel.class, () -> {
+            running.countDown();
+            await(release);
+            return "heavy";
+        }));
+
+        try {
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+            var e = assertThrows(JPASearchBulkheadException.class, () -> BulkheadUtils.execute(MyModel.class, () -> "interactive"));
+            assertEquals(MyModel.class, e.getDomainType());
+            assertEquals(1, e.getMaxConcurrent());
+            assertEquals(1, JPASearchMetrics.getBulkheadRejections());
+
+            // other domain types are not limited
+            assertEquals("other", BulkheadUtils.execute(String.class, () -> "other"));
+        } finally {
+            release.countDown();
+        }
+
+        assertEquals("heavy", heavy.get(10, TimeUnit.SECONDS));
+        assertEquals("interactive", BulkheadUtils.execute(MyModel.class, () -> "interactive"));
+    }
+
+    @Test
+    public void queuedUntilTimeout() throws Exception {
+        config.setBulkheadTimeout(Duration.ofMillis(50));
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var heavy = CompletableFuture.supplyAsync(() -> BulkheadUtils.execute(MyModel.class, () -> {
+            running.countDown();
+            await(release);
+            return "heavy";
+        }));
+
+        try {
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+            assertThrows(JPASearchBulkheadException.class, () -> BulkheadUtils.execute(MyModel.class, () -> "interactive"));
+        } finally {
+            release.countDown();
+        }
+
+        assertEquals("heavy", heavy.get(10, TimeUnit.SECONDS));
+        config.setBulkheadTimeout(Duration.ofSeconds(10));
+        assertEquals("queued", BulkheadUtils.execute(MyModel.class, () -> "queued"));
+    }
+
+    @Test
+    public void concurrentRejections() throws Exception {
+        config.setBulkheadMaxWaiting(2);
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var heavy = CompletableFuture.supplyAsync(() -> BulkheadUtils.execute(MyModel.class, () -> {
+            running.countDown();
+            await(release);
+            return "heavy";
+        }));
+
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        var executor = Executors.newFixedThreadPool(10);
+        try {
+            var start = new CountDownLatch(1);
+            var searches = new ArrayList<Future<String>>();
+            for (int i = 0; i < 10; i++) {
+                searches.add(executor.submit(() -> {
+                    await(start);
+                    return BulkheadUtils.execute(MyModel.class, () -> "ok");
+                }));
+            }
+
+            start.countDown();
+            // 2 searches wait, the other ones are rejected at once
+            while (JPASearchMetrics.getBulkheadRejections() < 8) {
+                Thread.sleep(5);
+            }
+
+            release.countDown();
+            var completed = 0;
+            var rejected = 0;
+            for (var search : searches) {
+                try {
+                    assertEquals("ok", search.get(10, TimeUnit.SECONDS));
+                    completed++;
+                } catch (ExecutionException e) {
+                    assertInstanceOf(JPASearchBulkheadException.class, e.getCause());
+                    rejected++;
+                }
+            }
+
+            assertEquals(2, completed);
+            assertEquals(8, rejected);
+            assertEquals(8, JPASearchMetrics.getBulkheadRejections());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals("heavy", heavy.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void concurrentTimeouts() throws Exception {
+        config.setBulkheadTimeout(Duration.ofMillis(100));
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var heavy = CompletableFuture.supplyAsync(() -> BulkheadUtils.execute(MyModel.class, () -> {
+            running.countDown();
+            await(release);
+            return "heavy";
+        }));
+
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        var executor = Executors.newFixedThreadPool(5);
+        try {
+            var searches = new ArrayList<Future<String>>();
+            for (int i = 0; i < 5; i++) {
+                searches.add(executor.submit(() -> BulkheadUtils.execute(MyModel.class, () -> "ok")));
+            }
+
+            for (var search : searches) {
+                var e = assertThrows(ExecutionException.class, () -> search.get(10, TimeUnit.SECONDS));
+                assertInstanceOf(JPASearchBulkheadException.class, e.getCause());
+            }
+
+            assertEquals(5, JPASearchMetrics.getBulkheadRejections());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals("heavy", heavy.get(10, TimeUnit.SECONDS));
+        assertEquals("ok", BulkheadUtils.execute(MyModel.class, () -> "ok"));
+    }
+
+    @Test
+    public void fifo() throws Exception {
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var heavy = CompletableFuture.supplyAsync(() -> BulkheadUtils.execute(MyModel.class, () -> {
+            running.countDown();
+            await(release);
+            return "heavy";
+        }));
+
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        var order = new ConcurrentLinkedQueue<Integer>();
+        var executor = Executors.newFixedThreadPool(5);
+        try {
+            var searches = new ArrayList<Future<?>>();
+            for (int i = 0; i < 5; i++) {
+                var id = i;
+                searches.add(executor.submit(() -> BulkheadUtils.execute(MyModel.class, () -> order.add(id))));
+                // queued one after the other
+                while (BulkheadUtils.getWaiting(MyModel.class) < i + 1) {
+                    Thread.sleep(5);
+                }
+            }
+
+            release.countDown();
+            for (var search : searches) {
+                search.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals(List.of(0, 1, 2, 3, 4), List.copyOf(order));
+        assertEquals("heavy", heavy.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void resized() throws Exception {
+        config.setBulkheads(Map.of(MyModel.class, 2));
+        config.setBulkheadMaxWaiting(0);
+        var running = new CountDownLatch(2);
+        var release = new CountDownLatch(1);
+        var searches = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 2; i++) {
+            searches.add(CompletableFuture.supplyAsync(() -> BulkheadUtils.execute(MyModel.class, () -> {
+                running.countDown();
+                await(release);
+                return "heavy";
+            })));
+        }
+
+        try {
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+            assertThrows(JPASearchBulkheadException.class, () -> BulkheadUtils.execute(MyModel.class, () -> "ok"));
+
+            // the running searches keep their permits
+            config.setBulkheads(Map.of(MyModel.class, 3));
+            assertEquals("ok", BulkheadUtils.execute(MyModel.class, () -> "ok"));
+
+            config.setBulkheads(Map.of(MyModel.class, 1));
+            assertThrows(JPASearchBulkheadException.class, () -> BulkheadUtils.execute(MyModel.class, () -> "ok"));
+        } finally {
+            release.countDown();
+        }
+
+        for (var search : searches) {
+            assertEquals("heavy", search.get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals("ok", BulkheadUtils.execute(MyModel.class, () -> "ok"));
+    }
+
+    @Test
+    public void nested() {
+        assertEquals("nested", BulkheadUtils.execute(MyModel.class, () -> BulkheadUtils.execute(MyModel.class, () -> "nested")));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
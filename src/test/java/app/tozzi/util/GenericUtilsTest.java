@@ -506,4 +506,12 @@ public class GenericUtilsTest {
         VALUE_ONE, VALUE_TWO
     }
 
+    @Test
+    public void padToPowerOfTwo() {
+        assertArrayEquals(new Object[]{1, 2, 3, 3}, GenericUtils.padToPowerOfTwo(new Object[]{1, 2, 3}, -1));
+        assertArrayEquals(new Object[]{1, 2, 3, 4}, GenericUtils.padToPowerOfTwo(new Object[]{1, 2, 3, 4}, -1));
+        assertArrayEquals(new Object[]{1, 2, 3, 4, 5, 5}, GenericUtils.padToPowerOfTwo(new Object[]{1, 2, 3, 4, 5}, 6));
+        assertArrayEquals(new Object[]{1}, GenericUtils.padToPowerOfTwo(new Object[]{1}, -1));
+    }
+
 }
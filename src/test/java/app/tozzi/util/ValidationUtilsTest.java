@@ -3,6 +3,7 @@ package app.tozzi.util;
 import app.tozzi.annotation.Searchable;
 import app.tozzi.annotation.Tag;
 import app.tozzi.exception.InvalidFieldException;
+import app.tozzi.model.JPASearchInStrategy;
 import app.tozzi.model.JPASearchOperatorFilter;
 import app.tozzi.model.JPASearchType;
 import org.junit.jupiter.api.Test;
@@ -169,6 +170,16 @@ public class ValidationUtilsTest {
             public String jsonPath() {
                 return "";
             }
+
+            @Override
+            public JPASearchInStrategy inStrategy() {
+                return JPASearchInStrategy.DEFAULT;
+            }
+
+            @Override
+            public boolean indexed() {
+                return false;
+            }
         };
     }
 